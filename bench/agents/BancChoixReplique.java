@@ -0,0 +1,180 @@
+package agents;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Répartition des conversations entre les répliques d'un fragment : choix aléatoire contre deux
+ * choix sur la charge publiée dans le DF, comme le fait {@link AnnuaireBibliotheque}.
+ *
+ * Simulation à événements discrets, en temps virtuel : 4 bibliothécaires traitent chacune une
+ * conversation à la fois, dans l'ordre d'arrivée ; 10000 utilisateurs envoient des demandes selon
+ * un processus de Poisson, dont le débit total donne la charge rho visée. Le service dure en
+ * moyenne 10 ms, exponentiel ou bimodal (2 % des demandes 25 fois plus longues que les autres).
+ * <ul>
+ * <li>aléatoire : chaque demande va à une réplique tirée au hasard ;</li>
+ * <li>deux choix : chaque bibliothécaire publie sa file à la période donnée ; l'utilisateur tire
+ *     deux répliques, garde la moins chargée d'après la dernière publication et augmente sa copie
+ *     locale de la charge de l'élue jusqu'à la publication suivante ;</li>
+ * <li>unique : toutes les demandes vont à la même réplique, comme avant l'annonce des fragments.</li>
+ * </ul>
+ * Le banc relève le 99e centile du temps de réponse (attente et service), toutes graines réunies.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out bench/agents/BancChoixReplique.java
+ * java -cp out agents.BancChoixReplique [secondes simulées] [périodes de publication en ms...]
+ * </pre>
+ * Par défaut : 300 s par graine, 20 graines, publication toutes les 50, 100 et 1000 ms.
+ */
+public class BancChoixReplique {
+    private static final int REPLIQUES = 4;
+    private static final int UTILISATEURS = 10_000;
+    private static final int GRAINES = 20;
+    private static final double SERVICE_MOYEN = 0.010;
+    private static final double[] CHARGES = {0.5, 0.8};
+
+    // Stratégies de choix ; une période de publication nulle désigne le choix aléatoire
+    private static final int ALEATOIRE = 0;
+    private static final int DEUX_CHOIX = 1;
+    private static final int UNIQUE = 2;
+
+    // Déroulement d'une simulation
+    private static final class Simulation {
+        final Random hasard;
+        final boolean bimodal;
+        final int strategie;
+        final double periode;
+        // Demandes présentes chez chaque réplique, en service compris
+        final int[] presentes = new int[REPLIQUES];
+        final double[] libre = new double[REPLIQUES];
+        // Fins de service à venir, pour tenir à jour les demandes présentes
+        final PriorityQueue<double[]> fins = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        final int[] publiees = new int[REPLIQUES];
+        // Copie locale des charges de chaque utilisateur, valable jusqu'à la publication notée
+        final int[][] locales = new int[UTILISATEURS][];
+        final long[] publicationVue = new long[UTILISATEURS];
+        final double[] reponses;
+        int n = 0;
+
+        Simulation(long graine, boolean bimodal, int strategie, double periode, int capacite) {
+            this.hasard = new Random(graine);
+            this.bimodal = bimodal;
+            this.strategie = strategie;
+            this.periode = periode;
+            this.reponses = new double[capacite];
+            Arrays.fill(publicationVue, -1);
+        }
+
+        double exponentielle(double moyenne) {
+            return -moyenne * Math.log(1 - hasard.nextDouble());
+        }
+
+        // Bimodal : 98 % de demandes courtes, 2 % 25 fois plus longues, même moyenne que l'exponentielle
+        double service() {
+            if (!bimodal) {
+                return exponentielle(SERVICE_MOYEN);
+            }
+            double court = SERVICE_MOYEN / (0.98 + 0.02 * 25);
+            return hasard.nextInt(50) == 0 ? 25 * court : court;
+        }
+
+        void executer(double debit, double duree) {
+            double maintenant = 0;
+            double prochainePublication = periode;
+            long publication = 0;
+            while (true) {
+                maintenant += exponentielle(1 / debit);
+                if (maintenant >= duree || n == reponses.length) {
+                    return;
+                }
+                while (!fins.isEmpty() && fins.peek()[0] <= maintenant) {
+                    presentes[(int) fins.poll()[1]]--;
+                }
+                if (strategie == DEUX_CHOIX) {
+                    while (prochainePublication <= maintenant) {
+                        // Files vues à l'arrivée qui suit la publication, les fins de service
+                        // intermédiaires déjà décomptées
+                        System.arraycopy(presentes, 0, publiees, 0, REPLIQUES);
+                        publication++;
+                        prochainePublication += periode;
+                    }
+                }
+                int replique = choisir(hasard.nextInt(UTILISATEURS), publication);
+                libre[replique] = Math.max(maintenant, libre[replique]) + service();
+                presentes[replique]++;
+                fins.add(new double[] {libre[replique], replique});
+                reponses[n++] = libre[replique] - maintenant;
+            }
+        }
+
+        int choisir(int utilisateur, long publication) {
+            if (strategie == UNIQUE) {
+                return 0;
+            }
+            if (strategie == ALEATOIRE) {
+                return hasard.nextInt(REPLIQUES);
+            }
+            if (publicationVue[utilisateur] != publication) {
+                locales[utilisateur] = publiees.clone();
+                publicationVue[utilisateur] = publication;
+            }
+            int[] charges = locales[utilisateur];
+            int i = hasard.nextInt(REPLIQUES);
+            int j = hasard.nextInt(REPLIQUES - 1);
+            if (j >= i) {
+                j++;
+            }
+            int elue = charges[j] < charges[i] ? j : i;
+            charges[elue]++;
+            return elue;
+        }
+    }
+
+    public static void main(String[] args) {
+        double duree = args.length > 0 ? Double.parseDouble(args[0]) : 300;
+        double[] periodes = {0.050, 0.100, 1.000};
+        if (args.length > 1) {
+            periodes = new double[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                periodes[i - 1] = Double.parseDouble(args[i]) / 1000;
+            }
+        }
+
+        System.out.printf("%d répliques, %d utilisateurs, service moyen %.0f ms, %.0f s simulées, %d graines ; " +
+            "99e centile du temps de réponse en ms%n", REPLIQUES, UTILISATEURS, SERVICE_MOYEN * 1000, duree, GRAINES);
+        StringBuilder entete = new StringBuilder(String.format("%-26s %10s", "service", "aléatoire"));
+        for (double periode : periodes) {
+            entete.append(String.format(" %13s", String.format("2 choix %.0f", periode * 1000)));
+        }
+        System.out.println(entete.append(String.format(" %10s", "unique")));
+        for (boolean bimodal : new boolean[] {false, true}) {
+            for (double rho : CHARGES) {
+                double debit = rho * REPLIQUES / SERVICE_MOYEN;
+                StringBuilder ligne = new StringBuilder(String.format("%-26s %10s",
+                    (bimodal ? "bimodal (2 % 25x)" : "exponentiel") + ", rho " + rho,
+                    centile(debit, duree, bimodal, ALEATOIRE, 0)));
+                for (double periode : periodes) {
+                    ligne.append(String.format(" %13s", centile(debit, duree, bimodal, DEUX_CHOIX, periode)));
+                }
+                System.out.println(ligne.append(String.format(" %10s", centile(debit, duree, bimodal, UNIQUE, 0))));
+            }
+        }
+    }
+
+    // 99e centile des temps de réponse de toutes les graines, en ms
+    private static String centile(double debit, double duree, boolean bimodal, int strategie, double periode) {
+        int capacite = (int) (debit * duree * 1.1) + 1000;
+        double[] reponses = new double[capacite * GRAINES];
+        int n = 0;
+        for (int graine = 1; graine <= GRAINES; graine++) {
+            Simulation simulation = new Simulation(graine, bimodal, strategie, periode, capacite);
+            simulation.executer(debit, duree);
+            System.arraycopy(simulation.reponses, 0, reponses, n, simulation.n);
+            n += simulation.n;
+        }
+        Arrays.sort(reponses, 0, n);
+        return String.format("%,.0f", reponses[(int) (n * 0.99)] * 1000);
+    }
+}
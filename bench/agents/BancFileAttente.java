@@ -0,0 +1,230 @@
+package agents;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import model.Livre;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Équité de la file d'attente par titre sous contention, comparée à des relances périodiques.
+ *
+ * Simulation à événements discrets, en temps virtuel, de la bibliothécaire et de ses emprunteurs :
+ * chaque emprunteur choisit un titre, l'emprunte s'il reste un exemplaire, le garde un temps
+ * exponentiel puis le rend, réfléchit et recommence. Un titre épuisé est attendu de deux façons :
+ * <ul>
+ * <li>file : l'emprunteur s'inscrit dans la {@link FileAttente} du titre, et chaque exemplaire
+ *     rendu sert la tête de file, comme le fait la bibliothécaire ;</li>
+ * <li>relance : l'emprunteur redemande le titre à intervalle fixe ; le premier qui redemande après
+ *     un retour l'emporte, quelle que soit son ancienneté.</li>
+ * </ul>
+ * Le banc relève l'attente entre la première demande et l'emprunt (moyenne, médiane, 99e centile,
+ * maximum), le nombre d'emprunteurs doublés par un demandeur plus récent du même titre, l'indice
+ * d'équité de Jain sur l'attente moyenne de chaque emprunteur, et le bilan de la file.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -cp $JADE/lib/jade.jar -d out src/model/*.java src/util/*.java src/agents/FileAttente.java bench/agents/BancFileAttente.java
+ * java -cp $JADE/lib/jade.jar:out agents.BancFileAttente [emprunteurs] [titres] [heures] [relance s]
+ * </pre>
+ * Par défaut : 1000 emprunteurs, 100 titres de 1 à 3 exemplaires, prêt moyen de 60 s, réflexion
+ * moyenne de 120 s, 24 h simulées, relance toutes les 10 s, 5 graines.
+ */
+public class BancFileAttente {
+    private static final double PRET_MOYEN = 60;
+    private static final double REFLEXION_MOYENNE = 120;
+    private static final int GRAINES = 5;
+
+    // Événements : demande (première ou relance) et retour d'un exemplaire
+    private static final int DEMANDE = 0;
+    private static final int RETOUR = 1;
+
+    private static final class Evenement {
+        final double instant;
+        final int type;
+        final int emprunteur;
+
+        Evenement(double instant, int type, int emprunteur) {
+            this.instant = instant;
+            this.type = type;
+            this.emprunteur = emprunteur;
+        }
+    }
+
+    // Déroulement d'une simulation
+    private static final class Simulation {
+        final boolean file;
+        final double relance;
+        final Random hasard;
+        final Livre[] livres;
+        final FileAttente attente = new FileAttente();
+        final PriorityQueue<Evenement> evenements = new PriorityQueue<>((a, b) -> Double.compare(a.instant, b.instant));
+        final AID[] noms;
+        // Titre demandé et instant de la première demande, par emprunteur (-1 s'il n'attend pas)
+        final int[] titreDemande;
+        final double[] premiereDemande;
+        final double[] attenteCumulee;
+        final int[] emprunts;
+        // Instants de première demande des emprunteurs en attente, par titre, pour compter les dépassements
+        final List<List<Double>> enAttente = new ArrayList<>();
+        final List<Double> attentes = new ArrayList<>();
+        long doubles = 0;
+
+        Simulation(boolean file, double relance, long graine, int emprunteurs, int titres) {
+            this.file = file;
+            this.relance = relance;
+            this.hasard = new Random(graine);
+            livres = new Livre[titres];
+            for (int t = 0; t < titres; t++) {
+                livres[t] = new Livre("Titre " + t, "Auteur " + t, 1 + t % 3, 21);
+                enAttente.add(new ArrayList<>());
+            }
+            noms = new AID[emprunteurs];
+            titreDemande = new int[emprunteurs];
+            premiereDemande = new double[emprunteurs];
+            attenteCumulee = new double[emprunteurs];
+            emprunts = new int[emprunteurs];
+            for (int e = 0; e < emprunteurs; e++) {
+                noms[e] = new AID("emprunteur-" + e + "@banc", AID.ISGUID);
+                titreDemande[e] = -1;
+                evenements.add(new Evenement(exponentielle(REFLEXION_MOYENNE), DEMANDE, e));
+            }
+        }
+
+        double exponentielle(double moyenne) {
+            return -moyenne * Math.log(1 - hasard.nextDouble());
+        }
+
+        void executer(double fin) {
+            while (!evenements.isEmpty() && evenements.peek().instant < fin) {
+                Evenement evenement = evenements.poll();
+                if (evenement.type == DEMANDE) {
+                    demander(evenement.emprunteur, evenement.instant);
+                } else {
+                    rendre(evenement.emprunteur, evenement.instant);
+                }
+            }
+        }
+
+        void demander(int e, double maintenant) {
+            if (titreDemande[e] < 0) {
+                titreDemande[e] = hasard.nextInt(livres.length);
+                premiereDemande[e] = maintenant;
+            }
+            int t = titreDemande[e];
+            if (livres[t].reserver(1)) {
+                preter(e, maintenant);
+                return;
+            }
+            if (file) {
+                ACLMessage abonnement = new ACLMessage(ACLMessage.SUBSCRIBE);
+                abonnement.setSender(noms[e]);
+                attente.inscrire(abonnement, livres[t].getTitre(), 1);
+            } else {
+                evenements.add(new Evenement(maintenant + relance, DEMANDE, e));
+            }
+            if (!enAttente.get(t).contains(premiereDemande[e])) {
+                enAttente.get(t).add(premiereDemande[e]);
+            }
+        }
+
+        void preter(int e, double maintenant) {
+            int t = titreDemande[e];
+            // Les emprunteurs du même titre arrivés avant celui-ci et toujours en attente sont doublés
+            List<Double> file = enAttente.get(t);
+            file.remove(premiereDemande[e]);
+            for (double arrivee : file) {
+                if (arrivee < premiereDemande[e]) {
+                    doubles++;
+                }
+            }
+            double attendu = maintenant - premiereDemande[e];
+            attentes.add(attendu);
+            attenteCumulee[e] += attendu;
+            emprunts[e]++;
+            livres[t].confirmer(1);
+            evenements.add(new Evenement(maintenant + exponentielle(PRET_MOYEN), RETOUR, e));
+        }
+
+        void rendre(int e, double maintenant) {
+            int t = titreDemande[e];
+            titreDemande[e] = -1;
+            livres[t].restituer(1);
+            evenements.add(new Evenement(maintenant + exponentielle(REFLEXION_MOYENNE), DEMANDE, e));
+            if (!file) {
+                return;
+            }
+            String titre = livres[t].getTitre();
+            FileAttente.Inscription tete;
+            while ((tete = attente.tete(titre)) != null && livres[t].reserver(tete.nombre)) {
+                attente.servir(titre);
+                preter(indice(tete.emprunteur), maintenant);
+            }
+        }
+
+        int indice(String nom) {
+            return Integer.parseInt(nom.substring("emprunteur-".length(), nom.indexOf('@')));
+        }
+    }
+
+    public static void main(String[] args) {
+        int emprunteurs = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int titres = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        double heures = args.length > 2 ? Double.parseDouble(args[2]) : 24;
+        double relance = args.length > 3 ? Double.parseDouble(args[3]) : 10;
+
+        System.out.printf("emprunteurs: %d, titres: %d (1 à 3 exemplaires), prêt %.0f s, réflexion %.0f s, %.0f h, " +
+            "%d graines%n", emprunteurs, titres, PRET_MOYEN, REFLEXION_MOYENNE, heures, GRAINES);
+        for (boolean file : new boolean[] {true, false}) {
+            List<Double> attentes = new ArrayList<>();
+            long doubles = 0;
+            long emprunts = 0;
+            double jain = 0;
+            String bilan = null;
+            for (int graine = 1; graine <= GRAINES; graine++) {
+                Simulation simulation = new Simulation(file, relance, graine, emprunteurs, titres);
+                simulation.executer(heures * 3600);
+                attentes.addAll(simulation.attentes);
+                doubles += simulation.doubles;
+                emprunts += simulation.attentes.size();
+                jain += indiceJain(simulation) / GRAINES;
+                bilan = simulation.attente.resume();
+            }
+            double[] triees = new double[attentes.size()];
+            double somme = 0;
+            for (int i = 0; i < triees.length; i++) {
+                triees[i] = attentes.get(i);
+                somme += triees[i];
+            }
+            Arrays.sort(triees);
+            System.out.printf("%-8s %,9d emprunts, attente moyenne %6.1f s, p50 %6.1f s, p99 %7.1f s, max %7.1f s ; " +
+                    "doublés %,d (%.2f par emprunt) ; Jain %.3f%n",
+                file ? "file" : "relance", emprunts, somme / triees.length, triees[triees.length / 2],
+                triees[(int) (triees.length * 0.99)], triees[triees.length - 1], doubles, (double) doubles / emprunts, jain);
+            if (file) {
+                System.out.println("         file de la dernière graine (attentes en temps réel, pas simulé) : " + bilan);
+            }
+        }
+    }
+
+    // Indice de Jain sur l'attente moyenne par emprunt de chaque emprunteur : 1 si tous attendent autant
+    private static double indiceJain(Simulation simulation) {
+        double somme = 0;
+        double carres = 0;
+        int n = 0;
+        for (int e = 0; e < simulation.emprunts.length; e++) {
+            if (simulation.emprunts[e] == 0) {
+                continue;
+            }
+            double moyenne = simulation.attenteCumulee[e] / simulation.emprunts[e];
+            somme += moyenne;
+            carres += moyenne * moyenne;
+            n++;
+        }
+        return carres == 0 ? 1 : somme * somme / (n * carres);
+    }
+}
@@ -0,0 +1,108 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import model.Evenement;
+import model.Evenement.Type;
+
+/**
+ * Regroupement des événements publiés vers les observateurs : nombre de messages envoyés pour N
+ * événements, par rafale et à débit constant.
+ *
+ * Un {@link PublicateurEvenements} est rattaché à un agent hors plateforme (les envois n'y partent
+ * pas mais sont comptés) et connaît trois observateurs : deux sans filtre, qui partagent donc les
+ * mêmes lots, et un limité à la catégorie TRANSACTION, soit deux groupes d'observateurs. Les
+ * événements alternent une transaction et une information de bibliothécaire.
+ * <ul>
+ * <li>rafale : N événements publiés d'un coup, puis le reste du lot vidé comme à l'échéance du
+ *     délai ; attendu : ceil(N/256) messages par groupe au plus ;</li>
+ * <li>débit : R événements par seconde pendant 2 s, le lot étant vidé toutes les 50 ms comme le
+ *     fait le ticker de l'agent.</li>
+ * </ul>
+ * Sans regroupement, chaque événement partait en un message adressé à tous les observateurs
+ * intéressés, soit un message par événement.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -cp $JADE/lib/jade.jar -d out src/model/*.java src/util/*.java src/agents/PublicateurEvenements.java bench/agents/BancLotsEvenements.java
+ * java -cp $JADE/lib/jade.jar:out agents.BancLotsEvenements
+ * </pre>
+ */
+public class BancLotsEvenements {
+    private static final int[] RAFALES = {1, 100, 256, 1000, 10_000, 100_000, 1_000_000};
+    private static final int[] DEBITS = {10, 100, 1000, 10_000, 100_000};
+    private static final long DELAI_LOT = 50;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("rafale : événements -> messages (attendu au plus 2 x ceil(N/256)), coût d'une publication");
+        for (int n : RAFALES) {
+            PublicateurEvenements publicateur = publicateur();
+            long debut = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                publicateur.publier(evenement(i));
+            }
+            publicateur.vider();
+            long duree = System.nanoTime() - debut;
+            System.out.printf("%,10d -> %,6d messages (attendu %,6d), %5.0f ns/événement ; %s%n", n,
+                messagesEnvoyes(publicateur), 2 * ((n + 255) / 256), (double) duree / n, publicateur.resume());
+        }
+
+        System.out.println("débit : événements/s -> messages/s sur 2 s, lot vidé toutes les " + DELAI_LOT + " ms");
+        for (int debit : DEBITS) {
+            PublicateurEvenements publicateur = publicateur();
+            long debut = System.nanoTime();
+            long prochainVidage = debut + DELAI_LOT * 1_000_000;
+            long publies = 0;
+            long maintenant;
+            while ((maintenant = System.nanoTime()) - debut < 2_000_000_000L) {
+                long attendus = (maintenant - debut) * debit / 1_000_000_000L;
+                while (publies < attendus) {
+                    publicateur.publier(evenement((int) publies++));
+                }
+                if (maintenant >= prochainVidage) {
+                    publicateur.vider();
+                    prochainVidage += DELAI_LOT * 1_000_000;
+                }
+                Thread.sleep(0, 200_000);
+            }
+            publicateur.vider();
+            long messages = messagesEnvoyes(publicateur);
+            System.out.printf("%,8d/s -> %,6.0f messages/s (%,6.0f sans regroupement) ; %s%n", debit, messages / 2.0,
+                publies / 2.0, publicateur.resume());
+        }
+    }
+
+    private static PublicateurEvenements publicateur() {
+        PublicateurEvenements publicateur = new PublicateurEvenements(new Agent());
+        publicateur.mettreAJour(new DFAgentDescription[] {
+            observateur("observateur-1", null), observateur("observateur-2", null),
+            observateur("observateur-transactions", "TRANSACTION")});
+        return publicateur;
+    }
+
+    private static DFAgentDescription observateur(String nom, String categories) {
+        DFAgentDescription description = new DFAgentDescription();
+        description.setName(new AID(nom + "@banc", AID.ISGUID));
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(PublicateurEvenements.SERVICE);
+        if (categories != null) {
+            sd.addProperties(new Property(PublicateurEvenements.PROPRIETE_CATEGORIES, categories));
+        }
+        description.addServices(sd);
+        return description;
+    }
+
+    private static Evenement evenement(int i) {
+        return i % 2 == 0 ? new Evenement(Type.EMPRUNT_LIVRE, "emprunteur-" + i % 97, "Titre " + i % 1000, 0, 21)
+            : new Evenement(Type.RECHERCHE, "emprunteur-" + i % 97, "Titre " + i % 1000);
+    }
+
+    // Le bilan du publicateur se termine par le nombre de messages envoyés
+    private static long messagesEnvoyes(PublicateurEvenements publicateur) {
+        String resume = publicateur.resume();
+        return Long.parseLong(resume.substring(resume.lastIndexOf(' ') + 1));
+    }
+}
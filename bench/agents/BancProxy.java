@@ -0,0 +1,313 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Cache du {@link ProxyBibliotheque} : part des lectures servies sur place, réponses périmées et
+ * messages entre conteneurs, contre des utilisateurs qui s'adressent directement à la bibliothécaire.
+ *
+ * Simulation à événements discrets, en temps virtuel, d'un proxy et d'une bibliothécaire séparés
+ * par un transit de 2 ms dans chaque sens. Le catalogue compte 1000 titres de 1 à 3 exemplaires.
+ * Les lectures (demandes de disponibilité) suivent une loi de Zipf d'exposant 1 ; les écritures
+ * sont pour moitié des emprunts d'un titre tiré selon la même loi (CFP puis ACCEPT_PROPOSAL après
+ * la proposition), pour moitié des retours d'un exemplaire prêté. Le modèle reprend les règles du
+ * proxy et de {@link DiffusionDisponibilite} :
+ * <ul>
+ * <li>une lecture absente du cache part en une seule question, partagée par les lectures du même
+ *     titre qui arrivent avant la réponse ; la réponse porte la version courante des invalidations
+ *     et n'est gardée que si elle n'est pas antérieure à la dernière invalidation reçue ;</li>
+ * <li>les titres qui passent de disponible à épuisé ou l'inverse partent toutes les 50 ms en une
+ *     invalidation numérotée ; une entrée du cache vit au plus 5 s ;</li>
+ * <li>les écritures partent en un lot toutes les 20 ms, ou dès 64 messages ; la bibliothécaire
+ *     répond directement à l'utilisateur.</li>
+ * </ul>
+ * Une réponse est périmée si elle diffère de la disponibilité à la bibliothécaire au moment où le
+ * proxy la donne ; son âge est le temps écoulé depuis le changement qu'elle a manqué. Sans proxy,
+ * chaque lecture coûte une demande et une réponse, chaque écriture un message et sa réponse.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out bench/agents/BancProxy.java
+ * java -cp out agents.BancProxy [secondes simulées] [graines]
+ * </pre>
+ * Par défaut : 60 s, 5 graines, lectures de 100 et 1000/s, écritures de 5 et 50/s.
+ */
+public class BancProxy {
+    private static final int TITRES = 1000;
+    private static final double TRANSIT = 0.002;
+    private static final double PERIODE_LOT = 0.020;
+    private static final int TAILLE_LOT = 64;
+    private static final double PERIODE_INVALIDATION = 0.050;
+    private static final double TTL = 5;
+    private static final int[] LECTURES = {100, 1000};
+    private static final int[] ECRITURES = {5, 50};
+
+    // Événements
+    private static final int LECTURE = 0;
+    private static final int ECRITURE = 1;
+    private static final int ENVOI_LOT = 2;
+    private static final int ARRIVEE_MESSAGE = 3;
+    private static final int PROPOSITION = 4;
+    private static final int DIFFUSION = 5;
+    private static final int ARRIVEE_INVALIDATION = 6;
+    private static final int ARRIVEE_QUESTION = 7;
+    private static final int ARRIVEE_REPONSE = 8;
+
+    // Messages d'écriture relayés par le proxy
+    private static final int CFP = 0;
+    private static final int ACCEPTATION = 1;
+    private static final int RETOUR = 2;
+
+    private static final class Evenement {
+        final double instant;
+        final int type;
+        final int titre;
+        final Object donnee;
+
+        Evenement(double instant, int type, int titre, Object donnee) {
+            this.instant = instant;
+            this.type = type;
+            this.titre = titre;
+            this.donnee = donnee;
+        }
+    }
+
+    private static final class Entree {
+        final boolean disponible;
+        final double expiration;
+
+        Entree(boolean disponible, double expiration) {
+            this.disponible = disponible;
+            this.expiration = expiration;
+        }
+    }
+
+    // Déroulement d'une simulation
+    private static final class Simulation {
+        final Random hasard;
+        final double[] zipf = new double[TITRES];
+        final PriorityQueue<Evenement> evenements = new PriorityQueue<>((a, b) -> Double.compare(a.instant, b.instant));
+        final double debitLectures;
+        final double debitEcritures;
+        // Bibliothécaire : stock, instant du dernier changement de disponibilité, titres changés
+        final int[] stock = new int[TITRES];
+        final double[] changement = new double[TITRES];
+        final List<Integer> changes = new ArrayList<>();
+        final boolean[] change = new boolean[TITRES];
+        final List<Integer> prets = new ArrayList<>();
+        long version = 0;
+        // Proxy : cache, questions en vol (lectures en attente), lot d'écritures, dernière invalidation
+        final Map<Integer, Entree> cache = new HashMap<>();
+        final Map<Integer, Integer> enVol = new HashMap<>();
+        List<int[]> lot = new ArrayList<>();
+        long derniereInvalidation = 0;
+
+        long lectures, succes, perimees, messagesProxy, messagesDirects;
+        double ageMax;
+
+        Simulation(long graine, double debitLectures, double debitEcritures) {
+            this.hasard = new Random(graine);
+            this.debitLectures = debitLectures;
+            this.debitEcritures = debitEcritures;
+            double somme = 0;
+            for (int t = 0; t < TITRES; t++) {
+                somme += 1.0 / (t + 1);
+                zipf[t] = somme;
+                stock[t] = 1 + hasard.nextInt(3);
+            }
+            for (int t = 0; t < TITRES; t++) {
+                zipf[t] /= somme;
+            }
+            planifier(exponentielle(1 / debitLectures), LECTURE, -1, null);
+            planifier(exponentielle(1 / debitEcritures), ECRITURE, -1, null);
+            planifier(PERIODE_LOT, ENVOI_LOT, -1, null);
+            planifier(PERIODE_INVALIDATION, DIFFUSION, -1, null);
+        }
+
+        void planifier(double instant, int type, int titre, Object donnee) {
+            evenements.add(new Evenement(instant, type, titre, donnee));
+        }
+
+        double exponentielle(double moyenne) {
+            return -moyenne * Math.log(1 - hasard.nextDouble());
+        }
+
+        int titre() {
+            int i = Arrays.binarySearch(zipf, hasard.nextDouble());
+            return Math.min(TITRES - 1, i >= 0 ? i : -i - 1);
+        }
+
+        void executer(double fin) {
+            Evenement e;
+            while ((e = evenements.poll()) != null && e.instant < fin) {
+                double maintenant = e.instant;
+                switch (e.type) {
+                    case LECTURE:
+                        planifier(maintenant + exponentielle(1 / debitLectures), LECTURE, -1, null);
+                        lire(titre(), maintenant);
+                        break;
+                    case ECRITURE:
+                        planifier(maintenant + exponentielle(1 / debitEcritures), ECRITURE, -1, null);
+                        if (!prets.isEmpty() && hasard.nextBoolean()) {
+                            relayer(new int[] {RETOUR, prets.remove(hasard.nextInt(prets.size()))}, maintenant);
+                        } else {
+                            relayer(new int[] {CFP, titre()}, maintenant);
+                        }
+                        break;
+                    case ENVOI_LOT:
+                        planifier(maintenant + PERIODE_LOT, ENVOI_LOT, -1, null);
+                        envoyerLot(maintenant);
+                        break;
+                    case ARRIVEE_MESSAGE:
+                        recevoirEcriture((int[]) e.donnee, maintenant);
+                        break;
+                    case PROPOSITION:
+                        relayer(new int[] {ACCEPTATION, e.titre}, maintenant);
+                        break;
+                    case DIFFUSION:
+                        planifier(maintenant + PERIODE_INVALIDATION, DIFFUSION, -1, null);
+                        if (!changes.isEmpty()) {
+                            version++;
+                            messagesProxy++;
+                            planifier(maintenant + TRANSIT, ARRIVEE_INVALIDATION, -1, new Object[] {version, new ArrayList<>(changes)});
+                            for (int t : changes) {
+                                change[t] = false;
+                            }
+                            changes.clear();
+                        }
+                        break;
+                    case ARRIVEE_INVALIDATION:
+                        Object[] invalidation = (Object[]) e.donnee;
+                        derniereInvalidation = (Long) invalidation[0];
+                        @SuppressWarnings("unchecked")
+                        List<Integer> titres = (List<Integer>) invalidation[1];
+                        for (int t : titres) {
+                            cache.remove(t);
+                        }
+                        break;
+                    case ARRIVEE_QUESTION:
+                        messagesProxy++;
+                        planifier(maintenant + TRANSIT, ARRIVEE_REPONSE, e.titre, new Object[] {version, stock[e.titre] > 0});
+                        break;
+                    default:
+                        Object[] reponse = (Object[]) e.donnee;
+                        boolean disponible = (Boolean) reponse[1];
+                        if ((Long) reponse[0] >= derniereInvalidation) {
+                            cache.put(e.titre, new Entree(disponible, maintenant + TTL));
+                        }
+                        int attente = enVol.remove(e.titre);
+                        for (int i = 0; i < attente; i++) {
+                            repondre(e.titre, disponible, maintenant);
+                        }
+                }
+            }
+        }
+
+        void lire(int t, double maintenant) {
+            lectures++;
+            messagesDirects += 2;
+            Entree entree = cache.get(t);
+            if (entree != null && entree.expiration > maintenant) {
+                succes++;
+                repondre(t, entree.disponible, maintenant);
+                return;
+            }
+            Integer attente = enVol.get(t);
+            enVol.put(t, attente == null ? 1 : attente + 1);
+            if (attente == null) {
+                messagesProxy++;
+                planifier(maintenant + TRANSIT, ARRIVEE_QUESTION, t, null);
+            }
+        }
+
+        void repondre(int t, boolean disponible, double maintenant) {
+            if (disponible != stock[t] > 0) {
+                perimees++;
+                ageMax = Math.max(ageMax, maintenant - changement[t]);
+            }
+        }
+
+        void relayer(int[] message, double maintenant) {
+            messagesDirects += 2;
+            lot.add(message);
+            if (lot.size() >= TAILLE_LOT) {
+                envoyerLot(maintenant);
+            }
+        }
+
+        void envoyerLot(double maintenant) {
+            if (lot.isEmpty()) {
+                return;
+            }
+            messagesProxy++;
+            for (int[] message : lot) {
+                planifier(maintenant + TRANSIT, ARRIVEE_MESSAGE, -1, message);
+            }
+            lot = new ArrayList<>();
+        }
+
+        // Chaque message relayé reçoit sa réponse directement, hors lot
+        void recevoirEcriture(int[] message, double maintenant) {
+            messagesProxy++;
+            int t = message[1];
+            if (message[0] == CFP) {
+                if (stock[t] > 0) {
+                    planifier(maintenant + TRANSIT, PROPOSITION, t, null);
+                }
+            } else if (message[0] == ACCEPTATION) {
+                if (stock[t] > 0) {
+                    varier(t, -1, maintenant);
+                    prets.add(t);
+                }
+            } else {
+                varier(t, 1, maintenant);
+            }
+        }
+
+        void varier(int t, int delta, double maintenant) {
+            boolean avant = stock[t] > 0;
+            stock[t] += delta;
+            if (avant != stock[t] > 0) {
+                changement[t] = maintenant;
+                if (!change[t]) {
+                    change[t] = true;
+                    changes.add(t);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        double duree = args.length > 0 ? Double.parseDouble(args[0]) : 60;
+        int graines = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        System.out.printf("%d titres (1 à 3 exemplaires), Zipf(1), transit %.0f ms, %.0f s, %d graines%n",
+            TITRES, TRANSIT * 1000, duree, graines);
+        System.out.println("lectures/s écritures/s | succès cache | réponses périmées (âge max) | messages entre conteneurs");
+        for (int debitLectures : LECTURES) {
+            for (int debitEcritures : ECRITURES) {
+                long lectures = 0, succes = 0, perimees = 0, proxy = 0, directs = 0;
+                double ageMax = 0;
+                for (int graine = 1; graine <= graines; graine++) {
+                    Simulation simulation = new Simulation(graine, debitLectures, debitEcritures);
+                    simulation.executer(duree);
+                    lectures += simulation.lectures;
+                    succes += simulation.succes;
+                    perimees += simulation.perimees;
+                    proxy += simulation.messagesProxy;
+                    directs += simulation.messagesDirects;
+                    ageMax = Math.max(ageMax, simulation.ageMax);
+                }
+                System.out.printf("%9d %11d | %11.1f %% | %8.2f %% (%3.0f ms)       | %,9d au lieu de %,9d (%+.1f %%)%n",
+                    debitLectures, debitEcritures, 100.0 * succes / lectures, 100.0 * perimees / lectures,
+                    ageMax * 1000, proxy, directs, 100.0 * (proxy - directs) / directs);
+            }
+        }
+    }
+}
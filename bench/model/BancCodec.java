@@ -0,0 +1,138 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Taille et coût du codage des listes de recherche et de leurs résultats : sérialisation Java
+ * (ce que fait setContentObject) contre le codage binaire de {@link ListeLivres#encoder} et
+ * {@link ResultatRecherche#encoder}.
+ *
+ * Les titres sont des suites de 2 à 5 mots tirés d'un vocabulaire de 5000 mots, tous différents ;
+ * quatre titres sur cinq sont trouvés, avec des auteurs tirés parmi 500. Chaque mesure est une
+ * boucle chaude dont le nombre de tours est adapté à la taille de la liste, après échauffement.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancCodec.java
+ * java -cp out model.BancCodec [tailles...]
+ * </pre>
+ * Par défaut : listes de 10, 1000 et 100000 titres.
+ */
+public class BancCodec {
+    private static final long DUREE_MESURE_NS = 1_000_000_000L;
+
+    private interface Operation {
+        Object executer() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] tailles = {10, 1000, 100_000};
+        if (args.length > 0) {
+            tailles = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                tailles[i] = Integer.parseInt(args[i]);
+            }
+        }
+        Random hasard = new Random(17);
+        String[] vocabulaire = new String[5000];
+        for (int i = 0; i < vocabulaire.length; i++) {
+            vocabulaire[i] = mot(hasard);
+        }
+
+        System.out.println("titres | octets liste (sérialisée / binaire) | octets résultat (idem) | " +
+            "µs liste (sérialisée codage, décodage / binaire codage, décodage) | µs résultat (idem)");
+        for (int n : tailles) {
+            List<String> titres = new ArrayList<>(n);
+            ResultatRecherche resultat = new ResultatRecherche(n);
+            for (int i = 0; i < n; i++) {
+                StringBuilder titre = new StringBuilder();
+                for (int m = 2 + hasard.nextInt(4); m > 0; m--) {
+                    titre.append(vocabulaire[hasard.nextInt(vocabulaire.length)]).append(' ');
+                }
+                titre.append(i);
+                titres.add(titre.toString());
+                if (hasard.nextInt(5) > 0) {
+                    resultat.ajouterLivreTrouve(titres.get(i), new Livre(titres.get(i),
+                        "Auteur " + vocabulaire[hasard.nextInt(500)], 1 + hasard.nextInt(5), 7 * (1 + hasard.nextInt(4))));
+                } else {
+                    resultat.ajouterLivreNonTrouve(titres.get(i));
+                }
+            }
+            ListeLivres liste = new ListeLivres(titres);
+
+            byte[] listeSerialisee = serialiser(liste);
+            byte[] listeBinaire = liste.encoder();
+            byte[] resultatSerialise = serialiser(resultat);
+            byte[] resultatBinaire = resultat.encoder(titres);
+            verifier(ListeLivres.decoder(listeBinaire).getTitres().equals(titres), "liste altérée");
+            verifier(ResultatRecherche.decoder(resultatBinaire, titres).getNombreLivresTrouves() ==
+                resultat.getNombreLivresTrouves(), "résultat altéré");
+
+            System.out.printf("%,7d | %,10d / %,10d | %,10d / %,10d | %s, %s / %s, %s | %s, %s / %s, %s%n", n,
+                listeSerialisee.length, listeBinaire.length, resultatSerialise.length, resultatBinaire.length,
+                mesurer(() -> serialiser(liste)), mesurer(() -> deserialiser(listeSerialisee)),
+                mesurer(liste::encoder), mesurer(() -> ListeLivres.decoder(listeBinaire)),
+                mesurer(() -> serialiser(resultat)), mesurer(() -> deserialiser(resultatSerialise)),
+                mesurer(() -> resultat.encoder(titres)), mesurer(() -> ResultatRecherche.decoder(resultatBinaire, titres)));
+        }
+    }
+
+    // Durée médiane d'une opération, sur autant de tours qu'en a fait une demi-seconde d'échauffement
+    private static String mesurer(Operation operation) throws Exception {
+        long debut = System.nanoTime();
+        int tours = 0;
+        while (System.nanoTime() - debut < DUREE_MESURE_NS / 2) {
+            operation.executer();
+            tours++;
+        }
+        int mesures = Math.max(5, tours);
+        long[] durees = new long[mesures];
+        for (int i = 0; i < mesures; i++) {
+            long t0 = System.nanoTime();
+            operation.executer();
+            durees[i] = System.nanoTime() - t0;
+        }
+        Arrays.sort(durees);
+        double us = durees[mesures / 2] / 1e3;
+        return us < 10 ? String.format("%.1f", us) : String.format("%,.0f", us);
+    }
+
+    private static byte[] serialiser(Object objet) throws IOException {
+        ByteArrayOutputStream octets = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(octets)) {
+            out.writeObject(objet);
+        }
+        return octets.toByteArray();
+    }
+
+    private static Object deserialiser(byte[] octets) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(octets))) {
+            return in.readObject();
+        }
+    }
+
+    private static String mot(Random hasard) {
+        String consonnes = "bcdfghjklmnprstvz";
+        String voyelles = "aeiouy";
+        StringBuilder mot = new StringBuilder();
+        for (int l = 3 + hasard.nextInt(7); l > 0; l--) {
+            String source = l % 2 == 0 ? consonnes : voyelles;
+            mot.append(source.charAt(hasard.nextInt(source.length())));
+        }
+        return mot.toString();
+    }
+
+    private static void verifier(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
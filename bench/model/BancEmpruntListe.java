@@ -0,0 +1,155 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Emprunt "tout ou rien" d'une liste de titres, comparé à l'emprunt partiel.
+ *
+ * Des emprunteurs concurrents tirent des listes de titres dans un petit fonds peu fourni, pour
+ * créer de la contention. En mode atomique, chaque liste suit le protocole de la bibliothécaire :
+ * titres regroupés et triés, réservation de tous en un aller-retour sur les partitions, puis
+ * confirmation de tous ou libération de tous. En mode partiel, chaque titre disponible est emprunté
+ * et les autres sont ignorés. Un emprunteur garde ses exemplaires jusqu'à sa liste suivante, puis
+ * les remet en rayon.
+ *
+ * Le banc relève les listes traitées par seconde, la latence d'une liste et, pour chaque mode, la
+ * part de listes servies entièrement ; en mode partiel, les listes incomplètes laissent des
+ * exemplaires prêtés à un emprunteur qui n'en voulait qu'avec les autres.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancEmpruntListe.java
+ * java -cp out model.BancEmpruntListe [emprunteurs] [titres par liste] [titres] [exemplaires] [secondes]
+ * </pre>
+ * Par défaut : 8 emprunteurs, listes de 5 titres, fonds de 200 titres à 2 exemplaires, 4 partitions,
+ * 3 s par mode.
+ */
+public class BancEmpruntListe {
+    // Histogramme par microseconde, la dernière case comptant les attentes plus longues
+    private static final int CASES = 100_000;
+
+    private static volatile boolean fin;
+
+    public static void main(String[] args) throws Exception {
+        int emprunteurs = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int parListe = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int titres = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int exemplaires = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        long dureeMs = (args.length > 4 ? Long.parseLong(args[4]) : 3) * 1000;
+
+        System.out.println("processeurs: " + Runtime.getRuntime().availableProcessors() + ", emprunteurs: " +
+            emprunteurs + ", titres par liste: " + parListe + ", fonds: " + titres + " titres x " + exemplaires);
+        mesurer(true, emprunteurs, parListe, titres, exemplaires, dureeMs);
+        mesurer(false, emprunteurs, parListe, titres, exemplaires, dureeMs);
+    }
+
+    private static void mesurer(boolean atomique, int emprunteurs, int parListe, int titres, int exemplaires,
+                                long dureeMs) throws Exception {
+        CataloguePartitionne catalogue = new CataloguePartitionne("banc", 4, 1);
+        List<Livre> fonds = new ArrayList<>(titres);
+        for (int i = 0; i < titres; i++) {
+            fonds.add(new Livre("Titre " + i, "Auteur " + i % 50, exemplaires, 21));
+        }
+        catalogue.charger(fonds).join();
+
+        long[][] latences = new long[emprunteurs][CASES + 1];
+        long[] completes = new long[emprunteurs];
+        long[] exemplairesIsoles = new long[emprunteurs];
+        fin = false;
+        List<Thread> threads = new ArrayList<>();
+        for (int e = 0; e < emprunteurs; e++) {
+            int numero = e;
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom hasard = ThreadLocalRandom.current();
+                List<Livre> empruntes = new ArrayList<>();
+                List<Integer> nombres = new ArrayList<>();
+                while (!fin) {
+                    for (int i = 0; i < empruntes.size(); i++) {
+                        empruntes.get(i).restituer(nombres.get(i));
+                    }
+                    empruntes.clear();
+                    nombres.clear();
+
+                    TreeMap<String, Integer> quantitesDemandees = new TreeMap<>();
+                    for (int i = 0; i < parListe; i++) {
+                        quantitesDemandees.merge("Titre " + hasard.nextInt(titres), 1, Integer::sum);
+                    }
+                    List<String> liste = new ArrayList<>(quantitesDemandees.keySet());
+
+                    long debut = System.nanoTime();
+                    List<Livre> reserves = catalogue.executerTous(liste, livre ->
+                        livre != null && livre.reserver(quantitesDemandees.get(livre.getTitre())) ? livre : null
+                    ).join();
+                    int manquants = 0;
+                    for (Livre livre : reserves) {
+                        if (livre == null) {
+                            manquants++;
+                        }
+                    }
+                    for (Livre livre : reserves) {
+                        if (livre == null) {
+                            continue;
+                        }
+                        int nombre = quantitesDemandees.get(livre.getTitre());
+                        if (atomique && manquants > 0) {
+                            livre.liberer(nombre);
+                        } else {
+                            livre.confirmer(nombre);
+                            empruntes.add(livre);
+                            nombres.add(nombre);
+                            if (manquants > 0) {
+                                exemplairesIsoles[numero] += nombre;
+                            }
+                        }
+                    }
+                    long attente = System.nanoTime() - debut;
+                    latences[numero][(int) Math.min(CASES, attente / 1000)]++;
+                    if (manquants == 0) {
+                        completes[numero]++;
+                    }
+                }
+            }));
+        }
+        long debut = System.nanoTime();
+        threads.forEach(Thread::start);
+        Thread.sleep(dureeMs);
+        fin = true;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        catalogue.arreter();
+
+        long[] histogramme = new long[CASES + 1];
+        long total = 0;
+        long servies = 0;
+        long isoles = 0;
+        for (int e = 0; e < emprunteurs; e++) {
+            servies += completes[e];
+            isoles += exemplairesIsoles[e];
+            for (int c = 0; c <= CASES; c++) {
+                histogramme[c] += latences[e][c];
+                total += latences[e][c];
+            }
+        }
+        System.out.printf("%-9s %,9.0f listes/s, latence p50 %s, p99 %s, p99,9 %s ; servies entièrement %.1f %%, " +
+                "exemplaires prêtés sur des listes incomplètes : %,d%n",
+            atomique ? "atomique" : "partiel", total / secondes, centile(histogramme, total, 0.5),
+            centile(histogramme, total, 0.99), centile(histogramme, total, 0.999), 100.0 * servies / total, isoles);
+    }
+
+    private static String centile(long[] histogramme, long total, double part) {
+        long rang = (long) Math.ceil(total * part);
+        long cumul = 0;
+        for (int us = 0; us < histogramme.length; us++) {
+            cumul += histogramme[us];
+            if (cumul >= rang && cumul > 0) {
+                return us == CASES ? ">" + CASES + " µs" : us + " µs";
+            }
+        }
+        return "-";
+    }
+}
@@ -0,0 +1,73 @@
+package model;
+
+import model.Evenement.Type;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Coût de création d'un événement pour les observateurs, contre la concaténation du texte qui
+ * était publiée avant les événements typés, et taille du codage binaire d'un lot.
+ *
+ * Chaque mesure enchaîne 10 millions de créations, titre et emprunteur pris dans de petits
+ * tableaux, et garde la médiane de cinq passes après une passe d'échauffement. La création
+ * appelle System.currentTimeMillis() pour l'horodatage, la concaténation non ; l'appel seul est
+ * mesuré à part. La concaténation dépend de la cible de compilation : StringBuilder pour Java 8,
+ * invokedynamic au-delà, nettement plus rapide.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac --release 8 -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancEvenement.java
+ * java -cp out model.BancEvenement
+ * </pre>
+ */
+public class BancEvenement {
+    private static final int TOURS = 10_000_000;
+    private static final int PASSES = 5;
+    private static final String[] TITRES = {"Les Misérables", "Germinal", "Le Rouge et le Noir", "Candide"};
+    private static final String[] AGENTS = {"emprunteur-1", "emprunteur-22", "emprunteur-333", "liste-4"};
+
+    private interface Creation {
+        Object creer(int i);
+    }
+
+    // Les objets créés y sont rangés pour que la JIT ne puisse les écarter
+    private static final Object[] PUITS = new Object[1024];
+
+    public static void main(String[] args) {
+        System.out.printf("création : événement %.0f ns, concaténation %.0f ns, currentTimeMillis seul %.0f ns%n",
+            duree(i -> new Evenement(Type.PRET, AGENTS[i & 3], TITRES[(i >> 2) & 3], 1 + (i & 7), 21)),
+            duree(i -> "BIBLIO_INFO:Prête " + (1 + (i & 7)) + " exemplaire(s) du livre \"" + TITRES[(i >> 2) & 3] +
+                "\" à " + AGENTS[i & 3] + " pour " + 21 + " jours"),
+            duree(i -> System.currentTimeMillis()));
+
+        List<Evenement> lot = Arrays.asList(
+            new Evenement(Type.RECHERCHE_EMPRUNT, AGENTS[0], TITRES[0], 2),
+            new Evenement(Type.PRET, AGENTS[0], TITRES[0], 2, 21),
+            new Evenement(Type.EMPRUNT, AGENTS[0], TITRES[0], 2, 21),
+            new Evenement(Type.RETOUR, AGENTS[1], TITRES[1], 1));
+        int textes = 0;
+        for (Evenement evenement : lot) {
+            textes += evenement.texte().getBytes(StandardCharsets.UTF_8).length;
+        }
+        System.out.printf("lot de %d événements : %d octets codés, %d octets de textes en UTF-8%n", lot.size(),
+            Evenement.encoder(lot).length, textes);
+    }
+
+    // Durée médiane d'une création, en ns
+    private static double duree(Creation creation) {
+        long[] durees = new long[PASSES];
+        for (int passe = -1; passe < PASSES; passe++) {
+            long debut = System.nanoTime();
+            for (int i = 0; i < TOURS; i++) {
+                PUITS[i & (PUITS.length - 1)] = creation.creer(i);
+            }
+            if (passe >= 0) {
+                durees[passe] = System.nanoTime() - debut;
+            }
+        }
+        Arrays.sort(durees);
+        return (double) durees[PASSES / 2] / TOURS;
+    }
+}
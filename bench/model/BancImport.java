@@ -0,0 +1,93 @@
+package model;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Durée d'import d'un gros catalogue CSV dans une table par titre, comme le fait la bibliothécaire
+ * avec l'argument import=fichier.
+ *
+ * Le banc écrit un fichier "titre;auteur;exemplaires;durée" avec en-tête, dont une ligne sur cent
+ * a un titre entre guillemets, puis l'importe plusieurs fois de suite : la première passe lit le
+ * fichier depuis le disque ou le cache du système, les suivantes mesurent l'analyse seule. Tous
+ * les titres sont gardés, sans filtre de fragment. Le temps passé en collectes est relevé à part.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancImport.java
+ * java -Xmx3g -cp out model.BancImport [lignes] [threads] [passes]
+ * </pre>
+ * Par défaut : 5000000 lignes, un thread d'analyse par processeur, 3 passes, dans un fichier
+ * temporaire.
+ */
+public class BancImport {
+
+    public static void main(String[] args) throws Exception {
+        int lignes = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int passes = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        File fichier = File.createTempFile("banc-import", ".csv");
+        try {
+            long debut = System.nanoTime();
+            ecrire(fichier, lignes);
+            System.out.printf("processeurs: %d, threads: %d, fichier de %,d lignes, %.0f Mo écrit en %.1f s%n",
+                Runtime.getRuntime().availableProcessors(), threads, lignes, fichier.length() / 1e6,
+                (System.nanoTime() - debut) / 1e9);
+
+            for (int passe = 1; passe <= passes; passe++) {
+                Map<String, Livre> catalogue = new HashMap<>();
+                long gc = tempsGc();
+                debut = System.nanoTime();
+                ImportateurCatalogue.Bilan bilan = new ImportateurCatalogue(fichier, threads).importer(titre -> true,
+                    livres -> {
+                        for (Livre livre : livres) {
+                            catalogue.put(livre.getTitre(), livre);
+                        }
+                    }, (lus, total, livres) -> { });
+                double secondes = (System.nanoTime() - debut) / 1e9;
+                System.out.printf("passe %d : %.2f s dont %.2f s de GC, %,.0f lignes/s, %,d livres en table ; %s%n",
+                    passe, secondes, (tempsGc() - gc) / 1e3, lignes / secondes, catalogue.size(), bilan);
+            }
+        } finally {
+            Files.deleteIfExists(fichier.toPath());
+        }
+    }
+
+    // Temps cumulé des collectes, en millisecondes
+    private static long tempsGc() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static void ecrire(File fichier, int lignes) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fichier),
+                StandardCharsets.UTF_8), 1 << 20)) {
+            out.write("titre;auteur;exemplaires;durée\n");
+            for (int i = 0; i < lignes; i++) {
+                String titre = "Titre " + i;
+                out.write(i % 100 == 0 ? "\"" + titre + "; tome " + i % 7 + "\"" : titre);
+                out.write(";Auteur ");
+                out.write(Integer.toString(i % 500_000));
+                out.write(';');
+                out.write(Integer.toString(1 + i % 5));
+                out.write(';');
+                out.write(Integer.toString(7 * (1 + i % 4)));
+                out.write('\n');
+            }
+        }
+    }
+}
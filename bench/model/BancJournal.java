@@ -0,0 +1,133 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Débit d'écriture du journal du catalogue, pour chaque politique de synchronisation disque.
+ *
+ * Des threads écrivains enchaînent des emprunts et des retours journalisés sur des titres tirés au
+ * hasard ; chaque écriture attend d'être durable avant la suivante, comme une bibliothécaire qui
+ * ne répond qu'après le journal. Le banc relève le nombre d'enregistrements par seconde, la latence
+ * de bout en bout (mutation, numéro, écriture et attente disque) et le nombre de synchronisations
+ * disque, qui mesure le regroupement des écritures en mode LOT.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancJournal.java
+ * java -cp out model.BancJournal [écrivains] [secondes] [titres]
+ * </pre>
+ * Par défaut : 4 écrivains, 3 s par politique, 1000 titres, dans un répertoire temporaire.
+ */
+public class BancJournal {
+    // Histogramme par microseconde, la dernière case comptant les attentes plus longues
+    private static final int CASES = 100_000;
+
+    private static volatile boolean fin;
+
+    public static void main(String[] args) throws Exception {
+        int ecrivains = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        long dureeMs = (args.length > 1 ? Long.parseLong(args[1]) : 3) * 1000;
+        int titres = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        System.out.println("processeurs: " + Runtime.getRuntime().availableProcessors() + ", écrivains: " +
+            ecrivains + ", titres: " + titres);
+        for (JournalCatalogue.Synchronisation synchronisation : JournalCatalogue.Synchronisation.values()) {
+            mesurer(synchronisation, ecrivains, dureeMs, titres);
+        }
+    }
+
+    private static void mesurer(JournalCatalogue.Synchronisation synchronisation, int ecrivains, long dureeMs,
+                                int titres) throws Exception {
+        File repertoire = Files.createTempDirectory("banc-journal").toFile();
+        JournalCatalogue journal = new JournalCatalogue(repertoire, synchronisation);
+        journal.recuperer();
+        Livre[] livres = new Livre[titres];
+        for (int i = 0; i < titres; i++) {
+            livres[i] = new Livre("Titre " + i, "Auteur " + i % 100, 1000, 21);
+            journal.enregistrerAjout(livres[i]);
+        }
+        journal.durable().join();
+
+        long[][] latences = new long[ecrivains][CASES + 1];
+        long[] totaux = new long[ecrivains];
+        fin = false;
+        List<Thread> threads = new ArrayList<>();
+        for (int e = 0; e < ecrivains; e++) {
+            int numero = e;
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom hasard = ThreadLocalRandom.current();
+                while (!fin) {
+                    Livre livre = livres[hasard.nextInt(titres)];
+                    long debut = System.nanoTime();
+                    if (journal.enregistrer(JournalCatalogue.Operation.EMPRUNT, livre.getTitre(), 1,
+                            () -> livre.reserver(1))) {
+                        journal.durable().join();
+                        journal.enregistrer(JournalCatalogue.Operation.RETOUR, livre.getTitre(), 1, () -> {
+                            livre.liberer(1);
+                            return true;
+                        });
+                        journal.durable().join();
+                        totaux[numero] += 2;
+                    }
+                    long attente = (System.nanoTime() - debut) / 2;
+                    latences[numero][(int) Math.min(CASES, attente / 1000)]++;
+                }
+            });
+            threads.add(thread);
+        }
+        long debut = System.nanoTime();
+        threads.forEach(Thread::start);
+        Thread.sleep(dureeMs);
+        fin = true;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        String resume = journal.resume();
+        journal.fermer();
+        supprimer(repertoire);
+
+        long total = 0;
+        long[] histogramme = new long[CASES + 1];
+        for (int e = 0; e < ecrivains; e++) {
+            total += totaux[e];
+            for (int c = 0; c <= CASES; c++) {
+                histogramme[c] += latences[e][c];
+            }
+        }
+        long mesures = 0;
+        for (long n : histogramme) {
+            mesures += n;
+        }
+        System.out.printf("%-9s %,10.0f enregistrements/s, écriture durable p50 %s, p99 %s, p99,9 %s ; %s%n",
+            synchronisation, total / secondes, centile(histogramme, mesures, 0.5),
+            centile(histogramme, mesures, 0.99), centile(histogramme, mesures, 0.999), resume);
+    }
+
+    private static String centile(long[] histogramme, long total, double part) {
+        long rang = (long) Math.ceil(total * part);
+        long cumul = 0;
+        for (int us = 0; us < histogramme.length; us++) {
+            cumul += histogramme[us];
+            if (cumul >= rang && cumul > 0) {
+                return us == CASES ? ">" + CASES + " µs" : us + " µs";
+            }
+        }
+        return "-";
+    }
+
+    private static void supprimer(File repertoire) throws IOException {
+        File[] fichiers = repertoire.listFiles();
+        if (fichiers != null) {
+            for (File fichier : fichiers) {
+                Files.deleteIfExists(fichier.toPath());
+            }
+        }
+        Files.deleteIfExists(repertoire.toPath());
+    }
+}
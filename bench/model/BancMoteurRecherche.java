@@ -0,0 +1,90 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Temps de réponse du moteur de recherche approchée sur un grand catalogue synthétique.
+ *
+ * Les titres et auteurs sont tirés d'un vocabulaire de 20000 mots fictifs, auxquels s'ajoutent
+ * quelques œuvres réelles que les requêtes doivent retrouver. Chaque requête est répétée après un
+ * échauffement ; le banc relève la médiane et le 99e centile du temps d'une recherche, et le
+ * premier résultat rendu.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancMoteurRecherche.java
+ * java -Xmx1500m -cp out model.BancMoteurRecherche [livres] [répétitions]
+ * </pre>
+ * Par défaut : 1000000 livres, 5000 répétitions par requête, 10 résultats.
+ */
+public class BancMoteurRecherche {
+    private static final String[] REQUETES = {"le petit prince", "Petit Prince", "etranger camus", "Dostoïevski"};
+    private static final String[][] OEUVRES = {
+        {"Le Petit Prince", "Antoine de Saint-Exupéry"},
+        {"L'Étranger", "Albert Camus"},
+        {"La Peste", "Albert Camus"},
+        {"Crime et Châtiment", "Fiodor Dostoïevski"},
+        {"Les Frères Karamazov", "Fiodor Dostoïevski"},
+        {"L'Idiot", "Fiodor Dostoïevski"},
+        {"Les Démons", "Fiodor Dostoïevski"},
+    };
+
+    public static void main(String[] args) {
+        int nombreLivres = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+        Random hasard = new Random(6);
+        String[] vocabulaire = new String[20_000];
+        for (int i = 0; i < vocabulaire.length; i++) {
+            vocabulaire[i] = mot(hasard);
+        }
+        MoteurRecherche moteur = new MoteurRecherche();
+        long debut = System.nanoTime();
+        for (String[] oeuvre : OEUVRES) {
+            moteur.ajouter(new Livre(oeuvre[0], oeuvre[1], 1, 21));
+        }
+        for (int i = OEUVRES.length; i < nombreLivres; i++) {
+            StringBuilder titre = new StringBuilder();
+            for (int m = 1 + hasard.nextInt(4); m > 0; m--) {
+                titre.append(vocabulaire[hasard.nextInt(vocabulaire.length)]).append(' ');
+            }
+            String auteur = vocabulaire[hasard.nextInt(vocabulaire.length)] + " " +
+                vocabulaire[hasard.nextInt(vocabulaire.length)];
+            moteur.ajouter(new Livre(titre.toString().trim() + " " + i, auteur, 1, 21));
+        }
+        System.out.printf("processeurs: %d, livres: %,d, indexation %.1f s%n", Runtime.getRuntime().availableProcessors(),
+            moteur.taille(), (System.nanoTime() - debut) / 1e9);
+
+        for (String requete : REQUETES) {
+            for (int i = 0; i < repetitions; i++) {
+                moteur.rechercher(requete, 10);
+            }
+            long[] durees = new long[repetitions];
+            List<MoteurRecherche.Resultat> resultats = null;
+            for (int i = 0; i < repetitions; i++) {
+                long t0 = System.nanoTime();
+                resultats = moteur.rechercher(requete, 10);
+                durees[i] = System.nanoTime() - t0;
+            }
+            Arrays.sort(durees);
+            String premier = resultats.isEmpty() ? "-" : resultats.get(0).getLivre().getTitre() + " / " +
+                resultats.get(0).getLivre().getAuteur();
+            System.out.printf("%-18s p50 %7.1f µs, p99 %7.1f µs, %d résultat(s), premier : %s%n", "\"" + requete + "\"",
+                durees[repetitions / 2] / 1e3, durees[(int) (repetitions * 0.99)] / 1e3, resultats.size(), premier);
+        }
+    }
+
+    // Mot fictif de 4 à 9 lettres, alternant consonnes et voyelles pour rester prononçable
+    private static String mot(Random hasard) {
+        String consonnes = "bcdfghjklmnprstvz";
+        String voyelles = "aeiouy";
+        StringBuilder mot = new StringBuilder();
+        for (int l = 4 + hasard.nextInt(6); l > 0; l--) {
+            String source = l % 2 == 0 ? consonnes : voyelles;
+            mot.append(source.charAt(hasard.nextInt(source.length())));
+        }
+        return mot.toString();
+    }
+}
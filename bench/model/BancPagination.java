@@ -0,0 +1,144 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Temps de décision d'une recherche de liste envoyée par pages, comparé à la réponse en une fois.
+ *
+ * Reprend le protocole de UserListe et de la bibliothécaire, sans messagerie : la liste est
+ * répartie entre des bibliothécaires, chacune renvoie sa partie en 4 pages avec le délai simulé de
+ * la bibliothécaire (1 s d'accusé, puis 500 ms par titre plafonnés à 20 titres, répartis entre les
+ * pages au prorata de leur taille). Chaque page est réellement recherchée dans un
+ * CataloguePartitionne qui ne contient qu'une part des titres demandés. Les pages de toutes les
+ * bibliothécaires sont reçues dans l'ordre de leur instant d'arrivée ; après chacune, l'utilisateur
+ * décide dès que l'issue est certaine (seuil d'utilité atteint, ou devenu inaccessible).
+ *
+ * Le banc relève, sur des listes tirées au hasard, le temps simulé jusqu'à la décision rapporté
+ * au temps de la réponse complète, et la part des listes décidées avant la dernière page.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancPagination.java
+ * java -cp out model.BancPagination [listes] [bibliothécaires] [seuil]
+ * </pre>
+ * Par défaut : 2000 listes par cas, 2 bibliothécaires, seuil d'utilité 0,6 ; listes de 8, 40 et
+ * 1000 titres, avec 20 %, 50 %, 60 %, 80 % et 100 % des titres présents au catalogue.
+ */
+public class BancPagination {
+    private static final int PAGES_PAR_RECHERCHE = 4;
+    private static final long DELAI_ACCUSE = 1000;
+    private static final long DELAI_PAR_TITRE = 500;
+    private static final int DELAI_RECHERCHE_TITRES_MAX = 20;
+    private static final int[] TAILLES = {8, 40, 1000};
+    private static final double[] PRESENCES = {0.2, 0.5, 0.6, 0.8, 1.0};
+
+    // Page reçue par l'utilisateur : instant d'arrivée simulé et titres couverts
+    private static final class Page {
+        final long arrivee;
+        final List<String> titres;
+
+        Page(long arrivee, List<String> titres) {
+            this.arrivee = arrivee;
+            this.titres = titres;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int listes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int bibliothecaires = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        float seuil = args.length > 2 ? Float.parseFloat(args[2]) : 0.6f;
+
+        // Le catalogue contient les titres pairs ; une liste mêle titres pairs et impairs
+        int fonds = 200_000;
+        CataloguePartitionne catalogue = new CataloguePartitionne("banc", 4, 1);
+        List<Livre> livres = new ArrayList<>(fonds / 2);
+        for (int i = 0; i < fonds; i += 2) {
+            livres.add(new Livre("Titre " + i, "Auteur " + i % 5000, 3, 21));
+        }
+        catalogue.charger(livres).join();
+
+        System.out.println("bibliothécaires: " + bibliothecaires + ", pages par bibliothécaire: " +
+            PAGES_PAR_RECHERCHE + ", seuil d'utilité: " + seuil + ", listes par cas: " + listes);
+        System.out.println("titres  présents  décision/réponse complète (moyenne, p50, p90)  décidées avant la fin");
+        Random hasard = new Random(42);
+        for (int taille : TAILLES) {
+            for (double presence : PRESENCES) {
+                double[] rapports = new double[listes];
+                int anticipees = 0;
+                for (int l = 0; l < listes; l++) {
+                    List<String> liste = new ArrayList<>(taille);
+                    for (int i = 0; i < taille; i++) {
+                        int n = 2 * hasard.nextInt(fonds / 2);
+                        liste.add("Titre " + (hasard.nextDouble() < presence ? n : n + 1));
+                    }
+                    long[] decision = decider(catalogue, liste, bibliothecaires, seuil);
+                    rapports[l] = (double) decision[0] / decision[1];
+                    if (decision[0] < decision[1]) {
+                        anticipees++;
+                    }
+                }
+                Arrays.sort(rapports);
+                double moyenne = 0;
+                for (double rapport : rapports) {
+                    moyenne += rapport / listes;
+                }
+                System.out.printf("%6d  %7.0f %%  %20.2f %6.2f %6.2f  %16.1f %%%n", taille, presence * 100, moyenne,
+                    rapports[listes / 2], rapports[(int) (listes * 0.9)], 100.0 * anticipees / listes);
+            }
+        }
+        catalogue.arreter();
+    }
+
+    /**
+     * @return l'instant simulé de la décision et celui de la dernière page
+     */
+    private static long[] decider(CataloguePartitionne catalogue, List<String> liste, int bibliothecaires,
+                                  float seuil) {
+        // Répartition des titres entre les bibliothécaires, puis pages de chacune avec leur délai
+        List<List<String>> parties = new ArrayList<>();
+        for (int b = 0; b < bibliothecaires; b++) {
+            parties.add(new ArrayList<>());
+        }
+        for (int i = 0; i < liste.size(); i++) {
+            parties.get(i % bibliothecaires).add(liste.get(i));
+        }
+        List<Page> pages = new ArrayList<>();
+        for (List<String> partie : parties) {
+            if (partie.isEmpty()) {
+                continue;
+            }
+            int taillePage = Math.max(1, (partie.size() + PAGES_PAR_RECHERCHE - 1) / PAGES_PAR_RECHERCHE);
+            long instant = DELAI_ACCUSE;
+            for (int debut = 0; debut < partie.size(); debut += taillePage) {
+                int fin = Math.min(partie.size(), debut + taillePage);
+                instant += Math.min(partie.size(), DELAI_RECHERCHE_TITRES_MAX) * DELAI_PAR_TITRE * (fin - debut)
+                    / partie.size();
+                pages.add(new Page(instant, partie.subList(debut, fin)));
+            }
+        }
+        Collections.sort(pages, (a, b) -> Long.compare(a.arrivee, b.arrivee));
+        long derniere = pages.get(pages.size() - 1).arrivee;
+
+        ResultatRecherche resultat = new ResultatRecherche(liste.size());
+        for (Page page : pages) {
+            resultat.fusionner(catalogue.rechercherTous(page.titres).join());
+            if (issueCertaine(resultat, liste.size(), seuil)) {
+                return new long[] {page.arrivee, derniere};
+            }
+        }
+        return new long[] {derniere, derniere};
+    }
+
+    // Même règle que UserListe
+    private static boolean issueCertaine(ResultatRecherche resultat, int souhaites, float seuil) {
+        int trouves = resultat.getNombreLivresTrouves();
+        int inconnus = souhaites - trouves - resultat.getNombreLivresNonTrouves();
+        return (trouves > 0 && (float) trouves / souhaites >= seuil)
+            || trouves + inconnus == 0
+            || (float) (trouves + inconnus) / souhaites < seuil;
+    }
+}
@@ -0,0 +1,119 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Débit du catalogue partitionné selon le nombre de partitions.
+ *
+ * Des threads clients soumettent des opérations de prêt (réservation puis libération d'un
+ * exemplaire) sur des titres tirés au hasard, chacune exécutée par {@link CataloguePartitionne#executer}
+ * sur le thread de la partition du titre, avec un nombre borné d'opérations en vol par client.
+ * Chaque opération simule en plus un travail de traitement de quelques microsecondes, le coût
+ * d'un tour de protocole de la bibliothécaire.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancPartitions.java
+ * java -cp out model.BancPartitions [titres] [clients] [travail-µs] [secondes] [partitions...]
+ * </pre>
+ * Par défaut : 100000 titres, 4 clients, 20 µs de travail, 3 s par mesure, partitions 1 2 4 8.
+ * Le gain attendu est borné par le nombre de processeurs disponibles.
+ */
+public class BancPartitions {
+    private static final int EN_VOL_PAR_CLIENT = 64;
+
+    private static volatile long puits;
+
+    public static void main(String[] args) throws Exception {
+        int titres = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long travailNs = (args.length > 2 ? Long.parseLong(args[2]) : 20) * 1000;
+        long dureeMs = (args.length > 3 ? Long.parseLong(args[3]) : 3) * 1000;
+        int[] partitions = {1, 2, 4, 8};
+        if (args.length > 4) {
+            partitions = new int[args.length - 4];
+            for (int i = 4; i < args.length; i++) {
+                partitions[i - 4] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println("processeurs: " + Runtime.getRuntime().availableProcessors() + ", titres: " + titres +
+            ", clients: " + clients + ", travail: " + travailNs / 1000 + " µs");
+        double reference = 0;
+        for (int n : partitions) {
+            // Première mesure jetée : compilation et remplissage des caches
+            mesurer(n, titres, clients, travailNs, dureeMs / 2);
+            double debit = mesurer(n, titres, clients, travailNs, dureeMs);
+            if (reference == 0) {
+                reference = debit;
+            }
+            System.out.printf("partitions %2d : %,10.0f op/s (x%.2f)%n", n, debit, debit / reference);
+        }
+    }
+
+    private static double mesurer(int partitions, int titres, int clients, long travailNs, long dureeMs) throws Exception {
+        CataloguePartitionne catalogue = new CataloguePartitionne("banc", partitions, 1);
+        List<Livre> livres = new ArrayList<>(titres);
+        for (int i = 0; i < titres; i++) {
+            livres.add(new Livre(titre(i), "Auteur " + i % 1000, 5, 21));
+        }
+        catalogue.charger(livres).join();
+
+        long fin = System.nanoTime() + dureeMs * 1_000_000;
+        long[] operations = new long[clients];
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            int numero = c;
+            threads[c] = new Thread(() -> {
+                Semaphore enVol = new Semaphore(EN_VOL_PAR_CLIENT);
+                ThreadLocalRandom hasard = ThreadLocalRandom.current();
+                long faites = 0;
+                while (System.nanoTime() < fin) {
+                    enVol.acquireUninterruptibly();
+                    CompletableFuture<Boolean> operation = catalogue.executer(titre(hasard.nextInt(titres)), livre -> {
+                        travailler(travailNs);
+                        if (livre != null && livre.reserver(1)) {
+                            livre.liberer(1);
+                            return true;
+                        }
+                        return false;
+                    });
+                    operation.whenComplete((r, e) -> enVol.release());
+                    faites++;
+                }
+                enVol.acquireUninterruptibly(EN_VOL_PAR_CLIENT);
+                operations[numero] = faites;
+            });
+        }
+        long debut = System.nanoTime();
+        for (Thread t : threads) {
+            t.start();
+        }
+        long total = 0;
+        for (int c = 0; c < clients; c++) {
+            threads[c].join();
+            total += operations[c];
+        }
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        catalogue.arreter();
+        return total / secondes;
+    }
+
+    private static String titre(int i) {
+        return "Titre " + i;
+    }
+
+    // Attente active : simule un traitement sans céder le processeur
+    private static void travailler(long ns) {
+        long fin = System.nanoTime() + ns;
+        long x = 0;
+        while (System.nanoTime() < fin) {
+            x++;
+        }
+        puits = x;
+    }
+}
@@ -0,0 +1,161 @@
+package model;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Catalogue en mémoire contre catalogue projeté hors du tas ({@link StockageProjete}) : tas
+ * occupé, délai avant de pouvoir servir, et latence des demandes sous charge avec les pauses GC.
+ *
+ * Le banc prépare un stockage d'une seule partition : la table est remplie à chaque lancement ;
+ * les fichiers projetés sont créés et remplis au premier lancement sur un répertoire, simplement
+ * rouverts aux suivants. Le délai « prêt » couvre la construction du stockage jusqu'au dernier
+ * titre disponible ; à la réouverture, il compte la remise en rayon des exemplaires restés réservés.
+ * Le tas occupé est relevé après collecte.
+ *
+ * Un thread enchaîne ensuite des demandes pendant la durée donnée : recherche d'un titre tiré au
+ * hasard, réservation puis libération d'un exemplaire, et 2 Kio de déchets alloués par demande,
+ * comme la construction et l'analyse des messages. La latence de chaque demande est relevée par
+ * tranche de 10 ns, les pauses GC par les notifications de la JVM. Avant de fermer, le banc laisse
+ * 1000 exemplaires réservés, que la réouverture suivante doit remettre en rayon.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancProjete.java
+ * java -Xmx3g -XX:+UseSerialGC -cp out model.BancProjete table [titres] [secondes]
+ * java -Xmx512m -XX:+UseSerialGC -cp out model.BancProjete projete [titres] [secondes] [répertoire]
+ * </pre>
+ * Par défaut : 8000000 titres, 20 s de demandes, fichiers dans banc-projete sous le répertoire
+ * temporaire. Lancer deux fois en mode projete pour mesurer la réouverture.
+ */
+public class BancProjete {
+    private static final int DECHETS = 2048;
+    private static final int RESERVES_A_LA_FERMETURE = 1000;
+    // Histogramme par tranche de 10 ns, la dernière case comptant les demandes plus longues
+    private static final int CASES = 1_000_000;
+
+    private static volatile long pauseMax;
+    private static volatile byte[] puits;
+
+    public static void main(String[] args) throws Exception {
+        boolean projete = args.length > 0 && args[0].equals("projete");
+        int titres = args.length > 1 ? Integer.parseInt(args[1]) : 8_000_000;
+        long dureeNs = (args.length > 2 ? Long.parseLong(args[2]) : 20) * 1_000_000_000L;
+        File repertoire = new File(args.length > 3 ? args[3] : System.getProperty("java.io.tmpdir") + "/banc-projete");
+        ecouterPauses();
+
+        long debut = System.nanoTime();
+        StockageCatalogue stockage = projete ? StockageCatalogue.projete(repertoire, 0, 1) : new StockageTable();
+        boolean rouvert = stockage.taille() > 0;
+        for (int i = stockage.taille(); i < titres; i++) {
+            stockage.ajouter(new Livre(titre(i), "Auteur " + i % 500_000, 5, 21));
+        }
+        stockage.synchroniser();
+        double pret = (System.nanoTime() - debut) / 1e6;
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.gc();
+        System.out.printf("%s : %,d titres, %s en %,.0f ms, tas après collecte %,.0f Mo (max %,.0f Mo)%n",
+            projete ? "projeté" : "table", stockage.taille(), rouvert ? "rouvert" : "rempli", pret,
+            (runtime.totalMemory() - runtime.freeMemory()) / 1e6, runtime.maxMemory() / 1e6);
+
+        String[] cles = new String[1 << 20];
+        Random hasard = new Random(24);
+        for (int i = 0; i < cles.length; i++) {
+            cles[i] = titre(hasard.nextInt(titres));
+        }
+        long[] latences = new long[CASES + 1];
+        long max = 0;
+        long demandes = 0;
+        long collectes = nombreCollectes();
+        long tempsGc = tempsCollectes();
+        pauseMax = 0;
+        debut = System.nanoTime();
+        long maintenant = debut;
+        while (maintenant - debut < dureeNs) {
+            long t0 = maintenant;
+            Livre livre = stockage.obtenir(cles[(int) demandes & (cles.length - 1)]);
+            if (livre.reserver(1)) {
+                livre.liberer(1);
+            }
+            byte[] dechets = new byte[DECHETS];
+            dechets[(int) demandes & (DECHETS - 1)] = 1;
+            puits = dechets;
+            maintenant = System.nanoTime();
+            long duree = maintenant - t0;
+            latences[(int) Math.min(CASES, duree / 10)]++;
+            max = Math.max(max, duree);
+            demandes++;
+        }
+        double secondes = (maintenant - debut) / 1e9;
+        System.out.printf("%,d demandes en %.0f s (%,.0f/s) ; latence p50 %s, p99 %s, p99.99 %s, max %s%n", demandes,
+            secondes, demandes / secondes, centile(latences, demandes, 0.5), centile(latences, demandes, 0.99),
+            centile(latences, demandes, 0.9999), lisible(max));
+        System.out.printf("collectes : %,d, %,d ms au total, pause max %s%n", nombreCollectes() - collectes,
+            tempsCollectes() - tempsGc, lisible(pauseMax * 1_000_000));
+
+        for (int i = 0; i < RESERVES_A_LA_FERMETURE; i++) {
+            stockage.obtenir(titre(i)).reserver(1);
+        }
+        stockage.fermer();
+    }
+
+    private static String titre(int i) {
+        return "Titre " + i;
+    }
+
+    private static String centile(long[] latences, long total, double fraction) {
+        long rang = (long) Math.ceil(total * fraction);
+        long cumul = 0;
+        for (int i = 0; i < latences.length; i++) {
+            cumul += latences[i];
+            if (cumul >= rang) {
+                return i == CASES ? "> " + lisible(CASES * 10L) : lisible(i * 10L + 10);
+            }
+        }
+        return "?";
+    }
+
+    private static String lisible(long ns) {
+        return ns < 10_000 ? String.format("%.2f µs", ns / 1e3)
+            : ns < 10_000_000 ? String.format("%.0f µs", ns / 1e3) : String.format("%.0f ms", ns / 1e6);
+    }
+
+    // Plus longue pause signalée par les notifications de fin de collecte, en ms
+    private static void ecouterPauses() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener((notification, contexte) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    // Les cycles concurrents de G1 ne suspendent pas l'application
+                    if (!info.getGcAction().contains("concurrent") && info.getGcInfo().getDuration() > pauseMax) {
+                        pauseMax = info.getGcInfo().getDuration();
+                    }
+                }
+            }, null, null);
+        }
+    }
+
+    private static long nombreCollectes() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long tempsCollectes() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,132 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Attente des lecteurs pendant un rechargement du catalogue.
+ *
+ * Un thread lecteur enchaîne des opérations de prêt (réservation puis libération d'un exemplaire,
+ * exécutées sur le thread de la partition du titre) sur des titres tirés au hasard, avant, pendant
+ * et après un rechargement qui garde la moitié des titres, en change la fiche et le stock, et en
+ * ajoute autant de nouveaux. La latence de chaque opération est relevée par phase ; elle compte
+ * tout ce qu'un lecteur attend, partage du processeur avec la préparation et pauses GC compris.
+ *
+ * Le lecteur vérifie aussi sur un instantané que la version publiée ne montre jamais un titre
+ * conservé avec son ancienne fiche.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancRechargement.java
+ * java -cp out model.BancRechargement [titres] [partitions] [secondes]
+ * </pre>
+ * Par défaut : 1000000 titres, 4 partitions, 3 s de mesure avant et après le rechargement.
+ */
+public class BancRechargement {
+    private static final int DUREE_AVANT = 21;
+    private static final int DUREE_APRES = 28;
+    // Histogramme par microseconde, la dernière case comptant les attentes plus longues
+    private static final int CASES = 100_000;
+    private static final String[] PHASES = {"avant", "pendant", "après"};
+
+    private static volatile int phase = 0;
+    private static volatile boolean fin = false;
+
+    public static void main(String[] args) throws Exception {
+        int titres = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int partitions = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long dureeMs = (args.length > 2 ? Long.parseLong(args[2]) : 3) * 1000;
+
+        CataloguePartitionne catalogue = new CataloguePartitionne("banc", partitions, 1);
+        List<Livre> livres = new ArrayList<>(titres);
+        for (int i = 0; i < titres; i++) {
+            livres.add(new Livre(titre(i), "Auteur " + i % 5000, 5, DUREE_AVANT));
+        }
+        catalogue.charger(livres).join();
+        livres = null;
+        System.gc();
+
+        // Nouveau catalogue : la seconde moitié est conservée, avec une autre fiche et un autre stock
+        List<Livre> nouveau = new ArrayList<>(titres);
+        for (int i = titres / 2; i < titres + titres / 2; i++) {
+            nouveau.add(new Livre(titre(i), "Auteur " + i % 5000, 7, DUREE_APRES));
+        }
+        long versionRechargee = catalogue.getVersion() + 1;
+
+        long[][] latences = new long[PHASES.length][CASES + 1];
+        long[] maximums = new long[PHASES.length];
+        long[] incoherences = new long[1];
+        Thread lecteur = new Thread(() -> {
+            ThreadLocalRandom hasard = ThreadLocalRandom.current();
+            while (!fin) {
+                int i = hasard.nextInt(titres + titres / 2);
+                int p = phase;
+                long debut = System.nanoTime();
+                catalogue.executer(titre(i), livre -> {
+                    if (livre != null && livre.reserver(1)) {
+                        livre.liberer(1);
+                    }
+                    return null;
+                }).join();
+                long attente = System.nanoTime() - debut;
+                latences[p][(int) Math.min(CASES, attente / 1000)]++;
+                maximums[p] = Math.max(maximums[p], attente);
+
+                // Un titre conservé, lu dans la version rechargée, porte sa nouvelle fiche
+                CataloguePartitionne.Instantane instantane = catalogue.instantane();
+                Livre livre = instantane.obtenir(titre(i));
+                if (instantane.getVersion() >= versionRechargee && livre != null && i < titres &&
+                    livre.getDureeEmpruntMax() != DUREE_APRES) {
+                    incoherences[0]++;
+                }
+            }
+        });
+        lecteur.start();
+        Thread.sleep(dureeMs);
+
+        phase = 1;
+        long debut = System.nanoTime();
+        CataloguePartitionne.Modification bilan = catalogue.recharger(nouveau).join();
+        long duree = System.nanoTime() - debut;
+        phase = 2;
+        Thread.sleep(dureeMs);
+        fin = true;
+        lecteur.join();
+        catalogue.arreter();
+
+        System.out.println("processeurs: " + Runtime.getRuntime().availableProcessors() + ", titres: " + titres +
+            ", partitions: " + partitions);
+        System.out.printf("rechargement : %s, %.0f ms en tout%n", bilan, duree / 1e6);
+        for (int p = 0; p < PHASES.length; p++) {
+            afficher(PHASES[p], latences[p], maximums[p]);
+        }
+        System.out.println("fiches anciennes lues dans la version rechargée : " + incoherences[0]);
+    }
+
+    private static void afficher(String nom, long[] histogramme, long maximumNs) {
+        long total = 0;
+        for (long n : histogramme) {
+            total += n;
+        }
+        System.out.printf("%-8s %,10d opérations, attente p50 %s, p99 %s, p99,9 %s, p99,99 %s, max %.0f µs%n", nom, total,
+            centile(histogramme, total, 0.5), centile(histogramme, total, 0.99), centile(histogramme, total, 0.999),
+            centile(histogramme, total, 0.9999), maximumNs / 1e3);
+    }
+
+    private static String centile(long[] histogramme, long total, double part) {
+        long rang = (long) Math.ceil(total * part);
+        long cumul = 0;
+        for (int us = 0; us < histogramme.length; us++) {
+            cumul += histogramme[us];
+            if (cumul >= rang && cumul > 0) {
+                return us == CASES ? ">" + CASES + " µs" : us + " µs";
+            }
+        }
+        return "-";
+    }
+
+    private static String titre(int i) {
+        return "Titre " + i;
+    }
+}
@@ -0,0 +1,92 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Latence de la recherche d'une liste de titres : {@link CataloguePartitionne#rechercherTous} sur
+ * le ForkJoinPool, contre l'ancien chemin (copie de chaque livre sur le thread de sa partition par
+ * executerTous, puis construction séquentielle du résultat).
+ *
+ * Le catalogue de 200000 titres est réparti sur 4 partitions ; les listes mêlent titres présents et
+ * absents (un sur quatre). Pour chaque parallélisme du pool et chaque taille de liste, les deux
+ * chemins sont mesurés en alternance après échauffement ; le banc relève la médiane.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancRechercheListe.java
+ * java -cp out model.BancRechercheListe [titres au catalogue]
+ * </pre>
+ * Par défaut : 200000 titres, listes de 100, 10000, 100000 et 1000000 titres, parallélisme 1, 2 et 4.
+ */
+public class BancRechercheListe {
+    private static final int[] TAILLES = {100, 10_000, 100_000, 1_000_000};
+    private static final int[] PARALLELISMES = {1, 2, 4};
+
+    public static void main(String[] args) throws Exception {
+        int titres = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        List<Livre> livres = new ArrayList<>(titres);
+        for (int i = 0; i < titres; i++) {
+            livres.add(new Livre("Titre " + i, "Auteur " + i % 5000, i % 4, 21));
+        }
+        Random hasard = new Random(18);
+
+        System.out.println("processeurs: " + Runtime.getRuntime().availableProcessors() + ", catalogue: " + titres +
+            " titres, médiane en ms (fork-join / ancien chemin)");
+        for (int p : PARALLELISMES) {
+            CataloguePartitionne catalogue = new CataloguePartitionne("banc", 4, p);
+            catalogue.charger(livres).join();
+            StringBuilder ligne = new StringBuilder("p=" + p);
+            for (int n : TAILLES) {
+                List<String> liste = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    int numero = hasard.nextInt(titres);
+                    liste.add("Titre " + (i % 4 == 3 ? titres + numero : numero));
+                }
+                int tours = Math.max(5, 2_000_000 / n);
+                long[] parallele = new long[tours];
+                long[] ancien = new long[tours];
+                for (int echauffement = 0; echauffement < 2; echauffement++) {
+                    for (int t = 0; t < tours; t++) {
+                        long debut = System.nanoTime();
+                        ResultatRecherche a = catalogue.rechercherTous(liste).join();
+                        parallele[t] = System.nanoTime() - debut;
+                        debut = System.nanoTime();
+                        ResultatRecherche b = ancienChemin(catalogue, liste);
+                        ancien[t] = System.nanoTime() - debut;
+                        if (a.getNombreLivresTrouves() != b.getNombreLivresTrouves()) {
+                            throw new AssertionError("résultats différents pour " + n + " titres");
+                        }
+                    }
+                }
+                ligne.append(String.format(" | n=%,d : %s / %s", n, mediane(parallele), mediane(ancien)));
+            }
+            System.out.println(ligne);
+            catalogue.arreter();
+        }
+    }
+
+    // Chemin d'avant rechercherTous : copies prises sur les threads des partitions, résultat construit à la suite
+    private static ResultatRecherche ancienChemin(CataloguePartitionne catalogue, List<String> liste) {
+        List<Livre> copies = catalogue.executerTous(liste, CataloguePartitionne::copier).join();
+        ResultatRecherche resultat = new ResultatRecherche(liste.size());
+        for (int i = 0; i < liste.size(); i++) {
+            Livre livre = copies.get(i);
+            if (livre != null && livre.estDisponible()) {
+                resultat.ajouterLivreTrouve(liste.get(i), livre);
+            } else {
+                resultat.ajouterLivreNonTrouve(liste.get(i));
+            }
+        }
+        return resultat;
+    }
+
+    private static String mediane(long[] durees) {
+        long[] triees = durees.clone();
+        Arrays.sort(triees);
+        double ms = triees[triees.length / 2] / 1e6;
+        return ms < 10 ? String.format("%.2f", ms) : String.format("%.0f", ms);
+    }
+}
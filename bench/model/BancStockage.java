@@ -0,0 +1,97 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Place occupée et coût des recherches des stockages d'une partition : table de hachage d'objets
+ * Livre ({@link StockageTable}) contre colonnes de types primitifs ({@link StockageColonnes}).
+ *
+ * Le banc remplit un seul stockage par JVM, pour que l'un ne gêne pas la mesure de l'autre, avec
+ * des titres de 27 caractères au plus et des auteurs tirés parmi 500000. Le tas occupé est relevé
+ * après collecte, avant et après le remplissage. Les recherches portent sur 1 million de titres
+ * tirés au hasard, présents ou absents, dans l'ordre du tirage ; chaque mesure est la médiane de
+ * cinq passes, rapportée à une recherche :
+ * <ul>
+ * <li>disponibilité : recherche du titre présent puis estDisponible, comme le fait la bibliothécaire ;</li>
+ * <li>décodage : recherche du titre présent, puis lecture du titre et de l'auteur ;</li>
+ * <li>absent : recherche d'un titre que le stockage ne contient pas.</li>
+ * </ul>
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java bench/model/BancStockage.java
+ * java -Xmx3g -cp out model.BancStockage table|colonnes [titres] [auteurs]
+ * </pre>
+ * Par défaut : 5000000 titres et 500000 auteurs.
+ */
+public class BancStockage {
+    private static final int RECHERCHES = 1_000_000;
+    private static final int PASSES = 5;
+
+    private interface Recherche {
+        long executer(StockageCatalogue stockage, String titre);
+    }
+
+    public static void main(String[] args) {
+        StockageCatalogue.Type type = StockageCatalogue.Type.valueOf(args.length > 0 ? args[0].toUpperCase() : "TABLE");
+        int titres = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        int auteurs = args.length > 2 ? Integer.parseInt(args[2]) : 500_000;
+
+        long avant = tasOccupe();
+        StockageCatalogue stockage = type.creer();
+        for (int i = 0; i < titres; i++) {
+            stockage.ajouter(new Livre(titre(i), "Auteur numéro " + i % auteurs, 1 + i % 5, 7 * (1 + i % 4)));
+        }
+        long apres = tasOccupe();
+        System.out.printf("%s : %,d titres, %,d auteurs, tas %,.0f Mo, %.0f octets par titre%n", type, titres, auteurs,
+            (apres - avant) / 1e6, (double) (apres - avant) / titres);
+
+        Random hasard = new Random(23);
+        String[] presents = new String[RECHERCHES];
+        String[] absents = new String[RECHERCHES];
+        for (int i = 0; i < RECHERCHES; i++) {
+            presents[i] = titre(hasard.nextInt(titres));
+            absents[i] = titre(titres + hasard.nextInt(titres));
+        }
+        System.out.printf("disponibilité %.2f µs, décodage %.2f µs, absent %.0f ns%n",
+            duree(stockage, presents, (s, t) -> s.obtenir(t).estDisponible() ? 1 : 0) / 1e3,
+            duree(stockage, presents, (s, t) -> {
+                Livre livre = s.obtenir(t);
+                return livre.getTitre().length() + livre.getAuteur().length();
+            }) / 1e3,
+            duree(stockage, absents, (s, t) -> s.obtenir(t) == null ? 1 : 0));
+    }
+
+    private static String titre(int i) {
+        return "Les aventures, tome " + i;
+    }
+
+    // Durée médiane d'une recherche, en ns, sur cinq passes après une passe d'échauffement
+    private static double duree(StockageCatalogue stockage, String[] titres, Recherche recherche) {
+        long[] durees = new long[PASSES];
+        long somme = 0;
+        for (int passe = -1; passe < PASSES; passe++) {
+            long debut = System.nanoTime();
+            for (String titre : titres) {
+                somme += recherche.executer(stockage, titre);
+            }
+            if (passe >= 0) {
+                durees[passe] = System.nanoTime() - debut;
+            }
+        }
+        if (somme == 42) {
+            System.out.println();
+        }
+        Arrays.sort(durees);
+        return (double) durees[PASSES / 2] / titres.length;
+    }
+
+    private static long tasOccupe() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,57 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Part des titres qui changent de fragment quand une bibliothécaire rejoint l'anneau, et
+ * répartition des titres entre les fragments.
+ *
+ * Les fragments portent les noms que leur donne BibliothequeContainer (bibliothecaire,
+ * bibliothecaire2, ...). Pour chaque nombre de fragments N, le banc compare le propriétaire de
+ * chaque titre sur l'anneau de N fragments et sur celui de N + 1 ; la part attendue est 1/(N + 1).
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/util/*.java bench/util/BancAnneau.java
+ * java -cp out util.BancAnneau [titres] [fragments max]
+ * </pre>
+ * Par défaut : 100000 titres, de 1 à 8 fragments.
+ */
+public class BancAnneau {
+
+    public static void main(String[] args) {
+        int titres = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int maximum = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        System.out.println("fragments | titres déplacés (attendu) | titres par fragment, min-max en % de la moyenne");
+        for (int n = 1; n < maximum; n++) {
+            AnneauCoherent<Integer> avant = anneau(n);
+            AnneauCoherent<Integer> apres = anneau(n + 1);
+            int deplaces = 0;
+            int[] parFragment = new int[n + 1];
+            for (int i = 0; i < titres; i++) {
+                String titre = "Titre " + i;
+                int proprietaire = apres.proprietaire(titre);
+                parFragment[proprietaire]++;
+                if (proprietaire != avant.proprietaire(titre)) {
+                    deplaces++;
+                }
+            }
+            Arrays.sort(parFragment);
+            double moyenne = (double) titres / (n + 1);
+            System.out.printf("%d -> %d    | %5.1f %% (%4.1f %%)          | %3.0f-%3.0f %%%n", n, n + 1,
+                100.0 * deplaces / titres, 100.0 / (n + 1), 100 * parFragment[0] / moyenne,
+                100 * parFragment[n] / moyenne);
+        }
+    }
+
+    private static AnneauCoherent<Integer> anneau(int fragments) {
+        List<String> noms = new ArrayList<>();
+        for (int i = 0; i < fragments; i++) {
+            noms.add(i == 0 ? "bibliothecaire" : "bibliothecaire" + (i + 1));
+        }
+        return new AnneauCoherent<>(noms, nom -> noms.indexOf(nom));
+    }
+}
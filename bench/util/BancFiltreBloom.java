@@ -0,0 +1,114 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Filtre de Bloom des partitions : taille, faux positifs et coût d'une recherche de titre absent,
+ * contre un échec de recherche dans la table des titres.
+ *
+ * Le banc construit un {@link FiltreBloom} à 1 % de faux positifs et une ConcurrentHashMap de N
+ * titres, puis tire 2 millions de titres présents et 2 millions de titres absents dans un ordre
+ * aléatoire. Une recherche filtrée consulte le filtre, puis la table si le filtre ne peut
+ * conclure ; une recherche directe consulte la table seule ; le filtre seul est aussi mesuré sur
+ * les titres présents. Chaque mesure est la médiane de cinq passes sur les 2 millions de titres,
+ * rapportée à une recherche.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/util/*.java bench/util/BancFiltreBloom.java
+ * java -Xmx3g -cp out util.BancFiltreBloom [titres...]
+ * </pre>
+ * Par défaut : 1000000 puis 10000000 titres.
+ */
+public class BancFiltreBloom {
+    private static final int RECHERCHES = 2_000_000;
+    private static final int PASSES = 5;
+
+    private interface Recherche {
+        boolean trouver(String titre);
+    }
+
+    // Empêche la JIT d'écarter les recherches dont le résultat ne sert pas
+    private static long puits;
+
+    public static void main(String[] args) {
+        int[] tailles = {1_000_000, 10_000_000};
+        if (args.length > 0) {
+            tailles = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                tailles[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int n : tailles) {
+            mesurer(n);
+        }
+        if (puits == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void mesurer(int n) {
+        ConcurrentHashMap<String, Integer> table = new ConcurrentHashMap<>(n * 2);
+        long debut = System.nanoTime();
+        FiltreBloom filtre = new FiltreBloom(n, 0.01);
+        for (int i = 0; i < n; i++) {
+            filtre.ajouter("Titre " + i);
+        }
+        double construction = (System.nanoTime() - debut) / 1e9;
+        for (int i = 0; i < n; i++) {
+            table.put("Titre " + i, i);
+        }
+
+        Random hasard = new Random(22);
+        String[] presents = new String[RECHERCHES];
+        String[] absents = new String[RECHERCHES];
+        for (int i = 0; i < RECHERCHES; i++) {
+            presents[i] = "Titre " + hasard.nextInt(n);
+            absents[i] = "Titre " + (n + hasard.nextInt(Integer.MAX_VALUE - n));
+        }
+        long fauxPositifs = 0;
+        for (String titre : absents) {
+            if (filtre.contientPeutEtre(titre)) {
+                fauxPositifs++;
+            }
+        }
+        for (String titre : presents) {
+            if (!filtre.contientPeutEtre(titre)) {
+                throw new AssertionError("faux négatif : " + titre);
+            }
+        }
+
+        Recherche filtree = titre -> filtre.contientPeutEtre(titre) && table.get(titre) != null;
+        Recherche directe = titre -> table.get(titre) != null;
+        System.out.printf("%,d titres : filtre de %.1f Mo (%.1f bits/titre) construit en %.1f s, faux positifs " +
+                "%.2f %% mesurés, %.2f %% estimés%n", n, filtre.tailleOctets() / 1e6, filtre.tailleOctets() * 8.0 / n,
+            construction, 100.0 * fauxPositifs / RECHERCHES, 100 * filtre.tauxFauxPositifsEstime());
+        Recherche filtreSeul = filtre::contientPeutEtre;
+        System.out.printf("  absent : %.0f ns filtré, %.0f ns direct ; présent : %.0f ns filtré, %.0f ns direct, " +
+                "%.0f ns filtre seul%n", duree(filtree, absents), duree(directe, absents), duree(filtree, presents),
+            duree(directe, presents), duree(filtreSeul, presents));
+    }
+
+    // Durée médiane d'une recherche, en ns, sur cinq passes après une passe d'échauffement
+    private static double duree(Recherche recherche, String[] titres) {
+        long[] durees = new long[PASSES];
+        for (int passe = -1; passe < PASSES; passe++) {
+            long trouves = 0;
+            long debut = System.nanoTime();
+            for (String titre : titres) {
+                if (recherche.trouver(titre)) {
+                    trouves++;
+                }
+            }
+            long duree = System.nanoTime() - debut;
+            puits += trouves;
+            if (passe >= 0) {
+                durees[passe] = duree;
+            }
+        }
+        Arrays.sort(durees);
+        return (double) durees[PASSES / 2] / titres.length;
+    }
+}
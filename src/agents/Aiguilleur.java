@@ -0,0 +1,110 @@
+package agents;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Table d'aiguillage des messages reçus : chaque protocole enregistre son traitement pour une
+ * performative, éventuellement restreinte à un identifiant de conversation. Le modèle de réception
+ * est construit une seule fois et consulte directement la table ; la réception puis l'aiguillage
+ * d'un message n'allouent aucun objet.
+ */
+class Aiguilleur {
+    // Les performatives FIPA sont numérotées de 0 à 21 dans JADE
+    private static final int NOMBRE_PERFORMATIVES = 32;
+
+    /**
+     * Traitement d'un message par un protocole.
+     */
+    interface Traitement {
+        void traiter(ACLMessage msg) throws Exception;
+    }
+
+    private final Traitement[] parPerformative = new Traitement[NOMBRE_PERFORMATIVES];
+    // Pas de création de tableau générique en Java : tableau joker, converti une fois ici
+    @SuppressWarnings("unchecked")
+    private final Map<String, Traitement>[] parConversation = (Map<String, Traitement>[]) new Map<?, ?>[NOMBRE_PERFORMATIVES];
+
+    // Modèle unique évalué par receive() sur chaque message en attente
+    private final MessageTemplate modele = new MessageTemplate(
+        (MessageTemplate.MatchExpression) msg -> traitementPour(msg) != null);
+
+    /**
+     * Enregistre le traitement par défaut d'une performative.
+     */
+    Aiguilleur enregistrer(int performative, Traitement traitement) {
+        parPerformative[performative] = traitement;
+        return this;
+    }
+
+    /**
+     * Enregistre le traitement d'une performative pour une conversation donnée ; il a priorité
+     * sur le traitement par défaut de la performative. Une conversation null désigne les messages
+     * sans identifiant de conversation.
+     */
+    Aiguilleur enregistrer(int performative, String conversationId, Traitement traitement) {
+        if (parConversation[performative] == null) {
+            parConversation[performative] = new HashMap<>();
+        }
+        parConversation[performative].put(conversationId, traitement);
+        return this;
+    }
+
+    private Traitement traitementPour(ACLMessage msg) {
+        int performative = msg.getPerformative();
+        if (performative < 0 || performative >= NOMBRE_PERFORMATIVES) {
+            return null;
+        }
+        Map<String, Traitement> conversations = parConversation[performative];
+        if (conversations != null) {
+            Traitement traitement = conversations.get(msg.getConversationId());
+            if (traitement != null) {
+                return traitement;
+            }
+        }
+        return parPerformative[performative];
+    }
+
+    MessageTemplate getModele() {
+        return modele;
+    }
+
+    /**
+     * Transmet le message au traitement enregistré.
+     * @return false si aucun traitement ne correspond
+     */
+    boolean aiguiller(ACLMessage msg) throws Exception {
+        Traitement traitement = traitementPour(msg);
+        if (traitement == null) {
+            return false;
+        }
+        traitement.traiter(msg);
+        return true;
+    }
+
+    /**
+     * Comportement cyclique qui reçoit les messages correspondant à la table et les aiguille.
+     */
+    CyclicBehaviour comportement(Agent agent) {
+        return new CyclicBehaviour(agent) {
+            @Override
+            public void action() {
+                ACLMessage msg = myAgent.receive(modele);
+                if (msg == null) {
+                    block();
+                    return;
+                }
+                try {
+                    aiguiller(msg);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,289 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.DFService;
+import jade.domain.FIPAException;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionInitiator;
+import jade.util.leap.Iterator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import util.AnneauCoherent;
+
+/**
+ * Annuaire côté utilisateur des bibliothécaires enregistrés au DF.
+ * Chaque bibliothécaire annonce le fragment ("shard") du catalogue qu'il détient ;
+ * les titres sont routés vers leur fragment par hachage cohérent.
+ *
+ * Un fragment peut être servi par plusieurs bibliothécaires (répliques), dont une seule, la
+ * primaire (propriété "role" de son service), tient le stock, les baux, les emprunts et les files
+ * d'attente : toute conversation qui les modifie lui est confiée ({@link #ecrivainPour}). Les
+ * répliques en lecture suivent son stock ({@link ReplicationStock}) et se partagent les lectures
+ * avec elle ({@link #lecteurPour}) : chacune publie sa charge dans les propriétés "file" (messages
+ * en attente) et "conversations" (conversations en cours) de son service ; l'annuaire suit ces
+ * valeurs par abonnement au DF et confie chaque lecture à la moins chargée de deux répliques tirées
+ * au hasard.
+ */
+class AnnuaireBibliotheque {
+    static final String SERVICE = "service-bibliotheque";
+    static final String PROPRIETE_FRAGMENT = "fragment";
+    static final String PROPRIETE_ROLE = "role";
+    static final String PROPRIETE_FILE = "file";
+    static final String PROPRIETE_CONVERSATIONS = "conversations";
+    static final String ROLE_PRIMAIRE = "primaire";
+    static final String ROLE_LECTURE = "lecture";
+
+    // Bibliothécaire, son rôle et sa dernière charge connue
+    private static final class Candidat {
+        final AID aid;
+        final boolean lecture;
+        int charge;
+
+        Candidat(AID aid, boolean lecture, int charge) {
+            this.aid = aid;
+            this.lecture = lecture;
+            this.charge = charge;
+        }
+    }
+
+    private final Agent agent;
+    // Répliques de chaque fragment, dans l'ordre d'enregistrement
+    private final Map<String, List<Candidat>> parFragment = new LinkedHashMap<>();
+    private final Map<AID, String> fragmentDe = new HashMap<>();
+    private AnneauCoherent<String> anneau = new AnneauCoherent<>();
+    private SubscriptionInitiator abonnement;
+
+    AnnuaireBibliotheque(Agent agent) {
+        this.agent = agent;
+    }
+
+    private static DFAgentDescription modele() {
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(SERVICE);
+        template.addServices(sd);
+        return template;
+    }
+
+    /**
+     * Charge les bibliothécaires déjà enregistrés puis s'abonne aux changements du DF,
+     * y compris les mises à jour de charge.
+     */
+    void demarrer() {
+        try {
+            rechercher();
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+
+        abonnement = new SubscriptionInitiator(agent,
+            DFService.createSubscriptionMessage(agent, agent.getDefaultDF(), modele(), null)) {
+            @Override
+            protected void handleInform(ACLMessage inform) {
+                try {
+                    mettreAJour(DFService.decodeNotification(inform.getContent()));
+                } catch (FIPAException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        agent.addBehaviour(abonnement);
+    }
+
+    /**
+     * Résilie l'abonnement au DF.
+     */
+    void arreter() {
+        if (abonnement != null) {
+            abonnement.cancel(agent.getDefaultDF(), true);
+        }
+    }
+
+    /**
+     * Interroge le DF et remplace les bibliothécaires connus.
+     * @return true si au moins un bibliothécaire a été trouvé
+     */
+    boolean rechercher() throws FIPAException {
+        DFAgentDescription[] result = DFService.search(agent, modele());
+        parFragment.clear();
+        fragmentDe.clear();
+        anneau = new AnneauCoherent<>();
+        mettreAJour(result);
+        return !anneau.estVide();
+    }
+
+    /**
+     * Indique si un bibliothécaire est connu, en interrogeant le DF si l'abonnement
+     * n'en a encore signalé aucun.
+     */
+    boolean disponible() throws FIPAException {
+        return !anneau.estVide() || rechercher();
+    }
+
+    // Une description sans service correspond à un bibliothécaire désenregistré
+    void mettreAJour(DFAgentDescription[] descriptions) {
+        for (DFAgentDescription description : descriptions) {
+            AID aid = description.getName();
+            if (!description.getAllServices().hasNext()) {
+                retirer(aid);
+                continue;
+            }
+            String fragment = fragment(description);
+            int charge = charge(description);
+            if (!fragment.equals(fragmentDe.get(aid))) {
+                retirer(aid);
+                fragmentDe.put(aid, fragment);
+                List<Candidat> repliques = parFragment.get(fragment);
+                if (repliques == null) {
+                    repliques = new ArrayList<>();
+                    parFragment.put(fragment, repliques);
+                    anneau.ajouter(fragment, fragment);
+                }
+                repliques.add(new Candidat(aid, ROLE_LECTURE.equals(propriete(description, PROPRIETE_ROLE)), charge));
+                continue;
+            }
+            for (Candidat candidat : parFragment.get(fragment)) {
+                if (candidat.aid.equals(aid)) {
+                    candidat.charge = charge;
+                }
+            }
+        }
+    }
+
+    private void retirer(AID aid) {
+        String fragment = fragmentDe.remove(aid);
+        if (fragment == null) {
+            return;
+        }
+        List<Candidat> repliques = parFragment.get(fragment);
+        repliques.removeIf(candidat -> candidat.aid.equals(aid));
+        if (repliques.isEmpty()) {
+            parFragment.remove(fragment);
+            anneau.retirer(fragment);
+        }
+    }
+
+    // Fragment annoncé par le bibliothécaire, ou son nom s'il n'en annonce pas
+    static String fragment(DFAgentDescription description) {
+        String fragment = propriete(description, PROPRIETE_FRAGMENT);
+        return fragment != null ? fragment : description.getName().getLocalName();
+    }
+
+    // Charge annoncée par le bibliothécaire, nulle s'il n'en annonce pas
+    static int charge(DFAgentDescription description) {
+        int charge = 0;
+        for (String nom : new String[]{PROPRIETE_FILE, PROPRIETE_CONVERSATIONS}) {
+            String valeur = propriete(description, nom);
+            if (valeur != null) {
+                try {
+                    charge += Integer.parseInt(valeur);
+                } catch (NumberFormatException e) {
+                    System.out.println("Charge invalide pour " + description.getName().getLocalName() + ": " + valeur);
+                }
+            }
+        }
+        return charge;
+    }
+
+    private static String propriete(DFAgentDescription description, String nom) {
+        Iterator services = description.getAllServices();
+        while (services.hasNext()) {
+            ServiceDescription sd = (ServiceDescription) services.next();
+            if (!SERVICE.equals(sd.getType())) {
+                continue;
+            }
+            Iterator proprietes = sd.getAllProperties();
+            while (proprietes.hasNext()) {
+                Property propriete = (Property) proprietes.next();
+                if (nom.equals(propriete.getName())) {
+                    return String.valueOf(propriete.getValue());
+                }
+            }
+        }
+        return null;
+    }
+
+    int nombreFragments() {
+        return anneau.taille();
+    }
+
+    /**
+     * Bibliothécaire à qui confier une conversation qui modifie le stock du titre (emprunt,
+     * retour, file d'attente) : la primaire de son fragment.
+     */
+    AID ecrivainPour(String titre) {
+        String fragment = anneau.proprietaire(titre);
+        return fragment != null ? primaire(parFragment.get(fragment)) : null;
+    }
+
+    /**
+     * Bibliothécaire à qui confier une lecture sur le titre (recherche, disponibilité) : la moins
+     * chargée de deux répliques de son fragment tirées au hasard.
+     */
+    AID lecteurPour(String titre) {
+        String fragment = anneau.proprietaire(titre);
+        return fragment != null ? choisir(parFragment.get(fragment)) : null;
+    }
+
+    /**
+     * Regroupe les titres de la liste par fragment, en conservant leur ordre, et confie chaque
+     * groupe à une bibliothécaire choisie comme pour une lecture ({@link #lecteurPour}) : la
+     * recherche de liste ne fait que lire le stock.
+     */
+    Map<AID, List<String>> repartir(List<String> titres) {
+        Map<String, AID> choisies = new HashMap<>();
+        Map<AID, List<String>> repartition = new LinkedHashMap<>();
+        for (String titre : titres) {
+            AID bibliothecaire = choisies.computeIfAbsent(anneau.proprietaire(titre),
+                fragment -> choisir(parFragment.get(fragment)));
+            repartition.computeIfAbsent(bibliothecaire, aid -> new ArrayList<>()).add(titre);
+        }
+        return repartition;
+    }
+
+    // Primaire annoncée du fragment ; à défaut (bibliothécaires sans rôle), la première par nom,
+    // pour que tous les utilisateurs s'accordent sur la même
+    private static AID primaire(List<Candidat> repliques) {
+        Candidat elue = null;
+        for (Candidat candidat : repliques) {
+            if (!candidat.lecture && (elue == null || candidat.aid.getName().compareTo(elue.aid.getName()) < 0)) {
+                elue = candidat;
+            }
+        }
+        if (elue == null) {
+            // Seules des répliques en lecture sont connues : la primaire est absente ou pas encore
+            // annoncée, et la réplique la refusera avec le nom de la primaire
+            elue = repliques.get(0);
+        }
+        return elue.aid;
+    }
+
+    // Deux choix aléatoires : la charge connue de l'élue est augmentée jusqu'à la prochaine
+    // notification du DF, pour que les conversations suivantes ne s'y accumulent pas
+    private static AID choisir(List<Candidat> repliques) {
+        Candidat elue = repliques.get(0);
+        if (repliques.size() > 1) {
+            ThreadLocalRandom hasard = ThreadLocalRandom.current();
+            int i = hasard.nextInt(repliques.size());
+            int j = hasard.nextInt(repliques.size() - 1);
+            if (j >= i) {
+                j++;
+            }
+            Candidat a = repliques.get(i);
+            Candidat b = repliques.get(j);
+            elue = b.charge < a.charge ? b : a;
+        }
+        elue.charge++;
+        return elue.aid;
+    }
+}
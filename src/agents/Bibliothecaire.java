@@ -1,19 +1,49 @@
 package agents;
 
+import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.core.behaviours.WakerBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAException;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.MessageTemplate;
+import jade.lang.acl.UnreadableException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import model.CataloguePartitionne;
+import model.Evenement;
+import model.Evenement.Type;
+import model.ImportateurCatalogue;
+import model.IndexCatalogue;
+import model.JournalCatalogue;
 import model.Livre;
 import model.ListeLivres;
+import model.MoteurRecherche;
+import model.RequeteCatalogue;
 import model.ResultatRecherche;
+import model.StockageCatalogue;
+import util.AnneauCoherent;
 
 /**
  * Agent Bibliothecaire - Agent à état (reactif avec mémoire)
@@ -21,8 +51,80 @@ import model.ResultatRecherche;
  * Objectif: Gérer les livres de la bibliothèque et répondre aux demandes des utilisateurs
  */
 public class Bibliothecaire extends Agent {
-    // État interne de l'agent
-    private Map<String, Livre> catalogue = new HashMap<>();
+    private static final String PREFIXE_RECHERCHE = "recherche:";
+    private static final String PREFIXE_REQUETE = "requete:";
+    private static final String REQUETE_STATISTIQUES = "statistiques";
+    private static final int AFFICHAGE_DETAILLE_MAX = 20;
+    // Nombre de titres au-delà duquel le délai de recherche simulé d'une liste n'augmente plus
+    private static final int DELAI_RECHERCHE_TITRES_MAX = 20;
+
+    // État interne de l'agent : le catalogue est réparti entre des threads de partition
+    private CataloguePartitionne catalogue;
+
+    // Suites de protocole à exécuter sur le thread de l'agent une fois les partitions consultées
+    private final Queue<Etape> retoursPartitions = new ConcurrentLinkedQueue<>();
+    private AppliquerRetoursPartitions appliquerRetours;
+
+    // Étapes de protocole différées ou en attente des partitions : conversations en cours
+    private final AtomicInteger etapesEnCours = new AtomicInteger();
+
+    // Index de recherche approchée sur les titres et auteurs, reconstruit après un rechargement
+    private MoteurRecherche moteur = new MoteurRecherche();
+
+    // Changements de disponibilité diffusés aux proxys qui gardent les réponses en cache
+    private final DiffusionDisponibilite diffusion = new DiffusionDisponibilite(this);
+
+    // Index secondaires (auteur, durée d'emprunt, disponibilité) tenus à jour avec le stock,
+    // reconstruits après un rechargement
+    private IndexCatalogue index = new IndexCatalogue(diffusion);
+    // Remplaçant en construction ; une réindexation plus récente le supplante
+    private IndexCatalogue indexEnPreparation;
+
+    // Fragment du catalogue détenu par cet agent et anneau de tous les fragments
+    private String fragment;
+    private AnneauCoherent<String> anneauFragments;
+
+    // Primaire du fragment lorsque cet agent en est une réplique en lecture (null s'il est primaire),
+    // réplication du stock vers ses répliques lorsqu'il est primaire et en a
+    private AID primaire;
+    private ReplicationStock replication;
+    // Dernier changement de composition reçu de la primaire, publié ou en cours de publication
+    private CompletableFuture<?> compositionRepliquee = CompletableFuture.completedFuture(null);
+
+    // Exemplaires réservés entre une proposition d'emprunt et son acceptation
+    private GestionnaireBaux baux;
+
+    // Utilisateurs abonnés aux titres épuisés, servis dans l'ordre d'inscription
+    private final FileAttente attente = new FileAttente();
+
+    // Emprunts en cours, dates de retour et retards
+    private RegistreEmprunts registre;
+
+    // Recherches de liste envoyées par pages, par demandeur et identifiant de recherche (reply-with
+    // du CONFIRM, repris en in-reply-to par le CANCEL) ; une recherche retirée a été annulée
+    private final Map<String, RechercheListe> recherchesListe = new HashMap<>();
+
+    // Catalogue projeté en mémoire depuis des fichiers : pas de journal du stock ni d'index secondaires
+    private boolean projete = false;
+
+    // Journal des mouvements de stock et instantanés (null si l'agent n'a pas de répertoire de données)
+    private JournalCatalogue journal;
+    // Journal du registre des emprunts : le journal du stock, ou un journal à part pour un catalogue projeté
+    private JournalCatalogue journalEmprunts;
+    private final AtomicBoolean instantaneEnCours = new AtomicBoolean(false);
+
+    // Publication des événements vers les observateurs
+    private PublicateurEvenements evenements;
+
+    // Table d'aiguillage, aussi appliquée aux messages reçus en lot d'un proxy
+    private Aiguilleur aiguilleur;
+
+    // Proxys reconnus au DF, seuls admis à relayer des écritures d'utilisateurs
+    private final Set<AID> proxys = new HashSet<>();
+
+    // Agents autorisés à modifier le catalogue (noms locaux) et seul répertoire d'où il peut être rechargé
+    private final Set<String> administrateurs = new HashSet<>();
+    private File repertoireImports;
 
     // Compteur pour les statistiques
     private int demandes = 0;
@@ -30,31 +132,129 @@ public class Bibliothecaire extends Agent {
 
     @Override
     protected void setup() {
+        // Observateurs connus par abonnement au DF, sans recherche à chaque événement
+        evenements = new PublicateurEvenements(this);
+        evenements.demarrer();
+
         System.out.println("Agent bibliothécaire " + getLocalName() + " est prêt.");
 
+        // Nombre de partitions du catalogue (un thread de travail par partition)
+        int nombrePartitions = Integer.parseInt(parametre("partitions", "1"));
+        // Stockage des partitions : table d'objets Livre, colonnes compactes ou fichiers projetés
+        String stockage = parametre("stockage", "table");
+        String donnees = parametre("donnees", null);
+        int parallelisme = Runtime.getRuntime().availableProcessors();
+        if (stockage.equalsIgnoreCase("projete")) {
+            File repertoire = new File(donnees != null ? donnees : "donnees", getLocalName());
+            try {
+                catalogue = new CataloguePartitionne(getLocalName(), nombrePartitions, parallelisme,
+                    p -> StockageCatalogue.projete(repertoire, p, nombrePartitions));
+                projete = true;
+                journalEmprunts = new JournalCatalogue(new File(repertoire, "emprunts"),
+                    JournalCatalogue.Synchronisation.valueOf(parametre("synchro", "lot").toUpperCase()));
+                System.out.println("Catalogue de " + getLocalName() + " projeté depuis " + repertoire);
+            } catch (UncheckedIOException e) {
+                System.out.println("Catalogue de " + getLocalName() + " non projeté (" + e.getCause().getMessage() +
+                    "), repli sur une table en mémoire");
+                stockage = "table";
+            }
+        }
+        if (!projete) {
+            catalogue = new CataloguePartitionne(getLocalName(), nombrePartitions, parallelisme,
+                StockageCatalogue.Type.valueOf(stockage.toUpperCase()));
+        }
+        System.out.println("Catalogue de " + getLocalName() + " réparti en " + nombrePartitions + " partition(s)");
+
+        // Fragment du catalogue détenu lorsque plusieurs bibliothécaires se partagent les titres
+        fragment = parametre("fragment", getLocalName());
+        anneauFragments = new AnneauCoherent<>(Arrays.asList(parametre("fragments", fragment).split(",")), id -> id);
+        if (anneauFragments.taille() > 1) {
+            System.out.println(getLocalName() + " détient le fragment " + fragment + " parmi " +
+                anneauFragments.taille() + " fragments");
+        }
+
+        // Répliques d'un fragment : la primaire sert toutes les écritures et réplique son stock,
+        // les autres ne servent que les lectures
+        String nomPrimaire = parametre("primaire", null);
+        String repliques = parametre("repliques", "");
+        if (nomPrimaire != null) {
+            primaire = new AID(nomPrimaire, AID.ISLOCALNAME);
+            System.out.println(getLocalName() + " est une réplique en lecture de " + nomPrimaire);
+        } else if (!repliques.isEmpty()) {
+            List<AID> aids = new ArrayList<>();
+            for (String nom : repliques.split(",")) {
+                aids.add(new AID(nom, AID.ISLOCALNAME));
+            }
+            replication = new ReplicationStock(this, aids);
+            diffusion.setSuivant(replication);
+        }
+
+        // Administration du catalogue : aucun agent autorisé sans liste "admins" ; les fichiers
+        // rechargés sont cherchés dans le répertoire du fichier importé, sinon dans celui des données
+        String admins = parametre("admins", "");
+        if (!admins.isEmpty()) {
+            administrateurs.addAll(Arrays.asList(admins.split(",")));
+        }
+        String fichierImport = parametre("import", null);
+        File parentImport = fichierImport != null ? new File(fichierImport).getAbsoluteFile().getParentFile() : null;
+        try {
+            repertoireImports = (parentImport != null ? parentImport : new File(donnees != null ? donnees : "donnees"))
+                .getCanonicalFile();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // Répertoire du journal et des instantanés du stock ; un catalogue projeté est lui-même sur disque
+        if (donnees != null && !projete) {
+            JournalCatalogue.Synchronisation synchronisation =
+                JournalCatalogue.Synchronisation.valueOf(parametre("synchro", "lot").toUpperCase());
+            journal = new JournalCatalogue(new File(donnees, getLocalName()), synchronisation);
+            journalEmprunts = journal;
+        }
+
+        // Durée de validité d'une proposition d'emprunt (ms)
+        long dureeBail = Long.parseLong(parametre("bail", "10000"));
+        baux = new GestionnaireBaux(dureeBail, 100, journal);
+
+        // Durée d'un "jour" d'emprunt (ms), réduite pour les démonstrations
+        long dureeJour = Long.parseLong(parametre("jour", "86400000"));
+        registre = new RegistreEmprunts(dureeJour, 100, journalEmprunts);
+
         // Initialisation du catalogue avec quelques livres
         initialiserCatalogue();
 
         // Enregistrement au service DF (Directory Facilitator)
-        DFAgentDescription dfd = new DFAgentDescription();
-        dfd.setName(getAID());
-        ServiceDescription sd = new ServiceDescription();
-        sd.setType("service-bibliotheque");
-        sd.setName(getLocalName() + "-bibliothecaire");
-        dfd.addServices(sd);
-
         try {
-            DFService.register(this, dfd);
+            DFService.register(this, description(0, 0));
             System.out.println("Agent bibliothécaire " + getLocalName() + " est enregistré au service DF.");
 
             // Notifier l'observateur de la création du bibliothécaire
-            informerObservateur("BIBLIO_NOUVEAU:");
+            informerObservateur(new Evenement(Type.BIBLIO_NOUVEAU));
         } catch (FIPAException e) {
             e.printStackTrace();
         }
 
         // Comportements de l'agent
-        addBehaviour(new RepondreDemandesDisponibilite());
+        appliquerRetours = new AppliquerRetoursPartitions();
+        addBehaviour(appliquerRetours);
+        addBehaviour(new ExpirerBaux());
+        addBehaviour(new SurveillerRetards());
+        if (journalEmprunts != null) {
+            addBehaviour(new PrendreInstantane(Long.parseLong(parametre("instantane", "60000"))));
+        }
+        addBehaviour(new PublierCharge(Long.parseLong(parametre("charge", "100"))));
+        diffusion.demarrer();
+        aiguilleur = creerAiguilleur();
+        addBehaviour(aiguilleur.comportement(this));
+
+        if (replication != null) {
+            replication.demarrer(catalogue);
+        } else if (primaire != null) {
+            ACLMessage demande = new ACLMessage(ACLMessage.REQUEST);
+            demande.addReceiver(primaire);
+            demande.setConversationId(ReplicationStock.CONVERSATION);
+            send(demande);
+        }
     }
 
     @Override
@@ -66,357 +266,1603 @@ public class Bibliothecaire extends Agent {
         } catch (FIPAException e) {
             e.printStackTrace();
         }
+        catalogue.arreter();
+        System.out.println("Catalogue de " + getLocalName() + " - " + catalogue.resumeFiltres());
+        if (journalEmprunts != null) {
+            try {
+                ecrireInstantane();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            journalEmprunts.fermer();
+            System.out.println("Journal de " + getLocalName() + " - " + journalEmprunts.resume());
+        }
+        System.out.println("Réservations de " + getLocalName() + " - " + baux.resume());
+        System.out.println("Emprunts de " + getLocalName() + " - " + registre.resume());
+        System.out.println("Files d'attente de " + getLocalName() + " - " + attente.resume());
+        System.out.println("Diffusion de " + getLocalName() + " - " + diffusion.resume());
+        if (replication != null) {
+            System.out.println("Réplication de " + getLocalName() + " - " + replication.resume());
+        }
         System.out.println("Agent bibliothécaire " + getLocalName() + " s'est terminé.");
+        evenements.arreter();
+        System.out.println("Événements de " + getLocalName() + " - " + evenements.resume());
+    }
+
+    // Description DF du service, avec le fragment détenu, le rôle dans ce fragment et la charge
+    // annoncée aux utilisateurs
+    private DFAgentDescription description(int file, int conversations) {
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(getAID());
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(AnnuaireBibliotheque.SERVICE);
+        sd.setName(getLocalName() + "-bibliothecaire");
+        sd.addProperties(new Property(AnnuaireBibliotheque.PROPRIETE_FRAGMENT, fragment));
+        sd.addProperties(new Property(AnnuaireBibliotheque.PROPRIETE_ROLE,
+            primaire == null ? AnnuaireBibliotheque.ROLE_PRIMAIRE : AnnuaireBibliotheque.ROLE_LECTURE));
+        sd.addProperties(new Property(AnnuaireBibliotheque.PROPRIETE_FILE, String.valueOf(file)));
+        sd.addProperties(new Property(AnnuaireBibliotheque.PROPRIETE_CONVERSATIONS, String.valueOf(conversations)));
+        dfd.addServices(sd);
+        return dfd;
+    }
+
+    // Lit un argument de la forme "cle=valeur" passé à la création de l'agent
+    private String parametre(String cle, String defaut) {
+        Object[] args = getArguments();
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg instanceof String && ((String) arg).startsWith(cle + "=")) {
+                    return ((String) arg).substring(cle.length() + 1);
+                }
+            }
+        }
+        return defaut;
     }
 
     private void initialiserCatalogue() {
-        // Création de quelques livres pour le catalogue
-        catalogue.put("1984", new Livre("1984", "George Orwell", 3, 21));
-        catalogue.put("Le Petit Prince", new Livre("Le Petit Prince", "Antoine de Saint-Exupéry", 5, 14));
-        catalogue.put("Harry Potter", new Livre("Harry Potter", "J.K. Rowling", 2, 30));
-        catalogue.put("Dune", new Livre("Dune", "Frank Herbert", 1, 21));
-        catalogue.put("Fondation", new Livre("Fondation", "Isaac Asimov", 3, 14));
-        catalogue.put("Ainsi parlait Zarathoustra", new Livre("Ainsi parlait Zarathoustra", "Friedrich Nietzsche", 2, 30));
-        catalogue.put("L'Étranger", new Livre("L'Étranger", "Albert Camus", 4, 21));
-        catalogue.put("Les Misérables", new Livre("Les Misérables", "Victor Hugo", 2, 30));
-        catalogue.put("Crime et Châtiment", new Livre("Crime et Châtiment", "Fyodor Dostoevsky", 1, 14));
-        catalogue.put("Le Seigneur des Anneaux", new Livre("Le Seigneur des Anneaux", "J.R.R. Tolkien", 3, 30));
+        // Un catalogue projeté déjà rempli sert tel quel, sans relecture des livres
+        if (projete && journalEmprunts != null) {
+            try {
+                journalEmprunts.recuperer();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            reprendreEmprunts();
+        }
+        if (projete && this.catalogue.taille() > 0) {
+            System.out.println("Catalogue de l'agent bibliothécaire " + getLocalName() + ": " +
+                this.catalogue.taille() + " livre(s) repris de ses fichiers projetés");
+            // Les exemplaires ne sont pas comptés : il faudrait parcourir tous les enregistrements
+            informerObservateur(new Evenement(Type.CATALOGUE, null, null, this.catalogue.taille(), 0, 0));
+            this.catalogue.setObservateurStock(diffusion);
+            return;
+        }
+
+        // Reprendre le stock depuis l'instantané et le journal s'ils existent
+        Map<String, Livre> catalogue = new HashMap<>();
+        if (journal != null) {
+            try {
+                catalogue.putAll(journal.recuperer());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (!catalogue.isEmpty()) {
+                System.out.println(getLocalName() + " a repris " + catalogue.size() + " livre(s) depuis son journal");
+            }
+            reprendreEmprunts();
+        }
+
+        boolean nouveau = catalogue.isEmpty();
+        String fichierImport = parametre("import", null);
+        if (nouveau && fichierImport != null) {
+            try {
+                importerCatalogue(new File(fichierImport), catalogue);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else if (nouveau) {
+            // Création de quelques livres pour le catalogue
+            catalogue.put("1984", new Livre("1984", "George Orwell", 3, 21));
+            catalogue.put("Le Petit Prince", new Livre("Le Petit Prince", "Antoine de Saint-Exupéry", 5, 14));
+            catalogue.put("Harry Potter", new Livre("Harry Potter", "J.K. Rowling", 2, 30));
+            catalogue.put("Dune", new Livre("Dune", "Frank Herbert", 1, 21));
+            catalogue.put("Fondation", new Livre("Fondation", "Isaac Asimov", 3, 14));
+            catalogue.put("Ainsi parlait Zarathoustra", new Livre("Ainsi parlait Zarathoustra", "Friedrich Nietzsche", 2, 30));
+            catalogue.put("L'Étranger", new Livre("L'Étranger", "Albert Camus", 4, 21));
+            catalogue.put("Les Misérables", new Livre("Les Misérables", "Victor Hugo", 2, 30));
+            catalogue.put("Crime et Châtiment", new Livre("Crime et Châtiment", "Fyodor Dostoevsky", 1, 14));
+            catalogue.put("Le Seigneur des Anneaux", new Livre("Le Seigneur des Anneaux", "J.R.R. Tolkien", 3, 30));
+        }
+
+        // Ne garder que les titres dont ce fragment est propriétaire
+        catalogue.keySet().removeIf(titre -> !fragment.equals(anneauFragments.proprietaire(titre)));
+
+        // Le catalogue initial devient le premier instantané
+        if (nouveau && journal != null) {
+            try {
+                journal.instantane(catalogue::values, registre::prets);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Affichage du catalogue, détaillé seulement s'il est petit
+        long exemplaires = 0;
+        for (Livre livre : catalogue.values()) {
+            exemplaires += livre.getQuantiteDisponible();
+        }
+        System.out.println("Catalogue de l'agent bibliothécaire " + getLocalName() + ": " +
+            catalogue.size() + " livre(s), " + exemplaires + " exemplaire(s)");
+        if (catalogue.size() <= AFFICHAGE_DETAILLE_MAX) {
+            for (Map.Entry<String, Livre> entry : catalogue.entrySet()) {
+                System.out.println("  - " + entry.getValue());
+            }
+        }
+
+        // Notifier l'observateur du catalogue en un seul événement
+        informerObservateur(new Evenement(Type.CATALOGUE, null, null, catalogue.size(), 0, (int) exemplaires));
+
+        // Répartir les livres dans les partitions avant de traiter les demandes
+        this.catalogue.charger(catalogue.values()).join();
+
+        // Les index secondaires garderaient une vue par titre dans le tas : un catalogue projeté
+        // s'en passe et prévient directement la diffusion des changements de disponibilité
+        if (projete) {
+            this.catalogue.setObservateurStock(diffusion);
+            return;
+        }
+
+        // Indexer les titres et auteurs pour la recherche approchée, et les attributs pour les
+        // requêtes, sur les livres tels que les partitions les stockent
+        this.catalogue.pourChaqueLivre(livre -> {
+            moteur.ajouter(livre);
+            index.ajouter(livre);
+        });
+    }
+
+    /**
+     * Importe le catalogue depuis un fichier CSV/TSV, en ne gardant que les titres de ce fragment.
+     */
+    private void importerCatalogue(File fichier, Map<String, Livre> catalogue) throws IOException {
+        System.out.println(getLocalName() + " importe le catalogue depuis " + fichier);
+        ImportateurCatalogue.Bilan bilan = new ImportateurCatalogue(fichier).importer(
+            titre -> fragment.equals(anneauFragments.proprietaire(titre)),
+            livres -> {
+                for (Livre livre : livres) {
+                    catalogue.put(livre.getTitre(), livre);
+                }
+            },
+            (lus, total, livres) -> System.out.println(getLocalName() + " : import " + (100 * lus / Math.max(1, total)) +
+                "% (" + livres + " livres)"));
+        System.out.println(getLocalName() + " : " + bilan);
+    }
+
+    private void informerObservateur(Evenement evenement) {
+        evenements.publier(evenement);
+    }
 
-        // Affichage du catalogue
-        System.out.println("Catalogue de l'agent bibliothécaire " + getLocalName() + ":");
-        for (Map.Entry<String, Livre> entry : catalogue.entrySet()) {
-            System.out.println("  - " + entry.getValue());
+    // Étape d'un protocole exécutée sur le thread de l'agent
+    private interface Etape {
+        void executer() throws Exception;
+    }
+
+    /**
+     * Exécute la suite d'un protocole sur le thread de l'agent lorsque le calcul
+     * confié aux partitions est terminé.
+     */
+    private <T> void quandPret(CompletableFuture<T> calcul, Suite<T> suite) {
+        etapesEnCours.incrementAndGet();
+        calcul.whenComplete((resultat, erreur) -> {
+            if (erreur != null) {
+                etapesEnCours.decrementAndGet();
+                erreur.printStackTrace();
+                return;
+            }
+            retoursPartitions.add(() -> {
+                etapesEnCours.decrementAndGet();
+                suite.executer(resultat);
+            });
+            appliquerRetours.restart();
+        });
+    }
+
+    // Suite d'un protocole recevant le résultat calculé par les partitions
+    private interface Suite<T> {
+        void executer(T resultat) throws Exception;
+    }
+
+    // Comportement qui publie la charge de l'agent au DF lorsqu'elle a changé ; les utilisateurs
+    // abonnés en sont notifiés et choisissent la réplique la moins chargée
+    private class PublierCharge extends TickerBehaviour {
+        private int file = 0;
+        private int conversations = 0;
+
+        PublierCharge(long periode) {
+            super(Bibliothecaire.this, periode);
         }
 
-        // Notifier l'observateur du catalogue
-        for (Map.Entry<String, Livre> entry : catalogue.entrySet()) {
-            String info = "Catalogue: " + entry.getValue().toString();
-            informerObservateur("BIBLIO_INFO:" + info);
+        @Override
+        protected void onTick() {
+            int fileActuelle = getCurQueueSize();
+            int conversationsActuelles = etapesEnCours.get();
+            if (fileActuelle == file && conversationsActuelles == conversations) {
+                return;
+            }
+            try {
+                DFService.modify(Bibliothecaire.this, description(fileActuelle, conversationsActuelles));
+                file = fileActuelle;
+                conversations = conversationsActuelles;
+            } catch (FIPAException e) {
+                e.printStackTrace();
+            }
         }
     }
 
-    private void informerObservateur(String message) {
-        // Rechercher l'agent observateur
+    // Comportement qui rend au stock les exemplaires des propositions non acceptées à temps
+    private class ExpirerBaux extends TickerBehaviour {
+        ExpirerBaux() {
+            super(Bibliothecaire.this, 100);
+        }
+
+        @Override
+        protected void onTick() {
+            baux.expirer(bail -> {
+                System.out.println(getLocalName() + " libère " + bail.nombre + " exemplaire(s) du livre " +
+                    bail.titre + " réservé(s) pour " + bail.emprunteur);
+                informerObservateur(new Evenement(Type.RESERVATION_EXPIREE, null, bail.titre, bail.nombre));
+                servirFileAttente(bail.livre);
+            });
+        }
+    }
+
+    // Comportement qui signale les emprunts dont la date de retour est dépassée
+    private class SurveillerRetards extends TickerBehaviour {
+        SurveillerRetards() {
+            super(Bibliothecaire.this, 1000);
+        }
+
+        @Override
+        protected void onTick() {
+            registre.surveillerRetards(emprunt -> {
+                System.out.println(getLocalName() + " : l'emprunt n°" + emprunt.id + " de " + emprunt.nombre +
+                    " exemplaire(s) du livre " + emprunt.titre + " par " + emprunt.emprunteur + " est en retard");
+                informerObservateur(new Evenement(Type.RETARD, emprunt.emprunteur, emprunt.titre, registre.enRetard()));
+            });
+        }
+    }
+
+    // Comportement qui écrit périodiquement un instantané du stock pour borner la relecture du journal
+    private class PrendreInstantane extends TickerBehaviour {
+        PrendreInstantane(long periode) {
+            super(Bibliothecaire.this, periode);
+        }
+
+        @Override
+        protected void onTick() {
+            // L'écriture a lieu hors du thread de l'agent ; un seul instantané à la fois
+            if (!instantaneEnCours.compareAndSet(false, true)) {
+                return;
+            }
+            CompletableFuture.runAsync(() -> {
+                try {
+                    ecrireInstantane();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    instantaneEnCours.set(false);
+                }
+            });
+        }
+    }
+
+    // Instantané du stock, sauf pour un catalogue projeté déjà sur disque, et des emprunts en cours
+    private void ecrireInstantane() throws IOException {
+        if (projete) {
+            journalEmprunts.instantane(Collections::emptyList, registre::prets);
+        } else {
+            journalEmprunts.instantane(() -> catalogue.instantane().livres(), registre::prets);
+        }
+    }
+
+    private void reprendreEmprunts() {
+        registre.reprendre(journalEmprunts.getPretsRepris());
+        if (registre.enCours() > 0) {
+            System.out.println(getLocalName() + " a repris " + registre.enCours() + " emprunt(s) en cours depuis son journal");
+        }
+    }
+
+    /**
+     * Retire définitivement des exemplaires du stock pour un emprunt, en l'inscrivant au journal.
+     * Peut être appelé depuis le thread d'une partition.
+     */
+    private boolean emprunter(Livre livre, int nombre) {
+        if (journal == null) {
+            return livre.reduireQuantite(nombre);
+        }
+        return journal.enregistrer(JournalCatalogue.Operation.EMPRUNT, livre.getTitre(), nombre,
+            () -> livre.reduireQuantite(nombre));
+    }
+
+    /**
+     * Transforme une réservation en emprunt définitif, en l'inscrivant au journal.
+     */
+    private void confirmerReservation(Livre livre, int nombre) {
+        if (journal == null) {
+            livre.confirmer(nombre);
+        } else {
+            journal.enregistrer(JournalCatalogue.Operation.EMPRUNT, livre.getTitre(), nombre, () -> {
+                livre.confirmer(nombre);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Remet en rayon des exemplaires, rendus (RETOUR) ou neufs (REASSORT), en l'inscrivant au journal.
+     * Peut être appelé depuis le thread d'une partition.
+     */
+    private void remettreEnRayon(Livre livre, int nombre, JournalCatalogue.Operation operation) {
+        if (journal == null) {
+            livre.restituer(nombre);
+        } else {
+            journal.enregistrer(operation, livre.getTitre(), nombre, () -> {
+                livre.restituer(nombre);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Envoie une confirmation une fois les mouvements de stock correspondants écrits sur disque :
+     * par le journal, ou par la synchronisation des fichiers d'un catalogue projeté et du journal
+     * de ses emprunts.
+     */
+    private void envoyerApresJournal(ACLMessage reponse) {
+        if (projete && journalEmprunts != null) {
+            quandPret(CompletableFuture.allOf(catalogue.durable(), journalEmprunts.durable()), v -> send(reponse));
+        } else if (projete) {
+            quandPret(catalogue.durable(), v -> send(reponse));
+        } else if (journal == null) {
+            send(reponse);
+        } else {
+            quandPret(journal.durable(), v -> send(reponse));
+        }
+    }
+
+    // Comportement qui exécute les suites de protocole renvoyées par les partitions
+    private class AppliquerRetoursPartitions extends CyclicBehaviour {
+        @Override
+        public void action() {
+            Etape etape;
+            while ((etape = retoursPartitions.poll()) != null) {
+                try {
+                    etape.executer();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            block();
+            // Un retour arrivé entre la vidange et block() ne doit pas rester en attente
+            if (!retoursPartitions.isEmpty()) {
+                restart();
+            }
+        }
+    }
+
+    /**
+     * Planifie une étape d'un protocole après un délai, sans bloquer le thread de l'agent.
+     * Les délais de plusieurs conversations se chevauchent ainsi au lieu de s'additionner.
+     */
+    private void planifier(long delai, Etape etape) {
+        etapesEnCours.incrementAndGet();
+        addBehaviour(new WakerBehaviour(this, delai) {
+            @Override
+            protected void onWake() {
+                etapesEnCours.decrementAndGet();
+                try {
+                    etape.executer();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Table d'aiguillage des protocoles de la bibliothécaire.
+     */
+    private Aiguilleur creerAiguilleur() {
+        return new Aiguilleur()
+            .enregistrer(ACLMessage.REQUEST, this::traiterDemandeDisponibilite)
+            .enregistrer(ACLMessage.REQUEST, "retour-livre", ecriture(this::traiterRetour))
+            .enregistrer(ACLMessage.REQUEST, "reassort-livre", administration(ecriture(this::traiterReassort)))
+            .enregistrer(ACLMessage.REQUEST, "ajout-livre", administration(ecriture(this::traiterAjoutLivre)))
+            .enregistrer(ACLMessage.REQUEST, "retrait-livre", administration(ecriture(this::traiterRetraitLivre)))
+            .enregistrer(ACLMessage.REQUEST, "recharger-catalogue", administration(ecriture(this::traiterRechargement)))
+            .enregistrer(ACLMessage.CFP, ecriture(this::traiterDemandeEmprunt))
+            .enregistrer(ACLMessage.ACCEPT_PROPOSAL, ecriture(this::traiterAcceptationEmprunt))
+            // La recherche de liste ne fait que lire le stock : une réplique la sert aussi
+            .enregistrer(ACLMessage.CONFIRM, this::traiterRechercheListe)
+            .enregistrer(ACLMessage.CANCEL, "recherche-liste", this::annulerRechercheListe)
+            .enregistrer(ACLMessage.AGREE, "emprunt-liste", ecriture(this::traiterEmpruntListe))
+            .enregistrer(ACLMessage.QUERY_REF, this::traiterRequete)
+            .enregistrer(ACLMessage.SUBSCRIBE, ecriture(this::traiterInscriptionAttente))
+            .enregistrer(ACLMessage.CANCEL, "attente-livre", ecriture(this::traiterDesinscriptionAttente))
+            .enregistrer(ACLMessage.REQUEST, ReplicationStock.CONVERSATION, this::traiterDemandeReplication)
+            .enregistrer(ACLMessage.INFORM, ReplicationStock.CONVERSATION, this::traiterReplication)
+            .enregistrer(ACLMessage.INFORM, ReplicationStock.CONVERSATION_CATALOGUE, this::traiterReplicationCatalogue)
+            .enregistrer(ACLMessage.SUBSCRIBE, DiffusionDisponibilite.CONVERSATION, diffusion::abonner)
+            .enregistrer(ACLMessage.CANCEL, DiffusionDisponibilite.CONVERSATION, diffusion::desabonner)
+            .enregistrer(ACLMessage.QUERY_IF, DiffusionDisponibilite.CONVERSATION, this::traiterQuestionDisponibilite)
+            .enregistrer(ACLMessage.PROPAGATE, ProxyBibliotheque.CONVERSATION_LOT, this::traiterLotEcritures)
+            // Remerciements et messages de courtoisie (sans conversation) : consommés pour ne pas
+            // encombrer la file de réception, les notifications du DF restant à l'abonnement
+            .enregistrer(ACLMessage.INFORM, null, msg -> { });
+    }
+
+    // Protocole qui modifie le stock, la composition du catalogue, les baux, les emprunts ou les
+    // files d'attente : servi par la primaire du fragment seule, refusé par une réplique en lecture
+    private Aiguilleur.Traitement ecriture(Aiguilleur.Traitement traitement) {
+        if (primaire == null) {
+            return traitement;
+        }
+        return msg -> {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("replique-en-lecture:" + primaire.getLocalName());
+            send(reply);
+        };
+    }
+
+    // Protocole d'administration du catalogue : réservé aux agents de la liste "admins"
+    private Aiguilleur.Traitement administration(Aiguilleur.Traitement traitement) {
+        return msg -> {
+            if (!administrateurs.contains(msg.getSender().getLocalName())) {
+                System.out.println(getLocalName() + " refuse une demande d'administration de " + msg.getSender().getLocalName());
+                ACLMessage reply = msg.createReply();
+                reply.setPerformative(ACLMessage.REFUSE);
+                reply.setContent("non-autorise");
+                send(reply);
+                return;
+            }
+            traitement.traiter(msg);
+        };
+    }
+
+    // Demande d'état complet du stock par une réplique qui démarre (REQUEST)
+    private void traiterDemandeReplication(ACLMessage msg) {
+        if (replication != null) {
+            replication.resynchroniser(msg);
+        } else {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("pas-de-replication");
+            send(reply);
+        }
+    }
+
+    // Stock disponible envoyé par la primaire (INFORM) ; ignoré s'il vient d'un autre agent. Il
+    // n'est appliqué qu'après la publication des changements de composition reçus avant lui
+    private void traiterReplication(ACLMessage msg) throws IOException {
+        if (!depuisPrimaire(msg)) {
+            return;
+        }
+        Map<String, Integer> lot = ReplicationStock.decoder(msg.getByteSequenceContent());
+        if (compositionRepliquee.isDone()) {
+            ReplicationStock.appliquer(lot, catalogue.instantane());
+        } else {
+            compositionRepliquee = compositionRepliquee.thenRun(() -> ReplicationStock.appliquer(lot, catalogue.instantane()));
+        }
+    }
+
+    // Changement de composition du catalogue envoyé par la primaire (INFORM), publié après les
+    // précédents ; les index et les abonnés à la disponibilité suivent une fois publié
+    private void traiterReplicationCatalogue(ACLMessage msg) throws IOException {
+        if (!depuisPrimaire(msg)) {
+            return;
+        }
+        ReplicationStock.Composition composition = ReplicationStock.decoderComposition(msg.getByteSequenceContent());
+        CompletableFuture<CataloguePartitionne.Modification> publication =
+            compositionRepliquee.thenCompose(v -> composition.appliquer(catalogue));
+        // Un changement refusé n'arrête pas les suivants
+        compositionRepliquee = publication.handle((bilan, erreur) -> null);
+        quandPret(publication, bilan -> {
+            for (Livre livre : bilan.getRetires()) {
+                if (!projete) {
+                    index.retirer(livre);
+                    moteur.retirer(livre);
+                }
+                diffusion.stockModifie(livre, livre.getQuantiteDisponible(), 0);
+            }
+            for (Livre livre : bilan.getAjoutes()) {
+                if (!projete) {
+                    moteur.ajouter(livre);
+                    index.ajouter(livre);
+                }
+                diffusion.stockModifie(livre, 0, livre.getQuantiteDisponible());
+            }
+            for (Map.Entry<Livre, Integer> entry : bilan.getStocksModifies().entrySet()) {
+                diffusion.stockModifie(entry.getKey(), entry.getValue(), entry.getKey().getQuantiteDisponible());
+            }
+            // Un auteur changé ne se corrige qu'en reconstruisant le moteur de recherche
+            if (!bilan.getModifies().isEmpty()) {
+                reindexer();
+            }
+            System.out.println(getLocalName() + " a répliqué un changement de catalogue de " +
+                primaire.getLocalName() + " (" + bilan + ")");
+        });
+    }
+
+    private boolean depuisPrimaire(ACLMessage msg) {
+        if (primaire == null || !primaire.equals(msg.getSender())) {
+            System.out.println(getLocalName() + " ignore une réplication de " + msg.getSender().getLocalName());
+            return false;
+        }
+        return true;
+    }
+
+    // Demande de disponibilité d'un livre simple (REQUEST)
+    private void traiterDemandeDisponibilite(ACLMessage msg) {
+        String sender = msg.getSender().getLocalName();
+        String titreDemande = msg.getContent();
+        demandes++;
+
+        // Titre absent du catalogue à coup sûr : réponse immédiate, sans délai de recherche simulé
+        if (!catalogue.peutContenir(titreDemande)) {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("recherche-en-cours");
+            reply.setConversationId("recherche-livre");
+            send(reply);
+
+            ACLMessage reponse = new ACLMessage(ACLMessage.FAILURE);
+            reponse.addReceiver(msg.getSender());
+            reponse.setConversationId("resultat-recherche");
+            reponse.setContent("livre-non-trouve");
+            send(reponse);
+            System.out.println(getLocalName() + " n'a pas le livre " + titreDemande);
+            informerObservateur(new Evenement(Type.INCONNU, sender, titreDemande));
+            return;
+        }
+
+        System.out.println(getLocalName() + " a reçu une demande pour le livre: " + titreDemande);
+        informerObservateur(new Evenement(Type.RECHERCHE, sender, titreDemande));
+
+        // Étape 1 : après le délai de recherche simulé, indiquer qu'on recherche son livre
+        planifier(1000, () -> {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("recherche-en-cours");
+            reply.setConversationId("recherche-livre");
+            send(reply);
+
+            // Étape 2 : faire la recherche et envoyer la réponse après le délai supplémentaire
+            planifier(2000, () -> quandPret(catalogue.executer(titreDemande, livre -> livre != null && livre.estDisponible()),
+                disponible -> repondreDisponibilite(msg, titreDemande, disponible)));
+        });
+    }
+
+    // Question de disponibilité d'un proxy (QUERY_IF) : réponse immédiate, sans délai simulé,
+    // portant la version des invalidations prise avant la lecture du stock
+    private void traiterQuestionDisponibilite(ACLMessage msg) {
+        String titre = msg.getContent();
+        long version = diffusion.version();
+        demandes++;
+        quandPret(catalogue.executer(titre, livre -> livre != null && livre.estDisponible()), disponible -> {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent(disponible ? "livre-disponible" : "livre-non-disponible");
+            reply.addUserDefinedParameter(DiffusionDisponibilite.PARAMETRE_VERSION, String.valueOf(version));
+            send(reply);
+        });
+    }
+
+    // Lot de messages d'utilisateurs relayés par un proxy (PROPAGATE) : chacun est traité comme
+    // s'il avait été reçu directement, les réponses partant vers l'utilisateur. Seul un proxy
+    // enregistré au DF peut parler au nom des utilisateurs de son conteneur
+    private void traiterLotEcritures(ACLMessage msg) throws Exception {
+        if (!estProxy(msg.getSender())) {
+            System.out.println(getLocalName() + " refuse un lot d'écritures de " + msg.getSender().getLocalName());
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("non-autorise");
+            send(reply);
+            return;
+        }
+        for (ACLMessage ecriture : LotEcritures.decoder(msg.getByteSequenceContent())) {
+            if (!relayable(ecriture) || !aiguilleur.aiguiller(ecriture)) {
+                System.out.println(getLocalName() + " : message relayé non traité de " + ecriture.getSender().getLocalName());
+            }
+        }
+    }
+
+    // Écritures qu'un proxy relaie (voir ProxyBibliotheque) : jamais d'administration du catalogue
+    private static boolean relayable(ACLMessage msg) {
+        switch (msg.getPerformative()) {
+            case ACLMessage.CFP:
+            case ACLMessage.ACCEPT_PROPOSAL:
+                return true;
+            case ACLMessage.AGREE:
+                return "emprunt-liste".equals(msg.getConversationId());
+            case ACLMessage.REQUEST:
+                return "retour-livre".equals(msg.getConversationId());
+            default:
+                return false;
+        }
+    }
+
+    // Proxy enregistré au DF (service "proxy-bibliotheque") ; un proxy reconnu est gardé en mémoire
+    private boolean estProxy(AID aid) {
+        if (proxys.contains(aid)) {
+            return true;
+        }
         DFAgentDescription template = new DFAgentDescription();
+        template.setName(aid);
         ServiceDescription sd = new ServiceDescription();
-        sd.setType("observateur");
+        sd.setType(ProxyBibliotheque.SERVICE);
         template.addServices(sd);
+        try {
+            if (DFService.search(this, template).length > 0) {
+                proxys.add(aid);
+                return true;
+            }
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
 
+    private void repondreDisponibilite(ACLMessage msg, String titreDemande, boolean disponible) {
+        String sender = msg.getSender().getLocalName();
+
+        ACLMessage reponse = new ACLMessage(ACLMessage.INFORM);
+        reponse.addReceiver(msg.getSender());
+        reponse.setConversationId("resultat-recherche");
+
+        if (disponible) {
+            reponse.setPerformative(ACLMessage.INFORM);
+            reponse.setContent("livre-disponible");
+            System.out.println(getLocalName() + " a trouvé le livre " + titreDemande);
+            informerObservateur(new Evenement(Type.DISPONIBLE, sender, titreDemande));
+        } else {
+            reponse.setPerformative(ACLMessage.FAILURE);
+            reponse.setContent("livre-non-disponible");
+            System.out.println(getLocalName() + " n'a pas le livre " + titreDemande + " ou il n'est plus disponible");
+            informerObservateur(new Evenement(Type.NON_DISPONIBLE, sender, titreDemande));
+        }
+
+        send(reponse);
+    }
+
+    // Demande d'emprunt d'un livre (CFP)
+    private void traiterDemandeEmprunt(ACLMessage msg) {
+        String sender = msg.getSender().getLocalName();
+        String contenu = msg.getContent();
+        String titreDemande = contenu;
+        int nombreExemplaires = 1;
+
+        // Vérifier si le message contient le nombre d'exemplaires
+        if (contenu.contains(":")) {
+            String[] parts = contenu.split(":");
+            titreDemande = parts[0];
+            nombreExemplaires = Integer.parseInt(parts[1]);
+        }
+
+        demandes++;
+        String titre = titreDemande;
+        int nombre = nombreExemplaires;
+
+        // Titre absent du catalogue à coup sûr : refus immédiat, sans délai de recherche simulé
+        if (!catalogue.peutContenir(titre)) {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("recherche-en-cours");
+            reply.setConversationId("recherche-emprunt");
+            send(reply);
+            repondreEmprunt(msg, titre, nombre, null);
+            return;
+        }
+
+        System.out.println(getLocalName() + " a reçu une demande d'emprunt pour " +
+            nombreExemplaires + " exemplaire(s) du livre: " + titreDemande);
+        informerObservateur(new Evenement(Type.RECHERCHE_EMPRUNT, sender, titreDemande, nombreExemplaires));
+
+        // Étape 1 : après le délai de recherche simulé, indiquer qu'on recherche son livre
+        planifier(1000, () -> {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("recherche-en-cours");
+            reply.setConversationId("recherche-emprunt");
+            send(reply);
+
+            // Étape 2 : proposer ou refuser l'emprunt après le délai supplémentaire
+            planifier(2000, () -> quandPret(catalogue.obtenir(titre),
+                livreFound -> repondreEmprunt(msg, titre, nombre, livreFound)));
+        });
+    }
+
+    private void repondreEmprunt(ACLMessage msg, String titreDemande, int nombreExemplaires, Livre livreFound) {
+        String sender = msg.getSender().getLocalName();
+
+        ACLMessage reponse = msg.createReply();
+
+        // Réserver les exemplaires le temps que l'utilisateur accepte la proposition
+        GestionnaireBaux.Bail bail = livreFound != null ?
+            baux.placer(msg.getSender().getName(), livreFound, nombreExemplaires) : null;
+
+        if (bail != null) {
+            reponse.setPerformative(ACLMessage.PROPOSE);
+            reponse.setContent("livre-disponible:" + livreFound.getDureeEmpruntMax());
+            System.out.println(getLocalName() + " a trouvé " + nombreExemplaires +
+                " exemplaire(s) du livre " + titreDemande);
+            informerObservateur(new Evenement(Type.DISPONIBLE_EMPRUNT, sender, titreDemande, 0, livreFound.getDureeEmpruntMax()));
+        } else {
+            reponse.setPerformative(ACLMessage.REFUSE);
+            if (livreFound == null) {
+                reponse.setContent("livre-non-trouve");
+                System.out.println(getLocalName() + " n'a pas le livre " + titreDemande);
+                informerObservateur(new Evenement(Type.INCONNU, sender, titreDemande));
+            } else {
+                reponse.setContent("exemplaires-insuffisants:" + livreFound.getQuantiteDisponible());
+                System.out.println(getLocalName() + " n'a pas assez d'exemplaires du livre " + titreDemande);
+                informerObservateur(new Evenement(Type.EXEMPLAIRES_INSUFFISANTS, sender, titreDemande,
+                    nombreExemplaires, 0, livreFound.getQuantiteDisponible()));
+            }
+        }
+
+        send(reponse);
+    }
+
+    // Acceptation de la proposition d'emprunt (ACCEPT_PROPOSAL)
+    private void traiterAcceptationEmprunt(ACLMessage msg) {
+        String sender = msg.getSender().getLocalName();
+        String[] parts = msg.getContent().split(":");
+        String titreLivre = parts[0];
+        int nombreExemplaires = Integer.parseInt(parts[1]);
+
+        System.out.println(getLocalName() + " a reçu une acceptation d'emprunt pour " +
+            nombreExemplaires + " exemplaire(s) du livre: " + titreLivre);
+
+        // Confirmer les exemplaires réservés lors de la proposition
+        GestionnaireBaux.Bail bail = baux.honorer(msg.getSender().getName(), titreLivre, nombreExemplaires);
+        // Les exemplaires réservés en trop sont revenus en rayon
+        reveillerFileAttente(titreLivre);
+        if (bail != null) {
+            confirmerEmprunt(msg, titreLivre, nombreExemplaires, bail.livre);
+            return;
+        }
+
+        // Sans réservation (expirée), mettre à jour l'inventaire dans le thread de la partition du livre
+        quandPret(catalogue.executer(titreLivre, livre -> {
+            if (livre != null && emprunter(livre, nombreExemplaires)) {
+                return CataloguePartitionne.copier(livre);
+            }
+            return null;
+        }), livre -> confirmerEmprunt(msg, titreLivre, nombreExemplaires, livre));
+    }
+
+    private void confirmerEmprunt(ACLMessage msg, String titreLivre, int nombreExemplaires, Livre livre) {
+        String sender = msg.getSender().getLocalName();
+
+        if (livre != null) {
+            emprunts++;
+            registre.ouvrir(msg.getSender().getName(), titreLivre, nombreExemplaires, livre.getDureeEmpruntMax());
+
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("emprunt-confirme:" + livre.getDureeEmpruntMax());
+
+            informerObservateur(new Evenement(Type.PRET, sender, titreLivre, nombreExemplaires, livre.getDureeEmpruntMax()));
+            informerObservateur(new Evenement(Type.EMPRUNT, sender, titreLivre, nombreExemplaires, livre.getDureeEmpruntMax()));
+
+            envoyerApresJournal(reply);
+        } else {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.FAILURE);
+            reply.setContent("emprunt-impossible");
+
+            informerObservateur(new Evenement(Type.PRET_IMPOSSIBLE, sender, titreLivre));
+
+            send(reply);
+        }
+    }
+
+    // Retour d'exemplaires empruntés (REQUEST, conversation "retour-livre", contenu "titre" ou "titre:n")
+    private void traiterRetour(ACLMessage msg) {
+        String sender = msg.getSender().getLocalName();
+        String[] parts = msg.getContent().split(":");
+        String titre = parts[0];
+        int nombre = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+
+        // Clore les emprunts correspondants dans le registre
+        boolean[] retard = new boolean[1];
+        int rendus = registre.restituer(msg.getSender().getName(), titre, nombre, emprunt -> retard[0] |= emprunt.enRetard);
+
+        ACLMessage reply = msg.createReply();
+        if (rendus == 0) {
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("aucun-emprunt");
+            send(reply);
+            System.out.println(getLocalName() + " : aucun emprunt du livre " + titre + " par " + sender);
+            return;
+        }
+
+        // Remettre les exemplaires en rayon dans le thread de la partition du livre
+        quandPret(catalogue.executer(titre, livre -> {
+            if (livre != null) {
+                remettreEnRayon(livre, rendus, JournalCatalogue.Operation.RETOUR);
+            }
+            return livre != null;
+        }), remis -> {
+            reveillerFileAttente(titre);
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent((retard[0] ? "retour-en-retard:" : "retour-enregistre:") + rendus);
+            System.out.println(getLocalName() + " a reçu " + rendus + " exemplaire(s) du livre " + titre + " rendu(s) par " + sender);
+            informerObservateur(new Evenement(retard[0] ? Type.RETOUR_EN_RETARD : Type.RETOUR, sender, titre, rendus));
+            envoyerApresJournal(reply);
+        });
+    }
+
+    // Réassort d'un titre (REQUEST, conversation "reassort-livre", contenu "titre:n")
+    private void traiterReassort(ACLMessage msg) {
+        String[] parts = msg.getContent().split(":");
+        String titre = parts[0];
+        ACLMessage reply = msg.createReply();
+        int nombre;
         try {
-            DFAgentDescription[] result = DFService.search(this, template);
-            if (result.length > 0) {
-                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-                msg.addReceiver(result[0].getName());
-                msg.setContent(message);
-                send(msg);
+            nombre = Integer.parseInt(parts[1]);
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            nombre = 0;
+        }
+        if (nombre <= 0) {
+            reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+            reply.setContent("reassort-invalide");
+            send(reply);
+            return;
+        }
+
+        int exemplaires = nombre;
+        quandPret(catalogue.executer(titre, livre -> {
+            if (livre == null) {
+                return -1;
+            }
+            remettreEnRayon(livre, exemplaires, JournalCatalogue.Operation.REASSORT);
+            return livre.getQuantiteDisponible();
+        }), disponible -> {
+            if (disponible < 0) {
+                reply.setPerformative(ACLMessage.FAILURE);
+                reply.setContent("livre-non-trouve");
+                send(reply);
+                return;
             }
-        } catch (FIPAException fe) {
-            fe.printStackTrace();
+            reveillerFileAttente(titre);
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("reassort-effectue:" + disponible);
+            System.out.println(getLocalName() + " a réassorti le livre " + titre + " de " + exemplaires + " exemplaire(s)");
+            envoyerApresJournal(reply);
+        });
+    }
+
+    // Ajout d'un titre au catalogue en service (REQUEST, conversation "ajout-livre",
+    // contenu "titre|auteur|exemplaires|durée")
+    private void traiterAjoutLivre(ACLMessage msg) {
+        ACLMessage reply = msg.createReply();
+        String[] champs = msg.getContent().split("\\|");
+        Livre livre;
+        try {
+            livre = new Livre(champs[0], champs[1], Integer.parseInt(champs[2]), Integer.parseInt(champs[3]));
+            // Titre et auteur doivent pouvoir être journalisés
+            JournalCatalogue.coder(livre.getTitre());
+            JournalCatalogue.coder(livre.getAuteur());
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+            reply.setContent("ajout-invalide");
+            send(reply);
+            return;
         }
+        if (!fragment.equals(anneauFragments.proprietaire(livre.getTitre()))) {
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("autre-fragment");
+            send(reply);
+            return;
+        }
+
+        quandPret(catalogue.ajouter(Collections.singletonList(livre)), bilan -> {
+            if (bilan.getAjoutes().isEmpty()) {
+                reply.setPerformative(ACLMessage.FAILURE);
+                reply.setContent("livre-existant");
+                send(reply);
+                return;
+            }
+            Livre ajoute = bilan.getAjoutes().get(0);
+            if (journal != null) {
+                journal.enregistrerAjout(ajoute);
+            }
+            if (!projete) {
+                moteur.ajouter(ajoute);
+                index.ajouter(ajoute);
+            }
+            diffusion.stockModifie(ajoute, 0, ajoute.getQuantiteDisponible());
+            if (replication != null) {
+                replication.compositionModifiee(bilan);
+            }
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("livre-ajoute:" + bilan.getVersion());
+            System.out.println(getLocalName() + " a ajouté le livre " + ajoute + " au catalogue (" + bilan + ")");
+            envoyerApresJournal(reply);
+        });
     }
 
-    // Comportement pour répondre aux demandes des utilisateurs
-    private class RepondreDemandesDisponibilite extends CyclicBehaviour {
-        @Override
-        public void action() {
-            // Traiter différents types de messages
-            MessageTemplate mt1 = MessageTemplate.MatchPerformative(ACLMessage.REQUEST);
-            MessageTemplate mt2 = MessageTemplate.MatchPerformative(ACLMessage.CFP);
-            MessageTemplate mt3 = MessageTemplate.MatchPerformative(ACLMessage.ACCEPT_PROPOSAL);
-            MessageTemplate mt4 = MessageTemplate.MatchPerformative(ACLMessage.CONFIRM);
-            MessageTemplate mt5 = MessageTemplate.MatchPerformative(ACLMessage.AGREE);
-
-            MessageTemplate mt = MessageTemplate.or(
-                MessageTemplate.or(mt1, mt2),
-                MessageTemplate.or(MessageTemplate.or(mt3, mt4), mt5)
-            );
-
-            ACLMessage msg = myAgent.receive(mt);
-
-            if (msg != null) {
-                String sender = msg.getSender().getLocalName();
-
-                if (msg.getPerformative() == ACLMessage.REQUEST) {
-                    // Demande de disponibilité d'un livre simple
-                    try {
-                        String titreDemande = msg.getContent();
-                        demandes++;
-
-                        System.out.println(getLocalName() + " a reçu une demande pour le livre: " + titreDemande);
-                        informerObservateur("BIBLIO_INFO:Recherche du livre \"" + titreDemande + "\" demandé par " + sender);
-
-                        // Simuler un délai de recherche
-                        try {
-                            Thread.sleep(1000);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
-                        // Indiquer à l'utilisateur qu'on recherche son livre
-                        ACLMessage reply = msg.createReply();
-                        reply.setPerformative(ACLMessage.INFORM);
-                        reply.setContent("recherche-en-cours");
-                        reply.setConversationId("recherche-livre");
-                        myAgent.send(reply);
-
-                        // Faire la recherche et préparer la réponse
-                        Livre livreFound = catalogue.get(titreDemande);
-
-                        try {
-                            Thread.sleep(2000); // Délai supplémentaire pour la recherche
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
-                        ACLMessage reponse = new ACLMessage(ACLMessage.INFORM);
-                        reponse.addReceiver(msg.getSender());
-                        reponse.setConversationId("resultat-recherche");
-
-                        if (livreFound != null && livreFound.estDisponible()) {
-                            reponse.setPerformative(ACLMessage.INFORM);
-                            reponse.setContent("livre-disponible");
-                            System.out.println(getLocalName() + " a trouvé le livre " + titreDemande);
-                            informerObservateur("BIBLIO_INFO:Le livre \"" + titreDemande + "\" est disponible pour " + sender);
-                        } else {
-                            reponse.setPerformative(ACLMessage.FAILURE);
-                            reponse.setContent("livre-non-disponible");
-                            System.out.println(getLocalName() + " n'a pas le livre " + titreDemande + " ou il n'est plus disponible");
-                            informerObservateur("BIBLIO_INFO:Le livre \"" + titreDemande + "\" n'est pas disponible pour " + sender);
-                        }
-
-                        myAgent.send(reponse);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+    // Retrait d'un titre du catalogue en service (REQUEST, conversation "retrait-livre", contenu "titre").
+    // Les réservations et emprunts en cours restent honorés sur le livre retiré
+    private void traiterRetraitLivre(ACLMessage msg) {
+        String titre = msg.getContent();
+        ACLMessage reply = msg.createReply();
+        if (!catalogue.accepteRetraits()) {
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("retrait-non-supporte");
+            send(reply);
+            return;
+        }
+
+        quandPret(catalogue.retirer(Collections.singletonList(titre)), bilan -> {
+            if (bilan.getRetires().isEmpty()) {
+                reply.setPerformative(ACLMessage.FAILURE);
+                reply.setContent("livre-non-trouve");
+                send(reply);
+                return;
+            }
+            Livre retire = bilan.getRetires().get(0);
+            if (journal != null) {
+                journal.enregistrer(JournalCatalogue.Operation.RETRAIT, titre, 0, () -> true);
+            }
+            index.retirer(retire);
+            moteur.retirer(retire);
+            diffusion.stockModifie(retire, retire.getQuantiteDisponible(), 0);
+            if (replication != null) {
+                replication.compositionModifiee(bilan);
+            }
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("livre-retire:" + bilan.getVersion());
+            System.out.println(getLocalName() + " a retiré le livre " + titre + " du catalogue (" + bilan + ")");
+            envoyerApresJournal(reply);
+        });
+    }
+
+    // Rechargement du catalogue depuis un fichier CSV/TSV sans arrêt de l'agent (REQUEST,
+    // conversation "recharger-catalogue", contenu : chemin du fichier, relatif au répertoire des
+    // imports dont il ne peut sortir). Le fichier est lu et la nouvelle version préparée hors du
+    // thread de l'agent ; les demandes continuent d'être servies sur l'ancienne version jusqu'à la bascule
+    private void traiterRechargement(ACLMessage msg) {
+        String sender = msg.getSender().getLocalName();
+        ACLMessage reply = msg.createReply();
+        if (!catalogue.accepteRetraits()) {
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("rechargement-non-supporte");
+            send(reply);
+            return;
+        }
+        File fichier = fichierImport(msg.getContent());
+        if (fichier == null) {
+            System.out.println(getLocalName() + " refuse de recharger " + msg.getContent() + ", hors de " + repertoireImports);
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("chemin-interdit");
+            send(reply);
+            return;
+        }
+        if (!fichier.isFile()) {
+            reply.setPerformative(ACLMessage.FAILURE);
+            reply.setContent("fichier-introuvable");
+            send(reply);
+            return;
+        }
+        ACLMessage accord = msg.createReply();
+        accord.setPerformative(ACLMessage.AGREE);
+        accord.setContent("rechargement-en-cours");
+        send(accord);
+
+        CompletableFuture<CataloguePartitionne.Modification> rechargement = CompletableFuture.supplyAsync(() -> {
+            Map<String, Livre> livres = new HashMap<>();
+            try {
+                importerCatalogue(fichier, livres);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return livres.values();
+        }).thenCompose(catalogue::recharger).thenApply(bilan -> {
+            // Les ajouts et retraits du rechargement ne sont pas journalisés un à un : l'instantané
+            // écrit avant la réponse les rend durables
+            if (journal != null) {
+                try {
+                    ecrireInstantane();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return bilan;
+        });
+        quandPret(rechargement.handle((bilan, erreur) -> {
+            if (erreur != null) {
+                erreur.printStackTrace();
+            }
+            return bilan;
+        }), bilan -> {
+            if (bilan == null) {
+                reply.setPerformative(ACLMessage.FAILURE);
+                reply.setContent("rechargement-echoue");
+                send(reply);
+                return;
+            }
+            // Les titres ajoutés sont indexés, donc observés, avant d'annoncer leur stock : aucune
+            // variation ne manque à la diffusion en attendant la réindexation
+            for (Livre livre : bilan.getRetires()) {
+                if (!projete) {
+                    index.retirer(livre);
+                    moteur.retirer(livre);
+                }
+                diffusion.stockModifie(livre, livre.getQuantiteDisponible(), 0);
+            }
+            for (Livre livre : bilan.getAjoutes()) {
+                if (!projete) {
+                    moteur.ajouter(livre);
+                    index.ajouter(livre);
                 }
-                else if (msg.getPerformative() == ACLMessage.CFP) {
-                    // Demande d'emprunt d'un livre
-                    try {
-                        String titreDemande = msg.getContent();
-                        int nombreExemplaires = 1;
-
-                        // Vérifier si le message contient le nombre d'exemplaires
-                        if (titreDemande.contains(":")) {
-                            String[] parts = titreDemande.split(":");
-                            titreDemande = parts[0];
-                            nombreExemplaires = Integer.parseInt(parts[1]);
-                        }
-
-                        demandes++;
-
-                        System.out.println(getLocalName() + " a reçu une demande d'emprunt pour " +
-                            nombreExemplaires + " exemplaire(s) du livre: " + titreDemande);
-                        informerObservateur("BIBLIO_INFO:Recherche pour emprunt de " + nombreExemplaires +
-                            " exemplaire(s) du livre \"" + titreDemande + "\" par " + sender);
-
-                        // Simuler un délai de recherche
-                        try {
-                            Thread.sleep(1000);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
-                        // Indiquer à l'utilisateur qu'on recherche son livre
-                        ACLMessage reply = msg.createReply();
-                        reply.setPerformative(ACLMessage.INFORM);
-                        reply.setContent("recherche-en-cours");
-                        reply.setConversationId("recherche-emprunt");
-                        myAgent.send(reply);
-
-                        // Faire la recherche et préparer la réponse
-                        Livre livreFound = catalogue.get(titreDemande);
-
-                        try {
-                            Thread.sleep(2000); // Délai supplémentaire pour la recherche
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
-                        ACLMessage reponse = msg.createReply();
-
-                        if (livreFound != null && livreFound.estDisponible(nombreExemplaires)) {
-                            reponse.setPerformative(ACLMessage.PROPOSE);
-                            reponse.setContent("livre-disponible:" + livreFound.getDureeEmpruntMax());
-                            System.out.println(getLocalName() + " a trouvé " + nombreExemplaires +
-                                " exemplaire(s) du livre " + titreDemande);
-                            informerObservateur("BIBLIO_INFO:Le livre \"" + titreDemande + "\" est disponible pour l'emprunt par " + sender +
-                                " (durée max: " + livreFound.getDureeEmpruntMax() + " jours)");
-                        } else {
-                            reponse.setPerformative(ACLMessage.REFUSE);
-                            if (livreFound == null) {
-                                reponse.setContent("livre-non-trouve");
-                                System.out.println(getLocalName() + " n'a pas le livre " + titreDemande);
-                                informerObservateur("BIBLIO_INFO:Le livre \"" + titreDemande + "\" n'existe pas dans le catalogue pour " + sender);
-                            } else {
-                                reponse.setContent("exemplaires-insuffisants:" + livreFound.getQuantiteDisponible());
-                                System.out.println(getLocalName() + " n'a pas assez d'exemplaires du livre " + titreDemande);
-                                informerObservateur("BIBLIO_INFO:Pas assez d'exemplaires du livre \"" + titreDemande +
-                                    "\" pour " + sender + " (demandé: " + nombreExemplaires +
-                                    ", disponible: " + livreFound.getQuantiteDisponible() + ")");
-                            }
-                        }
-
-                        myAgent.send(reponse);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+                diffusion.stockModifie(livre, 0, livre.getQuantiteDisponible());
+                reveillerFileAttente(livre.getTitre());
+            }
+            // Titres conservés dont le stock a été porté au nombre d'exemplaires du fichier
+            for (Map.Entry<Livre, Integer> entry : bilan.getStocksModifies().entrySet()) {
+                Livre livre = entry.getKey();
+                diffusion.stockModifie(livre, entry.getValue(), livre.getQuantiteDisponible());
+                reveillerFileAttente(livre.getTitre());
+            }
+            if (replication != null) {
+                replication.compositionModifiee(bilan);
+            }
+            reindexer();
+
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("catalogue-recharge:version=" + bilan.getVersion() + ";ajoutes=" + bilan.getAjoutes().size() +
+                ";retires=" + bilan.getRetires().size() + ";modifies=" + bilan.getModifies().size() +
+                ";stocks=" + bilan.getStocksModifies().size());
+            send(reply);
+            System.out.println(getLocalName() + " a rechargé son catalogue depuis " + fichier + " pour " + sender +
+                " : " + bilan);
+            informerObservateur(new Evenement(Type.CATALOGUE, null, null, catalogue.taille(), 0, 0));
+        });
+    }
+
+    // Fichier désigné relativement au répertoire des imports, liens et ".." résolus, ou null s'il
+    // n'y est pas
+    private File fichierImport(String chemin) {
+        if (chemin == null || repertoireImports == null) {
+            return null;
+        }
+        try {
+            File fichier = new File(repertoireImports, chemin).getCanonicalFile();
+            return fichier.toPath().startsWith(repertoireImports.toPath()) ? fichier : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Reconstruit hors du thread de l'agent les index secondaires et le moteur de recherche sur un
+    // instantané du catalogue, puis les remplace ; recommence si le catalogue a changé entre-temps.
+    // Les livres restent observés par l'index en service, qui relaie les variations de stock au
+    // nouveau jusqu'à la bascule : ni les tranches du nouvel index ni la diffusion n'en perdent.
+    private void reindexer() {
+        if (projete) {
+            return;
+        }
+        CataloguePartitionne.Instantane instantane = catalogue.instantane();
+        MoteurRecherche nouveauMoteur = new MoteurRecherche();
+        IndexCatalogue nouvelIndex = index.preparerRemplacant();
+        indexEnPreparation = nouvelIndex;
+        quandPret(CompletableFuture.runAsync(() -> instantane.pourChaqueLivre(livre -> {
+            nouveauMoteur.ajouter(livre);
+            nouvelIndex.ajouter(livre);
+        })), v -> {
+            // Une réindexation plus récente a pris la suite de celle-ci
+            if (indexEnPreparation != nouvelIndex) {
+                return;
+            }
+            if (catalogue.getVersion() != instantane.getVersion()) {
+                reindexer();
+                return;
+            }
+            index.ceder(nouvelIndex);
+            indexEnPreparation = null;
+            moteur = nouveauMoteur;
+            index = nouvelIndex;
+            System.out.println(getLocalName() + " a réindexé " + nouvelIndex.taille() + " livre(s) de la version " +
+                instantane.getVersion());
+        });
+    }
+
+    // Inscription sur la file d'attente d'un livre (SUBSCRIBE, conversation "attente-livre", contenu "titre:n")
+    private void traiterInscriptionAttente(ACLMessage msg) {
+        String sender = msg.getSender().getLocalName();
+        String[] parts = msg.getContent().split(":");
+        String titre = parts[0];
+        int nombre = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+
+        quandPret(catalogue.obtenir(titre), livre -> {
+            ACLMessage reply = msg.createReply();
+            if (livre == null) {
+                reply.setPerformative(ACLMessage.REFUSE);
+                reply.setContent("livre-non-trouve");
+                send(reply);
+                return;
+            }
+
+            int position = attente.inscrire(msg, titre, nombre);
+            reply.setPerformative(ACLMessage.AGREE);
+            reply.setContent("inscrit:" + position);
+            send(reply);
+            System.out.println(getLocalName() + " inscrit " + sender + " en position " + position +
+                " de la file d'attente du livre " + titre);
+            informerObservateur(new Evenement(Type.ATTENTE, sender, titre, position));
+
+            // Des exemplaires sont peut-être déjà disponibles
+            servirFileAttente(livre);
+        });
+    }
+
+    // Désinscription de la file d'attente (CANCEL, conversation "attente-livre", contenu "titre")
+    private void traiterDesinscriptionAttente(ACLMessage msg) {
+        String titre = msg.getContent().split(":")[0];
+        boolean inscrit = attente.annuler(msg.getSender().getName(), titre);
+
+        ACLMessage reply = msg.createReply();
+        reply.setPerformative(inscrit ? ACLMessage.INFORM : ACLMessage.FAILURE);
+        reply.setContent(inscrit ? "desinscrit" : "non-inscrit");
+        send(reply);
+    }
+
+    /**
+     * Sert la file d'attente d'un titre dont des exemplaires viennent de revenir en rayon.
+     */
+    private void reveillerFileAttente(String titre) {
+        if (attente.estVide(titre)) {
+            return;
+        }
+        quandPret(catalogue.obtenir(titre), livre -> {
+            if (livre != null) {
+                servirFileAttente(livre);
+            }
+        });
+    }
+
+    /**
+     * Réserve des exemplaires pour les premiers inscrits, dans l'ordre, tant que le stock le permet.
+     * Chaque inscrit servi reçoit un INFORM "livre-disponible:<durée>" et dispose de la durée d'un
+     * bail pour accepter (ACCEPT_PROPOSAL), comme après un PROPOSE.
+     */
+    private void servirFileAttente(Livre livre) {
+        String titre = livre.getTitre();
+        FileAttente.Inscription tete;
+        while ((tete = attente.tete(titre)) != null) {
+            if (baux.placer(tete.emprunteur, livre, tete.nombre) == null) {
+                return;
+            }
+            attente.servir(titre);
+
+            ACLMessage notification = tete.abonnement.createReply();
+            notification.setPerformative(ACLMessage.INFORM);
+            notification.setContent("livre-disponible:" + livre.getDureeEmpruntMax());
+            send(notification);
+
+            String abonne = tete.abonnement.getSender().getLocalName();
+            System.out.println(getLocalName() + " réserve " + tete.nombre + " exemplaire(s) du livre " + titre +
+                " pour " + abonne + " (file d'attente)");
+            informerObservateur(new Evenement(Type.RESERVE_POUR_ATTENTE, abonne, titre));
+        }
+    }
+
+    // Réception d'une liste de livres à rechercher (CONFIRM), codée en binaire ou sérialisée
+    private void traiterRechercheListe(ACLMessage msg) throws UnreadableException, IOException {
+        String sender = msg.getSender().getLocalName();
+        boolean binaire = ListeLivres.CODEC_BINAIRE.equals(msg.getUserDefinedParameter(ListeLivres.PARAMETRE_CODEC));
+        ListeLivres listeLivres = binaire ? ListeLivres.decoder(msg.getByteSequenceContent())
+            : (ListeLivres) msg.getContentObject();
+        int nombreLivres = listeLivres.getNombreLivres();
+
+        System.out.println(getLocalName() + " a reçu une demande de recherche pour une liste de " +
+            nombreLivres + " livres de " + sender);
+        informerObservateur(new Evenement(Type.RECHERCHE_LISTE, sender, null, nombreLivres));
+
+        // Informer l'utilisateur que la recherche est en cours
+        ACLMessage reply = msg.createReply();
+        reply.setPerformative(ACLMessage.INFORM);
+        reply.setContent("recherche-en-cours");
+        send(reply);
+
+        // Résultats envoyés par pages si le demandeur le souhaite (paramètre "taille-page"), en une fois sinon
+        String taillePage = msg.getUserDefinedParameter("taille-page");
+        RechercheListe recherche = new RechercheListe(msg, binaire, listeLivres.getTitres(),
+            taillePage != null ? Math.max(1, Integer.parseInt(taillePage)) : Math.max(1, nombreLivres));
+        recherchesListe.put(recherche.cle, recherche);
+
+        planifier(1000 + recherche.delaiPage(), () -> rechercherPage(recherche));
+    }
+
+    /**
+     * Recherche de liste en cours, envoyée page par page.
+     */
+    private static final class RechercheListe {
+        final ACLMessage demande;
+        final String cle;
+        final boolean binaire;
+        final List<String> titres;
+        final int taillePage;
+        int position = 0;
+        int trouves = 0;
+
+        RechercheListe(ACLMessage demande, boolean binaire, List<String> titres, int taillePage) {
+            this.demande = demande;
+            this.cle = cleRechercheListe(demande.getSender(),
+                demande.getReplyWith() != null ? demande.getReplyWith() : demande.getConversationId());
+            this.binaire = binaire;
+            this.titres = titres;
+            this.taillePage = taillePage;
+        }
+
+        int finPage() {
+            return Math.min(titres.size(), position + taillePage);
+        }
+
+        // Délai de recherche simulé : 500 ms par titre, plafonné pour les longues listes et
+        // réparti entre les pages au prorata de leur taille
+        long delaiPage() {
+            if (titres.isEmpty()) {
+                return 0;
+            }
+            return Math.min(titres.size(), DELAI_RECHERCHE_TITRES_MAX) * 500L * (finPage() - position) / titres.size();
+        }
+    }
+
+    // Un demandeur peut mener plusieurs recherches de liste à la fois : chacune a sa clé. Sans
+    // identifiant de réponse (demandeurs plus anciens), la conversation en tient lieu.
+    private static String cleRechercheListe(AID demandeur, String identifiant) {
+        return demandeur.getName() + "|" + identifiant;
+    }
+
+    private boolean estAnnulee(RechercheListe recherche) {
+        return recherchesListe.get(recherche.cle) != recherche;
+    }
+
+    // Recherche des titres de la page suivante, en parallèle
+    private void rechercherPage(RechercheListe recherche) {
+        if (estAnnulee(recherche)) {
+            return;
+        }
+        int debut = recherche.position;
+        int fin = recherche.finPage();
+        quandPret(catalogue.rechercherTous(recherche.titres.subList(debut, fin)),
+            resultat -> repondrePage(recherche, debut, fin, resultat));
+    }
+
+    private void repondrePage(RechercheListe recherche, int debut, int fin, ResultatRecherche resultat) throws IOException {
+        if (estAnnulee(recherche)) {
+            return;
+        }
+        ACLMessage msg = recherche.demande;
+        String sender = msg.getSender().getLocalName();
+        int nombreLivres = recherche.titres.size();
+        List<String> page = recherche.titres.subList(debut, fin);
+
+        // Détail titre par titre pour les listes courtes ; les longues listes n'ont que le bilan
+        if (nombreLivres <= AFFICHAGE_DETAILLE_MAX) {
+            for (String titre : page) {
+                Livre livre = resultat.getLivresTrouves().get(titre);
+                if (livre != null) {
+                    informerObservateur(new Evenement(Type.LIVRE_TROUVE, null, titre, livre.getQuantiteDisponible()));
+                } else {
+                    informerObservateur(new Evenement(Type.LIVRE_NON_TROUVE, null, titre));
                 }
-                else if (msg.getPerformative() == ACLMessage.ACCEPT_PROPOSAL) {
-                    // Acceptation de la proposition d'emprunt
-                    try {
-                        String[] parts = msg.getContent().split(":");
-                        String titreLivre = parts[0];
-                        int nombreExemplaires = Integer.parseInt(parts[1]);
-
-                        System.out.println(getLocalName() + " a reçu une acceptation d'emprunt pour " +
-                            nombreExemplaires + " exemplaire(s) du livre: " + titreLivre);
-
-                        Livre livre = catalogue.get(titreLivre);
-
-                        if (livre != null && livre.estDisponible(nombreExemplaires)) {
-                            // Mettre à jour l'inventaire
-                            livre.reduireQuantite(nombreExemplaires);
-                            emprunts++;
-
-                            ACLMessage reply = msg.createReply();
-                            reply.setPerformative(ACLMessage.INFORM);
-                            reply.setContent("emprunt-confirme:" + livre.getDureeEmpruntMax());
-
-                            informerObservateur("BIBLIO_INFO:Prête " + nombreExemplaires + " exemplaire(s) du livre \"" +
-                                titreLivre + "\" à " + sender + " pour " + livre.getDureeEmpruntMax() + " jours");
-                            informerObservateur("TRANSACTION:Emprunt de " + nombreExemplaires + " exemplaire(s) de \"" +
-                                titreLivre + "\" par " + sender + " pour " + livre.getDureeEmpruntMax() + " jours");
-
-                            myAgent.send(reply);
-                        } else {
-                            ACLMessage reply = msg.createReply();
-                            reply.setPerformative(ACLMessage.FAILURE);
-                            reply.setContent("emprunt-impossible");
-
-                            informerObservateur("BIBLIO_INFO:Ne peut plus prêter \"" + titreLivre + "\" à " + sender);
-
-                            myAgent.send(reply);
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+            }
+        }
+
+        // Envoyer la page, dans le codage de la demande ; "debut" et "fin" situent la page dans la liste
+        ACLMessage reponse = msg.createReply();
+        reponse.setPerformative(ACLMessage.INFORM);
+        if (recherche.binaire) {
+            reponse.setByteSequenceContent(resultat.encoder(page));
+            reponse.addUserDefinedParameter(ListeLivres.PARAMETRE_CODEC, ListeLivres.CODEC_BINAIRE);
+        } else {
+            reponse.setContentObject(resultat);
+        }
+        reponse.addUserDefinedParameter("debut", String.valueOf(debut));
+        reponse.addUserDefinedParameter("fin", String.valueOf(fin));
+        send(reponse);
+
+        recherche.trouves += resultat.getNombreLivresTrouves();
+        recherche.position = fin;
+        if (fin < nombreLivres) {
+            planifier(recherche.delaiPage(), () -> rechercherPage(recherche));
+            return;
+        }
+
+        recherchesListe.remove(recherche.cle);
+        if (recherche.trouves == nombreLivres) {
+            System.out.println(getLocalName() + " a trouvé tous les livres demandés par " + sender);
+            informerObservateur(new Evenement(Type.LISTE_DISPONIBLE, sender, null));
+        } else {
+            System.out.println(getLocalName() + " n'a pas trouvé tous les livres demandés par " + sender +
+                " (" + recherche.trouves + "/" + nombreLivres + ")");
+            informerObservateur(new Evenement(Type.LISTE_INCOMPLETE, sender, null, recherche.trouves, 0, nombreLivres));
+        }
+    }
+
+    // Annulation de la suite d'une recherche de liste par le demandeur (CANCEL)
+    private void annulerRechercheListe(ACLMessage msg) {
+        RechercheListe recherche = recherchesListe.remove(cleRechercheListe(msg.getSender(),
+            msg.getInReplyTo() != null ? msg.getInReplyTo() : msg.getConversationId()));
+        if (recherche != null) {
+            String sender = msg.getSender().getLocalName();
+            int restants = recherche.titres.size() - recherche.position;
+            System.out.println(getLocalName() + " arrête la recherche de liste de " + sender +
+                " (" + restants + " titre(s) non recherché(s))");
+            informerObservateur(new Evenement(Type.RECHERCHE_ANNULEE, sender, null, restants));
+        }
+    }
+
+    // Réception d'une demande d'emprunt de plusieurs livres (AGREE)
+    private void traiterEmpruntListe(ACLMessage msg) {
+        String sender = msg.getSender().getLocalName();
+
+        // Le contenu contient la liste des titres séparés par des ";"
+        String content = msg.getContent();
+        List<String> livresAEmprunter = Arrays.asList(content.split(";"));
+
+        System.out.println(getLocalName() + " a reçu une demande d'emprunt pour " +
+            livresAEmprunter.size() + " livres de " + sender);
+
+        if ("atomique".equals(msg.getUserDefinedParameter("mode"))) {
+            traiterEmpruntListeAtomique(msg, livresAEmprunter);
+            return;
+        }
+
+        // Répartir les emprunts entre les partitions puis rassembler les résultats
+        quandPret(catalogue.executerTous(livresAEmprunter, livre -> {
+            if (livre != null && emprunter(livre, 1)) {
+                return CataloguePartitionne.copier(livre);
+            }
+            return null;
+        }), livres -> confirmerEmpruntListe(msg, livresAEmprunter, livres));
+    }
+
+    /**
+     * Emprunt "tout ou rien" d'une liste (paramètre utilisateur mode=atomique) : tous les titres sont
+     * d'abord réservés, dans l'ordre alphabétique, puis l'emprunt est confirmé pour tous ou annulé
+     * pour tous. L'atomicité porte sur les titres détenus par cette bibliothécaire.
+     */
+    private void traiterEmpruntListeAtomique(ACLMessage msg, List<String> livresAEmprunter) {
+        // Regrouper les titres demandés plusieurs fois, dans un ordre déterministe
+        TreeMap<String, Integer> quantitesDemandees = new TreeMap<>();
+        for (String titre : livresAEmprunter) {
+            quantitesDemandees.merge(titre, 1, Integer::sum);
+        }
+        List<String> titres = new ArrayList<>(quantitesDemandees.keySet());
+
+        // Phase 1 : réserver chaque titre dans le thread de sa partition
+        quandPret(catalogue.executerTous(titres, livre ->
+            livre != null && livre.reserver(quantitesDemandees.get(livre.getTitre())) ? livre : null
+        ), livres -> {
+            List<String> manquants = new ArrayList<>();
+            for (int i = 0; i < titres.size(); i++) {
+                if (livres.get(i) == null) {
+                    manquants.add(titres.get(i));
                 }
-                else if (msg.getPerformative() == ACLMessage.CONFIRM) {
-                    // Réception d'une liste de livres à rechercher
-                    try {
-                        ListeLivres listeLivres = (ListeLivres) msg.getContentObject();
-                        int nombreLivres = listeLivres.getNombreLivres();
-
-                        System.out.println(getLocalName() + " a reçu une demande de recherche pour une liste de " +
-                            nombreLivres + " livres de " + sender);
-                        informerObservateur("BIBLIO_INFO:Recherche d'une liste de " + nombreLivres + " livres pour " + sender);
-
-                        // Informer l'utilisateur que la recherche est en cours
-                        ACLMessage reply = msg.createReply();
-                        reply.setPerformative(ACLMessage.INFORM);
-                        reply.setContent("recherche-en-cours");
-                        myAgent.send(reply);
-
-                        // Simuler un délai de recherche proportionnel au nombre de livres
-                        try {
-                            Thread.sleep(1000 + nombreLivres * 500);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
-                        // Rechercher les livres
-                        ResultatRecherche resultat = new ResultatRecherche();
-
-                        for (String titre : listeLivres.getTitres()) {
-                            Livre livre = catalogue.get(titre);
-                            if (livre != null && livre.estDisponible()) {
-                                resultat.ajouterLivreTrouve(titre, livre);
-                                informerObservateur("BIBLIO_INFO:Livre trouvé: \"" + titre + "\" (" +
-                                    livre.getQuantiteDisponible() + " exemplaires disponibles)");
-                            } else {
-                                resultat.ajouterLivreNonTrouve(titre);
-                                informerObservateur("BIBLIO_INFO:Livre non trouvé: \"" + titre + "\"");
-                            }
-                        }
-
-                        // Envoyer le résultat
-                        ACLMessage reponse = msg.createReply();
-                        reponse.setPerformative(ACLMessage.INFORM);
-                        reponse.setContentObject(resultat);
-
-                        if (resultat.tousLesTitresTrouves()) {
-                            System.out.println(getLocalName() + " a trouvé tous les livres demandés par " + sender);
-                            informerObservateur("BIBLIO_INFO:Tous les livres demandés par " + sender + " sont disponibles");
-                        } else {
-                            System.out.println(getLocalName() + " n'a pas trouvé tous les livres demandés par " + sender +
-                                " (" + resultat.getNombreLivresTrouves() + "/" + nombreLivres + ")");
-                            informerObservateur("BIBLIO_INFO:Seulement " + resultat.getNombreLivresTrouves() + "/" +
-                                nombreLivres + " livres trouvés pour " + sender);
-                        }
-
-                        myAgent.send(reponse);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+            }
+
+            // Phase 2 : confirmer tout, ou tout rendre au stock
+            for (int i = 0; i < titres.size(); i++) {
+                Livre livre = livres.get(i);
+                if (livre == null) {
+                    continue;
                 }
-                else if (msg.getPerformative() == ACLMessage.AGREE) {
-                    // Réception d'une demande d'emprunt de plusieurs livres
-                    try {
-                        // Le contenu contient la liste des titres séparés par des ";"
-                        String content = msg.getContent();
-                        String[] livresAEmprunter = content.split(";");
-
-                        System.out.println(getLocalName() + " a reçu une demande d'emprunt pour " +
-                            livresAEmprunter.length + " livres de " + sender);
-
-                        // Vérifier tous les livres et les emprunter
-                        boolean tousDisponibles = true;
-                        StringBuilder rapport = new StringBuilder();
-                        int dureeMin = Integer.MAX_VALUE;
-
-                        for (String titre : livresAEmprunter) {
-                            Livre livre = catalogue.get(titre);
-                            if (livre != null && livre.estDisponible()) {
-                                livre.reduireQuantite(1);
-                                emprunts++;
-                                rapport.append(titre).append(" (").append(livre.getDureeEmpruntMax()).append(" jours);");
-                                dureeMin = Math.min(dureeMin, livre.getDureeEmpruntMax());
-
-                                informerObservateur("BIBLIO_INFO:Prête le livre \"" + titre + "\" à " + sender);
-                                informerObservateur("TRANSACTION:Emprunt de \"" + titre + "\" par " + sender +
-                                    " pour " + livre.getDureeEmpruntMax() + " jours");
-                            } else {
-                                tousDisponibles = false;
-                                rapport.append(titre).append(" (non disponible);");
-
-                                informerObservateur("BIBLIO_INFO:Ne peut pas prêter le livre \"" + titre + "\" à " + sender);
-                            }
-                        }
-
-                        // Envoyer la confirmation
-                        ACLMessage reply = msg.createReply();
-
-                        if (tousDisponibles) {
-                            reply.setPerformative(ACLMessage.INFORM);
-                            reply.setContent("tous-empruntes:" + dureeMin);
-                            System.out.println(getLocalName() + " a prêté tous les livres demandés à " + sender);
-                            informerObservateur("BIBLIO_INFO:Tous les livres ont été prêtés à " + sender +
-                                " (durée: " + dureeMin + " jours)");
-                        } else {
-                            reply.setPerformative(ACLMessage.INFORM);
-                            reply.setContent("certains-empruntes:" + rapport.toString());
-                            System.out.println(getLocalName() + " n'a pas pu prêter tous les livres demandés à " + sender);
-                            informerObservateur("BIBLIO_INFO:Certains livres seulement ont été prêtés à " + sender);
-                        }
-
-                        myAgent.send(reply);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+                int nombre = quantitesDemandees.get(livre.getTitre());
+                if (manquants.isEmpty()) {
+                    confirmerReservation(livre, nombre);
+                } else {
+                    livre.liberer(nombre);
+                    reveillerFileAttente(livre.getTitre());
                 }
+            }
+            repondreEmpruntListeAtomique(msg, quantitesDemandees, livres, manquants);
+        });
+    }
+
+    private void repondreEmpruntListeAtomique(ACLMessage msg, TreeMap<String, Integer> quantitesDemandees, List<Livre> livres,
+                                              List<String> manquants) {
+        String sender = msg.getSender().getLocalName();
+        ACLMessage reply = msg.createReply();
+
+        if (!manquants.isEmpty()) {
+            StringBuilder rapport = new StringBuilder();
+            for (String titre : manquants) {
+                rapport.append(titre).append(";");
+            }
+            reply.setPerformative(ACLMessage.FAILURE);
+            reply.setContent("emprunt-annule:" + rapport);
+            send(reply);
+            System.out.println(getLocalName() + " annule l'emprunt de la liste de " + sender +
+                " (non disponibles: " + rapport + ")");
+            informerObservateur(new Evenement(Type.LISTE_ANNULEE, sender, null));
+            return;
+        }
+
+        int dureeMin = Integer.MAX_VALUE;
+        for (Livre livre : livres) {
+            int nombre = quantitesDemandees.get(livre.getTitre());
+            emprunts += nombre;
+            registre.ouvrir(msg.getSender().getName(), livre.getTitre(), nombre, livre.getDureeEmpruntMax());
+            dureeMin = Math.min(dureeMin, livre.getDureeEmpruntMax());
+            informerObservateur(new Evenement(Type.EMPRUNT_LIVRE, sender, livre.getTitre(), 0, livre.getDureeEmpruntMax()));
+        }
+
+        reply.setPerformative(ACLMessage.INFORM);
+        reply.setContent("tous-empruntes:" + dureeMin);
+        System.out.println(getLocalName() + " a prêté tous les livres demandés à " + sender + " (emprunt atomique)");
+        informerObservateur(new Evenement(Type.LISTE_PRETEE, sender, null, 0, dureeMin));
+        envoyerApresJournal(reply);
+    }
+
+    private void confirmerEmpruntListe(ACLMessage msg, List<String> livresAEmprunter, List<Livre> livres) {
+        String sender = msg.getSender().getLocalName();
+
+        // Vérifier tous les livres empruntés
+        boolean tousDisponibles = true;
+        StringBuilder rapport = new StringBuilder();
+        int dureeMin = Integer.MAX_VALUE;
+
+        for (int i = 0; i < livresAEmprunter.size(); i++) {
+            String titre = livresAEmprunter.get(i);
+            Livre livre = livres.get(i);
+            if (livre != null) {
+                emprunts++;
+                registre.ouvrir(msg.getSender().getName(), titre, 1, livre.getDureeEmpruntMax());
+                rapport.append(titre).append(" (").append(livre.getDureeEmpruntMax()).append(" jours);");
+                dureeMin = Math.min(dureeMin, livre.getDureeEmpruntMax());
+
+                informerObservateur(new Evenement(Type.PRET_LIVRE, sender, titre));
+                informerObservateur(new Evenement(Type.EMPRUNT_LIVRE, sender, titre, 0, livre.getDureeEmpruntMax()));
             } else {
-                block();
+                tousDisponibles = false;
+                rapport.append(titre).append(" (non disponible);");
+
+                informerObservateur(new Evenement(Type.PRET_LIVRE_IMPOSSIBLE, sender, titre));
             }
         }
+
+        // Envoyer la confirmation
+        ACLMessage reply = msg.createReply();
+
+        if (tousDisponibles) {
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("tous-empruntes:" + dureeMin);
+            System.out.println(getLocalName() + " a prêté tous les livres demandés à " + sender);
+            informerObservateur(new Evenement(Type.LISTE_PRETEE, sender, null, 0, dureeMin));
+        } else {
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("certains-empruntes:" + rapport.toString());
+            System.out.println(getLocalName() + " n'a pas pu prêter tous les livres demandés à " + sender);
+            informerObservateur(new Evenement(Type.LISTE_PRETEE_EN_PARTIE, sender, null));
+        }
+
+        envoyerApresJournal(reply);
+    }
+
+    // Requête sur le catalogue (QUERY_REF)
+    private void traiterRequete(ACLMessage msg) {
+        String contenu = msg.getContent();
+        if (contenu != null && contenu.startsWith(PREFIXE_RECHERCHE)) {
+            traiterRechercheApprochee(msg, contenu.substring(PREFIXE_RECHERCHE.length()));
+        } else if (contenu != null && contenu.startsWith(PREFIXE_REQUETE)) {
+            traiterRequeteCatalogue(msg, contenu.substring(PREFIXE_REQUETE.length()));
+        } else if (REQUETE_STATISTIQUES.equals(contenu)) {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("emprunts-en-cours:" + registre.enCours() + ";emprunts-en-retard:" + registre.enRetard() +
+                ";reservations-en-cours:" + baux.enCours() + ";en-attente:" + attente.enAttente());
+            send(reply);
+        } else {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+            reply.setContent("requete-inconnue");
+            send(reply);
+        }
+    }
+
+    /**
+     * Recherche approchée "recherche:<texte>" sur les titres et auteurs.
+     * La réponse liste les meilleurs résultats sous la forme "resultats:titre|auteur|exemplaires;...".
+     * Le nombre de résultats peut être fixé par le paramètre utilisateur "max-resultats".
+     */
+    private void traiterRechercheApprochee(ACLMessage msg, String texte) {
+        String sender = msg.getSender().getLocalName();
+        String max = msg.getUserDefinedParameter("max-resultats");
+        int k = max != null ? Integer.parseInt(max) : 10;
+        demandes++;
+        if (projete) {
+            refuserSansIndex(msg);
+            return;
+        }
+
+        List<MoteurRecherche.Resultat> resultats = moteur.rechercher(texte, k);
+
+        StringBuilder contenu = new StringBuilder("resultats:");
+        for (MoteurRecherche.Resultat resultat : resultats) {
+            Livre livre = resultat.getLivre();
+            contenu.append(livre.getTitre()).append("|")
+                .append(livre.getAuteur()).append("|")
+                .append(livre.getQuantiteDisponible()).append(";");
+        }
+
+        ACLMessage reply = msg.createReply();
+        reply.setPerformative(ACLMessage.INFORM);
+        reply.setContent(contenu.toString());
+        send(reply);
+
+        System.out.println(getLocalName() + " a trouvé " + resultats.size() + " résultat(s) pour la recherche \"" +
+            texte + "\" de " + sender);
+        informerObservateur(new Evenement(Type.RECHERCHE_APPROCHEE, sender, texte, resultats.size()));
+    }
+
+    // Recherche approchée et requêtes reposent sur les index secondaires, absents d'un catalogue projeté
+    private void refuserSansIndex(ACLMessage msg) {
+        ACLMessage reply = msg.createReply();
+        reply.setPerformative(ACLMessage.REFUSE);
+        reply.setContent("index-indisponible");
+        send(reply);
+    }
+
+    /**
+     * Requête multi-critères "requete:auteur=X;dureeMin=21;exemplairesMin=2;page=0;taille=20".
+     * La réponse contient la page demandée sous la forme "resultats:titre|auteur|exemplaires|durée;...",
+     * le curseur de la page suivante dans le paramètre utilisateur "suite" s'il y en a une (à
+     * reprendre par "apres=") et une borne du nombre de résultats dans "resultats-estimes".
+     */
+    private void traiterRequeteCatalogue(ACLMessage msg, String criteres) {
+        String sender = msg.getSender().getLocalName();
+        ACLMessage reply = msg.createReply();
+        demandes++;
+        if (projete) {
+            refuserSansIndex(msg);
+            return;
+        }
+
+        RequeteCatalogue requete;
+        try {
+            requete = RequeteCatalogue.lire(criteres);
+        } catch (IllegalArgumentException e) {
+            reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+            reply.setContent("requete-invalide:" + e.getMessage());
+            send(reply);
+            return;
+        }
+
+        IndexCatalogue.Page page = index.executer(requete);
+
+        StringBuilder contenu = new StringBuilder("resultats:");
+        for (Livre livre : page.getLivres()) {
+            contenu.append(livre.getTitre()).append("|")
+                .append(livre.getAuteur()).append("|")
+                .append(livre.getQuantiteDisponible()).append("|")
+                .append(livre.getDureeEmpruntMax()).append(";");
+        }
+
+        reply.setPerformative(ACLMessage.INFORM);
+        reply.setContent(contenu.toString());
+        if (page.getSuite() != null) {
+            reply.addUserDefinedParameter("suite", page.getSuite());
+        }
+        reply.addUserDefinedParameter("resultats-estimes", String.valueOf(page.getEstimation()));
+        send(reply);
+
+        System.out.println(getLocalName() + " a exécuté " + requete + " pour " + sender + " via l'index " +
+            page.getIndexUtilise() + " : " + page.getLivres().size() + " résultat(s) sur au plus " + page.getEstimation());
+        informerObservateur(new Evenement(Type.REQUETE, sender, null, page.getLivres().size()));
     }
 }
@@ -0,0 +1,144 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.TickerBehaviour;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.ListeLivres;
+import model.Livre;
+import model.ObservateurStock;
+
+/**
+ * Diffusion côté bibliothécaire des changements de disponibilité vers les proxys
+ * ({@link ProxyBibliotheque}) qui gardent les réponses en cache.
+ *
+ * Seuls les passages d'un livre de disponible à épuisé (ou l'inverse) sont retenus. Ils sont
+ * regroupés et envoyés toutes les 50 ms aux proxys abonnés (SUBSCRIBE, conversation
+ * "disponibilite") dans un message numéroté : le paramètre "version" augmente de un à chaque
+ * envoi, ce qui permet au proxy de détecter une invalidation manquée, et le paramètre "depuis"
+ * donne l'heure du plus ancien changement du lot. Les réponses aux proxys portent la version
+ * courante au moment de la demande.
+ */
+class DiffusionDisponibilite implements ObservateurStock {
+    static final String CONVERSATION = "disponibilite";
+    static final String CONVERSATION_INVALIDATION = "invalidation-disponibilite";
+    static final String PARAMETRE_VERSION = "version";
+    static final String PARAMETRE_DEPUIS = "depuis";
+    private static final long DELAI = 50;
+
+    private final Agent agent;
+    // Proxys abonnés, modifiés et lus sur le thread de l'agent
+    private final Set<AID> abonnes = new LinkedHashSet<>();
+    private volatile boolean actif = false;
+
+    // Titres dont la disponibilité a changé depuis le dernier envoi, avec l'heure du premier changement
+    private final Map<String, Long> modifies = new ConcurrentHashMap<>();
+    private long version = 0;
+
+    // Observateur prévenu ensuite de toutes les variations (réplication du stock), ou null
+    private volatile ObservateurStock suivant;
+
+    // Statistiques
+    private long envois = 0;
+    private long titresInvalides = 0;
+
+    DiffusionDisponibilite(Agent agent) {
+        this.agent = agent;
+    }
+
+    void demarrer() {
+        agent.addBehaviour(new TickerBehaviour(agent, DELAI) {
+            @Override
+            protected void onTick() {
+                vider();
+            }
+        });
+    }
+
+    void setSuivant(ObservateurStock suivant) {
+        this.suivant = suivant;
+    }
+
+    // Appelé par le thread qui modifie le stock (partition, bibliothécaire)
+    @Override
+    public void stockModifie(Livre livre, int ancienneQuantite, int nouvelleQuantite) {
+        if (actif && (ancienneQuantite > 0) != (nouvelleQuantite > 0)) {
+            modifies.putIfAbsent(livre.getTitre(), System.currentTimeMillis());
+        }
+        ObservateurStock observateur = suivant;
+        if (observateur != null) {
+            observateur.stockModifie(livre, ancienneQuantite, nouvelleQuantite);
+        }
+    }
+
+    /**
+     * Version courante, à joindre à une réponse calculée après cet appel.
+     */
+    long version() {
+        return version;
+    }
+
+    // Abonnement d'un proxy (SUBSCRIBE) : la réponse donne la version de départ
+    void abonner(ACLMessage msg) {
+        abonnes.add(msg.getSender());
+        actif = true;
+        ACLMessage reply = msg.createReply();
+        reply.setPerformative(ACLMessage.AGREE);
+        reply.addUserDefinedParameter(PARAMETRE_VERSION, String.valueOf(version));
+        agent.send(reply);
+    }
+
+    // Désabonnement d'un proxy (CANCEL)
+    void desabonner(ACLMessage msg) {
+        abonnes.remove(msg.getSender());
+        actif = !abonnes.isEmpty();
+    }
+
+    /**
+     * Envoie aux proxys les titres modifiés depuis le dernier envoi.
+     */
+    void vider() {
+        if (modifies.isEmpty()) {
+            return;
+        }
+        List<String> titres = new ArrayList<>(modifies.size());
+        long depuis = Long.MAX_VALUE;
+        Iterator<Map.Entry<String, Long>> it = modifies.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            titres.add(entry.getKey());
+            depuis = Math.min(depuis, entry.getValue());
+            it.remove();
+        }
+        version++;
+        if (abonnes.isEmpty()) {
+            return;
+        }
+
+        ACLMessage invalidation = new ACLMessage(ACLMessage.INFORM);
+        for (AID abonne : abonnes) {
+            invalidation.addReceiver(abonne);
+        }
+        invalidation.setConversationId(CONVERSATION_INVALIDATION);
+        invalidation.setByteSequenceContent(new ListeLivres(titres).encoder());
+        invalidation.addUserDefinedParameter(PARAMETRE_VERSION, String.valueOf(version));
+        invalidation.addUserDefinedParameter(PARAMETRE_DEPUIS, String.valueOf(depuis));
+        agent.send(invalidation);
+        envois++;
+        titresInvalides += titres.size();
+    }
+
+    String resume() {
+        return "proxys abonnés: " + abonnes.size() + ", invalidations envoyées: " + envois +
+            " (" + titresInvalides + " titres), version: " + version;
+    }
+}
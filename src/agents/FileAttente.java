@@ -0,0 +1,137 @@
+package agents;
+
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Files d'attente par titre pour les utilisateurs abonnés (SUBSCRIBE) à un livre épuisé.
+ * Lorsque des exemplaires reviennent en rayon, la tête de file est servie la première ;
+ * une demande qui ne peut pas encore être satisfaite bloque les suivantes (ordre FIFO strict).
+ *
+ * Utilisé uniquement depuis le thread de l'agent bibliothécaire.
+ */
+class FileAttente {
+    static final class Inscription {
+        final long numero;
+        final String emprunteur;
+        final String titre;
+        final int nombre;
+        final ACLMessage abonnement;
+        final long inscritA;
+
+        private Inscription(long numero, ACLMessage abonnement, String titre, int nombre) {
+            this.numero = numero;
+            this.emprunteur = abonnement.getSender().getName();
+            this.titre = titre;
+            this.nombre = nombre;
+            this.abonnement = abonnement;
+            this.inscritA = System.currentTimeMillis();
+        }
+    }
+
+    private final Map<String, ArrayDeque<Inscription>> parTitre = new HashMap<>();
+    private long prochainNumero = 1;
+
+    // Statistiques d'équité
+    private long inscriptions = 0;
+    private long servies = 0;
+    private long annulees = 0;
+    private long horsOrdre = 0;
+    private long attenteTotale = 0;
+    private long attenteMax = 0;
+    private final Map<String, Long> dernierServi = new HashMap<>();
+
+    /**
+     * Inscrit l'abonné en fin de file, ou met à jour sa demande s'il est déjà inscrit.
+     * @return la position dans la file (1 pour la tête)
+     */
+    int inscrire(ACLMessage abonnement, String titre, int nombre) {
+        ArrayDeque<Inscription> file = parTitre.computeIfAbsent(titre, t -> new ArrayDeque<>());
+        retirer(file, abonnement.getSender().getName());
+        file.addLast(new Inscription(prochainNumero++, abonnement, titre, nombre));
+        inscriptions++;
+        return file.size();
+    }
+
+    /**
+     * Désinscrit l'emprunteur de la file du titre.
+     * @return false s'il n'était pas inscrit
+     */
+    boolean annuler(String emprunteur, String titre) {
+        ArrayDeque<Inscription> file = parTitre.get(titre);
+        if (file == null || !retirer(file, emprunteur)) {
+            return false;
+        }
+        annulees++;
+        if (file.isEmpty()) {
+            parTitre.remove(titre);
+        }
+        return true;
+    }
+
+    private static boolean retirer(ArrayDeque<Inscription> file, String emprunteur) {
+        Iterator<Inscription> it = file.iterator();
+        while (it.hasNext()) {
+            if (it.next().emprunteur.equals(emprunteur)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean estVide(String titre) {
+        return !parTitre.containsKey(titre);
+    }
+
+    /**
+     * Tête de la file du titre, ou null si personne n'attend.
+     */
+    Inscription tete(String titre) {
+        ArrayDeque<Inscription> file = parTitre.get(titre);
+        return file != null ? file.peekFirst() : null;
+    }
+
+    /**
+     * Retire la tête de file une fois servie.
+     */
+    Inscription servir(String titre) {
+        ArrayDeque<Inscription> file = parTitre.get(titre);
+        Inscription inscription = file.pollFirst();
+        if (file.isEmpty()) {
+            parTitre.remove(titre);
+        }
+
+        long attente = System.currentTimeMillis() - inscription.inscritA;
+        servies++;
+        attenteTotale += attente;
+        attenteMax = Math.max(attenteMax, attente);
+        Long precedent = dernierServi.put(titre, inscription.numero);
+        if (precedent != null && precedent > inscription.numero) {
+            horsOrdre++;
+        }
+        return inscription;
+    }
+
+    int enAttente() {
+        int total = 0;
+        for (ArrayDeque<Inscription> file : parTitre.values()) {
+            total += file.size();
+        }
+        return total;
+    }
+
+    String resume() {
+        return "inscriptions: " + inscriptions +
+            ", servies: " + servies +
+            ", annulées: " + annulees +
+            ", servies hors ordre: " + horsOrdre +
+            ", attente moyenne: " + (servies == 0 ? "-" : (attenteTotale / servies) + " ms") +
+            ", attente max: " + attenteMax + " ms" +
+            ", en attente: " + enAttente();
+    }
+}
@@ -0,0 +1,147 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import model.JournalCatalogue;
+import model.Livre;
+import util.RoueTemporelle;
+
+/**
+ * Réservations temporaires ("baux") posées entre un PROPOSE et l'ACCEPT_PROPOSAL correspondant.
+ * Les exemplaires sont retirés du stock au moment de la proposition ; l'acceptation n'a plus
+ * qu'à confirmer le bail. Un bail non confirmé à temps expire via une roue temporelle et
+ * les exemplaires retournent au stock.
+ *
+ * Utilisé uniquement depuis le thread de l'agent bibliothécaire. Lorsqu'un journal est fourni,
+ * seule la confirmation d'un bail y est inscrite : les réservations ne survivent pas à un redémarrage.
+ */
+class GestionnaireBaux {
+    static final class Bail {
+        final String emprunteur;
+        final String titre;
+        final int nombre;
+        final Livre livre;
+        private RoueTemporelle.Echeance<Bail> echeance;
+
+        private Bail(String emprunteur, Livre livre, int nombre) {
+            this.emprunteur = emprunteur;
+            this.titre = livre.getTitre();
+            this.nombre = nombre;
+            this.livre = livre;
+        }
+    }
+
+    private final Map<String, Bail> baux = new HashMap<>();
+    private final RoueTemporelle<Bail> roue;
+    private final long dureeBail;
+    private final JournalCatalogue journal;
+
+    // Statistiques
+    private long places = 0;
+    private long honores = 0;
+    private long expires = 0;
+    private long manques = 0;
+
+    GestionnaireBaux(long dureeBail, long dureeTick, JournalCatalogue journal) {
+        this.dureeBail = dureeBail;
+        this.journal = journal;
+        this.roue = new RoueTemporelle<>(512, dureeTick, System.currentTimeMillis());
+    }
+
+    private static String cle(String emprunteur, String titre) {
+        return emprunteur + "|" + titre;
+    }
+
+    /**
+     * Réserve les exemplaires et pose un bail au nom de l'emprunteur.
+     * @return le bail, ou null si le stock ne suffit pas
+     */
+    Bail placer(String emprunteur, Livre livre, int nombre) {
+        // Une nouvelle proposition pour le même livre remplace la précédente
+        Bail ancien = baux.remove(cle(emprunteur, livre.getTitre()));
+        if (ancien != null) {
+            ancien.echeance.annuler();
+            ancien.livre.liberer(ancien.nombre);
+        }
+
+        if (!livre.reserver(nombre)) {
+            return null;
+        }
+
+        Bail bail = new Bail(emprunteur, livre, nombre);
+        bail.echeance = roue.planifier(bail, System.currentTimeMillis() + dureeBail);
+        baux.put(cle(emprunteur, bail.titre), bail);
+        places++;
+        return bail;
+    }
+
+    /**
+     * Confirme le bail de l'emprunteur pour ce livre.
+     * @return le bail confirmé, ou null s'il a expiré ou ne couvre pas le nombre demandé
+     */
+    Bail honorer(String emprunteur, String titre, int nombre) {
+        Bail bail = baux.remove(cle(emprunteur, titre));
+        if (bail == null) {
+            manques++;
+            return null;
+        }
+        bail.echeance.annuler();
+        if (nombre > bail.nombre) {
+            bail.livre.liberer(bail.nombre);
+            manques++;
+            return null;
+        }
+        if (journal != null) {
+            journal.enregistrer(JournalCatalogue.Operation.EMPRUNT, titre, nombre, () -> {
+                bail.livre.confirmer(nombre);
+                return true;
+            });
+        } else {
+            bail.livre.confirmer(nombre);
+        }
+        if (nombre < bail.nombre) {
+            bail.livre.liberer(bail.nombre - nombre);
+        }
+        honores++;
+        return bail;
+    }
+
+    /**
+     * Fait expirer les baux échus et rend leurs exemplaires au stock, puis les remet un à un à
+     * surExpiration. Tous les baux échus sont retirés avant le premier appel : surExpiration peut
+     * poser de nouveaux baux, y compris pour un emprunteur dont le bail vient d'expirer.
+     */
+    int expirer(Consumer<Bail> surExpiration) {
+        List<Bail> echus = new ArrayList<>();
+        roue.avancer(System.currentTimeMillis(), bail -> {
+            baux.remove(cle(bail.emprunteur, bail.titre), bail);
+            bail.livre.liberer(bail.nombre);
+            expires++;
+            echus.add(bail);
+        });
+        for (Bail bail : echus) {
+            surExpiration.accept(bail);
+        }
+        return echus.size();
+    }
+
+    int enCours() {
+        return baux.size();
+    }
+
+    String resume() {
+        return "baux posés: " + places +
+            ", honorés: " + honores + " (" + pourcentage(honores, places) + ")" +
+            ", expirés: " + expires + " (" + pourcentage(expires, places) + ")" +
+            ", acceptations sans bail: " + manques +
+            ", en cours: " + baux.size();
+    }
+
+    private static String pourcentage(long valeur, long total) {
+        return total == 0 ? "-" : String.format("%.1f%%", 100.0 * valeur / total);
+    }
+}
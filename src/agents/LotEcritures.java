@@ -0,0 +1,148 @@
+package agents;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Codage binaire des écritures qu'un proxy relaie en lot à une bibliothécaire (PROPAGATE,
+ * conversation "lot-ecritures").
+ *
+ * Seuls les champs lus par les protocoles d'écriture voyagent : performative, expéditeur,
+ * conversation, identifiants de réponse, contenu et paramètres utilisateur. La bibliothécaire
+ * reconstruit des messages ordinaires ; rien n'est désérialisé par Java, et un lot mal formé est
+ * refusé en bloc par une IOException.
+ */
+final class LotEcritures {
+    private static final int VERSION = 1;
+
+    // Contenu absent, texte ou suite d'octets
+    private static final int SANS_CONTENU = 0;
+    private static final int CONTENU_TEXTE = 1;
+    private static final int CONTENU_OCTETS = 2;
+
+    private LotEcritures() {
+    }
+
+    static byte[] encoder(List<ACLMessage> ecritures) {
+        ByteArrayOutputStream octets = new ByteArrayOutputStream(64 + ecritures.size() * 128);
+        try (DataOutputStream out = new DataOutputStream(octets)) {
+            out.writeByte(VERSION);
+            out.writeInt(ecritures.size());
+            for (ACLMessage msg : ecritures) {
+                out.writeByte(msg.getPerformative());
+                ecrireTexte(out, msg.getSender().getName());
+                ecrireTexte(out, msg.getConversationId());
+                ecrireTexte(out, msg.getReplyWith());
+                ecrireTexte(out, msg.getInReplyTo());
+                if (msg.hasByteSequenceContent()) {
+                    out.writeByte(CONTENU_OCTETS);
+                    ecrireOctets(out, msg.getByteSequenceContent());
+                } else if (msg.getContent() != null) {
+                    out.writeByte(CONTENU_TEXTE);
+                    ecrireTexte(out, msg.getContent());
+                } else {
+                    out.writeByte(SANS_CONTENU);
+                }
+                Map<Object, Object> parametres = msg.getAllUserDefinedParameters();
+                out.writeInt(parametres.size());
+                for (Map.Entry<Object, Object> parametre : parametres.entrySet()) {
+                    ecrireTexte(out, String.valueOf(parametre.getKey()));
+                    ecrireTexte(out, String.valueOf(parametre.getValue()));
+                }
+            }
+        } catch (IOException e) {
+            // Un ByteArrayOutputStream ne lève pas d'IOException
+            throw new IllegalStateException(e);
+        }
+        return octets.toByteArray();
+    }
+
+    static List<ACLMessage> decoder(byte[] contenu) throws IOException {
+        if (contenu == null) {
+            throw new IOException("Lot d'écritures vide");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(contenu));
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Version de lot d'écritures inconnue: " + version);
+        }
+        int nombre = lireLongueur(in);
+        List<ACLMessage> ecritures = new ArrayList<>(nombre);
+        for (int i = 0; i < nombre; i++) {
+            ACLMessage msg = new ACLMessage(in.readByte());
+            String expediteur = lireTexte(in);
+            if (expediteur == null) {
+                throw new IOException("Écriture sans expéditeur");
+            }
+            msg.setSender(new AID(expediteur, AID.ISGUID));
+            msg.setConversationId(lireTexte(in));
+            msg.setReplyWith(lireTexte(in));
+            msg.setInReplyTo(lireTexte(in));
+            int typeContenu = in.readUnsignedByte();
+            if (typeContenu == CONTENU_OCTETS) {
+                msg.setByteSequenceContent(lireOctets(in));
+            } else if (typeContenu == CONTENU_TEXTE) {
+                msg.setContent(lireTexte(in));
+            } else if (typeContenu != SANS_CONTENU) {
+                throw new IOException("Contenu d'écriture inconnu: " + typeContenu);
+            }
+            int parametres = lireLongueur(in);
+            for (int p = 0; p < parametres; p++) {
+                msg.addUserDefinedParameter(lireTexte(in), lireTexte(in));
+            }
+            ecritures.add(msg);
+        }
+        return ecritures;
+    }
+
+    // Texte : longueur en octets (-1 pour null) puis UTF-8
+    private static void ecrireTexte(DataOutputStream out, String texte) throws IOException {
+        ecrireOctets(out, texte == null ? null : texte.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String lireTexte(DataInputStream in) throws IOException {
+        byte[] octets = lireOctets(in);
+        return octets == null ? null : new String(octets, StandardCharsets.UTF_8);
+    }
+
+    private static void ecrireOctets(DataOutputStream out, byte[] octets) throws IOException {
+        if (octets == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(octets.length);
+            out.write(octets);
+        }
+    }
+
+    private static byte[] lireOctets(DataInputStream in) throws IOException {
+        int longueur = in.readInt();
+        if (longueur == -1) {
+            return null;
+        }
+        if (longueur < 0 || longueur > in.available()) {
+            throw new IOException("Lot d'écritures invalide: champ de " + longueur + " octets");
+        }
+        byte[] octets = new byte[longueur];
+        in.readFully(octets);
+        return octets;
+    }
+
+    // Nombre d'éléments annoncé, borné par ce qui reste à lire
+    private static int lireLongueur(DataInputStream in) throws IOException {
+        int nombre = in.readInt();
+        if (nombre < 0 || nombre > in.available()) {
+            throw new IOException("Lot d'écritures invalide: " + nombre + " éléments");
+        }
+        return nombre;
+    }
+}
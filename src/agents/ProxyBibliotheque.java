@@ -0,0 +1,430 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.TickerBehaviour;
+import jade.domain.DFService;
+import jade.domain.FIPAException;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.lang.acl.ACLMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.ListeLivres;
+
+/**
+ * ProxyBibliotheque - Agent relais placé dans le conteneur des utilisateurs
+ * Architecture: Réactive avec mémoire
+ * Objectif: Répondre sur place aux demandes de disponibilité et regrouper les écritures
+ * destinées aux bibliothécaires
+ *
+ * Les demandes de disponibilité (REQUEST, protocole de {@link UserSimple}) sont servies depuis
+ * un cache. En cas d'absence, une seule question (QUERY_IF) part vers la bibliothécaire, quel que
+ * soit le nombre d'utilisateurs qui attendent le même titre. Le cache est tenu à jour par les
+ * invalidations numérotées que la bibliothécaire envoie lorsqu'un livre devient disponible ou
+ * épuisé ({@link DiffusionDisponibilite}). Une réponse n'est gardée que si sa version n'est pas
+ * antérieure à la dernière invalidation reçue ; une invalidation manquée vide le cache de cette
+ * bibliothécaire. Une entrée reste au plus "ttl" ms, au cas où les invalidations n'arriveraient plus.
+ * Une question restée sans réponse "delai" ms est abandonnée : les utilisateurs qui l'attendaient
+ * reçoivent un FAILURE "bibliothecaire-injoignable", comme lorsque l'annuaire est inaccessible.
+ *
+ * Les écritures (CFP, ACCEPT_PROPOSAL, AGREE "emprunt-liste", retours) adressées au proxy avec le
+ * paramètre "destinataire" sont regroupées par bibliothécaire et relayées en un seul message
+ * (PROPAGATE, conversation "lot-ecritures", codage {@link LotEcritures}) toutes les "lot" ms ;
+ * la bibliothécaire, qui n'accepte de lots que des proxys enregistrés au DF, répond directement
+ * aux utilisateurs.
+ */
+public class ProxyBibliotheque extends Agent {
+    static final String SERVICE = "proxy-bibliotheque";
+    static final String PROPRIETE_CONTENEUR = "conteneur";
+    static final String CONVERSATION_LOT = "lot-ecritures";
+    static final String PARAMETRE_DESTINATAIRE = "destinataire";
+    private static final int TAILLE_LOT = 64;
+
+    // Réponse d'une bibliothécaire gardée en cache
+    private static final class Entree {
+        final AID source;
+        final boolean disponible;
+        final long expiration;
+
+        Entree(AID source, boolean disponible, long expiration) {
+            this.source = source;
+            this.disponible = disponible;
+            this.expiration = expiration;
+        }
+    }
+
+    // Bibliothécaires et leur charge, tenus à jour par abonnement au DF
+    private AnnuaireBibliotheque annuaire;
+
+    // Réponses gardées, les moins récemment lues étant retirées au-delà de la capacité
+    private Map<String, Entree> cache;
+    private long ttl;
+
+    // Dernière version d'invalidation reçue de chaque bibliothécaire (-1 : abonnement en attente)
+    private final Map<AID, Long> versions = new HashMap<>();
+
+    // Question posée à une bibliothécaire et demandes d'utilisateurs qui attendent sa réponse
+    private static final class Question {
+        final long echeance;
+        final List<ACLMessage> demandes = new ArrayList<>();
+
+        Question(long echeance) {
+            this.echeance = echeance;
+        }
+    }
+
+    // Questions en attente de réponse, par titre
+    private final Map<String, Question> enVol = new HashMap<>();
+    private long delai;
+
+    // Écritures en attente d'envoi, par bibliothécaire
+    private final Map<AID, ArrayList<ACLMessage>> lots = new LinkedHashMap<>();
+
+    // Statistiques
+    private long lectures = 0;
+    private long succes = 0;
+    private long fusionnees = 0;
+    private long questions = 0;
+    private long questionsExpirees = 0;
+    private long nonGardees = 0;
+    private long ecritures = 0;
+    private long lotsEnvoyes = 0;
+    private long invalidations = 0;
+    private long titresInvalides = 0;
+    private long pertes = 0;
+    private long delaiInvalidationTotal = 0;
+    private long delaiInvalidationMax = 0;
+
+    @Override
+    protected void setup() {
+        int capacite = Integer.parseInt(parametre("cache", "10000"));
+        ttl = Long.parseLong(parametre("ttl", "5000"));
+        delai = Long.parseLong(parametre("delai", "5000"));
+        cache = new LinkedHashMap<String, Entree>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entree> eldest) {
+                return size() > capacite;
+            }
+        };
+
+        // Enregistrement au DF : les utilisateurs cherchent le proxy de leur conteneur
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(getAID());
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(SERVICE);
+        sd.setName(getLocalName() + "-proxy");
+        sd.addProperties(new Property(PROPRIETE_CONTENEUR, here().getName()));
+        dfd.addServices(sd);
+        try {
+            DFService.register(this, dfd);
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+
+        annuaire = new AnnuaireBibliotheque(this);
+        annuaire.demarrer();
+
+        addBehaviour(new TickerBehaviour(this, Long.parseLong(parametre("lot", "20"))) {
+            @Override
+            protected void onTick() {
+                envoyerLots();
+            }
+        });
+        addBehaviour(new TickerBehaviour(this, Math.max(1, delai / 4)) {
+            @Override
+            protected void onTick() {
+                expirerQuestions();
+            }
+        });
+        addBehaviour(new Aiguilleur()
+            .enregistrer(ACLMessage.REQUEST, this::lireDisponibilite)
+            .enregistrer(ACLMessage.INFORM, DiffusionDisponibilite.CONVERSATION, this::recevoirReponse)
+            .enregistrer(ACLMessage.AGREE, DiffusionDisponibilite.CONVERSATION, this::confirmerAbonnement)
+            .enregistrer(ACLMessage.INFORM, DiffusionDisponibilite.CONVERSATION_INVALIDATION, this::invalider)
+            .enregistrer(ACLMessage.CFP, this::relayer)
+            .enregistrer(ACLMessage.ACCEPT_PROPOSAL, this::relayer)
+            .enregistrer(ACLMessage.AGREE, "emprunt-liste", this::relayer)
+            .enregistrer(ACLMessage.REQUEST, "retour-livre", this::relayer)
+            // Remerciements des utilisateurs servis par le cache
+            .enregistrer(ACLMessage.INFORM, null, msg -> { })
+            .comportement(this));
+
+        System.out.println("Proxy " + getLocalName() + " prêt dans le conteneur " + here().getName());
+    }
+
+    @Override
+    protected void takeDown() {
+        envoyerLots();
+        for (AID bibliothecaire : versions.keySet()) {
+            ACLMessage cancel = new ACLMessage(ACLMessage.CANCEL);
+            cancel.addReceiver(bibliothecaire);
+            cancel.setConversationId(DiffusionDisponibilite.CONVERSATION);
+            send(cancel);
+        }
+        annuaire.arreter();
+        try {
+            DFService.deregister(this);
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+        System.out.println("Proxy " + getLocalName() + " - " + resume());
+    }
+
+    // Lit un argument de la forme "cle=valeur" passé à la création de l'agent
+    private String parametre(String cle, String defaut) {
+        Object[] args = getArguments();
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg instanceof String && ((String) arg).startsWith(cle + "=")) {
+                    return ((String) arg).substring(cle.length() + 1);
+                }
+            }
+        }
+        return defaut;
+    }
+
+    /**
+     * Proxy du conteneur de l'agent, ou null s'il n'y en a pas.
+     */
+    static AID rechercherLocal(Agent agent) {
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(SERVICE);
+        sd.addProperties(new Property(PROPRIETE_CONTENEUR, agent.here().getName()));
+        template.addServices(sd);
+        try {
+            DFAgentDescription[] result = DFService.search(agent, template);
+            return result.length > 0 ? result[0].getName() : null;
+        } catch (FIPAException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Adresse une écriture à la bibliothécaire, par le proxy s'il y en a un.
+     */
+    static void adresser(ACLMessage msg, AID bibliothecaire, AID proxy) {
+        if (proxy == null) {
+            msg.addReceiver(bibliothecaire);
+        } else {
+            msg.addReceiver(proxy);
+            msg.addUserDefinedParameter(PARAMETRE_DESTINATAIRE, bibliothecaire.getName());
+        }
+    }
+
+    // Demande de disponibilité d'un utilisateur (REQUEST)
+    private void lireDisponibilite(ACLMessage msg) {
+        String titre = msg.getContent();
+        lectures++;
+
+        ACLMessage reply = msg.createReply();
+        reply.setPerformative(ACLMessage.INFORM);
+        reply.setContent("recherche-en-cours");
+        reply.setConversationId("recherche-livre");
+        send(reply);
+
+        Entree entree = cache.get(titre);
+        if (entree != null && entree.expiration > System.currentTimeMillis()) {
+            succes++;
+            repondre(msg, entree.disponible);
+            return;
+        }
+
+        // Une seule question par titre, les demandes suivantes attendent la même réponse
+        Question enAttente = enVol.get(titre);
+        if (enAttente != null) {
+            fusionnees++;
+            enAttente.demandes.add(msg);
+            return;
+        }
+        try {
+            if (!annuaire.disponible()) {
+                repondre(msg, false);
+                return;
+            }
+        } catch (FIPAException e) {
+            e.printStackTrace();
+            echouer(msg);
+            return;
+        }
+        AID bibliothecaire = annuaire.lecteurPour(titre);
+        abonner(bibliothecaire);
+
+        ACLMessage question = new ACLMessage(ACLMessage.QUERY_IF);
+        question.addReceiver(bibliothecaire);
+        question.setContent(titre);
+        question.setConversationId(DiffusionDisponibilite.CONVERSATION);
+        question.setReplyWith(titre);
+        send(question);
+        questions++;
+
+        enAttente = new Question(System.currentTimeMillis() + delai);
+        enAttente.demandes.add(msg);
+        enVol.put(titre, enAttente);
+    }
+
+    // Questions restées sans réponse : les demandes en attente échouent et le titre pourra être
+    // redemandé ; une réponse tardive sera encore gardée en cache
+    private void expirerQuestions() {
+        long maintenant = System.currentTimeMillis();
+        Iterator<Question> it = enVol.values().iterator();
+        while (it.hasNext()) {
+            Question question = it.next();
+            if (question.echeance <= maintenant) {
+                it.remove();
+                questionsExpirees++;
+                for (ACLMessage demande : question.demandes) {
+                    echouer(demande);
+                }
+            }
+        }
+    }
+
+    private void echouer(ACLMessage demande) {
+        ACLMessage reponse = new ACLMessage(ACLMessage.FAILURE);
+        reponse.addReceiver(demande.getSender());
+        reponse.setConversationId("resultat-recherche");
+        reponse.setContent("bibliothecaire-injoignable");
+        send(reponse);
+    }
+
+    // Abonnement aux invalidations d'une bibliothécaire, à sa première question
+    private void abonner(AID bibliothecaire) {
+        if (versions.containsKey(bibliothecaire)) {
+            return;
+        }
+        versions.put(bibliothecaire, -1L);
+        ACLMessage subscribe = new ACLMessage(ACLMessage.SUBSCRIBE);
+        subscribe.addReceiver(bibliothecaire);
+        subscribe.setConversationId(DiffusionDisponibilite.CONVERSATION);
+        send(subscribe);
+    }
+
+    private void confirmerAbonnement(ACLMessage msg) {
+        versions.put(msg.getSender(), Long.parseLong(msg.getUserDefinedParameter(DiffusionDisponibilite.PARAMETRE_VERSION)));
+    }
+
+    // Réponse d'une bibliothécaire (INFORM) : gardée si aucune invalidation plus récente n'est connue
+    private void recevoirReponse(ACLMessage msg) {
+        String titre = msg.getInReplyTo();
+        boolean disponible = "livre-disponible".equals(msg.getContent());
+        long version = Long.parseLong(msg.getUserDefinedParameter(DiffusionDisponibilite.PARAMETRE_VERSION));
+        Long connue = versions.get(msg.getSender());
+        if (connue != null && connue >= 0 && version >= connue) {
+            cache.put(titre, new Entree(msg.getSender(), disponible, System.currentTimeMillis() + ttl));
+        } else {
+            nonGardees++;
+        }
+
+        Question enAttente = enVol.remove(titre);
+        if (enAttente != null) {
+            for (ACLMessage demande : enAttente.demandes) {
+                repondre(demande, disponible);
+            }
+        }
+    }
+
+    // Invalidation numérotée d'une bibliothécaire (INFORM)
+    private void invalider(ACLMessage msg) throws IOException {
+        AID source = msg.getSender();
+        long version = Long.parseLong(msg.getUserDefinedParameter(DiffusionDisponibilite.PARAMETRE_VERSION));
+        Long connue = versions.get(source);
+        if (connue == null || connue < 0) {
+            return;
+        }
+        List<String> titres = ListeLivres.decoder(msg.getByteSequenceContent()).getTitres();
+        if (version != connue + 1) {
+            // Invalidation manquée : oublier tout ce qui vient de cette bibliothécaire
+            pertes++;
+            cache.values().removeIf(entree -> entree.source.equals(source));
+        } else {
+            for (String titre : titres) {
+                Entree entree = cache.get(titre);
+                if (entree != null && entree.source.equals(source)) {
+                    cache.remove(titre);
+                }
+            }
+        }
+        versions.put(source, version);
+
+        long delai = System.currentTimeMillis() - Long.parseLong(msg.getUserDefinedParameter(DiffusionDisponibilite.PARAMETRE_DEPUIS));
+        invalidations++;
+        titresInvalides += titres.size();
+        delaiInvalidationTotal += delai;
+        delaiInvalidationMax = Math.max(delaiInvalidationMax, delai);
+    }
+
+    private void repondre(ACLMessage demande, boolean disponible) {
+        ACLMessage reponse = new ACLMessage(disponible ? ACLMessage.INFORM : ACLMessage.FAILURE);
+        reponse.addReceiver(demande.getSender());
+        reponse.setConversationId("resultat-recherche");
+        reponse.setContent(disponible ? "livre-disponible" : "livre-non-disponible");
+        send(reponse);
+    }
+
+    // Écriture d'un utilisateur à relayer : elle garde son expéditeur pour que la réponse lui parvienne
+    private void relayer(ACLMessage msg) {
+        String destinataire = msg.getUserDefinedParameter(PARAMETRE_DESTINATAIRE);
+        if (destinataire == null) {
+            System.out.println(getLocalName() + " : écriture sans destinataire de " + msg.getSender().getLocalName());
+            return;
+        }
+        AID bibliothecaire = new AID(destinataire, AID.ISGUID);
+        msg.removeUserDefinedParameter(PARAMETRE_DESTINATAIRE);
+        msg.clearAllReceiver();
+        msg.addReceiver(bibliothecaire);
+        ecritures++;
+
+        ArrayList<ACLMessage> lot = lots.computeIfAbsent(bibliothecaire, aid -> new ArrayList<>());
+        lot.add(msg);
+        if (lot.size() >= TAILLE_LOT) {
+            envoyerLot(bibliothecaire, lot);
+            lots.remove(bibliothecaire);
+        }
+    }
+
+    private void envoyerLots() {
+        for (Map.Entry<AID, ArrayList<ACLMessage>> entry : lots.entrySet()) {
+            envoyerLot(entry.getKey(), entry.getValue());
+        }
+        lots.clear();
+    }
+
+    private void envoyerLot(AID bibliothecaire, ArrayList<ACLMessage> lot) {
+        ACLMessage propagate = new ACLMessage(ACLMessage.PROPAGATE);
+        propagate.addReceiver(bibliothecaire);
+        propagate.setConversationId(CONVERSATION_LOT);
+        propagate.setByteSequenceContent(LotEcritures.encoder(lot));
+        send(propagate);
+        lotsEnvoyes++;
+    }
+
+    /**
+     * Bilan du cache et des messages échangés avec les bibliothécaires. Sans proxy, une demande
+     * de disponibilité coûte quatre messages entre conteneurs (demande, recherche en cours,
+     * résultat, remerciement) et une écriture un message.
+     */
+    String resume() {
+        long sansProxy = 4 * lectures + ecritures;
+        long avecProxy = 2 * questions + lotsEnvoyes + invalidations + 2L * versions.size();
+        return "lectures: " + lectures + ", servies par le cache: " + succes +
+            " (" + (lectures == 0 ? 0 : 100 * succes / lectures) + "%), fusionnées: " + fusionnees +
+            ", questions: " + questions + " (" + questionsExpirees + " sans réponse)" +
+            ", réponses non gardées: " + nonGardees +
+            ", écritures: " + ecritures + " en " + lotsEnvoyes + " lots" +
+            ", invalidations: " + invalidations + " (" + titresInvalides + " titres, " + pertes + " manquées)" +
+            ", délai d'invalidation moyen/max: " + (invalidations == 0 ? 0 : delaiInvalidationTotal / invalidations) +
+            "/" + delaiInvalidationMax + " ms" +
+            ", messages entre conteneurs: " + avecProxy + " au lieu de " + sansProxy;
+    }
+}
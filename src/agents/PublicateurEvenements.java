@@ -0,0 +1,232 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.TickerBehaviour;
+import jade.domain.DFService;
+import jade.domain.FIPAException;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionInitiator;
+import jade.util.leap.Iterator;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.Evenement;
+import model.Evenement.Categorie;
+
+/**
+ * Publication des événements destinés aux agents observateurs.
+ *
+ * Les observateurs sont connus grâce à un abonnement au DF : la liste est chargée une fois au
+ * démarrage puis tenue à jour par les notifications du DF, si bien qu'une publication se réduit
+ * à un seul envoi, adressé à tous les observateurs intéressés. Un observateur peut restreindre
+ * les catégories d'événements reçues ("TRANSACTION", "BIBLIO_INFO"...) par la propriété
+ * "categories" de son service.
+ *
+ * Les événements sont regroupés : ils sont accumulés puis envoyés en un seul message par groupe
+ * d'observateurs dès que 256 événements sont en attente ou que le plus ancien attend depuis 50 ms.
+ * Un lot est encodé en binaire ({@link Evenement#encoder}) et porte le paramètre utilisateur
+ * "evenements" (nombre d'événements).
+ */
+class PublicateurEvenements {
+    static final String SERVICE = "observateur";
+    static final String PROPRIETE_CATEGORIES = "categories";
+    static final String PARAMETRE_LOT = "evenements";
+    private static final int TAILLE_LOT = 256;
+    private static final long DELAI_LOT = 50;
+
+    // Observateur et catégories d'événements acceptées (null : toutes)
+    private static final class Abonne {
+        final AID aid;
+        final EnumSet<Categorie> categories;
+
+        Abonne(AID aid, EnumSet<Categorie> categories) {
+            this.aid = aid;
+            this.categories = categories;
+        }
+
+        boolean accepte(Evenement evenement) {
+            return categories == null || categories.contains(evenement.getCategorie());
+        }
+    }
+
+    private final Agent agent;
+    private final Map<AID, Abonne> parAid = new LinkedHashMap<>();
+    // Copie immuable lue sans verrou à chaque publication
+    private volatile Abonne[] abonnes = new Abonne[0];
+    private SubscriptionInitiator abonnement;
+
+    // Événements en attente d'envoi
+    private final List<Evenement> enAttente = new ArrayList<>(TAILLE_LOT);
+    private long premierEnAttente;
+
+    // Statistiques
+    private long publies = 0;
+    private long messagesEnvoyes = 0;
+
+    PublicateurEvenements(Agent agent) {
+        this.agent = agent;
+    }
+
+    private static DFAgentDescription modele() {
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(SERVICE);
+        template.addServices(sd);
+        return template;
+    }
+
+    /**
+     * Charge les observateurs déjà enregistrés puis s'abonne aux changements du DF.
+     */
+    void demarrer() {
+        try {
+            mettreAJour(DFService.search(agent, modele()));
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+
+        abonnement = new SubscriptionInitiator(agent,
+            DFService.createSubscriptionMessage(agent, agent.getDefaultDF(), modele(), null)) {
+            @Override
+            protected void handleInform(ACLMessage inform) {
+                try {
+                    mettreAJour(DFService.decodeNotification(inform.getContent()));
+                } catch (FIPAException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        agent.addBehaviour(abonnement);
+
+        // Envoi des lots incomplets après le délai maximal
+        agent.addBehaviour(new TickerBehaviour(agent, DELAI_LOT) {
+            @Override
+            protected void onTick() {
+                if (System.currentTimeMillis() - premierEnAttente() >= DELAI_LOT) {
+                    vider();
+                }
+            }
+        });
+    }
+
+    private synchronized long premierEnAttente() {
+        return enAttente.isEmpty() ? Long.MAX_VALUE : premierEnAttente;
+    }
+
+    /**
+     * Envoie les événements en attente puis résilie l'abonnement au DF.
+     */
+    void arreter() {
+        vider();
+        if (abonnement != null) {
+            abonnement.cancel(agent.getDefaultDF(), true);
+        }
+    }
+
+    // Une description sans service correspond à un observateur désenregistré
+    synchronized void mettreAJour(DFAgentDescription[] descriptions) {
+        for (DFAgentDescription description : descriptions) {
+            Iterator services = description.getAllServices();
+            if (!services.hasNext()) {
+                parAid.remove(description.getName());
+                continue;
+            }
+            EnumSet<Categorie> categories = null;
+            while (services.hasNext()) {
+                ServiceDescription sd = (ServiceDescription) services.next();
+                Iterator proprietes = sd.getAllProperties();
+                while (proprietes.hasNext()) {
+                    Property propriete = (Property) proprietes.next();
+                    if (PROPRIETE_CATEGORIES.equals(propriete.getName())) {
+                        categories = EnumSet.noneOf(Categorie.class);
+                        for (String nom : String.valueOf(propriete.getValue()).split(",")) {
+                            try {
+                                categories.add(Categorie.valueOf(nom.trim()));
+                            } catch (IllegalArgumentException e) {
+                                System.out.println("Catégorie d'événements inconnue: " + nom);
+                            }
+                        }
+                    }
+                }
+            }
+            parAid.put(description.getName(), new Abonne(description.getName(), categories));
+        }
+        abonnes = parAid.values().toArray(new Abonne[0]);
+    }
+
+    /**
+     * Ajoute l'événement au lot en cours, envoyé dès qu'il est plein.
+     */
+    synchronized void publier(Evenement evenement) {
+        if (abonnes.length == 0) {
+            return;
+        }
+        if (enAttente.isEmpty()) {
+            premierEnAttente = System.currentTimeMillis();
+        }
+        enAttente.add(evenement);
+        publies++;
+        if (enAttente.size() >= TAILLE_LOT) {
+            vider();
+        }
+    }
+
+    /**
+     * Envoie les événements en attente : un message par ensemble d'observateurs recevant
+     * exactement les mêmes événements.
+     */
+    synchronized void vider() {
+        if (enAttente.isEmpty()) {
+            return;
+        }
+        try {
+            // Les observateurs sans filtre sont regroupés sous la clé null
+            Map<EnumSet<Categorie>, ACLMessage> lots = new LinkedHashMap<>();
+            Map<EnumSet<Categorie>, List<Evenement>> contenus = new LinkedHashMap<>();
+            for (Abonne abonne : abonnes) {
+                ACLMessage lot = lots.get(abonne.categories);
+                if (lot == null) {
+                    List<Evenement> retenus = enAttente;
+                    if (abonne.categories != null) {
+                        retenus = new ArrayList<>();
+                        for (Evenement evenement : enAttente) {
+                            if (abonne.accepte(evenement)) {
+                                retenus.add(evenement);
+                            }
+                        }
+                    }
+                    lot = new ACLMessage(ACLMessage.INFORM);
+                    lots.put(abonne.categories, lot);
+                    contenus.put(abonne.categories, retenus);
+                }
+                lot.addReceiver(abonne.aid);
+            }
+            for (Map.Entry<EnumSet<Categorie>, ACLMessage> entry : lots.entrySet()) {
+                List<Evenement> retenus = contenus.get(entry.getKey());
+                if (retenus.isEmpty()) {
+                    continue;
+                }
+                ACLMessage lot = entry.getValue();
+                lot.setByteSequenceContent(Evenement.encoder(retenus));
+                lot.addUserDefinedParameter(PARAMETRE_LOT, String.valueOf(retenus.size()));
+                agent.send(lot);
+                messagesEnvoyes++;
+            }
+        } finally {
+            // Un lot qui n'a pu être envoyé est abandonné plutôt que de bloquer les suivants
+            enAttente.clear();
+        }
+    }
+
+    synchronized String resume() {
+        return "événements publiés: " + publies + ", messages envoyés: " + messagesEnvoyes;
+    }
+}
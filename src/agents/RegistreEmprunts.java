@@ -0,0 +1,195 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import model.JournalCatalogue;
+import util.RoueHierarchique;
+
+/**
+ * Registre des emprunts en cours : identifiant, emprunteur, titre, nombre d'exemplaires et date
+ * de retour prévue (calculée à partir de la durée d'emprunt maximale du livre). Les emprunts sont
+ * indexés par emprunteur et par titre ; les retards sont détectés par une roue temporelle
+ * hiérarchique, sans jamais parcourir l'ensemble des emprunts.
+ *
+ * Utilisé uniquement depuis le thread de l'agent bibliothécaire. Lorsqu'un journal est fourni,
+ * chaque ouverture d'emprunt et chaque retour y sont inscrits, et le registre est repris du journal
+ * au redémarrage ; il n'est alors modifié que sous le verrou du journal, ce qui permet aux
+ * instantanés d'en relever une copie depuis un autre thread.
+ */
+class RegistreEmprunts {
+    static final class Emprunt {
+        final long id;
+        final String emprunteur;
+        final String titre;
+        final long dateRetour;
+        int nombre;
+        boolean enRetard;
+        private RoueHierarchique.Echeance<Emprunt> echeance;
+
+        private Emprunt(long id, String emprunteur, String titre, int nombre, long dateRetour) {
+            this.id = id;
+            this.emprunteur = emprunteur;
+            this.titre = titre;
+            this.nombre = nombre;
+            this.dateRetour = dateRetour;
+        }
+    }
+
+    private final Map<Long, Emprunt> parId = new HashMap<>();
+    // Emprunts de chaque emprunteur et de chaque titre, du plus ancien au plus récent
+    private final Map<String, Map<Long, Emprunt>> parEmprunteur = new HashMap<>();
+    private final Map<String, Map<Long, Emprunt>> parTitre = new HashMap<>();
+    private final RoueHierarchique<Emprunt> roue;
+    private final long dureeJour;
+    private final JournalCatalogue journal;
+    private long prochainId = 1;
+
+    // Statistiques
+    private int enRetard = 0;
+    private long ouverts = 0;
+    private long rendus = 0;
+    private long rendusEnRetard = 0;
+
+    RegistreEmprunts(long dureeJour, long dureeTick, JournalCatalogue journal) {
+        this.dureeJour = dureeJour;
+        this.journal = journal;
+        this.roue = new RoueHierarchique<>(6, dureeTick, System.currentTimeMillis());
+    }
+
+    /**
+     * Reprend les emprunts en cours relus du journal ; ceux dont la date de retour est passée
+     * seront signalés en retard au prochain passage de la surveillance.
+     */
+    void reprendre(Collection<JournalCatalogue.Pret> prets) {
+        for (JournalCatalogue.Pret pret : prets) {
+            inscrire(new Emprunt(pret.getId(), pret.getEmprunteur(), pret.getTitre(), pret.getNombre(), pret.getDateRetour()));
+            prochainId = Math.max(prochainId, pret.getId() + 1);
+        }
+    }
+
+    /**
+     * Enregistre un emprunt et planifie sa date de retour.
+     */
+    Emprunt ouvrir(String emprunteur, String titre, int nombre, int dureeJours) {
+        Emprunt emprunt = new Emprunt(prochainId++, emprunteur, titre, nombre,
+            System.currentTimeMillis() + dureeJours * dureeJour);
+        if (journal != null) {
+            journal.enregistrerPret(pret(emprunt), () -> inscrire(emprunt));
+        } else {
+            inscrire(emprunt);
+        }
+        ouverts++;
+        return emprunt;
+    }
+
+    private void inscrire(Emprunt emprunt) {
+        emprunt.echeance = roue.planifier(emprunt, emprunt.dateRetour);
+        parId.put(emprunt.id, emprunt);
+        parEmprunteur.computeIfAbsent(emprunt.emprunteur, e -> new LinkedHashMap<>()).put(emprunt.id, emprunt);
+        parTitre.computeIfAbsent(emprunt.titre, t -> new LinkedHashMap<>()).put(emprunt.id, emprunt);
+    }
+
+    /**
+     * Clôt les emprunts de l'emprunteur pour ce titre, des plus anciens aux plus récents,
+     * jusqu'à concurrence du nombre d'exemplaires rendus.
+     * @return le nombre d'exemplaires effectivement rendus (0 si aucun emprunt ne correspond)
+     */
+    int restituer(String emprunteur, String titre, int nombre, Consumer<Emprunt> surRetour) {
+        Map<Long, Emprunt> emprunts = parEmprunteur.get(emprunteur);
+        if (emprunts == null) {
+            return 0;
+        }
+        int restants = nombre;
+        Iterator<Emprunt> it = emprunts.values().iterator();
+        while (restants > 0 && it.hasNext()) {
+            Emprunt emprunt = it.next();
+            if (!emprunt.titre.equals(titre)) {
+                continue;
+            }
+            int rendu = Math.min(restants, emprunt.nombre);
+            if (journal != null) {
+                journal.enregistrerRendu(emprunt.id, titre, rendu, () -> rendre(emprunt, rendu, it));
+            } else {
+                rendre(emprunt, rendu, it);
+            }
+            restants -= rendu;
+            if (emprunt.enRetard) {
+                rendusEnRetard += rendu;
+            }
+            rendus += rendu;
+            surRetour.accept(emprunt);
+        }
+        if (emprunts.isEmpty()) {
+            parEmprunteur.remove(emprunteur);
+        }
+        return nombre - restants;
+    }
+
+    private void rendre(Emprunt emprunt, int rendu, Iterator<Emprunt> it) {
+        emprunt.nombre -= rendu;
+        if (emprunt.nombre == 0) {
+            it.remove();
+            fermer(emprunt);
+        }
+    }
+
+    private void fermer(Emprunt emprunt) {
+        parId.remove(emprunt.id);
+        Map<Long, Emprunt> duTitre = parTitre.get(emprunt.titre);
+        duTitre.remove(emprunt.id);
+        if (duTitre.isEmpty()) {
+            parTitre.remove(emprunt.titre);
+        }
+        if (!emprunt.echeance.annuler()) {
+            enRetard--;
+        }
+    }
+
+    /**
+     * Marque en retard les emprunts dont la date de retour est passée.
+     */
+    int surveillerRetards(Consumer<Emprunt> surRetard) {
+        return roue.avancer(System.currentTimeMillis(), emprunt -> {
+            emprunt.enRetard = true;
+            enRetard++;
+            surRetard.accept(emprunt);
+        });
+    }
+
+    int enCours() {
+        return parId.size();
+    }
+
+    int enRetard() {
+        return enRetard;
+    }
+
+    /**
+     * Copie des emprunts en cours pour un instantané du journal, relevée sous son verrou.
+     */
+    List<JournalCatalogue.Pret> prets() {
+        List<JournalCatalogue.Pret> prets = new ArrayList<>(parId.size());
+        for (Emprunt emprunt : parId.values()) {
+            prets.add(pret(emprunt));
+        }
+        return prets;
+    }
+
+    private static JournalCatalogue.Pret pret(Emprunt emprunt) {
+        return new JournalCatalogue.Pret(emprunt.id, emprunt.emprunteur, emprunt.titre, emprunt.nombre, emprunt.dateRetour);
+    }
+
+    String resume() {
+        return "emprunts ouverts: " + ouverts +
+            ", en cours: " + parId.size() +
+            ", en retard: " + enRetard +
+            ", exemplaires rendus: " + rendus + " (dont " + rendusEnRetard + " en retard)";
+    }
+}
@@ -0,0 +1,302 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.TickerBehaviour;
+import jade.lang.acl.ACLMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.CataloguePartitionne;
+import model.Livre;
+import model.ObservateurStock;
+
+/**
+ * Réplication du stock disponible d'une bibliothécaire primaire vers les répliques en lecture de
+ * son fragment.
+ *
+ * Toutes les écritures d'un fragment (emprunts, retours, files d'attente, réassorts) sont servies
+ * par sa primaire, seule à tenir baux, emprunts et files d'attente ; les répliques ne répondent
+ * qu'aux lectures (recherches, disponibilité). La primaire relève les livres dont le stock a changé
+ * et envoie toutes les 50 ms leur quantité disponible courante aux répliques (INFORM, conversation
+ * "replication-stock"), qui l'appliquent à leur catalogue : une réplique peut donc annoncer
+ * disponible un livre que la primaire vient de prêter, jusqu'au lot suivant. Une réplique qui
+ * démarre demande l'état complet à la primaire (REQUEST), qui l'envoie aussi à son propre démarrage.
+ *
+ * Les changements de composition du catalogue (ajout, retrait, rechargement), eux aussi servis par
+ * la primaire seule, sont envoyés dès leur publication (INFORM, conversation
+ * "replication-catalogue") : titres retirés, puis fiches des titres ajoutés ou dont l'auteur ou la
+ * durée d'emprunt a changé. Ils partent avant les lots de stock qui les suivent ; l'état complet
+ * envoyé au démarrage ne porte que le stock, les répliques partant du même catalogue que la primaire.
+ */
+class ReplicationStock implements ObservateurStock {
+    static final String CONVERSATION = "replication-stock";
+    static final String CONVERSATION_CATALOGUE = "replication-catalogue";
+    private static final long DELAI = 50;
+    private static final int TITRES_PAR_MESSAGE = 10_000;
+
+    private final Agent agent;
+    private final List<AID> repliques;
+    private CataloguePartitionne catalogue;
+
+    // Livres dont le stock a changé depuis le dernier envoi ; la quantité est lue à l'envoi
+    private final Map<String, Livre> modifies = new ConcurrentHashMap<>();
+
+    // Statistiques
+    private long envois = 0;
+    private long titresEnvoyes = 0;
+    private long compositionsEnvoyees = 0;
+
+    ReplicationStock(Agent agent, List<AID> repliques) {
+        this.agent = agent;
+        this.repliques = repliques;
+    }
+
+    /**
+     * Envoie l'état complet du catalogue aux répliques puis leurs changements, périodiquement.
+     */
+    void demarrer(CataloguePartitionne catalogue) {
+        this.catalogue = catalogue;
+        toutEnvoyer();
+        agent.addBehaviour(new TickerBehaviour(agent, DELAI) {
+            @Override
+            protected void onTick() {
+                vider();
+            }
+        });
+    }
+
+    // Appelé par le thread qui modifie le stock (partition, bibliothécaire)
+    @Override
+    public void stockModifie(Livre livre, int ancienneQuantite, int nouvelleQuantite) {
+        modifies.put(livre.getTitre(), livre);
+    }
+
+    // Demande d'état complet d'une réplique qui démarre (REQUEST)
+    void resynchroniser(ACLMessage msg) {
+        if (!repliques.contains(msg.getSender())) {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("replique-inconnue");
+            agent.send(reply);
+            return;
+        }
+        toutEnvoyer();
+    }
+
+    private void toutEnvoyer() {
+        catalogue.pourChaqueLivre(livre -> modifies.put(livre.getTitre(), livre));
+    }
+
+    /**
+     * Envoie aux répliques la quantité disponible des livres modifiés depuis le dernier envoi.
+     */
+    void vider() {
+        if (modifies.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> lot = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, Livre>> it = modifies.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Livre> entry = it.next();
+            it.remove();
+            lot.put(entry.getKey(), entry.getValue().getQuantiteDisponible());
+            if (lot.size() == TITRES_PAR_MESSAGE) {
+                envoyer(lot);
+                lot.clear();
+            }
+        }
+        if (!lot.isEmpty()) {
+            envoyer(lot);
+        }
+    }
+
+    private void envoyer(Map<String, Integer> lot) {
+        envoyer(CONVERSATION, encoder(lot));
+        envois++;
+        titresEnvoyes += lot.size();
+    }
+
+    private void envoyer(String conversation, byte[] contenu) {
+        ACLMessage message = new ACLMessage(ACLMessage.INFORM);
+        for (AID replique : repliques) {
+            message.addReceiver(replique);
+        }
+        message.setConversationId(conversation);
+        message.setByteSequenceContent(contenu);
+        agent.send(message);
+    }
+
+    /**
+     * Envoie aux répliques une modification publiée de la composition du catalogue, par messages
+     * d'au plus TITRES_PAR_MESSAGE titres. Appelé depuis le thread de l'agent.
+     */
+    void compositionModifiee(CataloguePartitionne.Modification bilan) {
+        List<String> retires = new ArrayList<>();
+        for (Livre livre : bilan.getRetires()) {
+            retires.add(livre.getTitre());
+        }
+        List<Livre> fiches = new ArrayList<>(bilan.getAjoutes());
+        fiches.addAll(bilan.getModifies());
+        int r = 0;
+        int f = 0;
+        while (r < retires.size() || f < fiches.size()) {
+            int finRetires = Math.min(retires.size(), r + TITRES_PAR_MESSAGE);
+            int finFiches = Math.min(fiches.size(), f + TITRES_PAR_MESSAGE - (finRetires - r));
+            envoyer(CONVERSATION_CATALOGUE, encoderComposition(retires.subList(r, finRetires), fiches.subList(f, finFiches)));
+            compositionsEnvoyees++;
+            r = finRetires;
+            f = finFiches;
+        }
+    }
+
+    /**
+     * Changement de composition reçu par une réplique : titres retirés et fiches à reprendre.
+     */
+    static final class Composition {
+        private final List<String> retires;
+        private final List<Livre> fiches;
+
+        private Composition(List<String> retires, List<Livre> fiches) {
+            this.retires = retires;
+            this.fiches = fiches;
+        }
+
+        /**
+         * Applique le changement au catalogue de la réplique, d'une seule publication.
+         */
+        CompletableFuture<CataloguePartitionne.Modification> appliquer(CataloguePartitionne catalogue) {
+            // Un stockage sans retraits ne suit que les ajouts ; sa primaire n'en fait pas d'autres
+            return catalogue.mettreAJour(fiches, catalogue.accepteRetraits() ? retires : Collections.emptyList());
+        }
+    }
+
+    static Composition decoderComposition(byte[] contenu) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(contenu));
+        int nombreRetires = lireNombre(in, contenu);
+        List<String> retires = new ArrayList<>(nombreRetires);
+        for (int i = 0; i < nombreRetires; i++) {
+            retires.add(lireTexte(in));
+        }
+        int nombreFiches = lireNombre(in, contenu);
+        List<Livre> fiches = new ArrayList<>(nombreFiches);
+        for (int i = 0; i < nombreFiches; i++) {
+            String titre = lireTexte(in);
+            String auteur = lireTexte(in);
+            int quantite = in.readInt();
+            fiches.add(new Livre(titre, auteur, quantite, in.readInt()));
+        }
+        return new Composition(retires, fiches);
+    }
+
+    // Titres retirés, puis fiches : titre, auteur, quantité disponible et durée d'emprunt
+    static byte[] encoderComposition(List<String> retires, List<Livre> fiches) {
+        ByteArrayOutputStream octets = new ByteArrayOutputStream(8 + (retires.size() + fiches.size()) * 48);
+        try (DataOutputStream out = new DataOutputStream(octets)) {
+            out.writeInt(retires.size());
+            for (String titre : retires) {
+                ecrireTexte(out, titre);
+            }
+            out.writeInt(fiches.size());
+            for (Livre livre : fiches) {
+                ecrireTexte(out, livre.getTitre());
+                ecrireTexte(out, livre.getAuteur());
+                out.writeInt(livre.getQuantiteDisponible());
+                out.writeInt(livre.getDureeEmpruntMax());
+            }
+        } catch (IOException e) {
+            // Un ByteArrayOutputStream ne lève pas d'IOException
+            throw new IllegalStateException(e);
+        }
+        return octets.toByteArray();
+    }
+
+    /**
+     * Applique au catalogue d'une réplique un lot reçu de sa primaire.
+     * @return le nombre de titres mis à jour
+     */
+    static int appliquer(byte[] contenu, CataloguePartitionne.Instantane catalogue) throws IOException {
+        return appliquer(decoder(contenu), catalogue);
+    }
+
+    static int appliquer(Map<String, Integer> lot, CataloguePartitionne.Instantane catalogue) {
+        int appliques = 0;
+        for (Map.Entry<String, Integer> entry : lot.entrySet()) {
+            Livre livre = catalogue.obtenir(entry.getKey());
+            if (livre != null && livre.getQuantiteDisponible() != entry.getValue()) {
+                livre.setQuantiteDisponible(entry.getValue());
+                appliques++;
+            }
+        }
+        return appliques;
+    }
+
+    // Nombre de titres, puis pour chacun sa longueur, son UTF-8 et la quantité disponible
+    static byte[] encoder(Map<String, Integer> lot) {
+        ByteArrayOutputStream octets = new ByteArrayOutputStream(8 + lot.size() * 32);
+        try (DataOutputStream out = new DataOutputStream(octets)) {
+            out.writeInt(lot.size());
+            for (Map.Entry<String, Integer> entry : lot.entrySet()) {
+                ecrireTexte(out, entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        } catch (IOException e) {
+            // Un ByteArrayOutputStream ne lève pas d'IOException
+            throw new IllegalStateException(e);
+        }
+        return octets.toByteArray();
+    }
+
+    static Map<String, Integer> decoder(byte[] contenu) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(contenu));
+        int nombre = lireNombre(in, contenu);
+        Map<String, Integer> lot = new LinkedHashMap<>(nombre * 2);
+        for (int i = 0; i < nombre; i++) {
+            lot.put(lireTexte(in), in.readInt());
+        }
+        return lot;
+    }
+
+    private static int lireNombre(DataInputStream in, byte[] contenu) throws IOException {
+        int nombre = in.readInt();
+        if (nombre < 0 || nombre > contenu.length) {
+            throw new IOException("Lot de réplication invalide: " + nombre + " titres");
+        }
+        return nombre;
+    }
+
+    // Texte : longueur puis UTF-8
+    private static void ecrireTexte(DataOutputStream out, String texte) throws IOException {
+        byte[] octets = texte.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(octets.length);
+        out.write(octets);
+    }
+
+    private static String lireTexte(DataInputStream in) throws IOException {
+        int longueur = in.readInt();
+        if (longueur < 0 || longueur > in.available()) {
+            throw new IOException("Lot de réplication invalide: titre de " + longueur + " octets");
+        }
+        byte[] octets = new byte[longueur];
+        in.readFully(octets);
+        return new String(octets, StandardCharsets.UTF_8);
+    }
+
+    String resume() {
+        return "répliques: " + repliques.size() + ", lots envoyés: " + envois + " (" + titresEnvoyes + " titres)" +
+            ", changements de composition envoyés: " + compositionsEnvoyees;
+    }
+}
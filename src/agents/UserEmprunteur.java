@@ -1,26 +1,66 @@
 package agents;
 
+import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.Behaviour;
 import jade.core.behaviours.OneShotBehaviour;
-import jade.domain.DFService;
 import jade.domain.FIPAException;
-import jade.domain.FIPAAgentManagement.DFAgentDescription;
-import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 
+import model.Evenement;
+import model.Evenement.Type;
+
 /**
  * UserEmprunteur - Agent à but (emprunter un livre spécifique)
  * Architecture: BDI simplifiée
  * Objectif: Emprunter un livre spécifique pour une période donnée
  */
 public class UserEmprunteur extends Agent {
+    // Modèles de réception de chaque étape, construits une seule fois
+    private static final MessageTemplate MODELE_RECHERCHE_EN_COURS = MessageTemplate.and(
+        MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+        MessageTemplate.MatchConversationId("recherche-emprunt")
+    );
+    private static final MessageTemplate MODELE_PROPOSITION = MessageTemplate.and(
+        MessageTemplate.or(
+            MessageTemplate.MatchPerformative(ACLMessage.PROPOSE),
+            MessageTemplate.MatchPerformative(ACLMessage.REFUSE)
+        ),
+        MessageTemplate.MatchConversationId("emprunt-livre")
+    );
+    private static final MessageTemplate MODELE_CONFIRMATION = MessageTemplate.and(
+        MessageTemplate.or(
+            MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+            MessageTemplate.MatchPerformative(ACLMessage.FAILURE)
+        ),
+        MessageTemplate.MatchConversationId("emprunt-livre")
+    );
+    private static final MessageTemplate MODELE_ATTENTE = MessageTemplate.MatchConversationId("attente-livre");
+
+    // Publication des événements vers les observateurs
+    private PublicateurEvenements evenements;
+
+    // Bibliothécaires et leur charge, tenus à jour par abonnement au DF
+    private AnnuaireBibliotheque annuaire;
+
+    // Proxy du conteneur (null s'il n'y en a pas), qui relaie les écritures en lots
+    private AID proxy;
+
     private String titreLivreRecherche;
     private int nombreExemplaires;
+    // S'inscrire sur la file d'attente plutôt que partir si le livre est épuisé
+    private boolean attendre;
 
     @Override
     protected void setup() {
+        // Observateurs connus par abonnement au DF, sans recherche à chaque événement
+        evenements = new PublicateurEvenements(this);
+        evenements.demarrer();
+        annuaire = new AnnuaireBibliotheque(this);
+        annuaire.demarrer();
+        proxy = ProxyBibliotheque.rechercherLocal(this);
+
         // Récupération des arguments
         Object[] args = getArguments();
         if (args != null && args.length > 0) {
@@ -32,13 +72,13 @@ public class UserEmprunteur extends Agent {
             } else {
                 nombreExemplaires = 1; // Par défaut
             }
+            attendre = args.length > 2 && "attendre".equals(args[2]);
 
             System.out.println("Agent emprunteur " + getLocalName() + " souhaite emprunter " +
                 nombreExemplaires + " exemplaire(s) du livre: " + titreLivreRecherche);
 
             // Notifier l'observateur de la création de l'utilisateur
-            informerObservateur("USER_NOUVEAU:Emprunteur souhaitant emprunter " + nombreExemplaires +
-                " exemplaire(s) de \"" + titreLivreRecherche + "\"");
+            informerObservateur(new Evenement(Type.NOUVEL_EMPRUNTEUR, null, titreLivreRecherche, nombreExemplaires));
 
             // Démarrage du comportement d'emprunt
             addBehaviour(new EmprunterLivre());
@@ -51,65 +91,44 @@ public class UserEmprunteur extends Agent {
     @Override
     protected void takeDown() {
         // Notifier l'observateur de la suppression de l'utilisateur
-        informerObservateur("USER_FIN:L'emprunteur a quitté la bibliothèque");
+        informerObservateur(new Evenement(Type.DEPART_EMPRUNTEUR));
         System.out.println("Agent emprunteur " + getLocalName() + " s'est terminé.");
+        annuaire.arreter();
+        evenements.arreter();
     }
 
-    private void informerObservateur(String message) {
-        // Rechercher l'agent observateur
-        DFAgentDescription template = new DFAgentDescription();
-        ServiceDescription sd = new ServiceDescription();
-        sd.setType("observateur");
-        template.addServices(sd);
-
-        try {
-            DFAgentDescription[] result = DFService.search(this, template);
-            if (result.length > 0) {
-                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-                msg.addReceiver(result[0].getName());
-                msg.setContent(message);
-                send(msg);
-            }
-        } catch (FIPAException fe) {
-            fe.printStackTrace();
-        }
+    private void informerObservateur(Evenement evenement) {
+        evenements.publier(evenement);
     }
 
     // Comportement pour emprunter un livre
     private class EmprunterLivre extends Behaviour {
         private boolean done = false;
         private int etape = 0;
-        private DFAgentDescription[] bibliothecaires;
 
         @Override
         public void action() {
             switch(etape) {
-                case 0: // Recherche de la bibliothécaire
-                    DFAgentDescription template = new DFAgentDescription();
-                    ServiceDescription sd = new ServiceDescription();
-                    sd.setType("service-bibliotheque");
-                    template.addServices(sd);
-
+                case 0: // Recherche de la bibliothécaire qui détient le livre
                     try {
-                        bibliothecaires = DFService.search(myAgent, template);
-                        if (bibliothecaires.length > 0) {
+                        if (annuaire.disponible()) {
+                            AID bibliothecaire = annuaire.ecrivainPour(titreLivreRecherche);
                             System.out.println(getLocalName() + " a trouvé la bibliothécaire: " +
-                                bibliothecaires[0].getName().getLocalName());
-                            informerObservateur("USER_INFO:A trouvé la bibliothécaire");
+                                bibliothecaire.getLocalName());
+                            informerObservateur(new Evenement(Type.BIBLIOTHECAIRE_TROUVEE));
 
                             // Envoi de la demande à la bibliothécaire
                             ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
-                            cfp.addReceiver(bibliothecaires[0].getName());
+                            ProxyBibliotheque.adresser(cfp, bibliothecaire, proxy);
                             cfp.setContent(titreLivreRecherche + ":" + nombreExemplaires);
                             cfp.setConversationId("emprunt-livre");
                             myAgent.send(cfp);
 
-                            informerObservateur("USER_INFO:Demande s'il peut emprunter " + nombreExemplaires +
-                                " exemplaire(s) de \"" + titreLivreRecherche + "\"");
+                            informerObservateur(new Evenement(Type.DEMANDE_EMPRUNT, null, titreLivreRecherche, nombreExemplaires));
                             etape = 1;
                         } else {
                             System.out.println(getLocalName() + " n'a pas trouvé de bibliothécaire");
-                            informerObservateur("USER_INFO:N'a pas trouvé de bibliothécaire");
+                            informerObservateur(new Evenement(Type.BIBLIOTHECAIRE_ABSENTE));
                             done = true;
                         }
                     } catch (FIPAException e) {
@@ -119,16 +138,11 @@ public class UserEmprunteur extends Agent {
                     break;
 
                 case 1: // Attendre la réponse "recherche en cours"
-                    MessageTemplate mt1 = MessageTemplate.and(
-                        MessageTemplate.MatchPerformative(ACLMessage.INFORM),
-                        MessageTemplate.MatchConversationId("recherche-emprunt")
-                    );
-
-                    ACLMessage msgRecherche = myAgent.receive(mt1);
+                    ACLMessage msgRecherche = myAgent.receive(MODELE_RECHERCHE_EN_COURS);
                     if (msgRecherche != null) {
                         if (msgRecherche.getContent().equals("recherche-en-cours")) {
                             System.out.println(getLocalName() + " attend pendant que la bibliothécaire recherche le livre");
-                            informerObservateur("USER_INFO:Patiente pendant la recherche du livre");
+                            informerObservateur(new Evenement(Type.PATIENTE));
                             etape = 2;
                         }
                     } else {
@@ -137,15 +151,7 @@ public class UserEmprunteur extends Agent {
                     break;
 
                 case 2: // Attendre le résultat de la recherche (PROPOSE ou REFUSE)
-                    MessageTemplate mt2 = MessageTemplate.and(
-                        MessageTemplate.or(
-                            MessageTemplate.MatchPerformative(ACLMessage.PROPOSE),
-                            MessageTemplate.MatchPerformative(ACLMessage.REFUSE)
-                        ),
-                        MessageTemplate.MatchConversationId("emprunt-livre")
-                    );
-
-                    ACLMessage msgResultat = myAgent.receive(mt2);
+                    ACLMessage msgResultat = myAgent.receive(MODELE_PROPOSITION);
 
                     if (msgResultat != null) {
                         if (msgResultat.getPerformative() == ACLMessage.PROPOSE) {
@@ -155,12 +161,11 @@ public class UserEmprunteur extends Agent {
 
                             System.out.println(getLocalName() + " apprend que le livre " + titreLivreRecherche +
                                 " est disponible pour " + dureeMax + " jours");
-                            informerObservateur("USER_INFO:Apprend que le livre \"" + titreLivreRecherche +
-                                "\" est disponible pour " + dureeMax + " jours");
+                            informerObservateur(new Evenement(Type.APPREND_DISPONIBLE_DUREE, null, titreLivreRecherche, 0, dureeMax));
 
                             // Demander combien de temps il peut emprunter les livres (déjà connu dans la réponse)
                             System.out.println(getLocalName() + " demande: Pour combien de temps puis-je emprunter ce livre ?");
-                            informerObservateur("USER_INFO:Demande la durée d'emprunt maximale");
+                            informerObservateur(new Evenement(Type.DEMANDE_DUREE));
 
                             // Simuler une pause pour la conversation
                             try {
@@ -171,30 +176,43 @@ public class UserEmprunteur extends Agent {
 
                             // Accepter l'emprunt
                             ACLMessage accept = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
-                            accept.addReceiver(msgResultat.getSender());
+                            ProxyBibliotheque.adresser(accept, msgResultat.getSender(), proxy);
                             accept.setContent(titreLivreRecherche + ":" + nombreExemplaires);
                             accept.setConversationId("emprunt-livre");
                             myAgent.send(accept);
 
                             System.out.println(getLocalName() + " : " + dureeMax + " jours me conviennent parfaitement, j'accepte.");
-                            informerObservateur("USER_INFO:Accepte d'emprunter le livre pour " + dureeMax + " jours");
+                            informerObservateur(new Evenement(Type.ACCEPTE_DUREE, null, null, 0, dureeMax));
 
                             etape = 3;
                         } else {
                             // Le livre n'est pas disponible
                             String content = msgResultat.getContent();
 
+                            if (attendre && content.startsWith("exemplaires-insuffisants:")) {
+                                // S'abonner à la file d'attente du livre plutôt que de redemander plus tard
+                                ACLMessage subscribe = new ACLMessage(ACLMessage.SUBSCRIBE);
+                                subscribe.addReceiver(msgResultat.getSender());
+                                subscribe.setContent(titreLivreRecherche + ":" + nombreExemplaires);
+                                subscribe.setConversationId("attente-livre");
+                                myAgent.send(subscribe);
+
+                                System.out.println(getLocalName() + " s'inscrit sur la file d'attente du livre " +
+                                    titreLivreRecherche);
+                                informerObservateur(new Evenement(Type.INSCRIPTION_ATTENTE, null, titreLivreRecherche));
+                                etape = 4;
+                                break;
+                            }
+
                             if (content.startsWith("exemplaires-insuffisants:")) {
                                 int disponibles = Integer.parseInt(content.split(":")[1]);
                                 System.out.println(getLocalName() + " apprend qu'il n'y a que " + disponibles +
                                     " exemplaire(s) disponible(s) du livre " + titreLivreRecherche);
-                                informerObservateur("USER_INFO:Apprend qu'il n'y a que " + disponibles +
-                                    " exemplaire(s) disponible(s) du livre \"" + titreLivreRecherche + "\"");
+                                informerObservateur(new Evenement(Type.APPREND_INSUFFISANT, null, titreLivreRecherche, disponibles));
                             } else {
                                 System.out.println(getLocalName() + " apprend que le livre " + titreLivreRecherche +
                                     " n'est pas disponible");
-                                informerObservateur("USER_INFO:Apprend que le livre \"" + titreLivreRecherche +
-                                    "\" n'est pas disponible");
+                                informerObservateur(new Evenement(Type.APPREND_NON_DISPONIBLE, null, titreLivreRecherche));
                             }
 
                             // Remercier la bibliothécaire et partir
@@ -204,7 +222,7 @@ public class UserEmprunteur extends Agent {
                             myAgent.send(thanks);
 
                             System.out.println(getLocalName() + " : Merci quand même pour votre aide.");
-                            informerObservateur("USER_INFO:Remercie la bibliothécaire et quitte la bibliothèque");
+                            informerObservateur(new Evenement(Type.REMERCIE));
 
                             // Terminer le comportement
                             done = true;
@@ -228,15 +246,7 @@ public class UserEmprunteur extends Agent {
                     break;
 
                 case 3: // Attendre la confirmation de l'emprunt
-                    MessageTemplate mt3 = MessageTemplate.and(
-                        MessageTemplate.or(
-                            MessageTemplate.MatchPerformative(ACLMessage.INFORM),
-                            MessageTemplate.MatchPerformative(ACLMessage.FAILURE)
-                        ),
-                        MessageTemplate.MatchConversationId("emprunt-livre")
-                    );
-
-                    ACLMessage msgConfirmation = myAgent.receive(mt3);
+                    ACLMessage msgConfirmation = myAgent.receive(MODELE_CONFIRMATION);
 
                     if (msgConfirmation != null) {
                         if (msgConfirmation.getPerformative() == ACLMessage.INFORM) {
@@ -246,9 +256,7 @@ public class UserEmprunteur extends Agent {
 
                             System.out.println(getLocalName() + " a emprunté le livre " + titreLivreRecherche +
                                 " pour " + duree + " jours");
-                            informerObservateur("USER_INFO:A emprunté " + nombreExemplaires +
-                                " exemplaire(s) du livre \"" + titreLivreRecherche +
-                                "\" pour " + duree + " jours");
+                            informerObservateur(new Evenement(Type.A_EMPRUNTE, null, titreLivreRecherche, nombreExemplaires, duree));
 
                             // Remercier la bibliothécaire
                             ACLMessage thanks = new ACLMessage(ACLMessage.INFORM);
@@ -257,11 +265,11 @@ public class UserEmprunteur extends Agent {
                             myAgent.send(thanks);
 
                             System.out.println(getLocalName() + " : Merci beaucoup ! Je vous le rendrai dans les délais.");
-                            informerObservateur("USER_INFO:Remercie la bibliothécaire et promet de rendre le livre à temps");
+                            informerObservateur(new Evenement(Type.REMERCIE_ET_PROMET));
                         } else {
                             // L'emprunt a échoué
                             System.out.println(getLocalName() + " n'a pas pu emprunter le livre " + titreLivreRecherche);
-                            informerObservateur("USER_INFO:N'a pas pu emprunter le livre \"" + titreLivreRecherche + "\"");
+                            informerObservateur(new Evenement(Type.EMPRUNT_ECHOUE, null, titreLivreRecherche));
 
                             // Remercier quand même la bibliothécaire
                             ACLMessage thanks = new ACLMessage(ACLMessage.INFORM);
@@ -270,7 +278,7 @@ public class UserEmprunteur extends Agent {
                             myAgent.send(thanks);
 
                             System.out.println(getLocalName() + " : Merci quand même pour votre aide.");
-                            informerObservateur("USER_INFO:Remercie quand même la bibliothécaire");
+                            informerObservateur(new Evenement(Type.REMERCIE_QUAND_MEME));
                         }
 
                         // Terminer le comportement
@@ -292,6 +300,40 @@ public class UserEmprunteur extends Agent {
                         block();
                     }
                     break;
+
+                case 4: // Attendre son tour sur la file d'attente
+                    ACLMessage msgAttente = myAgent.receive(MODELE_ATTENTE);
+
+                    if (msgAttente != null) {
+                        if (msgAttente.getPerformative() == ACLMessage.AGREE) {
+                            int position = Integer.parseInt(msgAttente.getContent().split(":")[1]);
+                            System.out.println(getLocalName() + " est en position " + position +
+                                " sur la file d'attente du livre " + titreLivreRecherche);
+                            informerObservateur(new Evenement(Type.ATTEND_SON_TOUR, null, null, position));
+                        } else if (msgAttente.getPerformative() == ACLMessage.INFORM) {
+                            // Des exemplaires ont été réservés à son nom : accepter l'emprunt
+                            int dureeMax = Integer.parseInt(msgAttente.getContent().split(":")[1]);
+                            System.out.println(getLocalName() + " apprend que le livre " + titreLivreRecherche +
+                                " lui est réservé pour " + dureeMax + " jours");
+                            informerObservateur(new Evenement(Type.LIVRE_RESERVE, null, titreLivreRecherche));
+
+                            ACLMessage accept = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
+                            ProxyBibliotheque.adresser(accept, msgAttente.getSender(), proxy);
+                            accept.setContent(titreLivreRecherche + ":" + nombreExemplaires);
+                            accept.setConversationId("emprunt-livre");
+                            myAgent.send(accept);
+
+                            etape = 3;
+                        } else {
+                            System.out.println(getLocalName() + " ne peut pas attendre le livre " + titreLivreRecherche);
+                            informerObservateur(new Evenement(Type.ATTENTE_IMPOSSIBLE, null, titreLivreRecherche));
+                            done = true;
+                            myAgent.doDelete();
+                        }
+                    } else {
+                        block();
+                    }
+                    break;
             }
         }
 
@@ -1,20 +1,24 @@
 package agents;
 
+import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.Behaviour;
 import jade.core.behaviours.OneShotBehaviour;
-import jade.domain.DFService;
 import jade.domain.FIPAException;
-import jade.domain.FIPAAgentManagement.DFAgentDescription;
-import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 import jade.lang.acl.UnreadableException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import model.Livre;
+import model.Evenement;
+import model.Evenement.Type;
 import model.ListeLivres;
 import model.ResultatRecherche;
 
@@ -24,11 +28,54 @@ import model.ResultatRecherche;
  * Objectif: Obtenir le maximum de livres d'une liste en fonction de l'utilité perçue
  */
 public class UserListe extends Agent {
+    // Modèles de réception de chaque étape, construits une seule fois
+    private static final MessageTemplate MODELE_RECHERCHE_EN_COURS = MessageTemplate.and(
+        MessageTemplate.and(
+            MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+            MessageTemplate.MatchConversationId("recherche-liste")
+        ),
+        MessageTemplate.MatchContent("recherche-en-cours")
+    );
+    private static final MessageTemplate MODELE_RESULTAT = MessageTemplate.and(
+        MessageTemplate.and(
+            MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+            MessageTemplate.MatchConversationId("recherche-liste")
+        ),
+        MessageTemplate.not(MessageTemplate.MatchContent("recherche-en-cours"))
+    );
+    private static final MessageTemplate MODELE_CONFIRMATION = MessageTemplate.and(
+        MessageTemplate.or(
+            MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+            MessageTemplate.MatchPerformative(ACLMessage.FAILURE)
+        ),
+        MessageTemplate.MatchConversationId("emprunt-liste")
+    );
+
+    // Nombre de pages de résultats demandées à chaque bibliothécaire
+    private static final int PAGES_PAR_RECHERCHE = 4;
+
+    // Publication des événements vers les observateurs
+    private PublicateurEvenements evenements;
+
+    // Bibliothécaires et leur charge, tenus à jour par abonnement au DF
+    private AnnuaireBibliotheque annuaire;
+
+    // Proxy du conteneur (null s'il n'y en a pas), qui relaie les écritures en lots
+    private AID proxy;
+
     private ListeLivres listeLivresRecherche;
     private float seuilUtilite = 0.6f; // Seuil d'utilité (proportion minimum de livres trouvés) pour décider d'emprunter
+    private boolean codecBinaire = true; // false : listes et résultats sérialisés (bibliothécaires plus anciennes)
 
     @Override
     protected void setup() {
+        // Observateurs connus par abonnement au DF, sans recherche à chaque événement
+        evenements = new PublicateurEvenements(this);
+        evenements.demarrer();
+        annuaire = new AnnuaireBibliotheque(this);
+        annuaire.demarrer();
+        proxy = ProxyBibliotheque.rechercherLocal(this);
+
         // Récupération des arguments
         Object[] args = getArguments();
         if (args != null && args.length > 0) {
@@ -45,15 +92,16 @@ public class UserListe extends Agent {
             if (args.length > 1) {
                 seuilUtilite = Float.parseFloat((String) args[1]);
             }
+            // Argument facultatif "codec=serialisation" : revenir à la sérialisation Java
+            codecBinaire = !(args.length > 2 && "codec=serialisation".equals(args[2]));
 
             System.out.println("Agent chercheur de liste " + getLocalName() +
                 " recherche " + listeLivresRecherche.getNombreLivres() +
                 " livres avec un seuil d'utilité de " + seuilUtilite);
 
             // Notifier l'observateur de la création de l'utilisateur
-            informerObservateur("USER_NOUVEAU:Chercheur avec une liste de " +
-                listeLivresRecherche.getNombreLivres() + " livres" +
-                " (seuil d'utilité: " + seuilUtilite + ")");
+            informerObservateur(new Evenement(Type.NOUVEAU_CHERCHEUR, null, null,
+                listeLivresRecherche.getNombreLivres(), 0, Math.round(seuilUtilite * 100)));
 
             // Démarrage du comportement de recherche
             addBehaviour(new RechercherListe());
@@ -66,67 +114,81 @@ public class UserListe extends Agent {
     @Override
     protected void takeDown() {
         // Notifier l'observateur de la suppression de l'utilisateur
-        informerObservateur("USER_FIN:Le chercheur de liste a quitté la bibliothèque");
+        informerObservateur(new Evenement(Type.DEPART_CHERCHEUR));
         System.out.println("Agent chercheur de liste " + getLocalName() + " s'est terminé.");
+        annuaire.arreter();
+        evenements.arreter();
     }
 
-    private void informerObservateur(String message) {
-        // Rechercher l'agent observateur
-        DFAgentDescription template = new DFAgentDescription();
-        ServiceDescription sd = new ServiceDescription();
-        sd.setType("observateur");
-        template.addServices(sd);
-
-        try {
-            DFAgentDescription[] result = DFService.search(this, template);
-            if (result.length > 0) {
-                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-                msg.addReceiver(result[0].getName());
-                msg.setContent(message);
-                send(msg);
-            }
-        } catch (FIPAException fe) {
-            fe.printStackTrace();
-        }
+    private void informerObservateur(Evenement evenement) {
+        evenements.publier(evenement);
     }
 
     // Comportement pour rechercher une liste de livres
+    // La liste est répartie entre les bibliothécaires propriétaires des titres, interrogés en parallèle
     private class RechercherListe extends Behaviour {
         private boolean done = false;
         private int etape = 0;
         private ResultatRecherche resultatRecherche;
         private int nombreLivresSouhaites;
 
+        // Titres envoyés à chaque bibliothécaire et titres trouvés chez chacun
+        private Map<AID, List<String>> repartition;
+        private final Map<AID, List<String>> trouvesParBibliothecaire = new LinkedHashMap<>();
+        // Bibliothécaires dont toutes les pages de résultats n'ont pas encore été reçues
+        private final Set<AID> recherchesEnCours = new LinkedHashSet<>();
+        // Identifiant de la recherche (reply-with du CONFIRM), repris par le CANCEL
+        private String identifiantRecherche;
+        private int reponsesAttendues;
+        private int accusesAttendus;
+
+        // Agrégation des confirmations d'emprunt de chaque bibliothécaire
+        private int dureeMin = Integer.MAX_VALUE;
+        private boolean tousEmpruntes = true;
+        private final StringBuilder rapport = new StringBuilder();
+
         @Override
         public void action() {
             switch(etape) {
-                case 0: // Recherche de la bibliothécaire
+                case 0: // Recherche des bibliothécaires détenant les livres
                     nombreLivresSouhaites = listeLivresRecherche.getNombreLivres();
-                    DFAgentDescription template = new DFAgentDescription();
-                    ServiceDescription sd = new ServiceDescription();
-                    sd.setType("service-bibliotheque");
-                    template.addServices(sd);
-
                     try {
-                        DFAgentDescription[] result = DFService.search(myAgent, template);
-                        if (result.length > 0) {
-                            System.out.println(getLocalName() + " a trouvé la bibliothécaire: " +
-                                result[0].getName().getLocalName());
-                            informerObservateur("USER_INFO:A trouvé la bibliothécaire");
-
-                            // Envoi de la liste à la bibliothécaire
-                            ACLMessage confirm = new ACLMessage(ACLMessage.CONFIRM);
-                            confirm.addReceiver(result[0].getName());
-                            confirm.setContentObject(listeLivresRecherche);
-                            confirm.setConversationId("recherche-liste");
-                            myAgent.send(confirm);
-
-                            informerObservateur("USER_INFO:Demande la disponibilité d'une liste de " +
-                                nombreLivresSouhaites + " livres");
+                        if (annuaire.disponible()) {
+                            repartition = annuaire.repartir(listeLivresRecherche.getTitres());
+                            for (AID bibliothecaire : repartition.keySet()) {
+                                System.out.println(getLocalName() + " a trouvé la bibliothécaire: " +
+                                    bibliothecaire.getLocalName());
+                            }
+                            informerObservateur(new Evenement(Type.BIBLIOTHECAIRE_TROUVEE));
+
+                            // Envoi de chaque partie de la liste à sa bibliothécaire, en parallèle
+                            identifiantRecherche = getLocalName() + "-liste-" + System.currentTimeMillis();
+                            for (Map.Entry<AID, List<String>> entry : repartition.entrySet()) {
+                                ACLMessage confirm = new ACLMessage(ACLMessage.CONFIRM);
+                                confirm.addReceiver(entry.getKey());
+                                ListeLivres partie = new ListeLivres(entry.getValue());
+                                if (codecBinaire) {
+                                    confirm.setByteSequenceContent(partie.encoder());
+                                    confirm.addUserDefinedParameter(ListeLivres.PARAMETRE_CODEC, ListeLivres.CODEC_BINAIRE);
+                                } else {
+                                    confirm.setContentObject(partie);
+                                }
+                                // Résultats reçus par pages, pour décider sans attendre la fin de la recherche
+                                int taillePage = (entry.getValue().size() + PAGES_PAR_RECHERCHE - 1) / PAGES_PAR_RECHERCHE;
+                                confirm.addUserDefinedParameter("taille-page", String.valueOf(Math.max(1, taillePage)));
+                                confirm.setConversationId("recherche-liste");
+                                confirm.setReplyWith(identifiantRecherche);
+                                myAgent.send(confirm);
+                            }
+                            recherchesEnCours.addAll(repartition.keySet());
+                            accusesAttendus = repartition.size();
+                            resultatRecherche = new ResultatRecherche();
+
+                            informerObservateur(new Evenement(Type.DEMANDE_LISTE, null, null, nombreLivresSouhaites));
                             etape = 1;
                         } else {
                             System.out.println(getLocalName() + " n'a pas trouvé de bibliothécaire");
-                            informerObservateur("USER_INFO:N'a pas trouvé de bibliothécaire");
+                            informerObservateur(new Evenement(Type.BIBLIOTHECAIRE_ABSENTE));
                             done = true;
                         }
                     } catch (FIPAException | IOException e) {
@@ -135,119 +197,55 @@ public class UserListe extends Agent {
                     }
                     break;
 
-                case 1: // Attendre la réponse "recherche en cours"
-                    MessageTemplate mt1 = MessageTemplate.and(
-                        MessageTemplate.MatchPerformative(ACLMessage.INFORM),
-                        MessageTemplate.MatchContent("recherche-en-cours")
-                    );
-
-                    ACLMessage msgRecherche = myAgent.receive(mt1);
+                case 1: // Attendre la réponse "recherche en cours" de chaque bibliothécaire
+                    ACLMessage msgRecherche = myAgent.receive(MODELE_RECHERCHE_EN_COURS);
                     if (msgRecherche != null) {
-                        System.out.println(getLocalName() + " attend pendant que la bibliothécaire recherche les livres");
-                        informerObservateur("USER_INFO:Patiente pendant la recherche des livres");
-                        etape = 2;
+                        if (accusesAttendus == repartition.size()) {
+                            System.out.println(getLocalName() + " attend pendant que la bibliothécaire recherche les livres");
+                            informerObservateur(new Evenement(Type.PATIENTE_LISTE));
+                        }
+                        if (--accusesAttendus == 0) {
+                            etape = 2;
+                        }
                     } else {
                         block();
                     }
                     break;
 
-                case 2: // Attendre le résultat de la recherche
-                    MessageTemplate mt2 = MessageTemplate.and(
-                        MessageTemplate.MatchPerformative(ACLMessage.INFORM),
-                        MessageTemplate.not(MessageTemplate.MatchContent("recherche-en-cours"))
-                    );
-
-                    ACLMessage msgResultat = myAgent.receive(mt2);
+                case 2: // Recevoir les pages de résultats de chaque bibliothécaire, jusqu'à ce que l'issue soit connue
+                    ACLMessage msgResultat = myAgent.receive(MODELE_RESULTAT);
 
                     if (msgResultat != null) {
                         try {
-                            resultatRecherche = (ResultatRecherche) msgResultat.getContentObject();
-
-                            int livresTrouves = resultatRecherche.getNombreLivresTrouves();
-                            int livresNonTrouves = resultatRecherche.getNombreLivresNonTrouves();
-
-                            System.out.println(getLocalName() + " a reçu le résultat de recherche: " +
-                                livresTrouves + " livres trouvés, " +
-                                livresNonTrouves + " non trouvés");
-
-                            informerObservateur("USER_INFO:Reçoit les résultats: " +
-                                livresTrouves + "/" + nombreLivresSouhaites +
-                                " livres disponibles");
-
-                            // Informer la bibliothécaire qu'on réfléchit
-                            ACLMessage thinking = new ACLMessage(ACLMessage.INFORM);
-                            thinking.addReceiver(msgResultat.getSender());
-                            thinking.setContent("reflection-en-cours");
-                            myAgent.send(thinking);
-
-                            informerObservateur("USER_INFO:Demande à la bibliothécaire de patienter pendant sa réflexion");
-
-                            // Simuler un temps de réflexion
-                            try {
-                                Thread.sleep(3000);
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
+                            AID bibliothecaire = msgResultat.getSender();
+                            if (!recherchesEnCours.contains(bibliothecaire)) {
+                                break; // page envoyée avant réception de l'annulation
+                            }
+                            // La page porte sur les titres [debut, fin[ de la partie envoyée à cette bibliothécaire
+                            List<String> titres = repartition.get(bibliothecaire);
+                            String debut = msgResultat.getUserDefinedParameter("debut");
+                            String fin = msgResultat.getUserDefinedParameter("fin");
+                            List<String> page = debut == null ? titres
+                                : titres.subList(Integer.parseInt(debut), Integer.parseInt(fin));
+
+                            ResultatRecherche partiel = ListeLivres.CODEC_BINAIRE.equals(
+                                    msgResultat.getUserDefinedParameter(ListeLivres.PARAMETRE_CODEC))
+                                ? ResultatRecherche.decoder(msgResultat.getByteSequenceContent(), page)
+                                : (ResultatRecherche) msgResultat.getContentObject();
+                            resultatRecherche.fusionner(partiel);
+                            trouvesParBibliothecaire.computeIfAbsent(bibliothecaire, b -> new ArrayList<>())
+                                .addAll(partiel.getLivresTrouves().keySet());
+                            if (fin == null || Integer.parseInt(fin) == titres.size()) {
+                                recherchesEnCours.remove(bibliothecaire);
                             }
 
-                            // Calculer l'utilité perçue
-                            float utilite = (float) livresTrouves / nombreLivresSouhaites;
-
-                            if (utilite >= seuilUtilite) {
-                                // Décider d'emprunter les livres trouvés
-                                System.out.println(getLocalName() + " décide d'emprunter les livres trouvés (utilité: " +
-                                    utilite + " >= seuil: " + seuilUtilite + ")");
-
-                                informerObservateur("USER_INFO:Décide d'emprunter les livres disponibles (utilité suffisante: " +
-                                    String.format("%.2f", utilite) + ")");
-
-                                // Construire la liste des titres à emprunter
-                                StringBuilder titresAEmprunter = new StringBuilder();
-                                for (Map.Entry<String, Livre> entry : resultatRecherche.getLivresTrouves().entrySet()) {
-                                    titresAEmprunter.append(entry.getKey()).append(";");
-                                }
-
-                                // Envoyer la demande d'emprunt
-                                ACLMessage emprunt = new ACLMessage(ACLMessage.AGREE);
-                                emprunt.addReceiver(msgResultat.getSender());
-                                emprunt.setContent(titresAEmprunter.toString());
-                                emprunt.setConversationId("emprunt-liste");
-                                myAgent.send(emprunt);
-
-                                etape = 3;
-                            } else {
-                                // Décider de ne pas emprunter
-                                System.out.println(getLocalName() + " décide de ne pas emprunter les livres (utilité: " +
-                                    utilite + " < seuil: " + seuilUtilite + ")");
-
-                                informerObservateur("USER_INFO:Décide de ne pas emprunter les livres (utilité insuffisante: " +
-                                    String.format("%.2f", utilite) + ")");
-
-                                // Remercier la bibliothécaire et partir
-                                ACLMessage thanks = new ACLMessage(ACLMessage.INFORM);
-                                thanks.addReceiver(msgResultat.getSender());
-                                thanks.setContent("merci-non-emprunt");
-                                myAgent.send(thanks);
-
-                                System.out.println(getLocalName() + " : Merci pour votre recherche, mais je ne souhaite pas emprunter.");
-                                informerObservateur("USER_INFO:Remercie la bibliothécaire et quitte sans emprunter");
-
-                                // Terminer le comportement
-                                done = true;
-
-                                // Supprimer l'agent après un court délai
-                                myAgent.addBehaviour(new OneShotBehaviour() {
-                                    @Override
-                                    public void action() {
-                                        try {
-                                            Thread.sleep(2000);
-                                            myAgent.doDelete();
-                                        } catch (InterruptedException e) {
-                                            e.printStackTrace();
-                                        }
-                                    }
-                                });
+                            if (recherchesEnCours.isEmpty()) {
+                                evaluerResultat();
+                            } else if (issueCertaine()) {
+                                annulerRecherches();
+                                evaluerResultat();
                             }
-                        } catch (UnreadableException e) {
+                        } catch (UnreadableException | IOException e) {
                             e.printStackTrace();
                             done = true;
                         }
@@ -256,51 +254,48 @@ public class UserListe extends Agent {
                     }
                     break;
 
-                case 3: // Attendre la confirmation de l'emprunt
-                    MessageTemplate mt3 = MessageTemplate.and(
-                        MessageTemplate.MatchPerformative(ACLMessage.INFORM),
-                        MessageTemplate.MatchConversationId("emprunt-liste")
-                    );
-
-                    ACLMessage msgEmprunt = myAgent.receive(mt3);
+                case 3: // Attendre la confirmation de l'emprunt de chaque bibliothécaire
+                    ACLMessage msgEmprunt = myAgent.receive(MODELE_CONFIRMATION);
 
                     if (msgEmprunt != null) {
                         String content = msgEmprunt.getContent();
 
                         if (content.startsWith("tous-empruntes:")) {
-                            int duree = Integer.parseInt(content.split(":")[1]);
-                            System.out.println(getLocalName() + " a emprunté tous les livres pour " + duree + " jours");
-                            informerObservateur("USER_INFO:A emprunté tous les livres disponibles pour " + duree + " jours");
+                            dureeMin = Math.min(dureeMin, Integer.parseInt(content.split(":")[1]));
                         } else if (content.startsWith("certains-empruntes:")) {
-                            String rapport = content.split(":")[1];
+                            tousEmpruntes = false;
+                            rapport.append(content.split(":")[1]);
+                        } else if (content.startsWith("emprunt-annule:")) {
+                            tousEmpruntes = false;
+                            rapport.append("aucun livre de ").append(msgEmprunt.getSender().getLocalName())
+                                .append(" (non disponibles: ").append(content.substring("emprunt-annule:".length()))
+                                .append(");");
+                        }
+
+                        if (--reponsesAttendues > 0) {
+                            break;
+                        }
+
+                        if (tousEmpruntes) {
+                            System.out.println(getLocalName() + " a emprunté tous les livres pour " + dureeMin + " jours");
+                            informerObservateur(new Evenement(Type.A_EMPRUNTE_LISTE, null, null, 0, dureeMin));
+                        } else {
                             System.out.println(getLocalName() + " a emprunté certains livres: " + rapport);
-                            informerObservateur("USER_INFO:A emprunté certains livres: " + rapport);
+                            informerObservateur(new Evenement(Type.A_EMPRUNTE_EN_PARTIE, null, rapport.toString()));
                         }
 
-                        // Remercier la bibliothécaire
+                        // Remercier les bibliothécaires
                         ACLMessage thanks = new ACLMessage(ACLMessage.INFORM);
-                        thanks.addReceiver(msgEmprunt.getSender());
+                        for (AID bibliothecaire : trouvesParBibliothecaire.keySet()) {
+                            thanks.addReceiver(bibliothecaire);
+                        }
                         thanks.setContent("merci-beaucoup");
                         myAgent.send(thanks);
 
                         System.out.println(getLocalName() + " : Merci beaucoup pour votre aide !");
-                        informerObservateur("USER_INFO:Remercie la bibliothécaire et quitte la bibliothèque");
+                        informerObservateur(new Evenement(Type.REMERCIE));
 
-                        // Terminer le comportement
-                        done = true;
-
-                        // Supprimer l'agent après un court délai
-                        myAgent.addBehaviour(new OneShotBehaviour() {
-                            @Override
-                            public void action() {
-                                try {
-                                    Thread.sleep(2000);
-                                    myAgent.doDelete();
-                                } catch (InterruptedException e) {
-                                    e.printStackTrace();
-                                }
-                            }
-                        });
+                        terminer();
                     } else {
                         block();
                     }
@@ -308,6 +303,135 @@ public class UserListe extends Agent {
             }
         }
 
+        // L'issue est certaine dès que le seuil d'utilité est atteint, ou qu'il ne peut plus l'être
+        // même si tous les titres dont le résultat n'est pas encore connu étaient trouvés
+        private boolean issueCertaine() {
+            int trouves = resultatRecherche.getNombreLivresTrouves();
+            int inconnus = nombreLivresSouhaites - trouves - resultatRecherche.getNombreLivresNonTrouves();
+            return (trouves > 0 && (float) trouves / nombreLivresSouhaites >= seuilUtilite)
+                || trouves + inconnus == 0
+                || (float) (trouves + inconnus) / nombreLivresSouhaites < seuilUtilite;
+        }
+
+        // Demander aux bibliothécaires d'arrêter la recherche des titres restants (CANCEL)
+        private void annulerRecherches() {
+            int recus = resultatRecherche.getNombreLivresTrouves() + resultatRecherche.getNombreLivresNonTrouves();
+            ACLMessage cancel = new ACLMessage(ACLMessage.CANCEL);
+            for (AID bibliothecaire : recherchesEnCours) {
+                cancel.addReceiver(bibliothecaire);
+            }
+            cancel.setConversationId("recherche-liste");
+            cancel.setInReplyTo(identifiantRecherche);
+            myAgent.send(cancel);
+            recherchesEnCours.clear();
+
+            System.out.println(getLocalName() + " connaît l'issue après " + recus + "/" + nombreLivresSouhaites +
+                " titres et annule le reste de la recherche");
+            informerObservateur(new Evenement(Type.RECHERCHE_INTERROMPUE, null, null, recus, 0, nombreLivresSouhaites));
+        }
+
+        // Décider d'emprunter ou non une fois l'issue connue (tous les résultats reçus ou décision anticipée)
+        private void evaluerResultat() {
+            int livresTrouves = resultatRecherche.getNombreLivresTrouves();
+            int livresNonTrouves = resultatRecherche.getNombreLivresNonTrouves();
+
+            System.out.println(getLocalName() + " a reçu le résultat de recherche: " +
+                livresTrouves + " livres trouvés, " +
+                livresNonTrouves + " non trouvés");
+
+            informerObservateur(new Evenement(Type.RESULTATS_LISTE, null, null, livresTrouves, 0, nombreLivresSouhaites));
+
+            // Informer les bibliothécaires qu'on réfléchit
+            ACLMessage thinking = new ACLMessage(ACLMessage.INFORM);
+            for (AID bibliothecaire : trouvesParBibliothecaire.keySet()) {
+                thinking.addReceiver(bibliothecaire);
+            }
+            thinking.setContent("reflection-en-cours");
+            myAgent.send(thinking);
+
+            informerObservateur(new Evenement(Type.REFLEXION));
+
+            // Simuler un temps de réflexion
+            try {
+                Thread.sleep(3000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+
+            // Calculer l'utilité perçue
+            float utilite = (float) livresTrouves / nombreLivresSouhaites;
+
+            if (utilite >= seuilUtilite && livresTrouves > 0) {
+                // Décider d'emprunter les livres trouvés
+                System.out.println(getLocalName() + " décide d'emprunter les livres trouvés (utilité: " +
+                    utilite + " >= seuil: " + seuilUtilite + ")");
+
+                informerObservateur(new Evenement(Type.DECIDE_EMPRUNTER, null, null, 0, 0, Math.round(utilite * 100)));
+
+                // Envoyer la demande d'emprunt des titres trouvés chez chaque bibliothécaire à la
+                // primaire de leur fragment, la recherche ayant pu être servie par une réplique
+                reponsesAttendues = 0;
+                for (Map.Entry<AID, List<String>> entry : trouvesParBibliothecaire.entrySet()) {
+                    if (entry.getValue().isEmpty()) {
+                        continue;
+                    }
+                    StringBuilder titresAEmprunter = new StringBuilder();
+                    for (String titre : entry.getValue()) {
+                        titresAEmprunter.append(titre).append(";");
+                    }
+
+                    ACLMessage emprunt = new ACLMessage(ACLMessage.AGREE);
+                    AID primaire = annuaire.ecrivainPour(entry.getValue().get(0));
+                    ProxyBibliotheque.adresser(emprunt, primaire != null ? primaire : entry.getKey(), proxy);
+                    emprunt.setContent(titresAEmprunter.toString());
+                    emprunt.setConversationId("emprunt-liste");
+                    // Tout ou rien : la bibliothécaire n'en prête aucun si l'un d'eux n'est plus disponible
+                    emprunt.addUserDefinedParameter("mode", "atomique");
+                    myAgent.send(emprunt);
+                    reponsesAttendues++;
+                }
+
+                etape = 3;
+            } else {
+                // Décider de ne pas emprunter
+                System.out.println(getLocalName() + " décide de ne pas emprunter les livres (utilité: " +
+                    utilite + " < seuil: " + seuilUtilite + ")");
+
+                informerObservateur(new Evenement(Type.DECIDE_RENONCER, null, null, 0, 0, Math.round(utilite * 100)));
+
+                // Remercier les bibliothécaires et partir
+                ACLMessage thanks = new ACLMessage(ACLMessage.INFORM);
+                for (AID bibliothecaire : trouvesParBibliothecaire.keySet()) {
+                    thanks.addReceiver(bibliothecaire);
+                }
+                thanks.setContent("merci-non-emprunt");
+                myAgent.send(thanks);
+
+                System.out.println(getLocalName() + " : Merci pour votre recherche, mais je ne souhaite pas emprunter.");
+                informerObservateur(new Evenement(Type.REMERCIE_SANS_EMPRUNTER));
+
+                terminer();
+            }
+        }
+
+        private void terminer() {
+            // Terminer le comportement
+            done = true;
+
+            // Supprimer l'agent après un court délai
+            myAgent.addBehaviour(new OneShotBehaviour() {
+                @Override
+                public void action() {
+                    try {
+                        Thread.sleep(2000);
+                        myAgent.doDelete();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+
         @Override
         public boolean done() {
             return done;
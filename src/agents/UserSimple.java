@@ -1,25 +1,49 @@
 package agents;
 
+import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.Behaviour;
 import jade.core.behaviours.OneShotBehaviour;
-import jade.domain.DFService;
 import jade.domain.FIPAException;
-import jade.domain.FIPAAgentManagement.DFAgentDescription;
-import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 
+import model.Evenement;
+import model.Evenement.Type;
+
 /**
  * UserSimple - Agent réactif simple (recherche juste un livre)
  * Architecture: Réactive simple
  * Objectif: Vérifier si un livre est disponible dans la bibliothèque
  */
 public class UserSimple extends Agent {
+    // Modèles de réception de chaque étape, construits une seule fois
+    private static final MessageTemplate MODELE_RECHERCHE_EN_COURS = MessageTemplate.and(
+        MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+        MessageTemplate.MatchConversationId("recherche-livre")
+    );
+    private static final MessageTemplate MODELE_RESULTAT = MessageTemplate.MatchConversationId("resultat-recherche");
+
+    // Publication des événements vers les observateurs
+    private PublicateurEvenements evenements;
+
+    // Bibliothécaires et leur charge, tenus à jour par abonnement au DF
+    private AnnuaireBibliotheque annuaire;
+
+    // Proxy du conteneur (null s'il n'y en a pas), qui relaie les demandes de disponibilité
+    private AID proxy;
+
     private String titreLivreRecherche;
 
     @Override
     protected void setup() {
+        // Observateurs connus par abonnement au DF, sans recherche à chaque événement
+        evenements = new PublicateurEvenements(this);
+        evenements.demarrer();
+        annuaire = new AnnuaireBibliotheque(this);
+        annuaire.demarrer();
+        proxy = ProxyBibliotheque.rechercherLocal(this);
+
         // Récupération des arguments
         Object[] args = getArguments();
         if (args != null && args.length > 0) {
@@ -27,7 +51,7 @@ public class UserSimple extends Agent {
             System.out.println("Agent utilisateur simple " + getLocalName() + " recherche le livre: " + titreLivreRecherche);
 
             // Notifier l'observateur de la création de l'utilisateur
-            informerObservateur("USER_NOUVEAU:Simple utilisateur recherchant \"" + titreLivreRecherche + "\"");
+            informerObservateur(new Evenement(Type.NOUVEL_UTILISATEUR, null, titreLivreRecherche));
 
             // Démarrage du comportement de recherche
             addBehaviour(new RechercherLivre());
@@ -40,28 +64,14 @@ public class UserSimple extends Agent {
     @Override
     protected void takeDown() {
         // Notifier l'observateur de la suppression de l'utilisateur
-        informerObservateur("USER_FIN:L'utilisateur simple a quitté la bibliothèque");
+        informerObservateur(new Evenement(Type.DEPART_UTILISATEUR));
         System.out.println("Agent utilisateur " + getLocalName() + " s'est terminé.");
+        annuaire.arreter();
+        evenements.arreter();
     }
 
-    private void informerObservateur(String message) {
-        // Rechercher l'agent observateur
-        DFAgentDescription template = new DFAgentDescription();
-        ServiceDescription sd = new ServiceDescription();
-        sd.setType("observateur");
-        template.addServices(sd);
-
-        try {
-            DFAgentDescription[] result = DFService.search(this, template);
-            if (result.length > 0) {
-                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-                msg.addReceiver(result[0].getName());
-                msg.setContent(message);
-                send(msg);
-            }
-        } catch (FIPAException fe) {
-            fe.printStackTrace();
-        }
+    private void informerObservateur(Evenement evenement) {
+        evenements.publier(evenement);
     }
 
     // Comportement pour rechercher un livre
@@ -72,30 +82,29 @@ public class UserSimple extends Agent {
         @Override
         public void action() {
             switch (etape) {
-                case 0: // Recherche de la bibliothécaire
-                    DFAgentDescription template = new DFAgentDescription();
-                    ServiceDescription sd = new ServiceDescription();
-                    sd.setType("service-bibliotheque");
-                    template.addServices(sd);
-
+                case 0: // Recherche de la bibliothécaire qui détient le livre, ou du proxy qui répond pour elle
                     try {
-                        DFAgentDescription[] result = DFService.search(myAgent, template);
-                        if (result.length > 0) {
-                            System.out.println(getLocalName() + " a trouvé la bibliothécaire: " + result[0].getName().getLocalName());
-                            informerObservateur("USER_INFO:A trouvé la bibliothécaire");
+                        AID bibliothecaire = proxy;
+                        if (bibliothecaire == null && annuaire.disponible()) {
+                            bibliothecaire = annuaire.lecteurPour(titreLivreRecherche);
+                        }
+                        if (bibliothecaire != null) {
+                            System.out.println(getLocalName() + " a trouvé " + (proxy != null ? "le proxy: " : "la bibliothécaire: ") +
+                                bibliothecaire.getLocalName());
+                            informerObservateur(new Evenement(Type.BIBLIOTHECAIRE_TROUVEE));
 
                             // Envoi de la demande à la bibliothécaire
                             ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
-                            request.addReceiver(result[0].getName());
+                            request.addReceiver(bibliothecaire);
                             request.setContent(titreLivreRecherche);
                             request.setConversationId("recherche-livre");
                             myAgent.send(request);
 
-                            informerObservateur("USER_INFO:Demande si le livre \"" + titreLivreRecherche + "\" est disponible");
+                            informerObservateur(new Evenement(Type.DEMANDE_DISPONIBILITE, null, titreLivreRecherche));
                             etape = 1;
                         } else {
                             System.out.println(getLocalName() + " n'a pas trouvé de bibliothécaire");
-                            informerObservateur("USER_INFO:N'a pas trouvé de bibliothécaire");
+                            informerObservateur(new Evenement(Type.BIBLIOTHECAIRE_ABSENTE));
                             done = true;
                         }
                     } catch (FIPAException e) {
@@ -105,16 +114,12 @@ public class UserSimple extends Agent {
                     break;
 
                 case 1: // Attendre la réponse "recherche en cours"
-                    MessageTemplate mt1 = MessageTemplate.and(
-                        MessageTemplate.MatchPerformative(ACLMessage.INFORM),
-                        MessageTemplate.MatchConversationId("recherche-livre")
-                    );
 
-                    ACLMessage msgRecherche = myAgent.receive(mt1);
+                    ACLMessage msgRecherche = myAgent.receive(MODELE_RECHERCHE_EN_COURS);
                     if (msgRecherche != null) {
                         if (msgRecherche.getContent().equals("recherche-en-cours")) {
                             System.out.println(getLocalName() + " attend pendant que la bibliothécaire recherche le livre");
-                            informerObservateur("USER_INFO:Patiente pendant la recherche du livre");
+                            informerObservateur(new Evenement(Type.PATIENTE));
                             etape = 2;
                         }
                     } else {
@@ -123,13 +128,12 @@ public class UserSimple extends Agent {
                     break;
 
                 case 2: // Attendre le résultat de la recherche
-                    MessageTemplate mt2 = MessageTemplate.MatchConversationId("resultat-recherche");
-                    ACLMessage msgResultat = myAgent.receive(mt2);
+                    ACLMessage msgResultat = myAgent.receive(MODELE_RESULTAT);
 
                     if (msgResultat != null) {
                         if (msgResultat.getPerformative() == ACLMessage.INFORM) {
                             System.out.println(getLocalName() + " a reçu une réponse positive pour le livre " + titreLivreRecherche);
-                            informerObservateur("USER_INFO:Apprend que le livre \"" + titreLivreRecherche + "\" est disponible");
+                            informerObservateur(new Evenement(Type.APPREND_DISPONIBLE, null, titreLivreRecherche));
 
                             // Envoyer un message de remerciement
                             ACLMessage thanks = new ACLMessage(ACLMessage.INFORM);
@@ -138,10 +142,10 @@ public class UserSimple extends Agent {
                             myAgent.send(thanks);
 
                             System.out.println(getLocalName() + " : Merci pour l'information !");
-                            informerObservateur("USER_INFO:Remercie la bibliothécaire et quitte la bibliothèque");
+                            informerObservateur(new Evenement(Type.REMERCIE));
                         } else {
                             System.out.println(getLocalName() + " a reçu une réponse négative pour le livre " + titreLivreRecherche);
-                            informerObservateur("USER_INFO:Apprend que le livre \"" + titreLivreRecherche + "\" n'est pas disponible");
+                            informerObservateur(new Evenement(Type.APPREND_NON_DISPONIBLE, null, titreLivreRecherche));
 
                             // Envoyer un message de remerciement quand même
                             ACLMessage thanks = new ACLMessage(ACLMessage.INFORM);
@@ -150,7 +154,7 @@ public class UserSimple extends Agent {
                             myAgent.send(thanks);
 
                             System.out.println(getLocalName() + " : Merci quand même pour votre aide.");
-                            informerObservateur("USER_INFO:Remercie quand même la bibliothécaire et quitte la bibliothèque");
+                            informerObservateur(new Evenement(Type.REMERCIE_QUAND_MEME_ET_QUITTE));
                         }
 
                         // Terminer le comportement
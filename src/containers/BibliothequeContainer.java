@@ -8,6 +8,10 @@ import jade.wrapper.ControllerException;
 
 /**
  * Conteneur pour l'agent bibliothécaire
+ * Le premier argument optionnel indique le nombre de fragments du catalogue, le second le nombre
+ * de bibliothécaires (répliques) servant chaque fragment. La première réplique d'un fragment en
+ * est la primaire : elle sert toutes les écritures (emprunts, retours, files d'attente) et réplique
+ * son stock vers les autres, qui ne servent que les lectures
  */
 public class BibliothequeContainer {
     public static void main(String[] args) {
@@ -23,11 +27,32 @@ public class BibliothequeContainer {
 
             System.out.println("Conteneur de bibliothèque créé");
 
-            // Création de l'agent bibliothécaire
-            AgentController bibliothecaire = container.createNewAgent("bibliothecaire", "agents.Bibliothecaire", new Object[]{});
-            bibliothecaire.start();
+            // Nombre de bibliothécaires, chacune détenant un fragment du catalogue
+            int nombreFragments = args != null && args.length > 0 ? Integer.parseInt(args[0]) : 1;
+            String[] noms = new String[nombreFragments];
+            for (int i = 0; i < nombreFragments; i++) {
+                noms[i] = i == 0 ? "bibliothecaire" : "bibliothecaire" + (i + 1);
+            }
+            String fragments = String.join(",", noms);
+            int repliques = args != null && args.length > 1 ? Integer.parseInt(args[1]) : 1;
 
-            System.out.println("Agent bibliothécaire démarré");
+            // Création des agents bibliothécaires, les répliques d'un fragment étant suffixées ;
+            // la primaire connaît ses répliques, chaque réplique sa primaire
+            for (String fragment : noms) {
+                String[] lecture = new String[Math.max(0, repliques - 1)];
+                for (int r = 1; r < repliques; r++) {
+                    lecture[r - 1] = fragment + "-" + (r + 1);
+                }
+                for (int r = 0; r < repliques; r++) {
+                    String nom = r == 0 ? fragment : lecture[r - 1];
+                    String role = r == 0 ? "repliques=" + String.join(",", lecture) : "primaire=" + fragment;
+                    AgentController bibliothecaire = container.createNewAgent(nom, "agents.Bibliothecaire",
+                        new Object[]{"fragment=" + fragment, "fragments=" + fragments, role});
+                    bibliothecaire.start();
+
+                    System.out.println("Agent bibliothécaire " + nom + " démarré");
+                }
+            }
         } catch (ControllerException e) {
             e.printStackTrace();
         }
@@ -26,6 +26,10 @@ public class UtilisateursContainer {
             // Pause pour s'assurer que le bibliothécaire est prêt
             Thread.sleep(2000);
 
+            // Proxy du conteneur : répond aux demandes de disponibilité et relaie les écritures en lots
+            container.createNewAgent("proxy", "agents.ProxyBibliotheque", null).start();
+            Thread.sleep(500);
+
             // Création des utilisateurs à intervalle régulier
             // Utilisateur simple - qui demande juste si un livre est disponible
             AgentController user1 = container.createNewAgent("user1",
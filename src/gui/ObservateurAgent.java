@@ -5,10 +5,15 @@ import jade.core.behaviours.CyclicBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAException;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 
+import java.io.IOException;
+
+import model.Evenement;
+
 /**
  * ObservateurAgent - Agent de surveillance (agent réactif complexe)
  * Architecture: Réactive avec état
@@ -32,6 +37,15 @@ public class ObservateurAgent extends Agent {
         ServiceDescription sd = new ServiceDescription();
         sd.setType("observateur");
         sd.setName("JADE-observateur");
+        // Argument facultatif "categories=TRANSACTION,USER_INFO" : ne recevoir que ces catégories d'événements
+        Object[] args = getArguments();
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg instanceof String && ((String) arg).startsWith("categories=")) {
+                    sd.addProperties(new Property("categories", ((String) arg).substring("categories=".length())));
+                }
+            }
+        }
         dfd.addServices(sd);
         try {
             DFService.register(this, dfd);
@@ -88,34 +102,44 @@ public class ObservateurAgent extends Agent {
             ACLMessage msg = myAgent.receive(mt);
 
             if (msg != null) {
-                String sender = msg.getSender().getLocalName();
-                String content = msg.getContent();
-
-                if (content.startsWith("BIBLIO_NOUVEAU:")) {
-                    gui.ajouterBibliothecaire(sender);
-                }
-                else if (content.startsWith("USER_NOUVEAU:")) {
-                    String info = content.substring("USER_NOUVEAU:".length()).trim();
-                    gui.ajouterUtilisateur(sender, info);
-                }
-                else if (content.startsWith("USER_FIN:")) {
-                    gui.supprimerUtilisateur(sender);
-                }
-                else if (content.startsWith("BIBLIO_INFO:")) {
-                    String info = content.substring("BIBLIO_INFO:".length()).trim();
-                    gui.miseAJourBibliothecaire(sender, info);
-                }
-                else if (content.startsWith("USER_INFO:")) {
-                    String info = content.substring("USER_INFO:".length()).trim();
-                    gui.miseAJourUtilisateur(sender, info);
-                }
-                else if (content.startsWith("TRANSACTION:")) {
-                    String transaction = content.substring("TRANSACTION:".length()).trim();
-                    gui.logTransaction(transaction);
+                // Les événements arrivent par lots, encodés en binaire
+                if (msg.hasByteSequenceContent()) {
+                    String sender = msg.getSender().getLocalName();
+                    try {
+                        for (Evenement evenement : Evenement.decoder(msg.getByteSequenceContent())) {
+                            traiterEvenement(sender, evenement);
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
                 }
             } else {
                 block();
             }
         }
+
+        // Le texte de l'événement n'est produit que s'il est affiché
+        private void traiterEvenement(String sender, Evenement evenement) {
+            switch (evenement.getCategorie()) {
+                case BIBLIO_NOUVEAU:
+                    gui.ajouterBibliothecaire(sender);
+                    break;
+                case USER_NOUVEAU:
+                    gui.ajouterUtilisateur(sender, evenement.texte());
+                    break;
+                case USER_FIN:
+                    gui.supprimerUtilisateur(sender);
+                    break;
+                case BIBLIO_INFO:
+                    gui.miseAJourBibliothecaire(sender, evenement.texte());
+                    break;
+                case USER_INFO:
+                    gui.miseAJourUtilisateur(sender, evenement.texte());
+                    break;
+                case TRANSACTION:
+                    gui.logTransaction(evenement.texte());
+                    break;
+            }
+        }
     }
 }
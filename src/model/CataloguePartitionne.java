@@ -0,0 +1,813 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+import util.FiltreBloom;
+
+/**
+ * Catalogue découpé en partitions selon le hachage du titre.
+ * Chaque partition appartient à un unique thread de travail : toutes les opérations
+ * sur un livre s'exécutent sur le thread de sa partition, sans verrou.
+ *
+ * Les très longues listes de titres sont en revanche consultées en lecture seule depuis un
+ * ForkJoinPool ({@link #rechercherTous}) : les stockages des partitions sont lisibles depuis
+ * n'importe quel thread, et chaque livre est copié avec un état de stock cohérent.
+ *
+ * Chaque partition range ses livres dans un {@link StockageCatalogue} : table d'objets Livre
+ * par défaut, colonnes compactes pour les très grands catalogues, ou fichiers projetés en
+ * mémoire hors du tas.
+ *
+ * Chaque partition tient un filtre de Bloom de ses titres : un titre absent à coup sûr est
+ * écarté sur le thread appelant, sans passer par le thread de la partition. Le filtre est
+ * complété à chaque chargement et reconstruit au double de sa capacité lorsqu'il est plein.
+ *
+ * La composition du catalogue est versionnée. Ajouts, retraits et rechargements sont préparés
+ * un à la fois par un thread d'écriture, sur une copie des partitions concernées, puis publiés
+ * d'un seul échange de référence : ni les lectures ni les opérations de stock n'attendent
+ * l'écrivain. Un instantané ({@link #instantane}) garde la composition d'une version pendant
+ * que les suivantes sont publiées. Un livre conservé d'une version à l'autre reste le même
+ * objet : ses réservations et emprunts en cours s'appliquent au stock de la nouvelle version.
+ */
+public class CataloguePartitionne {
+    // Nombre de titres traités séquentiellement par une tâche de recherche ; une liste plus
+    // courte est donc recherchée par une seule tâche
+    public static final int TAILLE_MORCEAU = 4096;
+    private static final int CAPACITE_FILTRE_INITIALE = 1024;
+    private static final double TAUX_FAUX_POSITIFS = 0.01;
+
+    // Stockage et filtre de chaque partition dans une version publiée ; un filtre null est en
+    // construction et n'écarte aucun titre
+    private static final class Version {
+        final long numero;
+        final StockageCatalogue[] partitions;
+        final FiltreBloom[] filtres;
+
+        Version(long numero, StockageCatalogue[] partitions, FiltreBloom[] filtres) {
+            this.numero = numero;
+            this.partitions = partitions;
+            this.filtres = filtres;
+        }
+    }
+
+    private final AtomicReference<Version> version;
+    private final ExecutorService[] travailleurs;
+    private final ForkJoinPool recherche;
+    // Prépare et publie les versions, une à la fois
+    private final ExecutorService ecrivain;
+
+    // Synchronisation des stockages demandée et pas encore commencée, partagée par les demandeurs
+    private final AtomicReference<CompletableFuture<Void>> synchronisation = new AtomicReference<>();
+
+    private final LongAdder absentsEcartes = new LongAdder();
+    private final LongAdder fauxPositifs = new LongAdder();
+
+    public CataloguePartitionne(String nom, int nombrePartitions) {
+        this(nom, nombrePartitions, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CataloguePartitionne(String nom, int nombrePartitions, int parallelisme) {
+        this(nom, nombrePartitions, parallelisme, StockageCatalogue.Type.TABLE);
+    }
+
+    public CataloguePartitionne(String nom, int nombrePartitions, int parallelisme, StockageCatalogue.Type stockage) {
+        this(nom, nombrePartitions, parallelisme, p -> stockage.creer());
+    }
+
+    /**
+     * @param stockage fournit le stockage de chaque partition, éventuellement déjà rempli
+     *                 (stockage projeté rouvert) : son filtre est alors reconstruit en arrière-plan
+     */
+    public CataloguePartitionne(String nom, int nombrePartitions, int parallelisme, IntFunction<StockageCatalogue> stockage) {
+        if (nombrePartitions < 1) {
+            throw new IllegalArgumentException("Nombre de partitions invalide: " + nombrePartitions);
+        }
+        StockageCatalogue[] partitions = new StockageCatalogue[nombrePartitions];
+        FiltreBloom[] filtres = new FiltreBloom[nombrePartitions];
+        this.travailleurs = new ExecutorService[nombrePartitions];
+        this.recherche = new ForkJoinPool(parallelisme);
+        this.ecrivain = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, nom + "-ecriture");
+            t.setDaemon(true);
+            return t;
+        });
+        boolean reconstruire = false;
+        for (int i = 0; i < nombrePartitions; i++) {
+            final String nomThread = nom + "-partition-" + i;
+            partitions[i] = stockage.apply(i);
+            travailleurs[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, nomThread);
+                t.setDaemon(true);
+                return t;
+            });
+            if (partitions[i].taille() == 0) {
+                filtres[i] = new FiltreBloom(CAPACITE_FILTRE_INITIALE, TAUX_FAUX_POSITIFS);
+            } else {
+                reconstruire = true;
+            }
+        }
+        this.version = new AtomicReference<>(new Version(0, partitions, filtres));
+        if (reconstruire) {
+            ecrivain.execute(this::reconstruireFiltres);
+        }
+    }
+
+    // Construit les filtres des partitions déjà remplies hors de leurs threads, pour que les
+    // premières consultations n'attendent pas la lecture de tous les titres ; d'ici là, aucun
+    // titre n'est écarté. Étant la première tâche de l'écrivain, aucun ajout ne la précède
+    private void reconstruireFiltres() {
+        Version v = version.get();
+        FiltreBloom[] filtres = v.filtres.clone();
+        pourChaquePartition(v.partitions.length, p -> {
+            if (filtres[p] == null) {
+                FiltreBloom filtre = new FiltreBloom(2 * v.partitions[p].taille() + CAPACITE_FILTRE_INITIALE, TAUX_FAUX_POSITIFS);
+                v.partitions[p].pourChaqueLivre(livre -> filtre.ajouter(livre.getTitre()));
+                filtres[p] = filtre;
+            }
+        });
+        version.set(new Version(v.numero, v.partitions, filtres));
+    }
+
+    public int getNombrePartitions() {
+        return travailleurs.length;
+    }
+
+    /**
+     * Numéro de la version courante, incrémenté à chaque modification publiée.
+     */
+    public long getVersion() {
+        return version.get().numero;
+    }
+
+    private static int partition(String titre, int n) {
+        int h = titre.hashCode();
+        h ^= (h >>> 16);
+        return Math.floorMod(h, n);
+    }
+
+    private int partition(String titre) {
+        return partition(titre, travailleurs.length);
+    }
+
+    /**
+     * Indique si le titre peut appartenir au catalogue ; false signifie qu'il est absent à coup sûr.
+     */
+    public boolean peutContenir(String titre) {
+        return !absent(version.get(), partition(titre), titre);
+    }
+
+    // Vrai si le filtre de la partition, une fois construit, écarte le titre
+    private static boolean absent(Version v, int p, String titre) {
+        FiltreBloom filtre = v.filtres[p];
+        return filtre != null && !filtre.contientPeutEtre(titre);
+    }
+
+    /**
+     * Exécute une opération sur le livre (ou null s'il est absent) dans le thread de sa partition,
+     * sur la version courante au moment de l'exécution.
+     * Pour un titre écarté par le filtre, l'opération reçoit null sur le thread appelant.
+     */
+    public <T> CompletableFuture<T> executer(String titre, Function<Livre, T> operation) {
+        int p = partition(titre);
+        Version v = version.get();
+        if (absent(v, p, titre)) {
+            absentsEcartes.increment();
+            CompletableFuture<T> resultat = new CompletableFuture<>();
+            try {
+                resultat.complete(operation.apply(null));
+            } catch (RuntimeException e) {
+                resultat.completeExceptionally(e);
+            }
+            return resultat;
+        }
+        boolean filtre = v.filtres[p] != null;
+        return CompletableFuture.supplyAsync(() -> {
+            Livre livre = version.get().partitions[p].obtenir(titre);
+            if (livre == null && filtre) {
+                fauxPositifs.increment();
+            }
+            return operation.apply(livre);
+        }, travailleurs[p]);
+    }
+
+    /**
+     * Répartit une opération sur plusieurs titres entre les partitions puis rassemble les résultats.
+     * La liste renvoyée est alignée sur l'ordre des titres demandés.
+     */
+    public <T> CompletableFuture<List<T>> executerTous(List<String> titres, Function<Livre, T> operation) {
+        int n = travailleurs.length;
+        List<List<Integer>> indicesParPartition = new ArrayList<>(n);
+        for (int p = 0; p < n; p++) {
+            indicesParPartition.add(new ArrayList<>());
+        }
+        for (int i = 0; i < titres.size(); i++) {
+            indicesParPartition.get(partition(titres.get(i))).add(i);
+        }
+
+        // Chaque partition écrit dans des cases distinctes du tableau : aucune contention
+        Object[] resultats = new Object[titres.size()];
+        List<CompletableFuture<Void>> taches = new ArrayList<>();
+        for (int p = 0; p < n; p++) {
+            List<Integer> indices = indicesParPartition.get(p);
+            if (indices.isEmpty()) {
+                continue;
+            }
+            int numero = p;
+            taches.add(CompletableFuture.runAsync(() -> {
+                StockageCatalogue partition = version.get().partitions[numero];
+                for (int i : indices) {
+                    resultats[i] = operation.apply(partition.obtenir(titres.get(i)));
+                }
+            }, travailleurs[p]));
+        }
+
+        return CompletableFuture.allOf(taches.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            @SuppressWarnings("unchecked")
+            List<T> liste = (List<T>) Arrays.asList(resultats);
+            return liste;
+        });
+    }
+
+    /**
+     * Renvoie le livre lui-même (ou null). Son stock peut ensuite être manipulé depuis
+     * n'importe quel thread grâce aux opérations atomiques de {@link Livre}.
+     */
+    public CompletableFuture<Livre> obtenir(String titre) {
+        return executer(titre, livre -> livre);
+    }
+
+    /**
+     * Recherche une liste de titres, éventuellement très longue, sur le ForkJoinPool : la liste
+     * est découpée en morceaux de {@link #TAILLE_MORCEAU} titres recherchés en parallèle, chacun
+     * produisant son propre résultat partiel. Les résultats partiels sont ensuite fusionnés une
+     * seule fois, dans l'ordre de la liste. Un titre est trouvé s'il existe et a des exemplaires
+     * disponibles ; les livres du résultat sont des copies. Toute la liste est recherchée dans
+     * un même instantané du catalogue.
+     */
+    public CompletableFuture<ResultatRecherche> rechercherTous(List<String> titres) {
+        Instantane instantane = instantane();
+        return CompletableFuture.supplyAsync(() -> {
+            List<RechercheMorceau> morceaux = new ArrayList<>();
+            for (int debut = 0; debut < titres.size(); debut += TAILLE_MORCEAU) {
+                morceaux.add(new RechercheMorceau(instantane, titres, debut, Math.min(titres.size(), debut + TAILLE_MORCEAU)));
+            }
+            if (morceaux.size() == 1) {
+                return morceaux.get(0).invoke();
+            }
+            ForkJoinTask.invokeAll(morceaux);
+            ResultatRecherche resultat = new ResultatRecherche(titres.size());
+            for (RechercheMorceau morceau : morceaux) {
+                resultat.fusionner(morceau.join());
+            }
+            return resultat;
+        }, recherche);
+    }
+
+    private static final class RechercheMorceau extends RecursiveTask<ResultatRecherche> {
+        private static final long serialVersionUID = 1L;
+
+        private final Instantane instantane;
+        private final List<String> titres;
+        private final int debut;
+        private final int fin;
+
+        RechercheMorceau(Instantane instantane, List<String> titres, int debut, int fin) {
+            this.instantane = instantane;
+            this.titres = titres;
+            this.debut = debut;
+            this.fin = fin;
+        }
+
+        @Override
+        protected ResultatRecherche compute() {
+            ResultatRecherche resultat = new ResultatRecherche(fin - debut);
+            for (int i = debut; i < fin; i++) {
+                String titre = titres.get(i);
+                Livre livre = copier(instantane.obtenir(titre));
+                if (livre != null && livre.estDisponible()) {
+                    resultat.ajouterLivreTrouve(titre, livre);
+                } else {
+                    resultat.ajouterLivreNonTrouve(titre);
+                }
+            }
+            return resultat;
+        }
+    }
+
+    public static Livre copier(Livre livre) {
+        if (livre == null) {
+            return null;
+        }
+        return new Livre(livre.getTitre(), livre.getAuteur(), livre.getQuantiteDisponible(), livre.getDureeEmpruntMax());
+    }
+
+    /**
+     * Composition figée d'une version du catalogue, lisible depuis n'importe quel thread sans
+     * retenir les modifications suivantes. Le stock des livres reste le stock courant.
+     */
+    public static final class Instantane {
+        private final long version;
+        private final StockageCatalogue[] partitions;
+
+        private Instantane(Version v) {
+            this.version = v.numero;
+            this.partitions = new StockageCatalogue[v.partitions.length];
+            for (int p = 0; p < partitions.length; p++) {
+                partitions[p] = v.partitions[p].instantane();
+            }
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public Livre obtenir(String titre) {
+            return partitions[partition(titre, partitions.length)].obtenir(titre);
+        }
+
+        public int taille() {
+            int taille = 0;
+            for (StockageCatalogue partition : partitions) {
+                taille += partition.taille();
+            }
+            return taille;
+        }
+
+        public void pourChaqueLivre(Consumer<Livre> action) {
+            for (StockageCatalogue partition : partitions) {
+                partition.pourChaqueLivre(action);
+            }
+        }
+
+        public List<Livre> livres() {
+            List<Livre> livres = new ArrayList<>(taille());
+            pourChaqueLivre(livres::add);
+            return livres;
+        }
+    }
+
+    /**
+     * Instantané de la version courante.
+     */
+    public Instantane instantane() {
+        return new Instantane(version.get());
+    }
+
+    /**
+     * Bilan d'une modification publiée du catalogue.
+     */
+    public static final class Modification {
+        private final List<Livre> ajoutes = new ArrayList<>();
+        private final List<Livre> retires = new ArrayList<>();
+        // Livres conservés dont l'auteur ou la durée d'emprunt a changé
+        private final List<Livre> modifies = new ArrayList<>();
+        // Livres conservés dont le stock disponible a changé, avec leur quantité d'avant
+        private final Map<Livre, Integer> stocksModifies = new LinkedHashMap<>();
+        private long version;
+        private long dureePreparationNs;
+
+        public List<Livre> getAjoutes() {
+            return ajoutes;
+        }
+
+        public List<Livre> getRetires() {
+            return retires;
+        }
+
+        public List<Livre> getModifies() {
+            return modifies;
+        }
+
+        /**
+         * Livres conservés dont le stock disponible a changé en reprenant leur nouvelle fiche,
+         * associés à la quantité disponible qu'ils avaient auparavant.
+         */
+        public Map<Livre, Integer> getStocksModifies() {
+            return stocksModifies;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getDureePreparationNs() {
+            return dureePreparationNs;
+        }
+
+        @Override
+        public String toString() {
+            return "version " + version + ": " + ajoutes.size() + " ajouté(s), " + retires.size() + " retiré(s), " +
+                modifies.size() + " modifié(s), " + stocksModifies.size() + " stock(s) modifié(s), préparation " + dureePreparationNs / 1_000_000 + " ms";
+        }
+    }
+
+    // Nouvel état d'une partition, préparé en parallèle des autres
+    private static final class Preparation {
+        StockageCatalogue stockage;
+        FiltreBloom filtre;
+        final Modification bilan = new Modification();
+        // Livre conservé et sa nouvelle fiche, appliquée juste avant la publication
+        final List<Livre[]> fiches = new ArrayList<>();
+    }
+
+    private interface Preparateur {
+        void preparer(int p, StockageCatalogue actuel, FiltreBloom filtre, Preparation preparation);
+    }
+
+    // Exécute une tâche par partition sur le ForkJoinPool et attend leur fin
+    private void pourChaquePartition(int n, IntConsumer tache) {
+        List<ForkJoinTask<?>> taches = new ArrayList<>(n);
+        for (int p = 0; p < n; p++) {
+            int numero = p;
+            taches.add(recherche.submit(() -> tache.accept(numero)));
+        }
+        for (ForkJoinTask<?> t : taches) {
+            t.join();
+        }
+    }
+
+    // Prépare sur l'écrivain l'état suivant des partitions concernées (toutes, ou celles dont le
+    // lot n'est pas vide), applique les fiches et le stock des livres conservés, puis publie la
+    // composition d'un seul échange de référence. Un livre conservé est partagé par les deux
+    // versions : sa fiche change titre par titre, avant la composition, et la nouvelle version ne
+    // montre jamais une fiche ancienne
+    private CompletableFuture<Modification> modifier(List<? extends Collection<?>> lots, boolean toutes, Preparateur preparateur) {
+        return CompletableFuture.supplyAsync(() -> {
+            long debut = System.nanoTime();
+            Version v = version.get();
+            int n = v.partitions.length;
+            Preparation[] preparations = new Preparation[n];
+            pourChaquePartition(n, p -> {
+                if (toutes || !lots.get(p).isEmpty()) {
+                    Preparation preparation = new Preparation();
+                    preparateur.preparer(p, v.partitions[p], v.filtres[p], preparation);
+                    // Un stockage sur disque y écrit les titres ajoutés avant qu'ils soient publiés
+                    preparation.stockage.synchroniser();
+                    preparations[p] = preparation;
+                }
+            });
+            StockageCatalogue[] partitions = v.partitions.clone();
+            FiltreBloom[] filtres = v.filtres.clone();
+            for (int p = 0; p < n; p++) {
+                if (preparations[p] != null) {
+                    partitions[p] = preparations[p].stockage;
+                    filtres[p] = preparations[p].filtre;
+                }
+            }
+            Version suivante = new Version(v.numero + 1, partitions, filtres);
+
+            Modification bilan = new Modification();
+            for (Preparation preparation : preparations) {
+                if (preparation == null) {
+                    continue;
+                }
+                for (Livre[] fiche : preparation.fiches) {
+                    int avant = fiche[0].getQuantiteDisponible();
+                    fiche[0].redefinir(fiche[1].getAuteur(), fiche[1].getDureeEmpruntMax());
+                    fiche[0].fixerEnRayon(fiche[1].getQuantiteDisponible());
+                    if (fiche[0].getQuantiteDisponible() != avant) {
+                        bilan.stocksModifies.put(fiche[0], avant);
+                    }
+                }
+            }
+            version.set(suivante);
+            bilan.dureePreparationNs = System.nanoTime() - debut;
+            bilan.version = suivante.numero;
+
+            for (Preparation preparation : preparations) {
+                if (preparation == null) {
+                    continue;
+                }
+                bilan.ajoutes.addAll(preparation.bilan.ajoutes);
+                bilan.retires.addAll(preparation.bilan.retires);
+                bilan.modifies.addAll(preparation.bilan.modifies);
+            }
+            return bilan;
+        }, ecrivain);
+    }
+
+    private List<List<Livre>> repartir(Collection<Livre> livres) {
+        int n = travailleurs.length;
+        List<List<Livre>> lots = new ArrayList<>(n);
+        for (int p = 0; p < n; p++) {
+            lots.add(new ArrayList<>());
+        }
+        for (Livre livre : livres) {
+            lots.get(partition(livre.getTitre())).add(livre);
+        }
+        return lots;
+    }
+
+    /**
+     * Charge des livres dans leurs partitions respectives.
+     */
+    public CompletableFuture<Void> charger(Collection<Livre> livres) {
+        return ajouter(livres).thenApply(bilan -> null);
+    }
+
+    /**
+     * Ajoute au catalogue les titres qu'il ne contient pas encore ; les autres sont ignorés.
+     */
+    public CompletableFuture<Modification> ajouter(Collection<Livre> livres) {
+        List<List<Livre>> lots = repartir(livres);
+        return modifier(lots, false, (p, actuel, filtre, preparation) -> {
+            List<Livre> nouveaux = new ArrayList<>();
+            for (Livre livre : lots.get(p)) {
+                if (actuel.obtenir(livre.getTitre()) == null) {
+                    nouveaux.add(livre);
+                }
+            }
+            StockageCatalogue stockage = actuel.copie();
+            // Les titres entrent dans le filtre avant la partition : un refus du filtre reste sûr
+            preparation.filtre = completerFiltre(stockage, filtre, nouveaux);
+            for (Livre livre : nouveaux) {
+                stockage.ajouter(livre);
+                preparation.bilan.ajoutes.add(stockage.obtenir(livre.getTitre()));
+            }
+            preparation.stockage = stockage;
+        });
+    }
+
+    // Ajoute les titres au filtre de la partition, en le remplaçant par un filtre deux fois plus
+    // grand, complet, s'il dépasserait sa capacité ; un filtre en construction le reste
+    private static FiltreBloom completerFiltre(StockageCatalogue stockage, FiltreBloom filtre, List<Livre> nouveaux) {
+        if (filtre == null) {
+            return null;
+        }
+        if (filtre.getNombre() + nouveaux.size() > filtre.getCapacite()) {
+            FiltreBloom plusGrand = new FiltreBloom(2 * (stockage.taille() + nouveaux.size()), TAUX_FAUX_POSITIFS);
+            stockage.pourChaqueLivre(livre -> plusGrand.ajouter(livre.getTitre()));
+            filtre = plusGrand;
+        }
+        for (Livre livre : nouveaux) {
+            filtre.ajouter(livre.getTitre());
+        }
+        return filtre;
+    }
+
+    /**
+     * Retire des titres du catalogue ; un titre retiré reste « peut-être présent » pour le filtre
+     * jusqu'au prochain rechargement.
+     * @throws UnsupportedOperationException si le stockage n'accepte pas les retraits
+     */
+    public CompletableFuture<Modification> retirer(Collection<String> titres) {
+        verifierRetraits();
+        List<List<String>> lots = new ArrayList<>(travailleurs.length);
+        for (int p = 0; p < travailleurs.length; p++) {
+            lots.add(new ArrayList<>());
+        }
+        for (String titre : titres) {
+            lots.get(partition(titre)).add(titre);
+        }
+        return modifier(lots, false, (p, actuel, filtre, preparation) -> {
+            StockageCatalogue stockage = actuel.copie();
+            for (String titre : lots.get(p)) {
+                Livre livre = stockage.retirer(titre);
+                if (livre != null) {
+                    preparation.bilan.retires.add(livre);
+                }
+            }
+            preparation.stockage = stockage;
+            preparation.filtre = filtre;
+        });
+    }
+
+    /**
+     * Remplace le contenu du catalogue par les livres donnés. Un titre déjà présent garde son
+     * objet Livre, donc ses réservations en cours ; juste avant la publication, il reprend
+     * l'auteur et la durée d'emprunt du nouveau catalogue, et son stock en rayon (disponible et
+     * réservé) est porté à la quantité disponible donnée. Ce changement de fiche, visible aussi
+     * depuis l'ancienne version qui partage le livre, se fait titre par titre et n'est pas
+     * atomique avec le changement de composition. Les filtres sont reconstruits.
+     * @throws UnsupportedOperationException si le stockage n'accepte pas les retraits
+     */
+    public CompletableFuture<Modification> recharger(Collection<Livre> livres) {
+        verifierRetraits();
+        List<List<Livre>> lots = repartir(livres);
+        return modifier(lots, true, (p, actuel, filtre, preparation) -> {
+            List<Livre> lot = lots.get(p);
+            StockageCatalogue stockage = actuel.copie();
+            FiltreBloom nouveau = new FiltreBloom(2 * lot.size() + CAPACITE_FILTRE_INITIALE, TAUX_FAUX_POSITIFS);
+            Set<String> gardes = new HashSet<>(2 * lot.size());
+            for (Livre livre : lot) {
+                gardes.add(livre.getTitre());
+                nouveau.ajouter(livre.getTitre());
+                Livre existant = stockage.obtenir(livre.getTitre());
+                if (existant == null) {
+                    stockage.ajouter(livre);
+                    preparation.bilan.ajoutes.add(livre);
+                    continue;
+                }
+                preparation.fiches.add(new Livre[] {existant, livre});
+                if (!existant.getAuteur().equals(livre.getAuteur()) || existant.getDureeEmpruntMax() != livre.getDureeEmpruntMax()) {
+                    preparation.bilan.modifies.add(existant);
+                }
+            }
+            actuel.pourChaqueLivre(livre -> {
+                if (!gardes.contains(livre.getTitre())) {
+                    preparation.bilan.retires.add(livre);
+                }
+            });
+            for (Livre livre : preparation.bilan.retires) {
+                stockage.retirer(livre.getTitre());
+            }
+            preparation.stockage = stockage;
+            preparation.filtre = nouveau;
+        });
+    }
+
+    /**
+     * Applique d'une seule publication des changements de composition reçus d'un autre catalogue :
+     * retire les titres donnés, ajoute les fiches des titres absents et, comme un rechargement,
+     * reprend la fiche et le stock en rayon des titres déjà présents.
+     * @throws UnsupportedOperationException s'il y a des titres à retirer et que le stockage
+     *                                       n'accepte pas les retraits
+     */
+    public CompletableFuture<Modification> mettreAJour(Collection<Livre> fiches, Collection<String> retires) {
+        if (!retires.isEmpty()) {
+            verifierRetraits();
+        }
+        List<List<Livre>> lots = repartir(fiches);
+        List<List<String>> retraits = new ArrayList<>(travailleurs.length);
+        for (int p = 0; p < travailleurs.length; p++) {
+            retraits.add(new ArrayList<>());
+        }
+        for (String titre : retires) {
+            retraits.get(partition(titre)).add(titre);
+        }
+        // Partitions concernées par l'un ou l'autre des changements
+        List<List<Object>> concernees = new ArrayList<>(travailleurs.length);
+        for (int p = 0; p < travailleurs.length; p++) {
+            List<Object> changements = new ArrayList<>(lots.get(p));
+            changements.addAll(retraits.get(p));
+            concernees.add(changements);
+        }
+        return modifier(concernees, false, (p, actuel, filtre, preparation) -> {
+            StockageCatalogue stockage = actuel.copie();
+            for (String titre : retraits.get(p)) {
+                Livre livre = stockage.retirer(titre);
+                if (livre != null) {
+                    preparation.bilan.retires.add(livre);
+                }
+            }
+            List<Livre> nouveaux = new ArrayList<>();
+            for (Livre livre : lots.get(p)) {
+                Livre existant = stockage.obtenir(livre.getTitre());
+                if (existant == null) {
+                    nouveaux.add(livre);
+                    continue;
+                }
+                preparation.fiches.add(new Livre[] {existant, livre});
+                if (!existant.getAuteur().equals(livre.getAuteur()) || existant.getDureeEmpruntMax() != livre.getDureeEmpruntMax()) {
+                    preparation.bilan.modifies.add(existant);
+                }
+            }
+            preparation.filtre = completerFiltre(stockage, filtre, nouveaux);
+            for (Livre livre : nouveaux) {
+                stockage.ajouter(livre);
+                preparation.bilan.ajoutes.add(stockage.obtenir(livre.getTitre()));
+            }
+            preparation.stockage = stockage;
+        });
+    }
+
+    /**
+     * Indique si le stockage accepte le retrait de titres, et donc les rechargements.
+     */
+    public boolean accepteRetraits() {
+        return version.get().partitions[0].accepteRetraits();
+    }
+
+    private void verifierRetraits() {
+        if (!accepteRetraits()) {
+            throw new UnsupportedOperationException("Ce stockage n'accepte pas le retrait de titres");
+        }
+    }
+
+    /**
+     * Parcourt les livres de toutes les partitions, tels qu'ils sont stockés (vues sur les
+     * colonnes le cas échéant), dans la version courante. Peut être appelé depuis n'importe quel thread.
+     */
+    public void pourChaqueLivre(Consumer<Livre> action) {
+        instantane().pourChaqueLivre(action);
+    }
+
+    /**
+     * Nombre de livres de toutes les partitions.
+     */
+    public int taille() {
+        int taille = 0;
+        for (StockageCatalogue partition : version.get().partitions) {
+            taille += partition.taille();
+        }
+        return taille;
+    }
+
+    /**
+     * Observateur prévenu des variations de stock de tous les livres du catalogue, pour les
+     * stockages dont les livres ne passent pas par les index secondaires. Les copies préparées
+     * pour les versions suivantes en héritent.
+     */
+    public void setObservateurStock(ObservateurStock observateur) {
+        for (StockageCatalogue partition : version.get().partitions) {
+            partition.setObservateurStock(observateur);
+        }
+    }
+
+    /**
+     * Taille des filtres et efficacité observée : part des titres absents non écartés.
+     */
+    public String resumeFiltres() {
+        long octets = 0;
+        long titres = 0;
+        double estime = 0;
+        for (FiltreBloom filtre : version.get().filtres) {
+            if (filtre == null) {
+                continue;
+            }
+            octets += filtre.tailleOctets();
+            titres += filtre.getNombre();
+            estime = Math.max(estime, filtre.tauxFauxPositifsEstime());
+        }
+        long ecartes = absentsEcartes.sum();
+        long faux = fauxPositifs.sum();
+        return "filtres: " + titres + " titres, " + (octets + 1023) / 1024 + " Kio" +
+            ", faux positifs estimés: " + String.format("%.2f%%", 100 * estime) +
+            ", absents écartés: " + ecartes + ", faux positifs observés: " + faux +
+            (ecartes + faux == 0 ? "" : String.format(" (%.2f%%)", 100.0 * faux / (ecartes + faux)));
+    }
+
+    /**
+     * Écrit sur disque l'état des partitions, stock compris (stockage projeté ; immédiat pour un
+     * stockage en mémoire). Les demandes faites avant le début d'une synchronisation la partagent :
+     * une rafale de confirmations ne coûte qu'une écriture par fichier.
+     * @return terminé une fois écrits tous les changements faits avant l'appel
+     */
+    public CompletableFuture<Void> durable() {
+        while (true) {
+            CompletableFuture<Void> enAttente = synchronisation.get();
+            if (enAttente != null) {
+                return enAttente;
+            }
+            CompletableFuture<Void> nouvelle = new CompletableFuture<>();
+            if (synchronisation.compareAndSet(null, nouvelle)) {
+                recherche.execute(() -> {
+                    // Les changements faits à partir d'ici attendront la synchronisation suivante
+                    synchronisation.set(null);
+                    try {
+                        for (StockageCatalogue partition : version.get().partitions) {
+                            partition.synchroniser();
+                        }
+                        nouvelle.complete(null);
+                    } catch (RuntimeException e) {
+                        nouvelle.completeExceptionally(e);
+                    }
+                });
+                return nouvelle;
+            }
+        }
+    }
+
+    /**
+     * Arrête l'écrivain et les threads des partitions, laisse une seconde aux opérations en
+     * cours pour se terminer, puis ferme les stockages.
+     */
+    public void arreter() {
+        ecrivain.shutdown();
+        for (ExecutorService travailleur : travailleurs) {
+            travailleur.shutdown();
+        }
+        try {
+            // L'écrivain prépare les versions sur le ForkJoinPool, arrêté après lui
+            ecrivain.awaitTermination(1, TimeUnit.SECONDS);
+            for (ExecutorService travailleur : travailleurs) {
+                travailleur.awaitTermination(1, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        recherche.shutdown();
+        for (StockageCatalogue partition : version.get().partitions) {
+            partition.fermer();
+        }
+    }
+}
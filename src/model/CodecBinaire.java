@@ -0,0 +1,149 @@
+package model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Primitives du codage binaire des listes de livres et des résultats de recherche.
+ *
+ * Les entiers positifs sont écrits en varint (7 bits par octet, bit de poids fort indiquant
+ * une suite). Les chaînes passent par un dictionnaire propre au message : la première
+ * occurrence est écrite en clair (0, longueur, octets UTF-8), les suivantes par leur numéro
+ * d'apparition plus un.
+ */
+final class CodecBinaire {
+    static final int VERSION = 1;
+
+    private CodecBinaire() {
+    }
+
+    static final class Ecrivain {
+        private byte[] octets;
+        private int taille = 0;
+        private final Map<String, Integer> dictionnaire;
+
+        Ecrivain(int capacite, int chaines) {
+            octets = new byte[Math.max(capacite, 16)];
+            dictionnaire = new HashMap<>(chaines * 4 / 3 + 1);
+        }
+
+        private void reserver(int n) {
+            if (taille + n > octets.length) {
+                octets = Arrays.copyOf(octets, Math.max(octets.length * 2, taille + n));
+            }
+        }
+
+        void octet(int b) {
+            reserver(1);
+            octets[taille++] = (byte) b;
+        }
+
+        void varint(int v) {
+            reserver(5);
+            while ((v & ~0x7F) != 0) {
+                octets[taille++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            octets[taille++] = (byte) v;
+        }
+
+        void octets(byte[] b) {
+            reserver(b.length);
+            System.arraycopy(b, 0, octets, taille, b.length);
+            taille += b.length;
+        }
+
+        void chaine(String s) {
+            Integer numero = dictionnaire.get(s);
+            if (numero != null) {
+                varint(numero + 1);
+                return;
+            }
+            dictionnaire.put(s, dictionnaire.size());
+            varint(0);
+            int longueur = s.length();
+            reserver(5 + longueur);
+            int debut = taille;
+            varint(longueur);
+            int i = 0;
+            // Copie directe tant que les caractères sont ASCII, cas courant des titres
+            while (i < longueur) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                octets[taille++] = (byte) c;
+                i++;
+            }
+            if (i < longueur) {
+                taille = debut;
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                varint(utf8.length);
+                octets(utf8);
+            }
+        }
+
+        byte[] resultat() {
+            return Arrays.copyOf(octets, taille);
+        }
+    }
+
+    static final class Lecteur {
+        private final byte[] octets;
+        private int position = 0;
+        private final List<String> dictionnaire = new ArrayList<>();
+
+        Lecteur(byte[] octets) {
+            this.octets = octets;
+        }
+
+        int octet() throws IOException {
+            if (position >= octets.length) {
+                throw new IOException("Contenu binaire tronqué");
+            }
+            return octets[position++] & 0xFF;
+        }
+
+        int varint() throws IOException {
+            int v = 0;
+            for (int decalage = 0; decalage < 35; decalage += 7) {
+                int b = octet();
+                v |= (b & 0x7F) << decalage;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IOException("Varint invalide");
+        }
+
+        String chaine() throws IOException {
+            int numero = varint();
+            if (numero > 0) {
+                if (numero > dictionnaire.size()) {
+                    throw new IOException("Référence de chaîne invalide: " + numero);
+                }
+                return dictionnaire.get(numero - 1);
+            }
+            int longueur = varint();
+            if (longueur < 0 || position + longueur > octets.length) {
+                throw new IOException("Contenu binaire tronqué");
+            }
+            String s = new String(octets, position, longueur, StandardCharsets.UTF_8);
+            position += longueur;
+            dictionnaire.add(s);
+            return s;
+        }
+
+        void version() throws IOException {
+            int version = octet();
+            if (version != VERSION) {
+                throw new IOException("Version de codage non prise en charge: " + version);
+            }
+        }
+    }
+}
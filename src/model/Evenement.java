@@ -0,0 +1,347 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Événement publié à l'intention des observateurs.
+ *
+ * Un événement ne contient que des champs typés : son type, l'agent concerné (l'interlocuteur
+ * de l'émetteur), un titre, trois compteurs et l'heure de publication. Le créer revient à écrire
+ * ces quelques champs ; le texte lisible n'est produit qu'à l'affichage, dans l'interface
+ * graphique, à partir du modèle associé au type.
+ *
+ * Les événements voyagent en binaire dans le contenu des messages ({@link #encoder},
+ * {@link #decoder}) : un octet de version, le nombre d'événements, puis pour chacun le numéro
+ * du type, l'heure, un octet indiquant les champs présents et ces seuls champs. Les textes sont
+ * codés en UTF-8 précédés de leur longueur en varint, sans limite de taille.
+ */
+public final class Evenement {
+    public static final byte VERSION = 2;
+
+    /**
+     * Catégories historiques des événements, utilisées pour le filtrage par les observateurs.
+     */
+    public enum Categorie {
+        BIBLIO_NOUVEAU, BIBLIO_INFO, USER_NOUVEAU, USER_INFO, USER_FIN, TRANSACTION
+    }
+
+    /**
+     * Types d'événements et modèles de texte. Les marqueurs {agent}, {titre}, {nombre}, {duree}
+     * et {total} sont remplacés par les champs de l'événement, {utilite} par total / 100.
+     * Le numéro d'ordre est transmis : les nouveaux types s'ajoutent en fin de liste.
+     */
+    public enum Type {
+        // Bibliothécaire
+        BIBLIO_NOUVEAU(Categorie.BIBLIO_NOUVEAU, ""),
+        CATALOGUE(Categorie.BIBLIO_INFO, "Catalogue: {nombre} livre(s), {total} exemplaire(s)"),
+        RESERVATION_EXPIREE(Categorie.BIBLIO_INFO,
+            "La réservation de \"{titre}\" a expiré, {nombre} exemplaire(s) remis en rayon"),
+        RETARD(Categorie.BIBLIO_INFO,
+            "Retard : \"{titre}\" n'a pas été rendu par {agent} ({nombre} emprunt(s) en retard)"),
+        RECHERCHE(Categorie.BIBLIO_INFO, "Recherche du livre \"{titre}\" demandé par {agent}"),
+        DISPONIBLE(Categorie.BIBLIO_INFO, "Le livre \"{titre}\" est disponible pour {agent}"),
+        NON_DISPONIBLE(Categorie.BIBLIO_INFO, "Le livre \"{titre}\" n'est pas disponible pour {agent}"),
+        RECHERCHE_EMPRUNT(Categorie.BIBLIO_INFO,
+            "Recherche pour emprunt de {nombre} exemplaire(s) du livre \"{titre}\" par {agent}"),
+        DISPONIBLE_EMPRUNT(Categorie.BIBLIO_INFO,
+            "Le livre \"{titre}\" est disponible pour l'emprunt par {agent} (durée max: {duree} jours)"),
+        INCONNU(Categorie.BIBLIO_INFO, "Le livre \"{titre}\" n'existe pas dans le catalogue pour {agent}"),
+        EXEMPLAIRES_INSUFFISANTS(Categorie.BIBLIO_INFO,
+            "Pas assez d'exemplaires du livre \"{titre}\" pour {agent} (demandé: {nombre}, disponible: {total})"),
+        PRET(Categorie.BIBLIO_INFO,
+            "Prête {nombre} exemplaire(s) du livre \"{titre}\" à {agent} pour {duree} jours"),
+        PRET_IMPOSSIBLE(Categorie.BIBLIO_INFO, "Ne peut plus prêter \"{titre}\" à {agent}"),
+        ATTENTE(Categorie.BIBLIO_INFO, "{agent} attend \"{titre}\" (position {nombre})"),
+        RESERVE_POUR_ATTENTE(Categorie.BIBLIO_INFO, "Le livre \"{titre}\" est de retour, réservé pour {agent}"),
+        RECHERCHE_LISTE(Categorie.BIBLIO_INFO, "Recherche d'une liste de {nombre} livres pour {agent}"),
+        LIVRE_TROUVE(Categorie.BIBLIO_INFO, "Livre trouvé: \"{titre}\" ({nombre} exemplaires disponibles)"),
+        LIVRE_NON_TROUVE(Categorie.BIBLIO_INFO, "Livre non trouvé: \"{titre}\""),
+        LISTE_DISPONIBLE(Categorie.BIBLIO_INFO, "Tous les livres demandés par {agent} sont disponibles"),
+        LISTE_INCOMPLETE(Categorie.BIBLIO_INFO, "Seulement {nombre}/{total} livres trouvés pour {agent}"),
+        LISTE_ANNULEE(Categorie.BIBLIO_INFO, "Emprunt de la liste annulé pour {agent}, aucun livre prêté"),
+        LISTE_PRETEE(Categorie.BIBLIO_INFO, "Tous les livres ont été prêtés à {agent} (durée: {duree} jours)"),
+        LISTE_PRETEE_EN_PARTIE(Categorie.BIBLIO_INFO, "Certains livres seulement ont été prêtés à {agent}"),
+        PRET_LIVRE(Categorie.BIBLIO_INFO, "Prête le livre \"{titre}\" à {agent}"),
+        PRET_LIVRE_IMPOSSIBLE(Categorie.BIBLIO_INFO, "Ne peut pas prêter le livre \"{titre}\" à {agent}"),
+        RECHERCHE_APPROCHEE(Categorie.BIBLIO_INFO, "Recherche approchée \"{titre}\" pour {agent} : {nombre} résultat(s)"),
+        REQUETE(Categorie.BIBLIO_INFO, "Requête sur le catalogue pour {agent} : {nombre} résultat(s)"),
+
+        // Transactions
+        EMPRUNT(Categorie.TRANSACTION,
+            "Emprunt de {nombre} exemplaire(s) de \"{titre}\" par {agent} pour {duree} jours"),
+        EMPRUNT_LIVRE(Categorie.TRANSACTION, "Emprunt de \"{titre}\" par {agent} pour {duree} jours"),
+        RETOUR(Categorie.TRANSACTION, "Retour de {nombre} exemplaire(s) de \"{titre}\" par {agent}"),
+        RETOUR_EN_RETARD(Categorie.TRANSACTION,
+            "Retour de {nombre} exemplaire(s) de \"{titre}\" par {agent} (en retard)"),
+
+        // Utilisateurs
+        NOUVEL_EMPRUNTEUR(Categorie.USER_NOUVEAU,
+            "Emprunteur souhaitant emprunter {nombre} exemplaire(s) de \"{titre}\""),
+        NOUVEAU_CHERCHEUR(Categorie.USER_NOUVEAU,
+            "Chercheur avec une liste de {nombre} livres (seuil d'utilité: {utilite})"),
+        NOUVEL_UTILISATEUR(Categorie.USER_NOUVEAU, "Simple utilisateur recherchant \"{titre}\""),
+        DEPART_EMPRUNTEUR(Categorie.USER_FIN, "L'emprunteur a quitté la bibliothèque"),
+        DEPART_CHERCHEUR(Categorie.USER_FIN, "Le chercheur de liste a quitté la bibliothèque"),
+        DEPART_UTILISATEUR(Categorie.USER_FIN, "L'utilisateur simple a quitté la bibliothèque"),
+        BIBLIOTHECAIRE_TROUVEE(Categorie.USER_INFO, "A trouvé la bibliothécaire"),
+        BIBLIOTHECAIRE_ABSENTE(Categorie.USER_INFO, "N'a pas trouvé de bibliothécaire"),
+        DEMANDE_DISPONIBILITE(Categorie.USER_INFO, "Demande si le livre \"{titre}\" est disponible"),
+        DEMANDE_EMPRUNT(Categorie.USER_INFO, "Demande s'il peut emprunter {nombre} exemplaire(s) de \"{titre}\""),
+        DEMANDE_LISTE(Categorie.USER_INFO, "Demande la disponibilité d'une liste de {nombre} livres"),
+        PATIENTE(Categorie.USER_INFO, "Patiente pendant la recherche du livre"),
+        PATIENTE_LISTE(Categorie.USER_INFO, "Patiente pendant la recherche des livres"),
+        APPREND_DISPONIBLE(Categorie.USER_INFO, "Apprend que le livre \"{titre}\" est disponible"),
+        APPREND_DISPONIBLE_DUREE(Categorie.USER_INFO,
+            "Apprend que le livre \"{titre}\" est disponible pour {duree} jours"),
+        APPREND_NON_DISPONIBLE(Categorie.USER_INFO, "Apprend que le livre \"{titre}\" n'est pas disponible"),
+        APPREND_INSUFFISANT(Categorie.USER_INFO,
+            "Apprend qu'il n'y a que {nombre} exemplaire(s) disponible(s) du livre \"{titre}\""),
+        DEMANDE_DUREE(Categorie.USER_INFO, "Demande la durée d'emprunt maximale"),
+        ACCEPTE_DUREE(Categorie.USER_INFO, "Accepte d'emprunter le livre pour {duree} jours"),
+        INSCRIPTION_ATTENTE(Categorie.USER_INFO, "S'inscrit sur la file d'attente du livre \"{titre}\""),
+        ATTEND_SON_TOUR(Categorie.USER_INFO, "Attend son tour (position {nombre})"),
+        LIVRE_RESERVE(Categorie.USER_INFO, "Le livre \"{titre}\" lui est réservé, accepte l'emprunt"),
+        ATTENTE_IMPOSSIBLE(Categorie.USER_INFO, "Ne peut pas attendre le livre \"{titre}\""),
+        A_EMPRUNTE(Categorie.USER_INFO,
+            "A emprunté {nombre} exemplaire(s) du livre \"{titre}\" pour {duree} jours"),
+        EMPRUNT_ECHOUE(Categorie.USER_INFO, "N'a pas pu emprunter le livre \"{titre}\""),
+        A_EMPRUNTE_LISTE(Categorie.USER_INFO, "A emprunté tous les livres disponibles pour {duree} jours"),
+        A_EMPRUNTE_EN_PARTIE(Categorie.USER_INFO, "A emprunté certains livres: {titre}"),
+        RESULTATS_LISTE(Categorie.USER_INFO, "Reçoit les résultats: {nombre}/{total} livres disponibles"),
+        REFLEXION(Categorie.USER_INFO, "Demande à la bibliothécaire de patienter pendant sa réflexion"),
+        DECIDE_EMPRUNTER(Categorie.USER_INFO,
+            "Décide d'emprunter les livres disponibles (utilité suffisante: {utilite})"),
+        DECIDE_RENONCER(Categorie.USER_INFO,
+            "Décide de ne pas emprunter les livres (utilité insuffisante: {utilite})"),
+        REMERCIE(Categorie.USER_INFO, "Remercie la bibliothécaire et quitte la bibliothèque"),
+        REMERCIE_QUAND_MEME(Categorie.USER_INFO, "Remercie quand même la bibliothécaire"),
+        REMERCIE_QUAND_MEME_ET_QUITTE(Categorie.USER_INFO,
+            "Remercie quand même la bibliothécaire et quitte la bibliothèque"),
+        REMERCIE_ET_PROMET(Categorie.USER_INFO, "Remercie la bibliothécaire et promet de rendre le livre à temps"),
+        REMERCIE_SANS_EMPRUNTER(Categorie.USER_INFO, "Remercie la bibliothécaire et quitte sans emprunter"),
+
+        // Recherche de liste par pages
+        RECHERCHE_INTERROMPUE(Categorie.USER_INFO,
+            "Connaît l'issue après {nombre}/{total} titres et annule le reste de la recherche"),
+        RECHERCHE_ANNULEE(Categorie.BIBLIO_INFO,
+            "Recherche de la liste annulée par {agent} ({nombre} titre(s) non recherché(s))");
+
+        private static final Type[] VALEURS = values();
+
+        private final Categorie categorie;
+        private final String modele;
+
+        Type(Categorie categorie, String modele) {
+            this.categorie = categorie;
+            this.modele = modele;
+        }
+
+        public Categorie getCategorie() {
+            return categorie;
+        }
+    }
+
+    // Champs présents dans l'encodage binaire
+    private static final int AGENT = 1;
+    private static final int TITRE = 2;
+    private static final int NOMBRE = 4;
+    private static final int DUREE = 8;
+    private static final int TOTAL = 16;
+
+    private final Type type;
+    private final String agent;
+    private final String titre;
+    private final int nombre;
+    private final int duree;
+    private final int total;
+    private final long horodatage;
+
+    public Evenement(Type type) {
+        this(type, null, null, 0, 0, 0);
+    }
+
+    public Evenement(Type type, String agent, String titre) {
+        this(type, agent, titre, 0, 0, 0);
+    }
+
+    public Evenement(Type type, String agent, String titre, int nombre) {
+        this(type, agent, titre, nombre, 0, 0);
+    }
+
+    public Evenement(Type type, String agent, String titre, int nombre, int duree) {
+        this(type, agent, titre, nombre, duree, 0);
+    }
+
+    public Evenement(Type type, String agent, String titre, int nombre, int duree, int total) {
+        this(type, agent, titre, nombre, duree, total, System.currentTimeMillis());
+    }
+
+    private Evenement(Type type, String agent, String titre, int nombre, int duree, int total, long horodatage) {
+        this.type = type;
+        this.agent = agent;
+        this.titre = titre;
+        this.nombre = nombre;
+        this.duree = duree;
+        this.total = total;
+        this.horodatage = horodatage;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Categorie getCategorie() {
+        return type.categorie;
+    }
+
+    public String getAgent() {
+        return agent;
+    }
+
+    public String getTitre() {
+        return titre;
+    }
+
+    public int getNombre() {
+        return nombre;
+    }
+
+    public int getDuree() {
+        return duree;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public long getHorodatage() {
+        return horodatage;
+    }
+
+    /**
+     * Texte lisible de l'événement, produit à partir du modèle de son type.
+     */
+    public String texte() {
+        String modele = type.modele;
+        StringBuilder sb = new StringBuilder(modele.length() + 32);
+        int i = 0;
+        while (i < modele.length()) {
+            int debut = modele.indexOf('{', i);
+            int fin = debut < 0 ? -1 : modele.indexOf('}', debut);
+            if (fin < 0) {
+                sb.append(modele, i, modele.length());
+                break;
+            }
+            sb.append(modele, i, debut);
+            switch (modele.substring(debut + 1, fin)) {
+                case "agent": sb.append(agent); break;
+                case "titre": sb.append(titre); break;
+                case "nombre": sb.append(nombre); break;
+                case "duree": sb.append(duree); break;
+                case "total": sb.append(total); break;
+                case "utilite": sb.append(String.format("%.2f", total / 100.0)); break;
+                default: sb.append(modele, debut, fin + 1);
+            }
+            i = fin + 1;
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return type.categorie + ":" + texte();
+    }
+
+    /**
+     * Encode une suite d'événements pour le contenu binaire d'un message.
+     */
+    public static byte[] encoder(List<Evenement> evenements) {
+        ByteArrayOutputStream octets = new ByteArrayOutputStream(32 + evenements.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(octets)) {
+            out.writeByte(VERSION);
+            out.writeInt(evenements.size());
+            for (Evenement e : evenements) {
+                int champs = (e.agent != null ? AGENT : 0) | (e.titre != null ? TITRE : 0) |
+                    (e.nombre != 0 ? NOMBRE : 0) | (e.duree != 0 ? DUREE : 0) | (e.total != 0 ? TOTAL : 0);
+                out.writeByte(e.type.ordinal());
+                out.writeLong(e.horodatage);
+                out.writeByte(champs);
+                if (e.agent != null) ecrireTexte(out, e.agent);
+                if (e.titre != null) ecrireTexte(out, e.titre);
+                if (e.nombre != 0) out.writeInt(e.nombre);
+                if (e.duree != 0) out.writeInt(e.duree);
+                if (e.total != 0) out.writeInt(e.total);
+            }
+        } catch (IOException e) {
+            // Un ByteArrayOutputStream ne lève pas d'IOException
+            throw new IllegalStateException(e);
+        }
+        return octets.toByteArray();
+    }
+
+    private static void ecrireTexte(DataOutputStream out, String texte) throws IOException {
+        byte[] octets = texte.getBytes(StandardCharsets.UTF_8);
+        int longueur = octets.length;
+        while ((longueur & ~0x7f) != 0) {
+            out.writeByte(longueur & 0x7f | 0x80);
+            longueur >>>= 7;
+        }
+        out.writeByte(longueur);
+        out.write(octets);
+    }
+
+    private static String lireTexte(DataInputStream in) throws IOException {
+        int longueur = 0;
+        for (int decalage = 0; ; decalage += 7) {
+            if (decalage > 28) {
+                throw new IOException("Longueur de texte invalide");
+            }
+            int b = in.readUnsignedByte();
+            longueur |= (b & 0x7f) << decalage;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (longueur < 0 || longueur > in.available()) {
+            throw new IOException("Longueur de texte invalide: " + longueur);
+        }
+        byte[] octets = new byte[longueur];
+        in.readFully(octets);
+        return new String(octets, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Décode le contenu binaire produit par {@link #encoder}.
+     */
+    public static List<Evenement> decoder(byte[] contenu) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(contenu));
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Version d'événements non prise en charge: " + version);
+        }
+        int nombreEvenements = in.readInt();
+        List<Evenement> evenements = new ArrayList<>(nombreEvenements);
+        for (int i = 0; i < nombreEvenements; i++) {
+            int numero = in.readUnsignedByte();
+            if (numero >= Type.VALEURS.length) {
+                throw new IOException("Type d'événement inconnu: " + numero);
+            }
+            long horodatage = in.readLong();
+            int champs = in.readUnsignedByte();
+            String agent = (champs & AGENT) != 0 ? lireTexte(in) : null;
+            String titre = (champs & TITRE) != 0 ? lireTexte(in) : null;
+            int nombre = (champs & NOMBRE) != 0 ? in.readInt() : 0;
+            int duree = (champs & DUREE) != 0 ? in.readInt() : 0;
+            int total = (champs & TOTAL) != 0 ? in.readInt() : 0;
+            evenements.add(new Evenement(Type.VALEURS[numero], agent, titre, nombre, duree, total, horodatage));
+        }
+        return evenements;
+    }
+}
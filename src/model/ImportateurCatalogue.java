@@ -0,0 +1,282 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Import en flux d'un catalogue depuis un fichier CSV ou TSV "titre,auteur,exemplaires,durée".
+ *
+ * Le fichier est découpé en blocs alignés sur les fins de ligne, chaque bloc est projeté en mémoire
+ * et analysé en parallèle directement sur les octets : seuls le titre et l'auteur donnent lieu à
+ * une allocation. Les blocs sont rendus dans l'ordre du fichier, de sorte qu'un titre présent
+ * plusieurs fois garde sa dernière ligne. Le séparateur (tabulation, ';' ou ',') est déduit de la
+ * première ligne ; une ligne d'en-tête est ignorée, les champs entre guillemets sont acceptés.
+ */
+public class ImportateurCatalogue {
+    private static final int TAILLE_BLOC = 16 * 1024 * 1024;
+
+    private final File fichier;
+    private final int nombreThreads;
+
+    /**
+     * Avancement de l'import, appelé depuis les threads d'analyse.
+     */
+    public interface Suivi {
+        void progression(long octetsLus, long octetsTotal, long livres);
+    }
+
+    /**
+     * Bilan de l'import.
+     */
+    public static final class Bilan {
+        private final long livres;
+        private final long exemplaires;
+        private final long rejetees;
+        private final long dureeMs;
+
+        private Bilan(long livres, long exemplaires, long rejetees, long dureeMs) {
+            this.livres = livres;
+            this.exemplaires = exemplaires;
+            this.rejetees = rejetees;
+            this.dureeMs = dureeMs;
+        }
+
+        public long getLivres() {
+            return livres;
+        }
+
+        public long getExemplaires() {
+            return exemplaires;
+        }
+
+        public long getRejetees() {
+            return rejetees;
+        }
+
+        public long getDureeMs() {
+            return dureeMs;
+        }
+
+        @Override
+        public String toString() {
+            return livres + " livres (" + exemplaires + " exemplaires) importés en " + dureeMs + " ms" +
+                (rejetees > 0 ? ", " + rejetees + " ligne(s) rejetée(s)" : "");
+        }
+    }
+
+    // Résultat de l'analyse d'un bloc
+    private static final class Bloc {
+        final List<Livre> livres = new ArrayList<>();
+        long exemplaires;
+        long rejetees;
+    }
+
+    public ImportateurCatalogue(File fichier) {
+        this(fichier, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ImportateurCatalogue(File fichier, int nombreThreads) {
+        this.fichier = fichier;
+        this.nombreThreads = Math.max(1, nombreThreads);
+    }
+
+    /**
+     * Importe le fichier.
+     * @param garder filtre sur le titre, appliqué pendant l'analyse (par exemple le fragment détenu)
+     * @param destination reçoit les livres bloc par bloc, dans l'ordre du fichier, sur le thread appelant
+     * @param suivi avancement de l'import, ou null
+     */
+    public Bilan importer(Predicate<String> garder, Consumer<List<Livre>> destination, Suivi suivi) throws IOException {
+        long debut = System.currentTimeMillis();
+        ExecutorService analyseurs = Executors.newFixedThreadPool(nombreThreads, r -> {
+            Thread t = new Thread(r, "import-" + fichier.getName());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try (RandomAccessFile raf = new RandomAccessFile(fichier, "r"); FileChannel canal = raf.getChannel()) {
+            long taille = canal.size();
+            byte separateur = detecterSeparateur(canal);
+            AtomicLong octetsLus = new AtomicLong();
+            AtomicLong livresLus = new AtomicLong();
+            long pasSuivi = Math.max(TAILLE_BLOC, taille / 20);
+
+            // Découper le fichier en blocs terminés par une fin de ligne
+            List<Future<Bloc>> blocs = new ArrayList<>();
+            long position = 0;
+            while (position < taille) {
+                long fin = finDeLigne(canal, Math.min(taille, position + TAILLE_BLOC), taille);
+                long debutBloc = position;
+                long longueur = fin - position;
+                blocs.add(analyseurs.submit(() -> {
+                    Bloc bloc = analyser(canal.map(FileChannel.MapMode.READ_ONLY, debutBloc, longueur),
+                        separateur, debutBloc == 0, garder);
+                    long avant = octetsLus.getAndAdd(longueur);
+                    long livres = livresLus.addAndGet(bloc.livres.size());
+                    if (suivi != null && (avant + longueur) / pasSuivi != avant / pasSuivi) {
+                        suivi.progression(avant + longueur, taille, livres);
+                    }
+                    return bloc;
+                }));
+                position = fin;
+            }
+
+            long livres = 0;
+            long exemplaires = 0;
+            long rejetees = 0;
+            for (Future<Bloc> futur : blocs) {
+                Bloc bloc;
+                try {
+                    bloc = futur.get();
+                } catch (Exception e) {
+                    throw new IOException("Échec de l'import de " + fichier, e);
+                }
+                livres += bloc.livres.size();
+                exemplaires += bloc.exemplaires;
+                rejetees += bloc.rejetees;
+                destination.accept(bloc.livres);
+            }
+            return new Bilan(livres, exemplaires, rejetees, System.currentTimeMillis() - debut);
+        } finally {
+            analyseurs.shutdownNow();
+        }
+    }
+
+    private static byte detecterSeparateur(FileChannel canal) throws IOException {
+        MappedByteBuffer debut = canal.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(canal.size(), 4096));
+        while (debut.hasRemaining()) {
+            byte b = debut.get();
+            if (b == '\t' || b == ';' || b == ',') {
+                return b;
+            }
+            if (b == '\n') {
+                break;
+            }
+        }
+        return ',';
+    }
+
+    // Position qui suit la première fin de ligne à partir de depart
+    private static long finDeLigne(FileChannel canal, long depart, long taille) throws IOException {
+        long position = depart;
+        while (position < taille) {
+            MappedByteBuffer fenetre = canal.map(FileChannel.MapMode.READ_ONLY, position, Math.min(4096, taille - position));
+            while (fenetre.hasRemaining()) {
+                if (fenetre.get() == '\n') {
+                    return position + fenetre.position();
+                }
+            }
+            position += fenetre.capacity();
+        }
+        return taille;
+    }
+
+    private static Bloc analyser(MappedByteBuffer octets, byte separateur, boolean premierBloc, Predicate<String> garder) {
+        Bloc bloc = new Bloc();
+        int limite = octets.limit();
+        byte[] tampon = new byte[256];
+        String[] textes = new String[2];
+        int position = 0;
+        boolean premiereLigne = premierBloc;
+
+        while (position < limite) {
+            // Délimiter la ligne
+            int fin = position;
+            while (fin < limite && octets.get(fin) != '\n') {
+                fin++;
+            }
+            int finContenu = fin > position && octets.get(fin - 1) == '\r' ? fin - 1 : fin;
+
+            if (finContenu > position) {
+                boolean valide = false;
+                boolean tropLong = false;
+                int champ = 0;
+                int quantite = -1;
+                int duree = -1;
+                int i = position;
+                while (champ < 4 && i <= finContenu) {
+                    if (champ < 2) {
+                        // Titre et auteur : seuls champs décodés en chaîne
+                        int longueur = 0;
+                        boolean guillemets = i < finContenu && octets.get(i) == '"';
+                        if (guillemets) {
+                            i++;
+                        }
+                        while (i < finContenu) {
+                            byte b = octets.get(i);
+                            if (guillemets && b == '"') {
+                                if (i + 1 < finContenu && octets.get(i + 1) == '"') {
+                                    i++;
+                                } else {
+                                    guillemets = false;
+                                    i++;
+                                    continue;
+                                }
+                            } else if (!guillemets && b == separateur) {
+                                break;
+                            }
+                            if (longueur == tampon.length) {
+                                tampon = Arrays.copyOf(tampon, longueur * 2);
+                            }
+                            tampon[longueur++] = b;
+                            i++;
+                        }
+                        textes[champ] = new String(tampon, 0, longueur, StandardCharsets.UTF_8).trim();
+                        // Au-delà, le journal du catalogue ne saurait l'enregistrer
+                        tropLong |= longueur > JournalCatalogue.LONGUEUR_TEXTE_MAX;
+                    } else {
+                        // Nombres : lus directement sur les octets
+                        int valeur = 0;
+                        int chiffres = 0;
+                        while (i < finContenu && octets.get(i) != separateur) {
+                            byte b = octets.get(i);
+                            if (b >= '0' && b <= '9' && chiffres < 9) {
+                                valeur = valeur * 10 + (b - '0');
+                                chiffres++;
+                            } else if (b != ' ' && b != '"') {
+                                chiffres = -100;
+                            }
+                            i++;
+                        }
+                        if (chiffres > 0) {
+                            if (champ == 2) {
+                                quantite = valeur;
+                            } else {
+                                duree = valeur;
+                                valide = true;
+                            }
+                        }
+                    }
+                    champ++;
+                    i++;
+                }
+
+                if (valide && !tropLong && quantite >= 0 && !textes[0].isEmpty()) {
+                    if (garder == null || garder.test(textes[0])) {
+                        bloc.livres.add(new Livre(textes[0], textes[1], quantite, duree));
+                        bloc.exemplaires += quantite;
+                    }
+                } else if (!premiereLigne) {
+                    // Une première ligne invalide est l'en-tête
+                    bloc.rejetees++;
+                }
+            }
+            premiereLigne = false;
+            position = fin + 1;
+        }
+        return bloc;
+    }
+}
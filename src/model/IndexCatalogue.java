@@ -0,0 +1,343 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Index secondaires du catalogue : par auteur, par durée d'emprunt maximale et par tranche
+ * de stock disponible. Les tranches suivent le stock en temps réel grâce aux notifications
+ * de {@link Livre}. Un petit planificateur choisit l'index le plus sélectif pour chaque requête,
+ * de sorte qu'aucune requête ne parcourt le catalogue entier lorsqu'un critère est fourni.
+ *
+ * Chaque entrée d'index garde ses livres triés par titre : une page se lit en parcourant les
+ * entrées retenues dans l'ordre, à partir du curseur de la requête, et s'arrête dès qu'elle est
+ * pleine, sans trier ni recopier les autres candidats.
+ */
+public class IndexCatalogue implements ObservateurStock {
+    private static final int NOMBRE_TRANCHES = 33;
+
+    private final Entree tous = new Entree();
+    private final Map<String, Entree> parAuteur = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, Entree> parDuree = new ConcurrentSkipListMap<>();
+
+    // Tranche t : stock dans [2^(t-1), 2^t - 1], la tranche 0 contient les livres épuisés
+    private final List<Entree> parTranche = new ArrayList<>(NOMBRE_TRANCHES);
+
+    // Observateur prévenu à son tour des variations de stock (null si aucun)
+    private final ObservateurStock suivant;
+
+    // false pendant la construction d'un remplaçant : les livres restent observés par l'index
+    // en service, qui relaie leurs variations de stock au remplaçant
+    private volatile boolean observe = true;
+    private volatile IndexCatalogue remplacant;
+
+    /**
+     * Page de résultats d'une requête.
+     */
+    public static final class Page {
+        private final List<Livre> livres;
+        private final int estimation;
+        private final String indexUtilise;
+        private final String suite;
+
+        private Page(List<Livre> livres, int estimation, String indexUtilise, String suite) {
+            this.livres = livres;
+            this.estimation = estimation;
+            this.indexUtilise = indexUtilise;
+            this.suite = suite;
+        }
+
+        public List<Livre> getLivres() {
+            return livres;
+        }
+
+        /**
+         * Nombre de livres de l'index utilisé : borne supérieure du nombre de résultats.
+         */
+        public int getEstimation() {
+            return estimation;
+        }
+
+        public String getIndexUtilise() {
+            return indexUtilise;
+        }
+
+        /**
+         * Curseur de la page suivante (titre du dernier résultat), ou null s'il n'y en a pas.
+         */
+        public String getSuite() {
+            return suite;
+        }
+    }
+
+    // Livres d'une entrée d'index triés par titre, et leur nombre tenu à jour à chaque ajout ou
+    // retrait pour estimer la sélectivité sans les compter
+    private static final class Entree {
+        final ConcurrentSkipListMap<String, Livre> livres = new ConcurrentSkipListMap<>();
+        final AtomicInteger nombre = new AtomicInteger();
+
+        void ajouter(Livre livre) {
+            if (livres.put(livre.getTitre(), livre) == null) {
+                nombre.incrementAndGet();
+            }
+        }
+
+        void retirer(Livre livre) {
+            if (livres.remove(livre.getTitre(), livre)) {
+                nombre.decrementAndGet();
+            }
+        }
+
+        boolean contient(Livre livre) {
+            return livres.get(livre.getTitre()) == livre;
+        }
+
+        int taille() {
+            return nombre.get();
+        }
+
+        // Livres dont le titre suit strictement le curseur (tous si le curseur est null)
+        Iterator<Livre> apres(String curseur) {
+            return (curseur == null ? livres : livres.tailMap(curseur, false)).values().iterator();
+        }
+    }
+
+    // Parcours par titre croissant de l'union de plusieurs entrées ; un livre présent dans deux
+    // tranches le temps d'un changement de stock n'est rendu qu'une fois
+    private static final class Fusion {
+        private final PriorityQueue<Tete> tetes = new PriorityQueue<>((a, b) -> a.livre.getTitre().compareTo(b.livre.getTitre()));
+        private String dernier;
+
+        private static final class Tete {
+            final Iterator<Livre> suite;
+            Livre livre;
+
+            Tete(Iterator<Livre> suite) {
+                this.suite = suite;
+            }
+        }
+
+        Fusion(Collection<Entree> entrees, String curseur) {
+            for (Entree entree : entrees) {
+                avancer(new Tete(entree.apres(curseur)));
+            }
+        }
+
+        private void avancer(Tete tete) {
+            if (tete.suite.hasNext()) {
+                tete.livre = tete.suite.next();
+                tetes.add(tete);
+            }
+        }
+
+        Livre suivant() {
+            while (!tetes.isEmpty()) {
+                Tete tete = tetes.poll();
+                Livre livre = tete.livre;
+                avancer(tete);
+                if (!livre.getTitre().equals(dernier)) {
+                    dernier = livre.getTitre();
+                    return livre;
+                }
+            }
+            return null;
+        }
+    }
+
+    public IndexCatalogue() {
+        this(null);
+    }
+
+    /**
+     * @param suivant observateur prévenu à son tour des variations de stock,
+     *                le livre n'acceptant qu'un seul observateur
+     */
+    public IndexCatalogue(ObservateurStock suivant) {
+        this.suivant = suivant;
+        for (int t = 0; t < NOMBRE_TRANCHES; t++) {
+            parTranche.add(new Entree());
+        }
+    }
+
+    private static int tranche(int quantite) {
+        return quantite <= 0 ? 0 : 32 - Integer.numberOfLeadingZeros(quantite);
+    }
+
+    public void ajouter(Livre livre) {
+        tous.ajouter(livre);
+        parAuteur.computeIfAbsent(MoteurRecherche.normaliser(livre.getAuteur()), a -> new Entree()).ajouter(livre);
+        parDuree.computeIfAbsent(livre.getDureeEmpruntMax(), d -> new Entree()).ajouter(livre);
+        parTranche.get(tranche(livre.getQuantiteDisponible())).ajouter(livre);
+        if (observe) {
+            livre.setObservateurStock(this);
+        }
+    }
+
+    /**
+     * Prépare un index vide destiné à remplacer celui-ci, rempli hors du thread de l'agent par
+     * {@link #ajouter}. Tant qu'il n'a pas pris le relais, les livres restent observés par cet
+     * index, qui lui relaie leurs variations de stock : ses tranches suivent donc le stock pendant
+     * la construction, et l'observateur suivant n'est prévenu qu'une fois. Un nouvel appel
+     * abandonne le remplaçant précédent.
+     */
+    public IndexCatalogue preparerRemplacant() {
+        IndexCatalogue nouveau = new IndexCatalogue(suivant);
+        nouveau.observe = false;
+        remplacant = nouveau;
+        return nouveau;
+    }
+
+    /**
+     * Fait observer par le remplaçant préparé tous les livres qu'il contient ; cet index ne doit
+     * plus être modifié ensuite. Chaque variation de stock est reçue une fois par le remplaçant,
+     * directement ou par cet index, pendant la bascule comme après.
+     * @return false si le remplaçant a été abandonné au profit d'un autre, rien n'est alors changé
+     */
+    public boolean ceder(IndexCatalogue nouveau) {
+        if (remplacant != nouveau) {
+            return false;
+        }
+        nouveau.observe = true;
+        for (Iterator<Livre> livres = nouveau.tous.apres(null); livres.hasNext(); ) {
+            livres.next().setObservateurStock(nouveau);
+        }
+        return true;
+    }
+
+    /**
+     * Retire un livre de tous les index ; il n'est plus observé.
+     */
+    public void retirer(Livre livre) {
+        livre.setObservateurStock(null);
+        tous.retirer(livre);
+        Entree memeAuteur = parAuteur.get(MoteurRecherche.normaliser(livre.getAuteur()));
+        if (memeAuteur != null) {
+            memeAuteur.retirer(livre);
+        }
+        Entree memeDuree = parDuree.get(livre.getDureeEmpruntMax());
+        if (memeDuree != null) {
+            memeDuree.retirer(livre);
+        }
+        // Le livre a pu laisser une entrée en trop dans une autre tranche que la sienne
+        for (Entree tranche : parTranche) {
+            tranche.retirer(livre);
+        }
+    }
+
+    @Override
+    public void stockModifie(Livre livre, int ancienneQuantite, int nouvelleQuantite) {
+        if (suivant != null) {
+            suivant.stockModifie(livre, ancienneQuantite, nouvelleQuantite);
+        }
+        deplacer(livre, ancienneQuantite, nouvelleQuantite);
+        IndexCatalogue nouveau = remplacant;
+        // Un livre que le remplaçant n'a pas encore indexé y entrera avec son stock courant
+        if (nouveau != null && nouveau.tous.contient(livre)) {
+            nouveau.deplacer(livre, ancienneQuantite, nouvelleQuantite);
+        }
+    }
+
+    // Change le livre de tranche de stock
+    private void deplacer(Livre livre, int ancienneQuantite, int nouvelleQuantite) {
+        int ancienne = tranche(ancienneQuantite);
+        int nouvelle = tranche(nouvelleQuantite);
+        if (ancienne == nouvelle) {
+            return;
+        }
+        parTranche.get(nouvelle).ajouter(livre);
+        parTranche.get(ancienne).retirer(livre);
+
+        // Des modifications concurrentes peuvent arriver dans le désordre : se recaler sur le
+        // stock courant. Une entrée en trop ne coûte qu'un filtrage, les requêtes vérifiant
+        // toujours les critères sur le livre lui-même.
+        int actuelle = tranche(livre.getQuantiteDisponible());
+        if (actuelle != nouvelle) {
+            parTranche.get(actuelle).ajouter(livre);
+            parTranche.get(nouvelle).retirer(livre);
+        }
+    }
+
+    public int taille() {
+        return tous.taille();
+    }
+
+    /**
+     * Exécute la requête à partir de l'index le plus sélectif : ses entrées sont parcourues par
+     * titre croissant, après le curseur de la requête, en filtrant les livres sur tous les
+     * critères, jusqu'à remplir la page.
+     */
+    public Page executer(RequeteCatalogue requete) {
+        // Estimer le nombre de candidats fourni par chaque index
+        String indexUtilise = "aucun";
+        Collection<Entree> candidats = Collections.singletonList(tous);
+        long meilleur = tous.taille();
+
+        if (requete.getAuteur() != null) {
+            Entree auteur = parAuteur.get(MoteurRecherche.normaliser(requete.getAuteur()));
+            if (auteur == null) {
+                return new Page(new ArrayList<>(), 0, "auteur", null);
+            }
+            if (auteur.taille() < meilleur) {
+                meilleur = auteur.taille();
+                candidats = Collections.singletonList(auteur);
+                indexUtilise = "auteur";
+            }
+        }
+
+        if (requete.getDureeMin() > 0) {
+            Collection<Entree> durees = parDuree.tailMap(requete.getDureeMin(), true).values();
+            long estimation = 0;
+            for (Entree livres : durees) {
+                estimation += livres.taille();
+            }
+            if (estimation < meilleur) {
+                meilleur = estimation;
+                candidats = durees;
+                indexUtilise = "durée";
+            }
+        }
+
+        if (requete.getExemplairesMin() > 0) {
+            List<Entree> tranches = parTranche.subList(tranche(requete.getExemplairesMin()), NOMBRE_TRANCHES);
+            long estimation = 0;
+            for (Entree tranche : tranches) {
+                estimation += tranche.taille();
+            }
+            if (estimation < meilleur) {
+                meilleur = estimation;
+                candidats = tranches;
+                indexUtilise = "disponibilité";
+            }
+        }
+
+        // Sauter les pages précédentes, remplir la page, puis chercher un résultat de plus pour
+        // savoir s'il existe une page suivante
+        Fusion fusion = new Fusion(candidats, requete.getApres());
+        long aSauter = (long) requete.getPage() * requete.getTaille();
+        List<Livre> livres = new ArrayList<>(Math.min(requete.getTaille(), 256));
+        String suite = null;
+        Livre livre;
+        while ((livre = fusion.suivant()) != null) {
+            if (!requete.accepte(livre)) {
+                continue;
+            }
+            if (aSauter > 0) {
+                aSauter--;
+            } else if (livres.size() < requete.getTaille()) {
+                livres.add(livre);
+            } else {
+                suite = livres.get(livres.size() - 1).getTitre();
+                break;
+            }
+        }
+        return new Page(livres, (int) meilleur, indexUtilise, suite);
+    }
+}
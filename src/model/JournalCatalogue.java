@@ -0,0 +1,642 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Journal d'écriture anticipée du stock, projeté en mémoire (memory-mapped), avec instantanés.
+ *
+ * Chaque mouvement de stock durable (ajout d'un titre, emprunt, retour, réassort, retrait) est
+ * ajouté au journal avec un numéro de séquence. Les écritures sont rendues durables par lots
+ * (group commit) selon la politique de synchronisation choisie. Un instantané compact du
+ * catalogue borne le temps de relecture : au redémarrage, on charge l'instantané puis on
+ * rejoue uniquement les enregistrements postérieurs.
+ *
+ * Le stock journalisé est le stock "en rayon" (disponible + réservé) : les réservations
+ * temporaires ne survivent pas à un redémarrage et leurs exemplaires reviennent en rayon.
+ *
+ * Le journal tient aussi le registre des emprunts en cours (ouverture d'un prêt, exemplaires
+ * rendus), repris avec le stock au redémarrage : un emprunteur peut rendre un livre emprunté
+ * avant l'arrêt.
+ */
+public class JournalCatalogue {
+    private static final int MAGIC_INSTANTANE_V1 = 0x43415431; // "CAT1", sans les emprunts
+    private static final int MAGIC_INSTANTANE = 0x43415432; // "CAT2"
+    private static final String INSTANTANE = "catalogue.snap";
+    private static final String PREFIXE_JOURNAL = "journal-";
+    private static final String SUFFIXE_JOURNAL = ".wal";
+    private static final int TAILLE_SEGMENT = 64 * 1024 * 1024;
+
+    public enum Operation {
+        AJOUT(1), EMPRUNT(2), RETOUR(3), REASSORT(4), RETRAIT(5),
+        // Registre des emprunts : ouverture d'un prêt, exemplaires rendus sur un prêt
+        PRET(6), RENDU(7);
+
+        private final byte code;
+
+        Operation(int code) {
+            this.code = (byte) code;
+        }
+
+        static Operation depuisCode(byte code) {
+            for (Operation operation : values()) {
+                if (operation.code == code) {
+                    return operation;
+                }
+            }
+            throw new IllegalStateException("Opération de journal inconnue: " + code);
+        }
+    }
+
+    /**
+     * Politique de synchronisation disque des écritures.
+     */
+    public enum Synchronisation {
+        AUCUNE,     // laissée au système d'exploitation
+        LOT,        // une synchronisation par lot d'écritures (group commit)
+        IMMEDIATE   // une synchronisation par écriture
+    }
+
+    /**
+     * Longueur maximale en octets UTF-8 d'un titre ou d'un auteur, codée sur deux octets non signés.
+     */
+    public static final int LONGUEUR_TEXTE_MAX = 0xFFFF;
+
+    private final File repertoire;
+    private final Synchronisation synchronisation;
+
+    // Les mutations journalisées prennent le verrou partagé, l'instantané le verrou exclusif
+    private final ReadWriteLock verrouInstantane = new ReentrantReadWriteLock();
+
+    private final Object verrouEcriture = new Object();
+    private RandomAccessFile fichier;
+    private volatile MappedByteBuffer segment;
+    private long sequence = 0;
+    private volatile long sequenceEcrite = 0;
+    private volatile long sequenceDurable = 0;
+
+    private final PriorityQueue<Attente> attentes = new PriorityQueue<>((a, b) -> Long.compare(a.sequence, b.sequence));
+    private ScheduledExecutorService synchroniseur;
+
+    // Statistiques
+    private long enregistrements = 0;
+    private long synchronisations = 0;
+
+    /**
+     * Emprunt en cours tel que journalisé : identifiant, emprunteur, titre, nombre d'exemplaires
+     * encore prêtés et date de retour prévue.
+     */
+    public static final class Pret {
+        private final long id;
+        private final String emprunteur;
+        private final String titre;
+        private int nombre;
+        private final long dateRetour;
+
+        public Pret(long id, String emprunteur, String titre, int nombre, long dateRetour) {
+            this.id = id;
+            this.emprunteur = emprunteur;
+            this.titre = titre;
+            this.nombre = nombre;
+            this.dateRetour = dateRetour;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getEmprunteur() {
+            return emprunteur;
+        }
+
+        public String getTitre() {
+            return titre;
+        }
+
+        public int getNombre() {
+            return nombre;
+        }
+
+        public long getDateRetour() {
+            return dateRetour;
+        }
+    }
+
+    // Emprunts en cours repris par recuperer(), par identifiant
+    private final Map<Long, Pret> pretsRepris = new LinkedHashMap<>();
+
+    private static final class Attente {
+        final long sequence;
+        final CompletableFuture<Void> futur = new CompletableFuture<>();
+
+        Attente(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    public JournalCatalogue(File repertoire, Synchronisation synchronisation) {
+        this.repertoire = repertoire;
+        this.synchronisation = synchronisation;
+    }
+
+    /**
+     * Recharge le catalogue depuis le dernier instantané et les journaux, puis ouvre un nouveau
+     * segment de journal pour les écritures à venir.
+     * @return le catalogue reconstruit (vide si aucune donnée n'existe encore)
+     */
+    public Map<String, Livre> recuperer() throws IOException {
+        if (!repertoire.isDirectory() && !repertoire.mkdirs()) {
+            throw new IOException("Impossible de créer le répertoire " + repertoire);
+        }
+
+        Map<String, Livre> catalogue = new LinkedHashMap<>();
+        pretsRepris.clear();
+        long sequenceInstantane = lireInstantane(catalogue);
+        sequence = sequenceInstantane;
+
+        for (File journal : journaux()) {
+            sequence = Math.max(sequence, rejouer(journal, sequenceInstantane, catalogue));
+        }
+        sequenceEcrite = sequence;
+        sequenceDurable = sequence;
+
+        ouvrirSegment(sequence + 1);
+        if (synchronisation == Synchronisation.LOT) {
+            synchroniseur = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "journal-" + repertoire.getName());
+                t.setDaemon(true);
+                return t;
+            });
+            synchroniseur.scheduleWithFixedDelay(this::synchroniser, 2, 2, TimeUnit.MILLISECONDS);
+        }
+        return catalogue;
+    }
+
+    /**
+     * Emprunts en cours repris par le dernier appel à {@link #recuperer()}, du plus ancien au plus récent.
+     */
+    public Collection<Pret> getPretsRepris() {
+        return pretsRepris.values();
+    }
+
+    private File[] journaux() {
+        File[] journaux = repertoire.listFiles((d, nom) -> nom.startsWith(PREFIXE_JOURNAL) && nom.endsWith(SUFFIXE_JOURNAL));
+        if (journaux == null) {
+            return new File[0];
+        }
+        Arrays.sort(journaux, (a, b) -> Long.compare(debutJournal(a), debutJournal(b)));
+        return journaux;
+    }
+
+    private static long debutJournal(File journal) {
+        String nom = journal.getName();
+        return Long.parseLong(nom.substring(PREFIXE_JOURNAL.length(), nom.length() - SUFFIXE_JOURNAL.length()));
+    }
+
+    private long lireInstantane(Map<String, Livre> catalogue) throws IOException {
+        File fichierInstantane = new File(repertoire, INSTANTANE);
+        if (!fichierInstantane.exists()) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fichierInstantane), 1 << 16))) {
+            int magic = in.readInt();
+            if (magic != MAGIC_INSTANTANE && magic != MAGIC_INSTANTANE_V1) {
+                throw new IOException("Instantané invalide: " + fichierInstantane);
+            }
+            long sequenceInstantane = in.readLong();
+            int nombre = in.readInt();
+            for (int i = 0; i < nombre; i++) {
+                String titre = lireTexte(in);
+                String auteur = lireTexte(in);
+                int quantite = in.readInt();
+                int duree = in.readInt();
+                catalogue.put(titre, new Livre(titre, auteur, quantite, duree));
+            }
+            if (magic == MAGIC_INSTANTANE) {
+                int prets = in.readInt();
+                for (int i = 0; i < prets; i++) {
+                    long id = in.readLong();
+                    String emprunteur = lireTexte(in);
+                    String titre = lireTexte(in);
+                    int exemplaires = in.readInt();
+                    long dateRetour = in.readLong();
+                    pretsRepris.put(id, new Pret(id, emprunteur, titre, exemplaires, dateRetour));
+                }
+            }
+            return sequenceInstantane;
+        }
+    }
+
+    // Rejoue un segment jusqu'au premier enregistrement absent ou corrompu
+    private long rejouer(File journal, long sequenceInstantane, Map<String, Livre> catalogue) throws IOException {
+        long derniere = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal), 1 << 16))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int longueur;
+                try {
+                    longueur = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (longueur <= 0) {
+                    break;
+                }
+                int somme = in.readInt();
+                byte[] contenu = new byte[longueur];
+                try {
+                    in.readFully(contenu);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(contenu, 0, longueur);
+                if ((int) crc.getValue() != somme) {
+                    break;
+                }
+
+                DataInputStream enregistrement = new DataInputStream(new java.io.ByteArrayInputStream(contenu));
+                Operation operation = Operation.depuisCode(enregistrement.readByte());
+                long numero = enregistrement.readLong();
+                String titre = lireTexte(enregistrement);
+                int nombre = enregistrement.readInt();
+                derniere = numero;
+                if (numero <= sequenceInstantane) {
+                    continue;
+                }
+                appliquer(catalogue, operation, titre, nombre, enregistrement);
+            }
+        }
+        return derniere;
+    }
+
+    private void appliquer(Map<String, Livre> catalogue, Operation operation, String titre, int nombre,
+                           DataInputStream suite) throws IOException {
+        Livre livre = catalogue.get(titre);
+        switch (operation) {
+            case AJOUT:
+                catalogue.put(titre, new Livre(titre, lireTexte(suite), nombre, suite.readInt()));
+                break;
+            case EMPRUNT:
+                if (livre != null) {
+                    livre.setQuantiteDisponible(livre.getQuantiteDisponible() - nombre);
+                }
+                break;
+            case RETOUR:
+            case REASSORT:
+                if (livre != null) {
+                    livre.setQuantiteDisponible(livre.getQuantiteDisponible() + nombre);
+                }
+                break;
+            case RETRAIT:
+                catalogue.remove(titre);
+                break;
+            case PRET: {
+                String emprunteur = lireTexte(suite);
+                long id = suite.readLong();
+                pretsRepris.put(id, new Pret(id, emprunteur, titre, nombre, suite.readLong()));
+                break;
+            }
+            case RENDU: {
+                Pret pret = pretsRepris.get(suite.readLong());
+                if (pret != null) {
+                    pret.nombre -= nombre;
+                    if (pret.nombre <= 0) {
+                        pretsRepris.remove(pret.id);
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Codage UTF-8 d'un titre ou d'un auteur à journaliser.
+     * @throws IllegalArgumentException s'il dépasse {@link #LONGUEUR_TEXTE_MAX} octets
+     */
+    public static byte[] coder(String texte) {
+        byte[] octets = texte.getBytes(StandardCharsets.UTF_8);
+        if (octets.length > LONGUEUR_TEXTE_MAX) {
+            throw new IllegalArgumentException("Texte trop long pour le journal: " + octets.length + " octets");
+        }
+        return octets;
+    }
+
+    // Longueur non signée sur deux octets puis UTF-8 standard, et non l'UTF-8 modifié de readUTF
+    private static String lireTexte(DataInputStream in) throws IOException {
+        byte[] octets = new byte[in.readUnsignedShort()];
+        in.readFully(octets);
+        return new String(octets, StandardCharsets.UTF_8);
+    }
+
+    private static void ecrireTexte(DataOutputStream out, String texte) throws IOException {
+        byte[] octets = coder(texte);
+        out.writeShort(octets.length);
+        out.write(octets);
+    }
+
+    private void ouvrirSegment(long debut) throws IOException {
+        synchronized (verrouEcriture) {
+            if (fichier != null) {
+                fichier.close();
+            }
+            fichier = new RandomAccessFile(new File(repertoire, PREFIXE_JOURNAL + debut + SUFFIXE_JOURNAL), "rw");
+            segment = fichier.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, TAILLE_SEGMENT);
+        }
+    }
+
+    /**
+     * Applique une mutation de stock et l'ajoute au journal, de façon atomique vis-à-vis des instantanés.
+     * La mutation et l'attribution du numéro se font sous le verrou d'écriture : les numéros suivent
+     * l'ordre des mutations, que la quantité d'un ajout journalisé reflète exactement.
+     * @param mutation renvoie false si la mutation est refusée (stock insuffisant), rien n'est alors journalisé
+     * @return true si la mutation a été appliquée
+     */
+    public boolean enregistrer(Operation operation, String titre, int nombre, BooleanSupplier mutation) {
+        verrouInstantane.readLock().lock();
+        try {
+            synchronized (verrouEcriture) {
+                if (!mutation.getAsBoolean()) {
+                    return false;
+                }
+                ecrire(operation, titre, nombre, null);
+            }
+            return true;
+        } finally {
+            verrouInstantane.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applique l'ouverture d'un emprunt au registre et la journalise, de façon atomique vis-à-vis
+     * des instantanés.
+     */
+    public void enregistrerPret(Pret pret, Runnable mutation) {
+        byte[] emprunteur = coder(pret.emprunteur);
+        byte[] suite = java.nio.ByteBuffer.allocate(2 + emprunteur.length + 8 + 8)
+            .putShort((short) emprunteur.length).put(emprunteur).putLong(pret.id).putLong(pret.dateRetour).array();
+        verrouInstantane.readLock().lock();
+        try {
+            mutation.run();
+            ecrire(Operation.PRET, pret.titre, pret.nombre, suite);
+        } finally {
+            verrouInstantane.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applique au registre le retour d'exemplaires d'un emprunt et le journalise, de façon
+     * atomique vis-à-vis des instantanés.
+     */
+    public void enregistrerRendu(long id, String titre, int nombre, Runnable mutation) {
+        byte[] suite = java.nio.ByteBuffer.allocate(8).putLong(id).array();
+        verrouInstantane.readLock().lock();
+        try {
+            mutation.run();
+            ecrire(Operation.RENDU, titre, nombre, suite);
+        } finally {
+            verrouInstantane.readLock().unlock();
+        }
+    }
+
+    /**
+     * Journalise l'ajout d'un nouveau titre. Le livre peut déjà être emprunté ou rendu : son stock
+     * en rayon est lu sous le verrou d'écriture, avec l'attribution du numéro, et compte donc
+     * exactement les mouvements journalisés avant l'ajout.
+     */
+    public void enregistrerAjout(Livre livre) {
+        byte[] auteur = coder(livre.getAuteur());
+        byte[] suite = java.nio.ByteBuffer.allocate(2 + auteur.length + 4)
+            .putShort((short) auteur.length).put(auteur).putInt(livre.getDureeEmpruntMax()).array();
+        verrouInstantane.readLock().lock();
+        try {
+            synchronized (verrouEcriture) {
+                ecrire(Operation.AJOUT, livre.getTitre(), livre.getQuantiteEnRayon(), suite);
+            }
+        } finally {
+            verrouInstantane.readLock().unlock();
+        }
+    }
+
+    // Enregistrement : opération, numéro, titre, nombre, puis la suite propre à l'opération
+    private void ecrire(Operation operation, String titre, int nombre, byte[] suite) {
+        byte[] titreOctets = coder(titre);
+        int longueur = 1 + 8 + 2 + titreOctets.length + 4 + (suite != null ? suite.length : 0);
+
+        synchronized (verrouEcriture) {
+            long numero = ++sequence;
+            byte[] contenu = new byte[longueur];
+            java.nio.ByteBuffer tampon = java.nio.ByteBuffer.wrap(contenu);
+            tampon.put(operation.code).putLong(numero)
+                .putShort((short) titreOctets.length).put(titreOctets).putInt(nombre);
+            if (suite != null) {
+                tampon.put(suite);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(contenu, 0, longueur);
+
+            if (segment.remaining() < 8 + longueur + 4) {
+                basculerSegment(numero);
+            }
+            segment.putInt(longueur).putInt((int) crc.getValue()).put(contenu);
+            // Marqueur de fin, écrasé par l'enregistrement suivant
+            segment.putInt(segment.position(), 0);
+            sequenceEcrite = numero;
+            enregistrements++;
+
+            if (synchronisation == Synchronisation.IMMEDIATE) {
+                segment.force();
+                synchronisations++;
+                marquerDurable(numero);
+            } else if (synchronisation == Synchronisation.AUCUNE) {
+                marquerDurable(numero);
+            }
+        }
+    }
+
+    private void basculerSegment(long debut) {
+        try {
+            segment.force();
+            ouvrirSegment(debut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Synchronisation par lot : une seule écriture disque pour tous les enregistrements en attente
+    private void synchroniser() {
+        long cible = sequenceEcrite;
+        if (cible <= sequenceDurable) {
+            return;
+        }
+        segment.force();
+        synchronized (verrouEcriture) {
+            synchronisations++;
+            marquerDurable(cible);
+        }
+    }
+
+    private void marquerDurable(long numero) {
+        sequenceDurable = Math.max(sequenceDurable, numero);
+        List<Attente> pretes = new ArrayList<>();
+        synchronized (attentes) {
+            while (!attentes.isEmpty() && attentes.peek().sequence <= sequenceDurable) {
+                pretes.add(attentes.poll());
+            }
+        }
+        for (Attente attente : pretes) {
+            attente.futur.complete(null);
+        }
+    }
+
+    /**
+     * Futur complété lorsque tous les enregistrements écrits jusqu'ici sont sur disque.
+     */
+    public CompletableFuture<Void> durable() {
+        long numero = sequenceEcrite;
+        if (numero <= sequenceDurable) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Attente attente = new Attente(numero);
+        synchronized (attentes) {
+            attentes.add(attente);
+        }
+        // La synchronisation a pu avoir lieu entre-temps
+        if (numero <= sequenceDurable) {
+            marquerDurable(numero);
+        }
+        return attente.futur;
+    }
+
+    /**
+     * Écrit un instantané compact du catalogue puis supprime les segments de journal devenus inutiles.
+     * Les mutations journalisées ne sont suspendues que le temps de relever la liste des livres et
+     * leurs quantités : un ajout ou un retrait journalisé avant l'instantané est ainsi toujours
+     * visible dans la liste, puisque le catalogue est modifié avant d'être journalisé.
+     * Un seul instantané s'écrit à la fois.
+     * @param livres fournit les livres du catalogue, relevés sous le verrou
+     */
+    public void instantane(Supplier<? extends Collection<Livre>> livres) throws IOException {
+        instantane(livres, Collections::emptyList);
+    }
+
+    /**
+     * Écrit un instantané du catalogue et des emprunts en cours.
+     * @param prets fournit une copie des emprunts en cours, relevée sous le verrou : le registre
+     *              n'est modifié que par {@link #enregistrerPret} et {@link #enregistrerRendu}
+     */
+    public synchronized void instantane(Supplier<? extends Collection<Livre>> livres,
+                                        Supplier<? extends Collection<Pret>> prets) throws IOException {
+        Livre[] figes;
+        int[] quantites;
+        Pret[] pretsFiges;
+        long sequenceInstantane;
+
+        verrouInstantane.writeLock().lock();
+        try {
+            figes = livres.get().toArray(new Livre[0]);
+            quantites = new int[figes.length];
+            for (int i = 0; i < figes.length; i++) {
+                quantites[i] = figes[i].getQuantiteEnRayon();
+            }
+            pretsFiges = prets.get().toArray(new Pret[0]);
+            synchronized (verrouEcriture) {
+                sequenceInstantane = sequence;
+                // Les enregistrements suivants iront dans un nouveau segment
+                basculerSegment(sequenceInstantane + 1);
+            }
+        } finally {
+            verrouInstantane.writeLock().unlock();
+        }
+
+        File temporaire = new File(repertoire, INSTANTANE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temporaire);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.writeInt(MAGIC_INSTANTANE);
+            out.writeLong(sequenceInstantane);
+            out.writeInt(figes.length);
+            for (int i = 0; i < figes.length; i++) {
+                ecrireTexte(out, figes[i].getTitre());
+                ecrireTexte(out, figes[i].getAuteur());
+                out.writeInt(quantites[i]);
+                out.writeInt(figes[i].getDureeEmpruntMax());
+            }
+            out.writeInt(pretsFiges.length);
+            for (int i = 0; i < pretsFiges.length; i++) {
+                out.writeLong(pretsFiges[i].id);
+                ecrireTexte(out, pretsFiges[i].emprunteur);
+                ecrireTexte(out, pretsFiges[i].titre);
+                out.writeInt(pretsFiges[i].nombre);
+                out.writeLong(pretsFiges[i].dateRetour);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(temporaire.toPath(), new File(repertoire, INSTANTANE).toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Les segments entièrement couverts par l'instantané peuvent être supprimés
+        for (File journal : journaux()) {
+            if (debutJournal(journal) <= sequenceInstantane) {
+                Files.deleteIfExists(journal.toPath());
+            }
+        }
+    }
+
+    public void fermer() {
+        if (synchroniseur != null) {
+            synchroniseur.shutdown();
+        }
+        synchronized (verrouEcriture) {
+            if (segment != null) {
+                segment.force();
+                marquerDurable(sequenceEcrite);
+            }
+            try {
+                if (fichier != null) {
+                    fichier.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public String resume() {
+        synchronized (verrouEcriture) {
+            return "enregistrements: " + enregistrements + ", synchronisations disque: " + synchronisations +
+                " (" + synchronisation + ")" + ", séquence: " + sequence;
+        }
+    }
+}
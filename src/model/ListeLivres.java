@@ -1,5 +1,6 @@
 package model;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -9,6 +10,10 @@ import java.util.List;
  */
 public class ListeLivres implements Serializable {
     private static final long serialVersionUID = 1L;
+
+    // Paramètre utilisateur indiquant le codage du contenu ; absent, le contenu est un objet sérialisé
+    public static final String PARAMETRE_CODEC = "codec";
+    public static final String CODEC_BINAIRE = "binaire";
     private List<String> titres;
 
     public ListeLivres() {
@@ -31,6 +36,30 @@ public class ListeLivres implements Serializable {
         return titres.size();
     }
 
+    /**
+     * Codage binaire de la liste : version, nombre de titres puis les titres (dictionnaire).
+     */
+    public byte[] encoder() {
+        CodecBinaire.Ecrivain out = new CodecBinaire.Ecrivain(8 + titres.size() * 24, titres.size());
+        out.octet(CodecBinaire.VERSION);
+        out.varint(titres.size());
+        for (String titre : titres) {
+            out.chaine(titre);
+        }
+        return out.resultat();
+    }
+
+    public static ListeLivres decoder(byte[] contenu) throws IOException {
+        CodecBinaire.Lecteur in = new CodecBinaire.Lecteur(contenu);
+        in.version();
+        int nombre = in.varint();
+        List<String> titres = new ArrayList<>(nombre);
+        for (int i = 0; i < nombre; i++) {
+            titres.add(in.chaine());
+        }
+        return new ListeLivres(titres);
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("Liste de livres [");
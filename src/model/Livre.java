@@ -1,21 +1,55 @@
 package model;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
+/**
+ * Livre du catalogue. Le stock est géré sans verrou : les réservations, libérations et
+ * confirmations sont des opérations atomiques (CAS), ce qui permet à plusieurs threads
+ * de partager le même catalogue sans survente ni mise à jour perdue.
+ *
+ * Les exemplaires disponibles et réservés sont rangés dans un seul mot de 64 bits, modifié d'un
+ * seul CAS : une lecture du stock en rayon ({@link #getQuantiteEnRayon}) n'observe jamais une
+ * réservation à moitié faite.
+ *
+ * Un stockage en colonnes ({@link StockageColonnes}) fournit des vues qui redéfinissent les
+ * accesseurs et les opérations de stock pour travailler directement sur ses colonnes.
+ */
 public class Livre implements Serializable {
     private static final long serialVersionUID = 1L;
+
+    private static final AtomicLongFieldUpdater<Livre> STOCK =
+        AtomicLongFieldUpdater.newUpdater(Livre.class, "stock");
+
     private String titre;
-    private String auteur;
-    private int quantiteDisponible;
-    private int dureeEmpruntMax; // en jours
+    private volatile String auteur;
+    // Disponibles sur les 32 bits de poids fort, réservés (retirés du stock en attente de
+    // confirmation) sur les 32 bits de poids faible
+    private volatile long stock;
+    private volatile int dureeEmpruntMax; // en jours
+    private transient volatile ObservateurStock observateur;
 
     public Livre(String titre, String auteur, int quantiteDisponible, int dureeEmpruntMax) {
         this.titre = titre;
         this.auteur = auteur;
-        this.quantiteDisponible = quantiteDisponible;
+        this.stock = stock(quantiteDisponible, 0);
         this.dureeEmpruntMax = dureeEmpruntMax;
     }
 
+    // Codage du stock en un mot, partagé avec les colonnes de StockageColonnes
+
+    static long stock(int disponible, int reservee) {
+        return (long) disponible << 32 | (reservee & 0xffffffffL);
+    }
+
+    static int disponible(long stock) {
+        return (int) (stock >> 32);
+    }
+
+    static int reservee(long stock) {
+        return (int) stock;
+    }
+
     public String getTitre() {
         return titre;
     }
@@ -25,11 +59,29 @@ public class Livre implements Serializable {
     }
 
     public int getQuantiteDisponible() {
-        return quantiteDisponible;
+        return disponible(stock);
     }
 
     public void setQuantiteDisponible(int quantiteDisponible) {
-        this.quantiteDisponible = quantiteDisponible;
+        for (;;) {
+            long actuel = stock;
+            if (STOCK.compareAndSet(this, actuel, stock(quantiteDisponible, reservee(actuel)))) {
+                notifier(disponible(actuel), quantiteDisponible);
+                return;
+            }
+        }
+    }
+
+    public int getQuantiteReservee() {
+        return reservee(stock);
+    }
+
+    /**
+     * Exemplaires en rayon, disponibles et réservés, lus ensemble.
+     */
+    public int getQuantiteEnRayon() {
+        long actuel = stock;
+        return disponible(actuel) + reservee(actuel);
     }
 
     public int getDureeEmpruntMax() {
@@ -37,22 +89,121 @@ public class Livre implements Serializable {
     }
 
     public boolean estDisponible() {
-        return quantiteDisponible > 0;
+        return getQuantiteDisponible() > 0;
     }
 
     public boolean estDisponible(int nombreExemplaires) {
-        return quantiteDisponible >= nombreExemplaires;
+        return getQuantiteDisponible() >= nombreExemplaires;
+    }
+
+    /**
+     * Retire atomiquement des exemplaires du stock disponible s'il y en a assez.
+     * Les exemplaires restent réservés jusqu'à {@link #confirmer(int)} ou {@link #liberer(int)}.
+     */
+    public boolean reserver(int nombre) {
+        if (nombre <= 0) {
+            return false;
+        }
+        for (;;) {
+            long actuel = stock;
+            int disponible = disponible(actuel);
+            if (disponible < nombre) {
+                return false;
+            }
+            if (STOCK.compareAndSet(this, actuel, stock(disponible - nombre, reservee(actuel) + nombre))) {
+                notifier(disponible, disponible - nombre);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Rend au stock disponible des exemplaires précédemment réservés.
+     */
+    public void liberer(int nombre) {
+        modifier(nombre, -nombre);
+    }
+
+    /**
+     * Remet en rayon des exemplaires rendus par un emprunteur.
+     */
+    public void restituer(int nombre) {
+        modifier(nombre, 0);
+    }
+
+    /**
+     * Transforme une réservation en emprunt définitif.
+     */
+    public void confirmer(int nombre) {
+        modifier(0, -nombre);
+    }
+
+    // Ajoute les écarts au stock disponible et réservé d'un seul CAS
+    private void modifier(int disponible, int reservee) {
+        for (;;) {
+            long actuel = stock;
+            int ancienne = disponible(actuel);
+            if (STOCK.compareAndSet(this, actuel, stock(ancienne + disponible, reservee(actuel) + reservee))) {
+                notifier(ancienne, ancienne + disponible);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reprend l'auteur et la durée d'emprunt d'une nouvelle version du catalogue.
+     */
+    void redefinir(String auteur, int dureeEmpruntMax) {
+        this.auteur = auteur;
+        this.dureeEmpruntMax = dureeEmpruntMax;
+    }
+
+    /**
+     * Porte le stock en rayon (disponible et réservé) au nombre d'exemplaires d'une nouvelle
+     * version du catalogue, sans toucher aux réservations en cours ; s'il y a plus de
+     * réservations que d'exemplaires, plus aucun n'est disponible.
+     */
+    void fixerEnRayon(int exemplaires) {
+        for (;;) {
+            long actuel = stock;
+            int reservee = reservee(actuel);
+            int nouvelle = Math.max(0, exemplaires - reservee);
+            if (STOCK.compareAndSet(this, actuel, stock(nouvelle, reservee))) {
+                notifier(disponible(actuel), nouvelle);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Réserve et confirme en une seule opération atomique.
+     * @return false si le stock ne suffit pas, auquel cas rien n'est retiré
+     */
+    public boolean reduireQuantite(int nombre) {
+        if (!reserver(nombre)) {
+            return false;
+        }
+        confirmer(nombre);
+        return true;
+    }
+
+    /**
+     * Abonne un observateur (index, caches...) aux variations du stock disponible.
+     */
+    public void setObservateurStock(ObservateurStock observateur) {
+        this.observateur = observateur;
     }
 
-    public void reduireQuantite(int nombre) {
-        if (quantiteDisponible >= nombre) {
-            quantiteDisponible -= nombre;
+    private void notifier(int ancienne, int nouvelle) {
+        ObservateurStock o = observateur;
+        if (o != null && ancienne != nouvelle) {
+            o.stockModifie(this, ancienne, nouvelle);
         }
     }
 
     @Override
     public String toString() {
-        return "Livre [titre=" + titre + ", auteur=" + auteur + ", exemplaires disponibles=" + quantiteDisponible +
-            ", durée d'emprunt max=" + dureeEmpruntMax + " jours]";
+        return "Livre [titre=" + getTitre() + ", auteur=" + getAuteur() + ", exemplaires disponibles=" +
+            getQuantiteDisponible() + ", durée d'emprunt max=" + getDureeEmpruntMax() + " jours]";
     }
 }
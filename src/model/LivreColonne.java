@@ -0,0 +1,135 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Vue sur un livre d'un {@link StockageColonnes} : les accesseurs lisent les colonnes et les
+ * opérations de stock y agissent directement (CAS), comme sur un {@link Livre} ordinaire. Deux vues
+ * du même livre sont égales. Une vue sérialisée devient une copie ordinaire de son état.
+ */
+final class LivreColonne extends Livre {
+    private static final long serialVersionUID = 1L;
+
+    private final transient StockageColonnes stockage;
+    private final int id;
+    private final transient AtomicLongArray stock;
+    private final int indice;
+    private String titre;
+
+    LivreColonne(StockageColonnes stockage, int id) {
+        super(null, null, 0, 0);
+        this.stockage = stockage;
+        this.id = id;
+        this.stock = stockage.stock(id);
+        this.indice = StockageColonnes.indice(id);
+    }
+
+    @Override
+    public String getTitre() {
+        if (titre == null) {
+            titre = stockage.titre(id);
+        }
+        return titre;
+    }
+
+    @Override
+    public String getAuteur() {
+        return stockage.auteur(id);
+    }
+
+    @Override
+    public int getDureeEmpruntMax() {
+        return stockage.duree(id);
+    }
+
+    @Override
+    public int getQuantiteDisponible() {
+        return disponible(stock.get(indice));
+    }
+
+    @Override
+    public void setQuantiteDisponible(int quantiteDisponible) {
+        for (;;) {
+            long actuel = stock.get(indice);
+            if (stock.compareAndSet(indice, actuel, stock(quantiteDisponible, reservee(actuel)))) {
+                stockage.notifier(this, disponible(actuel), quantiteDisponible);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int getQuantiteReservee() {
+        return reservee(stock.get(indice));
+    }
+
+    @Override
+    public int getQuantiteEnRayon() {
+        long actuel = stock.get(indice);
+        return disponible(actuel) + reservee(actuel);
+    }
+
+    @Override
+    public boolean reserver(int nombre) {
+        if (nombre <= 0) {
+            return false;
+        }
+        for (;;) {
+            long actuel = stock.get(indice);
+            int disponible = disponible(actuel);
+            if (disponible < nombre) {
+                return false;
+            }
+            if (stock.compareAndSet(indice, actuel, stock(disponible - nombre, reservee(actuel) + nombre))) {
+                stockage.notifier(this, disponible, disponible - nombre);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void liberer(int nombre) {
+        modifier(nombre, -nombre);
+    }
+
+    @Override
+    public void restituer(int nombre) {
+        modifier(nombre, 0);
+    }
+
+    @Override
+    public void confirmer(int nombre) {
+        modifier(0, -nombre);
+    }
+
+    private void modifier(int disponible, int reservee) {
+        for (;;) {
+            long actuel = stock.get(indice);
+            int ancienne = disponible(actuel);
+            if (stock.compareAndSet(indice, actuel, stock(ancienne + disponible, reservee(actuel) + reservee))) {
+                stockage.notifier(this, ancienne, ancienne + disponible);
+                return;
+            }
+        }
+    }
+
+    // Un seul observateur pour tout le stockage : celui de l'index du catalogue
+    @Override
+    public void setObservateurStock(ObservateurStock observateur) {
+        stockage.setObservateurStock(observateur);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LivreColonne && ((LivreColonne) o).stockage == stockage && ((LivreColonne) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(stockage) * 31 + id;
+    }
+
+    private Object writeReplace() {
+        return CataloguePartitionne.copier(this);
+    }
+}
@@ -0,0 +1,98 @@
+package model;
+
+/**
+ * Vue sur un livre d'un {@link StockageProjete} : les accesseurs lisent l'enregistrement projeté
+ * et les opérations de stock le modifient en place. Deux vues du même livre sont égales. Une vue
+ * sérialisée devient une copie ordinaire de son état.
+ */
+final class LivreProjete extends Livre {
+    private static final long serialVersionUID = 1L;
+
+    private final transient StockageProjete stockage;
+    private final int id;
+    private String titre;
+
+    LivreProjete(StockageProjete stockage, int id) {
+        super(null, null, 0, 0);
+        this.stockage = stockage;
+        this.id = id;
+    }
+
+    @Override
+    public String getTitre() {
+        if (titre == null) {
+            titre = stockage.titre(id);
+        }
+        return titre;
+    }
+
+    @Override
+    public String getAuteur() {
+        return stockage.auteur(id);
+    }
+
+    @Override
+    public int getDureeEmpruntMax() {
+        return stockage.duree(id);
+    }
+
+    @Override
+    public int getQuantiteDisponible() {
+        return stockage.disponible(id);
+    }
+
+    @Override
+    public void setQuantiteDisponible(int quantiteDisponible) {
+        stockage.fixerDisponible(this, id, quantiteDisponible);
+    }
+
+    @Override
+    public int getQuantiteReservee() {
+        return stockage.reservee(id);
+    }
+
+    @Override
+    public int getQuantiteEnRayon() {
+        return stockage.enRayon(id);
+    }
+
+    @Override
+    public boolean reserver(int nombre) {
+        return nombre > 0 && stockage.reserver(this, id, nombre);
+    }
+
+    @Override
+    public void liberer(int nombre) {
+        stockage.modifier(this, id, nombre, -nombre);
+    }
+
+    @Override
+    public void restituer(int nombre) {
+        stockage.modifier(this, id, nombre, 0);
+    }
+
+    @Override
+    public void confirmer(int nombre) {
+        stockage.modifier(this, id, 0, -nombre);
+    }
+
+    // Un seul observateur pour tout le stockage
+    @Override
+    public void setObservateurStock(ObservateurStock observateur) {
+        stockage.setObservateurStock(observateur);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LivreProjete && ((LivreProjete) o).stockage == stockage && ((LivreProjete) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(stockage) * 31 + id;
+    }
+
+    private Object writeReplace() {
+        return CataloguePartitionne.copier(this);
+    }
+}
@@ -0,0 +1,254 @@
+package model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Moteur de recherche approchée sur le titre et l'auteur des livres.
+ * Les textes sont normalisés (accents, casse, ponctuation) puis découpés en trigrammes et en mots,
+ * chacun associé à la liste des livres qui le contiennent (index inversé). Une requête ne parcourt
+ * que les listes de ses propres trigrammes, jamais le catalogue entier.
+ */
+public class MoteurRecherche {
+    // Alphabet après normalisation : espace, a-z, 0-9
+    private static final int TAILLE_ALPHABET = 37;
+    private static final int BONUS_MOT = 2;
+    private static final int LIMITE_FREQUENCE = 1024;
+
+    // Livre de chaque identifiant, null une fois retiré
+    private final List<Livre> livres = new ArrayList<>();
+    private int retires = 0;
+    private int[] nombreTrigrammes = new int[1024];
+
+    // Index inversés : trigramme (codé en entier) -> livres, mot -> livres
+    private final Postings[] parTrigramme = new Postings[TAILLE_ALPHABET * TAILLE_ALPHABET * TAILLE_ALPHABET];
+    private final Map<String, Postings> parMot = new HashMap<>();
+
+    // Accumulateur de scores réutilisé d'une requête à l'autre
+    private int[] scores = new int[1024];
+    private int[] touches = new int[64];
+
+    /**
+     * Livre trouvé et son score de pertinence (entre 0 et 1 environ).
+     */
+    public static final class Resultat {
+        private final Livre livre;
+        private final double score;
+
+        private Resultat(Livre livre, double score) {
+            this.livre = livre;
+            this.score = score;
+        }
+
+        public Livre getLivre() {
+            return livre;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    // Liste croissante d'identifiants de livres
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int taille;
+
+        void ajouter(int id) {
+            if (taille > 0 && ids[taille - 1] == id) {
+                return;
+            }
+            if (taille == ids.length) {
+                ids = Arrays.copyOf(ids, taille * 2);
+            }
+            ids[taille++] = id;
+        }
+    }
+
+    /**
+     * Supprime accents, casse et ponctuation : "Dostoïevski" et "dostoievski" deviennent identiques.
+     */
+    public static String normaliser(String texte) {
+        String decompose = Normalizer.normalize(texte, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decompose.length());
+        boolean espace = true;
+        for (int i = 0; i < decompose.length(); i++) {
+            char c = decompose.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (c == 'œ' || c == 'Œ') {
+                sb.append("oe");
+                espace = false;
+            } else if (c == 'æ' || c == 'Æ') {
+                sb.append("ae");
+                espace = false;
+            } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                sb.append(c);
+                espace = false;
+            } else if (c >= 'A' && c <= 'Z') {
+                sb.append((char) (c + ('a' - 'A')));
+                espace = false;
+            } else if (!espace) {
+                sb.append(' ');
+                espace = true;
+            }
+        }
+        int fin = sb.length();
+        if (fin > 0 && sb.charAt(fin - 1) == ' ') {
+            sb.setLength(fin - 1);
+        }
+        return sb.toString();
+    }
+
+    private static int code(char c) {
+        if (c == ' ') {
+            return 0;
+        }
+        return c <= '9' ? 27 + (c - '0') : 1 + (c - 'a');
+    }
+
+    // Trigrammes distincts du texte normalisé, encadré d'espaces pour indexer débuts et fins de mots
+    private static int[] trigrammes(String normalise) {
+        String texte = " " + normalise + " ";
+        int n = Math.max(0, texte.length() - 2);
+        int[] codes = new int[n];
+        for (int i = 0; i < n; i++) {
+            codes[i] = (code(texte.charAt(i)) * TAILLE_ALPHABET + code(texte.charAt(i + 1))) * TAILLE_ALPHABET
+                + code(texte.charAt(i + 2));
+        }
+        Arrays.sort(codes);
+        int distincts = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || codes[i] != codes[i - 1]) {
+                codes[distincts++] = codes[i];
+            }
+        }
+        return Arrays.copyOf(codes, distincts);
+    }
+
+    public synchronized void ajouter(Livre livre) {
+        int id = livres.size();
+        livres.add(livre);
+
+        String texte = normaliser(livre.getTitre() + " " + livre.getAuteur());
+        int[] codes = trigrammes(texte);
+        if (id == nombreTrigrammes.length) {
+            nombreTrigrammes = Arrays.copyOf(nombreTrigrammes, id * 2);
+        }
+        nombreTrigrammes[id] = codes.length;
+
+        for (int code : codes) {
+            Postings postings = parTrigramme[code];
+            if (postings == null) {
+                postings = parTrigramme[code] = new Postings();
+            }
+            postings.ajouter(id);
+        }
+        for (String mot : texte.split(" ")) {
+            if (!mot.isEmpty()) {
+                parMot.computeIfAbsent(mot, m -> new Postings()).ajouter(id);
+            }
+        }
+    }
+
+    /**
+     * Retire un livre des résultats ; son identifiant reste réservé dans les index inversés.
+     */
+    public synchronized void retirer(Livre livre) {
+        int id = livres.indexOf(livre);
+        if (id >= 0) {
+            livres.set(id, null);
+            retires++;
+        }
+    }
+
+    public synchronized int taille() {
+        return livres.size() - retires;
+    }
+
+    /**
+     * Renvoie les k livres les plus proches de la requête, du plus pertinent au moins pertinent.
+     */
+    public synchronized List<Resultat> rechercher(String requete, int k) {
+        String texte = normaliser(requete);
+        int[] codes = trigrammes(texte);
+        if (codes.length == 0 || k <= 0) {
+            return new ArrayList<>();
+        }
+        if (scores.length < livres.size()) {
+            scores = new int[Math.max(livres.size(), scores.length * 2)];
+        }
+
+        // Les trigrammes très fréquents (" le", "de ") coûteraient un parcours d'une grande partie
+        // du catalogue pour un pouvoir discriminant faible : ils sont ignorés dès qu'un trigramme
+        // plus rare est présent dans la requête
+        int limite = Math.max(LIMITE_FREQUENCE, livres.size() / 100);
+        boolean rarePresent = false;
+        for (int code : codes) {
+            Postings postings = parTrigramme[code];
+            if (postings != null && postings.taille <= limite) {
+                rarePresent = true;
+                break;
+            }
+        }
+
+        // Accumuler un point par trigramme partagé, puis un bonus par mot entier partagé
+        int nombreTouches = 0;
+        for (int code : codes) {
+            Postings postings = parTrigramme[code];
+            if (postings == null || (rarePresent && postings.taille > limite)) {
+                continue;
+            }
+            for (int i = 0; i < postings.taille; i++) {
+                int id = postings.ids[i];
+                if (scores[id]++ == 0) {
+                    if (nombreTouches == touches.length) {
+                        touches = Arrays.copyOf(touches, nombreTouches * 2);
+                    }
+                    touches[nombreTouches++] = id;
+                }
+            }
+        }
+        for (String mot : texte.split(" ")) {
+            Postings postings = parMot.get(mot);
+            if (postings == null || postings.taille > limite) {
+                continue;
+            }
+            for (int i = 0; i < postings.taille; i++) {
+                int id = postings.ids[i];
+                if (scores[id] > 0) {
+                    scores[id] += BONUS_MOT;
+                }
+            }
+        }
+
+        // Garder les k meilleurs (coefficient de Dice sur les trigrammes) dans un tas de taille k
+        PriorityQueue<Resultat> meilleurs = new PriorityQueue<>(k + 1,
+            (a, b) -> Double.compare(a.score, b.score));
+        for (int i = 0; i < nombreTouches; i++) {
+            int id = touches[i];
+            double score = 2.0 * scores[id] / (codes.length + nombreTrigrammes[id]);
+            scores[id] = 0;
+            Livre livre = livres.get(id);
+            if (livre == null) {
+                continue;
+            }
+            if (meilleurs.size() < k) {
+                meilleurs.add(new Resultat(livre, score));
+            } else if (score > meilleurs.peek().score) {
+                meilleurs.poll();
+                meilleurs.add(new Resultat(livre, score));
+            }
+        }
+
+        List<Resultat> resultats = new ArrayList<>(meilleurs);
+        resultats.sort((a, b) -> Double.compare(b.score, a.score));
+        return resultats;
+    }
+}
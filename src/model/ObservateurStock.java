@@ -0,0 +1,9 @@
+package model;
+
+/**
+ * Reçoit les variations du stock disponible d'un livre.
+ * Peut être appelé depuis n'importe quel thread qui modifie le stock.
+ */
+public interface ObservateurStock {
+    void stockModifie(Livre livre, int ancienneQuantite, int nouvelleQuantite);
+}
@@ -0,0 +1,97 @@
+package model;
+
+/**
+ * Critères d'une requête sur le catalogue, transmis sous la forme
+ * "auteur=Victor Hugo;dureeMin=21;exemplairesMin=2;page=0;taille=20".
+ * Tous les critères sont facultatifs ; "apres=titre" reprend les résultats après ce titre,
+ * curseur de page suivante renvoyé avec chaque page.
+ */
+public class RequeteCatalogue {
+    private String auteur;
+    private String auteurNormalise;
+    private int dureeMin = 0;
+    private int exemplairesMin = 0;
+    private int page = 0;
+    private int taille = 20;
+    private String apres;
+
+    public static RequeteCatalogue lire(String texte) {
+        RequeteCatalogue requete = new RequeteCatalogue();
+        for (String critere : texte.split(";")) {
+            int egal = critere.indexOf('=');
+            if (egal < 0) {
+                continue;
+            }
+            String cle = critere.substring(0, egal).trim();
+            String valeur = critere.substring(egal + 1).trim();
+            switch (cle) {
+                case "auteur":
+                    requete.auteur = valeur;
+                    requete.auteurNormalise = MoteurRecherche.normaliser(valeur);
+                    break;
+                case "dureeMin":
+                    requete.dureeMin = Integer.parseInt(valeur);
+                    break;
+                case "exemplairesMin":
+                    requete.exemplairesMin = Integer.parseInt(valeur);
+                    break;
+                case "disponible":
+                    if (Boolean.parseBoolean(valeur)) {
+                        requete.exemplairesMin = Math.max(requete.exemplairesMin, 1);
+                    }
+                    break;
+                case "page":
+                    requete.page = Integer.parseInt(valeur);
+                    break;
+                case "taille":
+                    requete.taille = Integer.parseInt(valeur);
+                    break;
+                case "apres":
+                    requete.apres = valeur;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Critère inconnu: " + cle);
+            }
+        }
+        if (requete.page < 0 || requete.taille < 1) {
+            throw new IllegalArgumentException("Page invalide: " + requete.page + ", taille " + requete.taille);
+        }
+        return requete;
+    }
+
+    public boolean accepte(Livre livre) {
+        return (auteurNormalise == null || auteurNormalise.equals(MoteurRecherche.normaliser(livre.getAuteur())))
+            && livre.getDureeEmpruntMax() >= dureeMin
+            && livre.getQuantiteDisponible() >= exemplairesMin;
+    }
+
+    public String getAuteur() {
+        return auteur;
+    }
+
+    public int getDureeMin() {
+        return dureeMin;
+    }
+
+    public int getExemplairesMin() {
+        return exemplairesMin;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getTaille() {
+        return taille;
+    }
+
+    public String getApres() {
+        return apres;
+    }
+
+    @Override
+    public String toString() {
+        return "Requête [auteur=" + auteur + ", durée min=" + dureeMin + ", exemplaires min=" + exemplairesMin +
+            ", page=" + page + ", taille=" + taille + (apres != null ? ", après=" + apres : "") + "]";
+    }
+}
@@ -1,5 +1,6 @@
 package model;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -19,6 +20,14 @@ public class ResultatRecherche implements Serializable {
         this.livresNonTrouves = new ArrayList<>();
     }
 
+    /**
+     * Résultat dimensionné pour le nombre de titres recherchés.
+     */
+    public ResultatRecherche(int nombreTitres) {
+        this.livresTrouves = new HashMap<>(nombreTitres * 4 / 3 + 1);
+        this.livresNonTrouves = new ArrayList<>(nombreTitres);
+    }
+
     public void ajouterLivreTrouve(String titre, Livre livre) {
         livresTrouves.put(titre, livre);
     }
@@ -27,6 +36,14 @@ public class ResultatRecherche implements Serializable {
         livresNonTrouves.add(titre);
     }
 
+    /**
+     * Ajoute à ce résultat un résultat partiel (autre fragment du catalogue, autre partie de la liste).
+     */
+    public void fusionner(ResultatRecherche partiel) {
+        livresTrouves.putAll(partiel.livresTrouves);
+        livresNonTrouves.addAll(partiel.livresNonTrouves);
+    }
+
     public Map<String, Livre> getLivresTrouves() {
         return livresTrouves;
     }
@@ -47,6 +64,69 @@ public class ResultatRecherche implements Serializable {
         return livresNonTrouves.isEmpty();
     }
 
+    /**
+     * Codage binaire du résultat d'une recherche portant sur les titres demandés, dans leur ordre :
+     * version, nombre de titres, un bit par titre (trouvé ou non), puis pour chaque livre trouvé
+     * son auteur, sa quantité disponible et sa durée d'emprunt maximale. Les titres ne sont pas
+     * transmis : le demandeur les connaît déjà.
+     */
+    public byte[] encoder(List<String> titresDemandes) {
+        int nombre = titresDemandes.size();
+        CodecBinaire.Ecrivain out = new CodecBinaire.Ecrivain(8 + nombre / 8 + livresTrouves.size() * 16, 64);
+        out.octet(CodecBinaire.VERSION);
+        out.varint(nombre);
+        Livre[] trouves = new Livre[nombre];
+        int bits = 0;
+        for (int i = 0; i < nombre; i++) {
+            trouves[i] = livresTrouves.get(titresDemandes.get(i));
+            if (trouves[i] != null) {
+                bits |= 1 << (i & 7);
+            }
+            if ((i & 7) == 7 || i == nombre - 1) {
+                out.octet(bits);
+                bits = 0;
+            }
+        }
+        for (Livre livre : trouves) {
+            if (livre != null) {
+                out.chaine(livre.getAuteur());
+                out.varint(livre.getQuantiteDisponible());
+                out.varint(livre.getDureeEmpruntMax());
+            }
+        }
+        return out.resultat();
+    }
+
+    public static ResultatRecherche decoder(byte[] contenu, List<String> titresDemandes) throws IOException {
+        CodecBinaire.Lecteur in = new CodecBinaire.Lecteur(contenu);
+        in.version();
+        int nombre = in.varint();
+        if (nombre != titresDemandes.size()) {
+            throw new IOException("Le résultat porte sur " + nombre + " titres au lieu de " + titresDemandes.size());
+        }
+        boolean[] trouve = new boolean[nombre];
+        int bits = 0;
+        for (int i = 0; i < nombre; i++) {
+            if ((i & 7) == 0) {
+                bits = in.octet();
+            }
+            trouve[i] = (bits & (1 << (i & 7))) != 0;
+        }
+        ResultatRecherche resultat = new ResultatRecherche();
+        for (int i = 0; i < nombre; i++) {
+            String titre = titresDemandes.get(i);
+            if (trouve[i]) {
+                String auteur = in.chaine();
+                int quantite = in.varint();
+                int duree = in.varint();
+                resultat.ajouterLivreTrouve(titre, new Livre(titre, auteur, quantite, duree));
+            } else {
+                resultat.ajouterLivreNonTrouve(titre);
+            }
+        }
+        return resultat;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
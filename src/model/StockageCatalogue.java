@@ -0,0 +1,101 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Stockage des livres d'une partition du catalogue ({@link CataloguePartitionne}).
+ * Les ajouts et retraits sont faits par un seul thread à la fois, celui qui prépare la version
+ * suivante du catalogue ; les lectures peuvent venir de n'importe quel thread. Le stock des
+ * livres renvoyés se manipule par les opérations atomiques de {@link Livre}.
+ */
+public interface StockageCatalogue {
+
+    /**
+     * Stockages en mémoire, choisis par l'argument "stockage" de la bibliothécaire.
+     */
+    enum Type {
+        // Table de hachage des objets Livre
+        TABLE,
+        // Colonnes de types primitifs, titres et auteurs codés, vues Livre créées à la demande
+        COLONNES;
+
+        public StockageCatalogue creer() {
+            return this == COLONNES ? new StockageColonnes() : new StockageTable();
+        }
+    }
+
+    /**
+     * Livre du titre, ou null s'il est absent.
+     */
+    Livre obtenir(String titre);
+
+    /**
+     * Ajoute le livre, ou remplace celui de même titre.
+     */
+    void ajouter(Livre livre);
+
+    /**
+     * Retire le livre du titre et le renvoie, ou null s'il est absent.
+     * @throws UnsupportedOperationException si le stockage n'accepte pas les retraits
+     */
+    default Livre retirer(String titre) {
+        throw new UnsupportedOperationException("Ce stockage n'accepte pas le retrait de titres");
+    }
+
+    default boolean accepteRetraits() {
+        return false;
+    }
+
+    /**
+     * Stockage à modifier pour préparer la version suivante du catalogue : une copie, qui partage
+     * les objets Livre, si les versions publiées ne doivent plus changer, ou le stockage lui-même
+     * s'il n'ajoute qu'en place.
+     */
+    default StockageCatalogue copie() {
+        return this;
+    }
+
+    /**
+     * Vue figée de la composition actuelle du stockage, que les modifications suivantes ne
+     * touchent pas.
+     */
+    StockageCatalogue instantane();
+
+    int taille();
+
+    void pourChaqueLivre(Consumer<Livre> action);
+
+    /**
+     * Observateur prévenu des variations de stock de tous les livres, présents et à venir.
+     */
+    void setObservateurStock(ObservateurStock observateur);
+
+    /**
+     * Écrit sur disque l'état courant du stockage, titres ajoutés et stock compris ; sans effet
+     * pour un stockage en mémoire. Peut être appelé depuis n'importe quel thread.
+     */
+    default void synchroniser() {
+    }
+
+    /**
+     * Libère les ressources du stockage une fois la partition arrêtée.
+     */
+    default void fermer() {
+    }
+
+    /**
+     * Ouvre, ou crée, le stockage hors du tas d'une partition, projeté en mémoire depuis des
+     * fichiers du répertoire donné ({@link StockageProjete}).
+     * @throws UncheckedIOException si les fichiers ne peuvent être ouverts ou viennent d'un autre partitionnement
+     */
+    static StockageCatalogue projete(File repertoire, int partition, int partitions) {
+        try {
+            return new StockageProjete(repertoire, partition, partitions);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
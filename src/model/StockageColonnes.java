@@ -0,0 +1,235 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Stockage d'une partition en colonnes, sans objet par livre.
+ *
+ * Les titres sont écrits bout à bout en UTF-8 dans une seule zone d'octets et retrouvés par une
+ * table à adressage ouvert (sondage linéaire) dont chaque case tient le hachage du titre et le
+ * numéro du livre : une case occupée par un autre titre est écartée sans autre lecture. Les
+ * auteurs sont codés par un dictionnaire. Numéro d'auteur, durée et stock sont rangés dans des colonnes de types primitifs découpées en segments de 4096 livres : un
+ * segment n'est jamais recopié, si bien qu'une opération de stock (CAS) concurrente à un
+ * agrandissement n'est pas perdue. Les livres sont exposés par des vues ({@link LivreColonne})
+ * créées à la demande.
+ *
+ * Un seul thread ajoute ; les lecteurs lisent d'abord le nombre de livres (volatile), publié
+ * après toutes les écritures d'un ajout, et ignorent les numéros au-delà.
+ */
+final class StockageColonnes implements StockageCatalogue {
+    private static final int BITS_SEGMENT = 12;
+    private static final int TAILLE_SEGMENT = 1 << BITS_SEGMENT;
+    private static final int MASQUE_SEGMENT = TAILLE_SEGMENT - 1;
+
+    // Colonnes d'un segment de livres
+    private static final class Segment {
+        final int[] finTitre = new int[TAILLE_SEGMENT];
+        final int[] auteur = new int[TAILLE_SEGMENT];
+        final int[] duree = new int[TAILLE_SEGMENT];
+        // Disponibles et réservés codés en un mot, comme dans Livre
+        final AtomicLongArray stock = new AtomicLongArray(TAILLE_SEGMENT);
+    }
+
+    private volatile int nombre = 0;
+    private volatile Segment[] segments = new Segment[0];
+    private volatile byte[] titres = new byte[1024];
+    private int tailleTitres = 0;
+
+    // Table à adressage ouvert : hachage du titre sur 32 bits, numéro de livre + 1 ; 0 pour une case vide
+    private volatile long[] table = new long[16];
+
+    // Dictionnaire des auteurs : lecture par numéro, recherche du numéro par l'écrivain seul
+    private volatile String[] auteurs = new String[16];
+    private final Map<String, Integer> numerosAuteurs = new HashMap<>();
+
+    private volatile ObservateurStock observateur;
+
+    private static int hacher(String titre) {
+        int h = titre.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment segment(int id) {
+        return segments[id >>> BITS_SEGMENT];
+    }
+
+    /**
+     * Numéro du livre, ou -1 s'il est absent.
+     */
+    int chercher(String titre) {
+        int n = nombre;
+        long[] cases = table;
+        int h = hacher(titre);
+        int masque = cases.length - 1;
+        for (int i = h & masque; ; i = (i + 1) & masque) {
+            long c = cases[i];
+            int numero = (int) c - 1;
+            if (numero < 0) {
+                return -1;
+            }
+            if ((int) (c >>> 32) == h && numero < n && titreEgal(numero, titre)) {
+                return numero;
+            }
+        }
+    }
+
+    private int debutTitre(int id) {
+        return id == 0 ? 0 : segment(id - 1).finTitre[(id - 1) & MASQUE_SEGMENT];
+    }
+
+    // Compare les octets du titre rangé au titre demandé, sans décoder tant qu'ils sont ASCII
+    private boolean titreEgal(int id, String titre) {
+        byte[] octets = titres;
+        int debut = debutTitre(id);
+        int fin = segment(id).finTitre[id & MASQUE_SEGMENT];
+        int longueur = titre.length();
+        if (fin - debut < longueur) {
+            return false;
+        }
+        int j = debut;
+        for (int i = 0; i < longueur; i++) {
+            char c = titre.charAt(i);
+            if (c >= 0x80) {
+                return new String(octets, debut, fin - debut, StandardCharsets.UTF_8).equals(titre);
+            }
+            if (octets[j++] != c) {
+                return false;
+            }
+        }
+        return j == fin;
+    }
+
+    @Override
+    public Livre obtenir(String titre) {
+        int id = chercher(titre);
+        return id < 0 ? null : new LivreColonne(this, id);
+    }
+
+    @Override
+    public void ajouter(Livre livre) {
+        int id = chercher(livre.getTitre());
+        if (id >= 0) {
+            // Remplacement : mêmes colonnes, nouvelles valeurs
+            Segment s = segment(id);
+            int i = id & MASQUE_SEGMENT;
+            s.auteur[i] = numeroAuteur(livre.getAuteur());
+            s.duree[i] = livre.getDureeEmpruntMax();
+            s.stock.set(i, Livre.stock(livre.getQuantiteDisponible(), livre.getQuantiteReservee()));
+            return;
+        }
+
+        id = nombre;
+        if (id >> BITS_SEGMENT == segments.length) {
+            Segment[] plus = Arrays.copyOf(segments, segments.length + 1);
+            plus[segments.length] = new Segment();
+            segments = plus;
+        }
+        byte[] titre = livre.getTitre().getBytes(StandardCharsets.UTF_8);
+        if (tailleTitres + titre.length > titres.length) {
+            titres = Arrays.copyOf(titres, Math.max(titres.length * 2, tailleTitres + titre.length));
+        }
+        System.arraycopy(titre, 0, titres, tailleTitres, titre.length);
+        tailleTitres += titre.length;
+
+        Segment s = segment(id);
+        int i = id & MASQUE_SEGMENT;
+        int h = hacher(livre.getTitre());
+        s.finTitre[i] = tailleTitres;
+        s.auteur[i] = numeroAuteur(livre.getAuteur());
+        s.duree[i] = livre.getDureeEmpruntMax();
+        s.stock.set(i, Livre.stock(livre.getQuantiteDisponible(), livre.getQuantiteReservee()));
+
+        // Table remplie aux trois quarts au plus
+        if ((id + 1) * 4L > table.length * 3L) {
+            long[] agrandie = new long[table.length * 2];
+            for (long c : table) {
+                if (c != 0) {
+                    inserer(agrandie, c);
+                }
+            }
+            table = agrandie;
+        }
+        inserer(table, (long) h << 32 | (id + 1));
+        nombre = id + 1;
+    }
+
+    private static void inserer(long[] cases, long c) {
+        int masque = cases.length - 1;
+        int i = (int) (c >>> 32) & masque;
+        while (cases[i] != 0) {
+            i = (i + 1) & masque;
+        }
+        cases[i] = c;
+    }
+
+    private int numeroAuteur(String auteur) {
+        Integer numero = numerosAuteurs.get(auteur);
+        if (numero == null) {
+            numero = numerosAuteurs.size();
+            if (numero == auteurs.length) {
+                auteurs = Arrays.copyOf(auteurs, auteurs.length * 2);
+            }
+            auteurs[numero] = auteur;
+            numerosAuteurs.put(auteur, numero);
+        }
+        return numero;
+    }
+
+    @Override
+    public int taille() {
+        return nombre;
+    }
+
+    @Override
+    public void pourChaqueLivre(Consumer<Livre> action) {
+        int n = nombre;
+        for (int id = 0; id < n; id++) {
+            action.accept(new LivreColonne(this, id));
+        }
+    }
+
+    @Override
+    public StockageCatalogue instantane() {
+        return new StockagePrefixe(this::chercher, id -> new LivreColonne(this, id), nombre);
+    }
+
+    @Override
+    public void setObservateurStock(ObservateurStock observateur) {
+        this.observateur = observateur;
+    }
+
+    // Accès aux colonnes par les vues
+
+    String titre(int id) {
+        int debut = debutTitre(id);
+        return new String(titres, debut, segment(id).finTitre[id & MASQUE_SEGMENT] - debut, StandardCharsets.UTF_8);
+    }
+
+    String auteur(int id) {
+        return auteurs[segment(id).auteur[id & MASQUE_SEGMENT]];
+    }
+
+    int duree(int id) {
+        return segment(id).duree[id & MASQUE_SEGMENT];
+    }
+
+    AtomicLongArray stock(int id) {
+        return segment(id).stock;
+    }
+
+    static int indice(int id) {
+        return id & MASQUE_SEGMENT;
+    }
+
+    void notifier(LivreColonne livre, int ancienne, int nouvelle) {
+        ObservateurStock o = observateur;
+        if (o != null && ancienne != nouvelle) {
+            o.stockModifie(livre, ancienne, nouvelle);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package model;
+
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Instantané d'un stockage qui n'ajoute qu'en place (colonnes, projeté) : seuls les livres
+ * numérotés avant la prise de l'instantané restent visibles. Le stock des livres reste partagé.
+ */
+final class StockagePrefixe implements StockageCatalogue {
+    private final ToIntFunction<String> chercher;
+    private final IntFunction<Livre> vue;
+    private final int nombre;
+
+    StockagePrefixe(ToIntFunction<String> chercher, IntFunction<Livre> vue, int nombre) {
+        this.chercher = chercher;
+        this.vue = vue;
+        this.nombre = nombre;
+    }
+
+    @Override
+    public Livre obtenir(String titre) {
+        int id = chercher.applyAsInt(titre);
+        return id < 0 || id >= nombre ? null : vue.apply(id);
+    }
+
+    @Override
+    public void ajouter(Livre livre) {
+        throw new UnsupportedOperationException("Instantané en lecture seule");
+    }
+
+    @Override
+    public int taille() {
+        return nombre;
+    }
+
+    @Override
+    public void pourChaqueLivre(Consumer<Livre> action) {
+        for (int id = 0; id < nombre; id++) {
+            action.accept(vue.apply(id));
+        }
+    }
+
+    @Override
+    public StockageCatalogue instantane() {
+        return this;
+    }
+
+    @Override
+    public void setObservateurStock(ObservateurStock observateur) {
+        throw new UnsupportedOperationException("Instantané en lecture seule");
+    }
+}
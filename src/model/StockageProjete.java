@@ -0,0 +1,541 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Stockage d'une partition dans des fichiers projetés en mémoire (memory-mapped), hors du tas.
+ *
+ * Trois fichiers par partition dans le répertoire de la bibliothécaire :
+ * - catalogue-N.idx : en-tête (nombre de livres, taille des textes) puis table à adressage
+ *   ouvert dont chaque case tient le hachage du titre et le numéro du livre ;
+ * - catalogue-N.rec : enregistrements de 32 octets (stock disponible et réservé, durée,
+ *   position et longueur du titre, position de l'auteur) ;
+ * - catalogue-N.txt : titres et auteurs en UTF-8, un auteur n'étant écrit qu'une fois par session.
+ *
+ * Le stock est modifié en place sous le verrou d'une bande de livres (pas de CAS sur un tampon
+ * projeté en Java 8). Au redémarrage, les fichiers sont projetés tels quels : aucun livre n'est
+ * relu. Le système réécrit les pages modifiées quand il le veut ; seul {@link #synchroniser()}
+ * garantit qu'elles sont sur disque. Il force enregistrements et textes avant de mettre à jour
+ * l'en-tête (nombre de livres, taille des textes) : après un arrêt brutal, les fichiers rouverts
+ * contiennent les livres et le stock de la dernière synchronisation, les changements suivants
+ * pouvant être perdus en tout ou partie. Les réservations, qui n'existent que le temps d'un bail
+ * en mémoire, sont remises en stock disponible à l'ouverture.
+ *
+ * Comme pour {@link StockageColonnes}, un seul thread ajoute et les lecteurs ignorent les numéros
+ * au-delà du nombre de livres publié.
+ */
+final class StockageProjete implements StockageCatalogue {
+    private static final int MAGIC = 0x43415450; // "CATP"
+    private static final int VERSION = 1;
+
+    // En-tête du fichier d'index
+    private static final int ENTETE_MAGIC = 0;
+    private static final int ENTETE_VERSION = 4;
+    private static final int ENTETE_PARTITION = 8;
+    private static final int ENTETE_PARTITIONS = 12;
+    private static final int ENTETE_NOMBRE = 16;
+    private static final int ENTETE_TEXTES = 24;
+    private static final int TAILLE_ENTETE = 64;
+    private static final int CASES_INITIALES = 1024;
+
+    // Enregistrement d'un livre
+    private static final int DISPONIBLE = 0;
+    private static final int RESERVEE = 4;
+    private static final int DUREE = 8;
+    private static final int LONGUEUR_TITRE = 12;
+    private static final int TITRE = 16;
+    private static final int AUTEUR = 24;
+    private static final int TAILLE_ENREGISTREMENT = 32;
+
+    private static final int BANDES = 64;
+
+    /**
+     * Fichier projeté par morceaux d'au plus 1 Gio, agrandi par le thread d'écriture.
+     * Une donnée ne chevauche jamais deux morceaux.
+     */
+    private static final class Zone {
+        private static final int BITS_MORCEAU = 30;
+        private static final long TAILLE_MORCEAU = 1L << BITS_MORCEAU;
+
+        private final RandomAccessFile fichier;
+        private volatile MappedByteBuffer[] morceaux = new MappedByteBuffer[0];
+        private long capacite = 0;
+
+        Zone(File chemin) throws IOException {
+            fichier = new RandomAccessFile(chemin, "rw");
+            garantir(Math.max(fichier.length(), 64 * 1024));
+        }
+
+        // Projette au moins "taille" octets, en doublant jusqu'à un morceau puis morceau par morceau
+        void garantir(long taille) throws IOException {
+            if (taille <= capacite) {
+                return;
+            }
+            long nouvelle = Math.max(taille, Math.min(2 * capacite, capacite + TAILLE_MORCEAU));
+            int n = (int) ((nouvelle + TAILLE_MORCEAU - 1) >>> BITS_MORCEAU);
+            MappedByteBuffer[] plus = Arrays.copyOf(morceaux, n);
+            for (int k = 0; k < n; k++) {
+                long debut = (long) k << BITS_MORCEAU;
+                long longueur = Math.min(TAILLE_MORCEAU, nouvelle - debut);
+                if (plus[k] == null || plus[k].capacity() < longueur) {
+                    plus[k] = fichier.getChannel().map(FileChannel.MapMode.READ_WRITE, debut, longueur);
+                }
+            }
+            morceaux = plus;
+            capacite = nouvelle;
+        }
+
+        // Position du prochain morceau si "longueur" octets à partir de "position" en chevauchent deux
+        static long aligner(long position, int longueur) {
+            long fin = (position & (TAILLE_MORCEAU - 1)) + longueur;
+            return fin > TAILLE_MORCEAU ? (position | (TAILLE_MORCEAU - 1)) + 1 : position;
+        }
+
+        ByteBuffer morceau(long position) {
+            return morceaux[(int) (position >>> BITS_MORCEAU)];
+        }
+
+        static int decalage(long position) {
+            return (int) (position & (TAILLE_MORCEAU - 1));
+        }
+
+        int getInt(long position) {
+            return morceau(position).getInt(decalage(position));
+        }
+
+        long getLong(long position) {
+            return morceau(position).getLong(decalage(position));
+        }
+
+        void putInt(long position, int valeur) {
+            morceau(position).putInt(decalage(position), valeur);
+        }
+
+        void putLong(long position, long valeur) {
+            morceau(position).putLong(decalage(position), valeur);
+        }
+
+        byte[] lire(long position, int longueur) {
+            ByteBuffer vue = morceau(position).duplicate();
+            vue.position(decalage(position));
+            byte[] octets = new byte[longueur];
+            vue.get(octets);
+            return octets;
+        }
+
+        void ecrire(long position, byte[] octets) {
+            ByteBuffer vue = morceau(position).duplicate();
+            vue.position(decalage(position));
+            vue.put(octets);
+        }
+
+        void forcer() {
+            for (MappedByteBuffer morceau : morceaux) {
+                morceau.force();
+            }
+        }
+
+        void fermer() throws IOException {
+            forcer();
+            fichier.close();
+        }
+    }
+
+    private final File fichierTable;
+    private final int partition;
+    private final int partitions;
+    private final Zone enregistrements;
+    private final Zone textes;
+
+    // Table à adressage ouvert précédée de l'en-tête ; remplacée par un fichier deux fois plus grand
+    private volatile MappedByteBuffer table;
+    private volatile int nombre;
+    private volatile long tailleTextes;
+
+    // Auteurs déjà écrits pendant cette session : position dans les textes
+    private final Map<String, Long> positionsAuteurs = new HashMap<>();
+
+    private final Object[] verrous = new Object[BANDES];
+    private volatile ObservateurStock observateur;
+
+    /**
+     * Ouvre les fichiers de la partition, ou les crée s'ils n'existent pas.
+     * @throws IOException si les fichiers existent mais ne correspondent pas à ce partitionnement
+     */
+    StockageProjete(File repertoire, int partition, int partitions) throws IOException {
+        if (!repertoire.isDirectory() && !repertoire.mkdirs()) {
+            throw new IOException("Impossible de créer le répertoire " + repertoire);
+        }
+        this.partition = partition;
+        this.partitions = partitions;
+        for (int i = 0; i < BANDES; i++) {
+            verrous[i] = new Object();
+        }
+
+        fichierTable = new File(repertoire, "catalogue-" + partition + ".idx");
+        if (fichierTable.exists()) {
+            MappedByteBuffer existante;
+            try (RandomAccessFile fichier = new RandomAccessFile(fichierTable, "rw")) {
+                existante = fichier.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fichier.length());
+            }
+            if (existante.capacity() < TAILLE_ENTETE || existante.getInt(ENTETE_MAGIC) != MAGIC ||
+                existante.getInt(ENTETE_VERSION) != VERSION) {
+                throw new IOException(fichierTable + " n'est pas un catalogue projeté");
+            }
+            if (existante.getInt(ENTETE_PARTITION) != partition || existante.getInt(ENTETE_PARTITIONS) != partitions) {
+                throw new IOException(fichierTable + " appartient à la partition " + existante.getInt(ENTETE_PARTITION) +
+                    " sur " + existante.getInt(ENTETE_PARTITIONS) + ", pas " + partition + " sur " + partitions);
+            }
+            tailleTextes = existante.getLong(ENTETE_TEXTES);
+            table = existante;
+            nombre = existante.getInt(ENTETE_NOMBRE);
+        } else {
+            table = creerTable(fichierTable, CASES_INITIALES);
+        }
+        enregistrements = new Zone(new File(repertoire, "catalogue-" + partition + ".rec"));
+        textes = new Zone(new File(repertoire, "catalogue-" + partition + ".txt"));
+        libererReservations();
+    }
+
+    // Les baux ne survivent pas à un redémarrage : les exemplaires réservés à l'arrêt reviennent en
+    // rayon, sans quoi aucune expiration ne les libérerait jamais
+    private void libererReservations() {
+        boolean liberees = false;
+        for (int id = 0; id < nombre; id++) {
+            long p = position(id);
+            int reservee = enregistrements.getInt(p + RESERVEE);
+            if (reservee != 0) {
+                enregistrements.putInt(p + DISPONIBLE, enregistrements.getInt(p + DISPONIBLE) + reservee);
+                enregistrements.putInt(p + RESERVEE, 0);
+                liberees = true;
+            }
+        }
+        if (liberees) {
+            enregistrements.forcer();
+        }
+    }
+
+    private MappedByteBuffer creerTable(File fichier, int cases) throws IOException {
+        MappedByteBuffer nouvelle;
+        try (RandomAccessFile raf = new RandomAccessFile(fichier, "rw")) {
+            raf.setLength(0);
+            raf.setLength(TAILLE_ENTETE + 8L * cases);
+            nouvelle = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+        nouvelle.putInt(ENTETE_MAGIC, MAGIC);
+        nouvelle.putInt(ENTETE_VERSION, VERSION);
+        nouvelle.putInt(ENTETE_PARTITION, partition);
+        nouvelle.putInt(ENTETE_PARTITIONS, partitions);
+        nouvelle.putInt(ENTETE_NOMBRE, nombre);
+        nouvelle.putLong(ENTETE_TEXTES, tailleTextes);
+        return nouvelle;
+    }
+
+    private static int cases(MappedByteBuffer table) {
+        return (table.capacity() - TAILLE_ENTETE) >>> 3;
+    }
+
+    private static int hacher(String titre) {
+        int h = titre.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static long position(int id) {
+        return (long) id * TAILLE_ENREGISTREMENT;
+    }
+
+    /**
+     * Numéro du livre, ou -1 s'il est absent.
+     */
+    int chercher(String titre) {
+        int n = nombre;
+        MappedByteBuffer cases = table;
+        int h = hacher(titre);
+        int masque = cases(cases) - 1;
+        for (int i = h & masque; ; i = (i + 1) & masque) {
+            long c = cases.getLong(TAILLE_ENTETE + 8 * i);
+            int numero = (int) c - 1;
+            if (numero < 0) {
+                return -1;
+            }
+            if ((int) (c >>> 32) == h && numero < n && titreEgal(numero, titre)) {
+                return numero;
+            }
+        }
+    }
+
+    // Compare les octets du titre rangé au titre demandé, sans décoder tant qu'ils sont ASCII
+    private boolean titreEgal(int id, String titre) {
+        int longueurRangee = enregistrements.getInt(position(id) + LONGUEUR_TITRE);
+        int longueur = titre.length();
+        if (longueurRangee < longueur) {
+            return false;
+        }
+        long debut = enregistrements.getLong(position(id) + TITRE);
+        ByteBuffer octets = textes.morceau(debut);
+        int j = Zone.decalage(debut);
+        for (int i = 0; i < longueur; i++) {
+            char c = titre.charAt(i);
+            if (c >= 0x80) {
+                return titre(id).equals(titre);
+            }
+            if (octets.get(j + i) != c) {
+                return false;
+            }
+        }
+        return longueurRangee == longueur;
+    }
+
+    @Override
+    public Livre obtenir(String titre) {
+        int id = chercher(titre);
+        return id < 0 ? null : new LivreProjete(this, id);
+    }
+
+    // Exclusif avec synchroniser(), qui doit voir les enregistrements et l'en-tête d'un même état
+    @Override
+    public synchronized void ajouter(Livre livre) {
+        try {
+            int id = chercher(livre.getTitre());
+            if (id >= 0) {
+                // Remplacement : même enregistrement, nouvelles valeurs
+                long p = position(id);
+                enregistrements.putLong(p + AUTEUR, positionAuteur(livre.getAuteur()));
+                enregistrements.putInt(p + DUREE, livre.getDureeEmpruntMax());
+                synchronized (verrou(id)) {
+                    enregistrements.putInt(p + RESERVEE, livre.getQuantiteReservee());
+                    enregistrements.putInt(p + DISPONIBLE, livre.getQuantiteDisponible());
+                }
+                return;
+            }
+
+            id = nombre;
+            byte[] titre = livre.getTitre().getBytes(StandardCharsets.UTF_8);
+            long positionTitre = ecrireTexte(titre, false);
+            long positionAuteur = positionAuteur(livre.getAuteur());
+
+            long p = position(id);
+            enregistrements.garantir(p + TAILLE_ENREGISTREMENT);
+            enregistrements.putInt(p + DISPONIBLE, livre.getQuantiteDisponible());
+            enregistrements.putInt(p + RESERVEE, livre.getQuantiteReservee());
+            enregistrements.putInt(p + DUREE, livre.getDureeEmpruntMax());
+            enregistrements.putInt(p + LONGUEUR_TITRE, titre.length);
+            enregistrements.putLong(p + TITRE, positionTitre);
+            enregistrements.putLong(p + AUTEUR, positionAuteur);
+
+            // Table remplie aux trois quarts au plus
+            MappedByteBuffer cases = table;
+            if ((id + 1) * 4L > cases(cases) * 3L) {
+                cases = agrandirTable(cases);
+            }
+            inserer(cases, (long) hacher(livre.getTitre()) << 32 | (id + 1));
+            nombre = id + 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void inserer(MappedByteBuffer cases, long c) {
+        int masque = cases(cases) - 1;
+        int i = (int) (c >>> 32) & masque;
+        while (cases.getLong(TAILLE_ENTETE + 8 * i) != 0) {
+            i = (i + 1) & masque;
+        }
+        cases.putLong(TAILLE_ENTETE + 8 * i, c);
+    }
+
+    // Recopie la table dans un nouveau fichier deux fois plus grand, substitué à l'ancien d'un seul
+    // renommage : les lecteurs en cours gardent l'ancienne projection, toujours valide
+    private MappedByteBuffer agrandirTable(MappedByteBuffer ancienne) throws IOException {
+        File temporaire = new File(fichierTable.getPath() + ".tmp");
+        MappedByteBuffer agrandie = creerTable(temporaire, 2 * cases(ancienne));
+        for (int i = 0, n = cases(ancienne); i < n; i++) {
+            long c = ancienne.getLong(TAILLE_ENTETE + 8 * i);
+            if (c != 0) {
+                inserer(agrandie, c);
+            }
+        }
+        // L'en-tête recopié désigne tous les livres : ils doivent être sur disque avant lui
+        enregistrements.forcer();
+        textes.forcer();
+        agrandie.force();
+        Files.move(temporaire.toPath(), fichierTable.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        table = agrandie;
+        return agrandie;
+    }
+
+    // Écrit un texte à la suite des autres, précédé de sa longueur si demandé
+    private long ecrireTexte(byte[] octets, boolean avecLongueur) throws IOException {
+        int longueur = octets.length + (avecLongueur ? 4 : 0);
+        long position = Zone.aligner(tailleTextes, longueur);
+        textes.garantir(position + longueur);
+        if (avecLongueur) {
+            textes.putInt(position, octets.length);
+            textes.ecrire(position + 4, octets);
+        } else {
+            textes.ecrire(position, octets);
+        }
+        tailleTextes = position + longueur;
+        return position;
+    }
+
+    private long positionAuteur(String auteur) throws IOException {
+        Long position = positionsAuteurs.get(auteur);
+        if (position == null) {
+            position = ecrireTexte(auteur.getBytes(StandardCharsets.UTF_8), true);
+            positionsAuteurs.put(auteur, position);
+        }
+        return position;
+    }
+
+    @Override
+    public int taille() {
+        return nombre;
+    }
+
+    @Override
+    public void pourChaqueLivre(Consumer<Livre> action) {
+        int n = nombre;
+        for (int id = 0; id < n; id++) {
+            action.accept(new LivreProjete(this, id));
+        }
+    }
+
+    @Override
+    public StockageCatalogue instantane() {
+        return new StockagePrefixe(this::chercher, id -> new LivreProjete(this, id), nombre);
+    }
+
+    @Override
+    public void setObservateurStock(ObservateurStock observateur) {
+        this.observateur = observateur;
+    }
+
+    /**
+     * Force enregistrements et textes sur disque, puis l'en-tête qui les désigne : le nombre de
+     * livres n'y est écrit qu'une fois les livres eux-mêmes sur disque.
+     */
+    @Override
+    public synchronized void synchroniser() {
+        enregistrements.forcer();
+        textes.forcer();
+        MappedByteBuffer cases = table;
+        cases.putLong(ENTETE_TEXTES, tailleTextes);
+        cases.putInt(ENTETE_NOMBRE, nombre);
+        cases.force();
+    }
+
+    /**
+     * Synchronise les fichiers puis les ferme ; les vues restent lisibles.
+     */
+    @Override
+    public void fermer() {
+        try {
+            synchroniser();
+            enregistrements.fermer();
+            textes.fermer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Accès aux enregistrements par les vues
+
+    String titre(int id) {
+        long p = position(id);
+        byte[] octets = textes.lire(enregistrements.getLong(p + TITRE), enregistrements.getInt(p + LONGUEUR_TITRE));
+        return new String(octets, StandardCharsets.UTF_8);
+    }
+
+    String auteur(int id) {
+        long position = enregistrements.getLong(position(id) + AUTEUR);
+        return new String(textes.lire(position + 4, textes.getInt(position)), StandardCharsets.UTF_8);
+    }
+
+    int duree(int id) {
+        return enregistrements.getInt(position(id) + DUREE);
+    }
+
+    private Object verrou(int id) {
+        return verrous[id & (BANDES - 1)];
+    }
+
+    // Le stock est lu sous le verrou de sa bande, qui en garantit la visibilité entre threads
+    int disponible(int id) {
+        synchronized (verrou(id)) {
+            return enregistrements.getInt(position(id) + DISPONIBLE);
+        }
+    }
+
+    int reservee(int id) {
+        synchronized (verrou(id)) {
+            return enregistrements.getInt(position(id) + RESERVEE);
+        }
+    }
+
+    int enRayon(int id) {
+        synchronized (verrou(id)) {
+            long p = position(id);
+            return enregistrements.getInt(p + DISPONIBLE) + enregistrements.getInt(p + RESERVEE);
+        }
+    }
+
+    void fixerDisponible(LivreProjete livre, int id, int quantite) {
+        int ancienne;
+        synchronized (verrou(id)) {
+            ancienne = enregistrements.getInt(position(id) + DISPONIBLE);
+            enregistrements.putInt(position(id) + DISPONIBLE, quantite);
+        }
+        notifier(livre, ancienne, quantite);
+    }
+
+    boolean reserver(LivreProjete livre, int id, int nombre) {
+        int actuelle;
+        synchronized (verrou(id)) {
+            long p = position(id);
+            actuelle = enregistrements.getInt(p + DISPONIBLE);
+            if (actuelle < nombre) {
+                return false;
+            }
+            enregistrements.putInt(p + DISPONIBLE, actuelle - nombre);
+            enregistrements.putInt(p + RESERVEE, enregistrements.getInt(p + RESERVEE) + nombre);
+        }
+        notifier(livre, actuelle, actuelle - nombre);
+        return true;
+    }
+
+    /**
+     * Ajoute les écarts au stock disponible et réservé du livre.
+     */
+    void modifier(LivreProjete livre, int id, int disponible, int reservee) {
+        int ancienne;
+        synchronized (verrou(id)) {
+            long p = position(id);
+            ancienne = enregistrements.getInt(p + DISPONIBLE);
+            enregistrements.putInt(p + DISPONIBLE, ancienne + disponible);
+            enregistrements.putInt(p + RESERVEE, enregistrements.getInt(p + RESERVEE) + reservee);
+        }
+        notifier(livre, ancienne, ancienne + disponible);
+    }
+
+    private void notifier(LivreProjete livre, int ancienne, int nouvelle) {
+        ObservateurStock o = observateur;
+        if (o != null && ancienne != nouvelle) {
+            o.stockModifie(livre, ancienne, nouvelle);
+        }
+    }
+}
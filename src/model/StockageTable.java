@@ -0,0 +1,75 @@
+package model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Stockage d'une partition dans une table concurrente titre → livre.
+ * Une table publiée dans une version du catalogue n'est plus modifiée : la version suivante est
+ * préparée sur une copie, qui partage les objets Livre et donc leur stock.
+ */
+final class StockageTable implements StockageCatalogue {
+    private final Map<String, Livre> livres;
+    private volatile ObservateurStock observateur;
+
+    StockageTable() {
+        this.livres = new ConcurrentHashMap<>();
+    }
+
+    private StockageTable(StockageTable source) {
+        this.livres = new ConcurrentHashMap<>(source.livres);
+        this.observateur = source.observateur;
+    }
+
+    @Override
+    public Livre obtenir(String titre) {
+        return livres.get(titre);
+    }
+
+    @Override
+    public void ajouter(Livre livre) {
+        if (observateur != null) {
+            livre.setObservateurStock(observateur);
+        }
+        livres.put(livre.getTitre(), livre);
+    }
+
+    @Override
+    public Livre retirer(String titre) {
+        return livres.remove(titre);
+    }
+
+    @Override
+    public boolean accepteRetraits() {
+        return true;
+    }
+
+    @Override
+    public StockageCatalogue copie() {
+        return new StockageTable(this);
+    }
+
+    @Override
+    public StockageCatalogue instantane() {
+        return this;
+    }
+
+    @Override
+    public int taille() {
+        return livres.size();
+    }
+
+    @Override
+    public void pourChaqueLivre(Consumer<Livre> action) {
+        livres.values().forEach(action);
+    }
+
+    @Override
+    public void setObservateurStock(ObservateurStock observateur) {
+        this.observateur = observateur;
+        for (Livre livre : livres.values()) {
+            livre.setObservateurStock(observateur);
+        }
+    }
+}
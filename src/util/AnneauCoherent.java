@@ -0,0 +1,84 @@
+package util;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Anneau de hachage cohérent. Chaque nœud occupe plusieurs positions virtuelles sur l'anneau ;
+ * une clé appartient au premier nœud rencontré dans le sens horaire. Ajouter ou retirer un nœud
+ * parmi N ne déplace qu'environ 1/N des clés.
+ */
+public class AnneauCoherent<T> {
+    private static final int NOEUDS_VIRTUELS = 160;
+
+    private final TreeMap<Long, T> anneau = new TreeMap<>();
+    private final Set<String> identifiants = new HashSet<>();
+
+    public AnneauCoherent() {
+    }
+
+    public AnneauCoherent(Collection<String> identifiants, Function<String, T> noeud) {
+        for (String id : identifiants) {
+            ajouter(id, noeud.apply(id));
+        }
+    }
+
+    public void ajouter(String identifiant, T noeud) {
+        if (!identifiants.add(identifiant)) {
+            retirer(identifiant);
+            identifiants.add(identifiant);
+        }
+        for (int i = 0; i < NOEUDS_VIRTUELS; i++) {
+            anneau.put(hacher(identifiant + "#" + i), noeud);
+        }
+    }
+
+    public void retirer(String identifiant) {
+        if (identifiants.remove(identifiant)) {
+            for (int i = 0; i < NOEUDS_VIRTUELS; i++) {
+                anneau.remove(hacher(identifiant + "#" + i));
+            }
+        }
+    }
+
+    /**
+     * Nœud propriétaire de la clé, ou null si l'anneau est vide.
+     */
+    public T proprietaire(String cle) {
+        if (anneau.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, T> entree = anneau.ceilingEntry(hacher(cle));
+        return entree != null ? entree.getValue() : anneau.firstEntry().getValue();
+    }
+
+    public int taille() {
+        return identifiants.size();
+    }
+
+    public boolean estVide() {
+        return identifiants.isEmpty();
+    }
+
+    /**
+     * Hachage 64 bits stable d'une chaîne (FNV-1a suivi d'un brassage final),
+     * identique sur tous les agents quelle que soit la JVM.
+     */
+    public static long hacher(String cle) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < cle.length(); i++) {
+            h ^= cle.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+}
@@ -0,0 +1,109 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Filtre de Bloom sur des chaînes : répond "absent à coup sûr" ou "peut-être présent".
+ *
+ * Le filtre est découpé en blocs de 512 bits (une ligne de cache) : toutes les positions d'une
+ * clé tombent dans le même bloc, si bien qu'une consultation ne lit qu'une ligne de cache au
+ * lieu d'une par position. Les positions sont tirées du hachage 64 bits de l'anneau
+ * ({@link AnneauCoherent#hacher}) : 32 bits choisissent le bloc, un second brassage fournit
+ * jusqu'à 7 positions de 9 bits. Les ajouts sont atomiques (CAS) et peuvent être concurrents
+ * aux consultations ; une clé ne peut pas être retirée.
+ */
+public class FiltreBloom {
+    private static final int LONGS_PAR_BLOC = 8;
+    private static final int BITS_PAR_BLOC = LONGS_PAR_BLOC * 64;
+    private static final int POSITIONS_MAX = 7;
+
+    private final AtomicLongArray bits;
+    private final int nombreBlocs;
+    private final int positions;
+    private final int capacite;
+    private final LongAdder nombre = new LongAdder();
+
+    /**
+     * @param capacite nombre de clés prévu
+     * @param tauxFauxPositifs taux de faux positifs visé à pleine capacité
+     */
+    public FiltreBloom(int capacite, double tauxFauxPositifs) {
+        if (capacite < 1 || tauxFauxPositifs <= 0 || tauxFauxPositifs >= 1) {
+            throw new IllegalArgumentException("Filtre invalide: " + capacite + " clés, taux " + tauxFauxPositifs);
+        }
+        double bitsParCle = -Math.log(tauxFauxPositifs) / (Math.log(2) * Math.log(2));
+        long bitsTotal = (long) Math.ceil(capacite * bitsParCle);
+        this.capacite = capacite;
+        this.nombreBlocs = (int) Math.max(1, (bitsTotal + BITS_PAR_BLOC - 1) / BITS_PAR_BLOC);
+        this.positions = (int) Math.max(1, Math.min(POSITIONS_MAX, Math.round(bitsParCle * Math.log(2))));
+        this.bits = new AtomicLongArray(nombreBlocs * LONGS_PAR_BLOC);
+    }
+
+    // Premier mot du bloc de la clé : réduction de 32 bits du hachage sur le nombre de blocs
+    private int bloc(long h) {
+        return (int) (((h >>> 32) * nombreBlocs) >>> 32) * LONGS_PAR_BLOC;
+    }
+
+    // Second brassage, dont les tranches de 9 bits donnent les positions dans le bloc
+    private static long positions(long h) {
+        long g = h * 0x9e3779b97f4a7c15L;
+        return g ^ (g >>> 29);
+    }
+
+    public void ajouter(String cle) {
+        long h = AnneauCoherent.hacher(cle);
+        int debut = bloc(h);
+        long g = positions(h);
+        for (int i = 0; i < positions; i++, g >>>= 9) {
+            int position = (int) (g & (BITS_PAR_BLOC - 1));
+            int index = debut + (position >>> 6);
+            long masque = 1L << position;
+            long ancien;
+            while (((ancien = bits.get(index)) & masque) == 0 && !bits.compareAndSet(index, ancien, ancien | masque)) {
+                // Un autre bit du même mot vient d'être posé : recommencer
+            }
+        }
+        nombre.increment();
+    }
+
+    /**
+     * @return false si la clé n'a jamais été ajoutée ; true si elle l'a peut-être été
+     */
+    public boolean contientPeutEtre(String cle) {
+        long h = AnneauCoherent.hacher(cle);
+        int debut = bloc(h);
+        long g = positions(h);
+        for (int i = 0; i < positions; i++, g >>>= 9) {
+            int position = (int) (g & (BITS_PAR_BLOC - 1));
+            if ((bits.get(debut + (position >>> 6)) & (1L << position)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getCapacite() {
+        return capacite;
+    }
+
+    /**
+     * Nombre d'ajouts, une clé ajoutée deux fois comptant deux fois.
+     */
+    public long getNombre() {
+        return nombre.sum();
+    }
+
+    public long tailleOctets() {
+        return (long) bits.length() * Long.BYTES;
+    }
+
+    /**
+     * Taux de faux positifs attendu pour le nombre de clés ajoutées (formule sans blocs, un peu
+     * optimiste pour un filtre par blocs).
+     */
+    public double tauxFauxPositifsEstime() {
+        double m = (double) bits.length() * 64;
+        return Math.pow(1 - Math.exp(-positions * getNombre() / m), positions);
+    }
+}
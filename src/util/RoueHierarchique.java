@@ -0,0 +1,169 @@
+package util;
+
+import java.util.function.Consumer;
+
+/**
+ * Roue temporelle hiérarchique : plusieurs niveaux de 64 cases, chaque niveau couvrant 64 fois
+ * la durée du précédent. Une échéance lointaine est rangée dans un niveau grossier puis redescend
+ * ("cascade") vers les niveaux fins à l'approche de son instant. Planification et annulation se
+ * font en O(1), et une échéance n'est déplacée qu'au plus une fois par niveau : contrairement à
+ * {@link RoueTemporelle}, aucune case n'est reparcourue à chaque tour pour des échéances lointaines.
+ *
+ * Cette classe n'est pas thread-safe : elle est destinée à être utilisée depuis le thread de l'agent.
+ */
+public class RoueHierarchique<T> {
+    private static final int BITS = 6;
+    private static final int CASES = 1 << BITS;
+    private static final int MASQUE = CASES - 1;
+
+    private final Echeance<T>[][] niveaux;
+    private final long dureeTick;
+    private long tickCourant;
+    private int taille;
+
+    // Pas de création de tableau générique en Java : tableau joker, converti une fois ici
+    @SuppressWarnings("unchecked")
+    public RoueHierarchique(int nombreNiveaux, long dureeTick, long maintenant) {
+        this.niveaux = (Echeance<T>[][]) new Echeance<?>[Math.max(1, Math.min(nombreNiveaux, 10))][CASES];
+        this.dureeTick = dureeTick;
+        this.tickCourant = maintenant / dureeTick;
+    }
+
+    /**
+     * Échéance planifiée dans la roue, annulable en O(1).
+     */
+    public static final class Echeance<T> {
+        private final T element;
+        private final long tick;
+        private int niveau;
+        private int indexCase;
+        private Echeance<T> precedente;
+        private Echeance<T> suivante;
+        private RoueHierarchique<T> roue;
+
+        private Echeance(T element, long tick) {
+            this.element = element;
+            this.tick = tick;
+        }
+
+        public T getElement() {
+            return element;
+        }
+
+        /**
+         * Retire l'échéance de la roue.
+         * @return false si elle avait déjà expiré ou été annulée
+         */
+        public boolean annuler() {
+            if (roue == null) {
+                return false;
+            }
+            roue.retirer(this);
+            roue.taille--;
+            roue = null;
+            return true;
+        }
+    }
+
+    public Echeance<T> planifier(T element, long instantExpiration) {
+        // Arrondi au tick supérieur : une échéance n'expire jamais en avance
+        long tick = Math.max((instantExpiration + dureeTick - 1) / dureeTick, tickCourant + 1);
+        Echeance<T> echeance = new Echeance<>(element, tick);
+        echeance.roue = this;
+        inserer(echeance);
+        taille++;
+        return echeance;
+    }
+
+    // Range l'échéance dans le niveau le plus fin dont les chiffres supérieurs coïncident avec le tick courant
+    private void inserer(Echeance<T> echeance) {
+        int niveau = 0;
+        while (niveau < niveaux.length - 1
+            && (echeance.tick >>> (BITS * (niveau + 1))) != (tickCourant >>> (BITS * (niveau + 1)))) {
+            niveau++;
+        }
+        int index = (int) ((echeance.tick >>> (BITS * niveau)) & MASQUE);
+        echeance.niveau = niveau;
+        echeance.indexCase = index;
+        echeance.precedente = null;
+        echeance.suivante = niveaux[niveau][index];
+        if (echeance.suivante != null) {
+            echeance.suivante.precedente = echeance;
+        }
+        niveaux[niveau][index] = echeance;
+    }
+
+    private void retirer(Echeance<T> echeance) {
+        if (echeance.precedente != null) {
+            echeance.precedente.suivante = echeance.suivante;
+        } else {
+            niveaux[echeance.niveau][echeance.indexCase] = echeance.suivante;
+        }
+        if (echeance.suivante != null) {
+            echeance.suivante.precedente = echeance.precedente;
+        }
+        echeance.precedente = null;
+        echeance.suivante = null;
+    }
+
+    /**
+     * Fait avancer la roue jusqu'à l'instant donné et remet les éléments expirés au consommateur.
+     * Le consommateur est appelé une fois la case parcourue : il peut planifier ou annuler des
+     * échéances, y compris dans cette case.
+     * @return le nombre d'éléments expirés
+     */
+    public int avancer(long maintenant, Consumer<T> expiration) {
+        long tickCible = maintenant / dureeTick;
+        int expires = 0;
+        while (tickCourant < tickCible) {
+            tickCourant++;
+
+            // Faire redescendre les cases des niveaux supérieurs qui arrivent à échéance
+            for (int niveau = niveaux.length - 1; niveau > 0; niveau--) {
+                if ((tickCourant & ((1L << (BITS * niveau)) - 1)) == 0) {
+                    int index = (int) ((tickCourant >>> (BITS * niveau)) & MASQUE);
+                    Echeance<T> echeance = niveaux[niveau][index];
+                    niveaux[niveau][index] = null;
+                    while (echeance != null) {
+                        Echeance<T> suivante = echeance.suivante;
+                        inserer(echeance);
+                        echeance = suivante;
+                    }
+                }
+            }
+
+            // Les échéances échues sont détachées de la case puis chaînées entre elles, dans l'ordre
+            Echeance<T> premiere = null;
+            Echeance<T> derniere = null;
+            int index = (int) (tickCourant & MASQUE);
+            Echeance<T> echeance = niveaux[0][index];
+            while (echeance != null) {
+                Echeance<T> suivante = echeance.suivante;
+                if (echeance.tick <= tickCourant) {
+                    retirer(echeance);
+                    echeance.roue = null;
+                    taille--;
+                    if (derniere == null) {
+                        premiere = echeance;
+                    } else {
+                        derniere.suivante = echeance;
+                    }
+                    derniere = echeance;
+                }
+                echeance = suivante;
+            }
+            while (premiere != null) {
+                Echeance<T> echue = premiere;
+                premiere = echue.suivante;
+                echue.suivante = null;
+                expiration.accept(echue.element);
+                expires++;
+            }
+        }
+        return expires;
+    }
+
+    public int taille() {
+        return taille;
+    }
+}
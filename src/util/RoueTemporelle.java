@@ -0,0 +1,138 @@
+package util;
+
+import java.util.function.Consumer;
+
+/**
+ * Roue temporelle hachée : planification et annulation en O(1), expiration en O(1) amorti
+ * par élément. Chaque case contient une liste doublement chaînée d'échéances ; une échéance
+ * plus lointaine qu'un tour de roue attend le nombre de tours restant dans sa case.
+ *
+ * Cette classe n'est pas thread-safe : elle est destinée à être utilisée depuis le thread de l'agent.
+ */
+public class RoueTemporelle<T> {
+    private final Echeance<T>[] cases;
+    private final int masque;
+    private final long dureeTick;
+    private long tickCourant;
+    private int taille;
+
+    // Pas de création de tableau générique en Java : tableau joker, converti une fois ici
+    @SuppressWarnings("unchecked")
+    public RoueTemporelle(int nombreCases, long dureeTick, long maintenant) {
+        int n = Integer.highestOneBit(Math.max(1, nombreCases - 1)) << 1;
+        this.cases = (Echeance<T>[]) new Echeance<?>[n];
+        this.masque = n - 1;
+        this.dureeTick = dureeTick;
+        this.tickCourant = maintenant / dureeTick;
+    }
+
+    /**
+     * Échéance planifiée dans la roue, annulable en O(1).
+     */
+    public static final class Echeance<T> {
+        private final T element;
+        private final int indexCase;
+        private long toursRestants;
+        private Echeance<T> precedente;
+        private Echeance<T> suivante;
+        private RoueTemporelle<T> roue;
+
+        private Echeance(T element, int indexCase, long toursRestants) {
+            this.element = element;
+            this.indexCase = indexCase;
+            this.toursRestants = toursRestants;
+        }
+
+        public T getElement() {
+            return element;
+        }
+
+        /**
+         * Retire l'échéance de la roue.
+         * @return false si elle avait déjà expiré ou été annulée
+         */
+        public boolean annuler() {
+            if (roue == null) {
+                return false;
+            }
+            roue.retirer(this);
+            return true;
+        }
+    }
+
+    public Echeance<T> planifier(T element, long instantExpiration) {
+        // Arrondi au tick supérieur : une échéance n'expire jamais en avance
+        long tickExpiration = Math.max((instantExpiration + dureeTick - 1) / dureeTick, tickCourant + 1);
+        long ecart = tickExpiration - tickCourant;
+        int index = (int) (tickExpiration & masque);
+        Echeance<T> echeance = new Echeance<>(element, index, (ecart - 1) / cases.length);
+        echeance.roue = this;
+        echeance.suivante = cases[index];
+        if (cases[index] != null) {
+            cases[index].precedente = echeance;
+        }
+        cases[index] = echeance;
+        taille++;
+        return echeance;
+    }
+
+    private void retirer(Echeance<T> echeance) {
+        if (echeance.precedente != null) {
+            echeance.precedente.suivante = echeance.suivante;
+        } else {
+            cases[echeance.indexCase] = echeance.suivante;
+        }
+        if (echeance.suivante != null) {
+            echeance.suivante.precedente = echeance.precedente;
+        }
+        echeance.precedente = null;
+        echeance.suivante = null;
+        echeance.roue = null;
+        taille--;
+    }
+
+    /**
+     * Fait avancer la roue jusqu'à l'instant donné et remet les éléments expirés au consommateur.
+     * Le consommateur est appelé une fois la case parcourue : il peut planifier ou annuler des
+     * échéances, y compris dans cette case.
+     * @return le nombre d'éléments expirés
+     */
+    public int avancer(long maintenant, Consumer<T> expiration) {
+        long tickCible = maintenant / dureeTick;
+        int expires = 0;
+        while (tickCourant < tickCible) {
+            tickCourant++;
+            // Les échéances échues sont détachées de la case puis chaînées entre elles, dans l'ordre
+            Echeance<T> premiere = null;
+            Echeance<T> derniere = null;
+            Echeance<T> echeance = cases[(int) (tickCourant & masque)];
+            while (echeance != null) {
+                Echeance<T> suivante = echeance.suivante;
+                if (echeance.toursRestants == 0) {
+                    retirer(echeance);
+                    if (derniere == null) {
+                        premiere = echeance;
+                    } else {
+                        derniere.suivante = echeance;
+                    }
+                    derniere = echeance;
+                } else {
+                    echeance.toursRestants--;
+                }
+                echeance = suivante;
+            }
+            while (premiere != null) {
+                Echeance<T> echue = premiere;
+                premiere = echue.suivante;
+                echue.suivante = null;
+                expiration.accept(echue.element);
+                expires++;
+            }
+        }
+        return expires;
+    }
+
+    public int taille() {
+        return taille;
+    }
+}
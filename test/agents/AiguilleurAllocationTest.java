@@ -0,0 +1,91 @@
+package agents;
+
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Budget d'allocation de l'aiguillage : filtrer un message par le modèle de réception puis le
+ * transmettre à son traitement ne doit allouer aucun objet, quelle que soit la combinaison de
+ * performative et de conversation.
+ *
+ * Lancement, depuis la racine du projet (HotSpot, pour la mesure par thread) :
+ * <pre>
+ * javac -encoding UTF-8 -cp $JADE/lib/jade.jar -d out src/agents/Aiguilleur.java test/agents/AiguilleurAllocationTest.java
+ * java -cp $JADE/lib/jade.jar:out agents.AiguilleurAllocationTest
+ * </pre>
+ * Une AssertionError signale l'échec.
+ */
+public class AiguilleurAllocationTest {
+    private static final int MESSAGES = 2_000_000;
+    // Tolérance pour les allocations de la mesure elle-même, très en deçà d'un objet par message
+    private static final long BUDGET_OCTETS = 64 * 1024;
+
+    private static long traites;
+
+    public static void main(String[] args) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("AiguilleurAllocationTest : mesure d'allocation non disponible, test ignoré");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Aiguilleur.Traitement compter = msg -> traites++;
+        Aiguilleur aiguilleur = new Aiguilleur()
+            .enregistrer(ACLMessage.CFP, compter)
+            .enregistrer(ACLMessage.REQUEST, compter)
+            .enregistrer(ACLMessage.REQUEST, "recherche", compter)
+            .enregistrer(ACLMessage.REQUEST, "emprunt-liste", compter)
+            .enregistrer(ACLMessage.INFORM, null, compter);
+        MessageTemplate modele = aiguilleur.getModele();
+
+        ACLMessage[] messages = {
+            message(ACLMessage.REQUEST, null),
+            message(ACLMessage.REQUEST, "recherche"),
+            message(ACLMessage.REQUEST, "emprunt-liste"),
+            message(ACLMessage.CFP, "pret-42"),
+            message(ACLMessage.INFORM, null),
+            // Sans traitement : rejeté par le modèle, laissé dans la file
+            message(ACLMessage.INFORM, "merci-inconnu"),
+        };
+
+        // Compilation des chemins d'aiguillage avant la mesure
+        aiguiller(modele, aiguilleur, messages, MESSAGES);
+
+        long thread = Thread.currentThread().getId();
+        long avant = threads.getThreadAllocatedBytes(thread);
+        aiguiller(modele, aiguilleur, messages, MESSAGES);
+        long alloues = threads.getThreadAllocatedBytes(thread) - avant;
+
+        System.out.printf("AiguilleurAllocationTest : %d octet(s) alloué(s) pour %,d messages (%.4f par message)%n",
+            alloues, MESSAGES, (double) alloues / MESSAGES);
+        if (alloues > BUDGET_OCTETS) {
+            throw new AssertionError("l'aiguillage alloue : " + alloues + " octets pour " + MESSAGES + " messages");
+        }
+        System.out.println("AiguilleurAllocationTest : succès");
+    }
+
+    private static void aiguiller(MessageTemplate modele, Aiguilleur aiguilleur, ACLMessage[] messages, int nombre)
+            throws Exception {
+        long attendus = 0;
+        long debut = traites;
+        for (int i = 0; i < nombre; i++) {
+            ACLMessage msg = messages[i % messages.length];
+            if (modele.match(msg)) {
+                aiguilleur.aiguiller(msg);
+                attendus++;
+            }
+        }
+        if (traites - debut != attendus || attendus != nombre - nombre / messages.length) {
+            throw new AssertionError("messages aiguillés : " + (traites - debut) + ", attendus : " + attendus);
+        }
+    }
+
+    private static ACLMessage message(int performative, String conversationId) {
+        ACLMessage msg = new ACLMessage(performative);
+        msg.setConversationId(conversationId);
+        return msg;
+    }
+}
@@ -0,0 +1,58 @@
+package agents;
+
+import model.Livre;
+
+/**
+ * Expiration des baux lorsque le traitement d'un bail expiré pose un nouveau bail : servir la
+ * file d'attente d'un livre peut remplacer le bail d'un emprunteur qui expire au même tick.
+ * Aucun exemplaire n'est libéré deux fois et le nouveau bail reste en place.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java src/agents/GestionnaireBaux.java test/agents/GestionnaireBauxTest.java
+ * java -cp out agents.GestionnaireBauxTest
+ * </pre>
+ * Une AssertionError signale l'échec.
+ */
+public class GestionnaireBauxTest {
+
+    public static void main(String[] args) throws Exception {
+        // Ticks d'une seconde : les deux baux, posés en début de seconde, expirent au même tick
+        GestionnaireBaux baux = new GestionnaireBaux(1, 1000, null);
+        Livre livre = new Livre("Dune", "Frank Herbert", 3, 21);
+        while (System.currentTimeMillis() % 1000 > 500) {
+            Thread.sleep(10);
+        }
+        verifier(baux.placer("lecteur-2", livre, 1) != null, "premier bail refusé");
+        verifier(baux.placer("lecteur-1", livre, 1) != null, "second bail refusé");
+        verifier(livre.getQuantiteDisponible() == 1 && livre.getQuantiteReservee() == 2, "réservations incohérentes");
+
+        // L'expiration du bail de lecteur-1 sert lecteur-2, dont le bail expire au même tick
+        Thread.sleep(2100);
+        int[] appels = {0};
+        int expires = baux.expirer(bail -> {
+            appels[0]++;
+            if (bail.emprunteur.equals("lecteur-1")) {
+                verifier(baux.placer("lecteur-2", bail.livre, 1) != null, "nouveau bail refusé");
+            }
+        });
+        verifier(expires == 2 && appels[0] == 2, expires + " bail(s) expiré(s), " + appels[0] + " traité(s)");
+        verifier(livre.getQuantiteDisponible() == 2 && livre.getQuantiteReservee() == 1,
+            "stock après expiration : " + livre.getQuantiteDisponible() + " disponible(s), " +
+            livre.getQuantiteReservee() + " réservé(s)");
+        verifier(baux.enCours() == 1, baux.enCours() + " bail(s) en cours");
+
+        // Le nouveau bail est honoré, puis plus rien n'expire
+        verifier(baux.honorer("lecteur-2", "Dune", 1) != null, "nouveau bail perdu");
+        verifier(livre.getQuantiteDisponible() == 2 && livre.getQuantiteReservee() == 0, "bail honoré mal compté");
+        Thread.sleep(1100);
+        verifier(baux.expirer(bail -> { }) == 0, "bail honoré expiré");
+        System.out.println("GestionnaireBauxTest : succès");
+    }
+
+    private static void verifier(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
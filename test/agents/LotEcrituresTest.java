@@ -0,0 +1,85 @@
+package agents;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Codage des lots d'écritures relayés par un proxy : chaque message reconstruit par la
+ * bibliothécaire porte l'expéditeur, la conversation, le contenu et les paramètres de l'original,
+ * et un lot tronqué ou d'une autre version est refusé.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -cp $JADE/lib/jade.jar -d out src/agents/LotEcritures.java test/agents/LotEcrituresTest.java
+ * java -cp $JADE/lib/jade.jar:out agents.LotEcrituresTest
+ * </pre>
+ * Une AssertionError signale l'échec.
+ */
+public class LotEcrituresTest {
+
+    public static void main(String[] args) throws Exception {
+        ACLMessage cfp = message(ACLMessage.CFP, "emprunteur-1@plateforme", "emprunt-livre", "Le Petit Prince 🦊:2");
+        cfp.setReplyWith("cfp-1");
+        ACLMessage liste = message(ACLMessage.AGREE, "lecteur-2@plateforme", "emprunt-liste", "Dune;Fondation;");
+        liste.addUserDefinedParameter("mode", "atomique");
+        ACLMessage accept = message(ACLMessage.ACCEPT_PROPOSAL, "emprunteur-1@plateforme", "emprunt-livre", null);
+        accept.setInReplyTo("cfp-1");
+        List<ACLMessage> ecritures = Arrays.asList(cfp, liste, accept);
+
+        byte[] contenu = LotEcritures.encoder(ecritures);
+        List<ACLMessage> decodees = LotEcritures.decoder(contenu);
+        verifier(decodees.size() == ecritures.size(), decodees.size() + " écriture(s) décodée(s)");
+        for (int i = 0; i < ecritures.size(); i++) {
+            ACLMessage attendu = ecritures.get(i);
+            ACLMessage decode = decodees.get(i);
+            verifier(decode.getPerformative() == attendu.getPerformative() &&
+                decode.getSender().getName().equals(attendu.getSender().getName()) &&
+                egaux(decode.getConversationId(), attendu.getConversationId()) &&
+                egaux(decode.getReplyWith(), attendu.getReplyWith()) &&
+                egaux(decode.getInReplyTo(), attendu.getInReplyTo()) &&
+                egaux(decode.getContent(), attendu.getContent()) &&
+                egaux(decode.getUserDefinedParameter("mode"), attendu.getUserDefinedParameter("mode")),
+                "écriture " + i + " altérée");
+        }
+
+        // Un lot tronqué ou d'une version inconnue est refusé en bloc
+        refuser(Arrays.copyOf(contenu, contenu.length - 3), "lot tronqué");
+        byte[] autreVersion = contenu.clone();
+        autreVersion[0] = 99;
+        refuser(autreVersion, "version inconnue");
+        System.out.println("LotEcrituresTest : succès");
+    }
+
+    private static ACLMessage message(int performative, String expediteur, String conversation, String contenu) {
+        ACLMessage msg = new ACLMessage(performative);
+        msg.setSender(new AID(expediteur, AID.ISGUID));
+        msg.setConversationId(conversation);
+        if (contenu != null) {
+            msg.setContent(contenu);
+        }
+        return msg;
+    }
+
+    private static void refuser(byte[] contenu, String cas) {
+        try {
+            LotEcritures.decoder(contenu);
+            throw new AssertionError(cas + " accepté");
+        } catch (IOException attendue) {
+            // refus attendu
+        }
+    }
+
+    private static boolean egaux(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void verifier(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package agents;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import model.JournalCatalogue;
+
+/**
+ * Reprise du registre des emprunts après un redémarrage : les emprunts ouverts avant l'arrêt,
+ * relus depuis les segments du journal comme depuis un instantané, peuvent être rendus, et les
+ * retours partiels sont repris.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java src/agents/RegistreEmprunts.java test/agents/RegistreEmpruntsTest.java
+ * java -cp out agents.RegistreEmpruntsTest
+ * </pre>
+ * Une AssertionError signale l'échec.
+ */
+public class RegistreEmpruntsTest {
+    private static final long JOUR = 86_400_000L;
+
+    public static void main(String[] args) throws Exception {
+        File repertoire = Files.createTempDirectory("registre-test").toFile();
+        try {
+            JournalCatalogue journal = ouvrir(repertoire);
+            RegistreEmprunts registre = new RegistreEmprunts(JOUR, 100, journal);
+            registre.reprendre(journal.getPretsRepris());
+            long premier = registre.ouvrir("lecteur-1", "Dune", 2, 21).id;
+            registre.ouvrir("lecteur-2", "Fondation", 1, 14);
+            registre.ouvrir("lecteur-1", "Fondation", 1, 14);
+            verifier(registre.restituer("lecteur-2", "Fondation", 1, e -> { }) == 1, "retour avant l'arrêt refusé");
+            verifier(registre.restituer("lecteur-1", "Dune", 1, e -> { }) == 1, "retour partiel refusé");
+            journal.fermer();
+
+            // Redémarrage depuis les segments : un exemplaire de Dune et un de Fondation restent prêtés
+            journal = ouvrir(repertoire);
+            registre = new RegistreEmprunts(JOUR, 100, journal);
+            registre.reprendre(journal.getPretsRepris());
+            verifier(registre.enCours() == 2, "segments : " + registre.enCours() + " emprunt(s) repris");
+            verifier(registre.restituer("lecteur-2", "Fondation", 1, e -> { }) == 0, "segments : emprunt clos repris");
+            verifier(registre.restituer("lecteur-1", "Dune", 2, e -> { }) == 1, "segments : retour partiel perdu");
+            // Les identifiants reprennent après les emprunts relus
+            verifier(registre.ouvrir("lecteur-3", "Dune", 1, 21).id > premier + 2, "identifiant d'emprunt réutilisé");
+
+            // Redémarrage depuis un instantané, qui remplace les segments
+            RegistreEmprunts avant = registre;
+            journal.instantane(Collections::emptyList, avant::prets);
+            journal.fermer();
+            journal = ouvrir(repertoire);
+            registre = new RegistreEmprunts(JOUR, 100, journal);
+            registre.reprendre(journal.getPretsRepris());
+            verifier(registre.enCours() == 2, "instantané : " + registre.enCours() + " emprunt(s) repris");
+            verifier(registre.restituer("lecteur-1", "Fondation", 1, e -> { }) == 1, "instantané : emprunt perdu");
+            verifier(registre.restituer("lecteur-3", "Dune", 1, e -> { }) == 1, "instantané : emprunt perdu");
+            journal.fermer();
+            System.out.println("RegistreEmpruntsTest : succès");
+        } finally {
+            File[] fichiers = repertoire.listFiles();
+            for (File f : fichiers != null ? fichiers : new File[0]) {
+                Files.deleteIfExists(f.toPath());
+            }
+            Files.deleteIfExists(repertoire.toPath());
+        }
+    }
+
+    private static JournalCatalogue ouvrir(File repertoire) throws Exception {
+        JournalCatalogue journal = new JournalCatalogue(repertoire, JournalCatalogue.Synchronisation.IMMEDIATE);
+        journal.recuperer();
+        return journal;
+    }
+
+    private static void verifier(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import model.CataloguePartitionne;
+import model.Livre;
+
+/**
+ * Deux répliques d'un même fragment détiennent chacune "Dune" en un seul exemplaire : les
+ * emprunts adressés par l'annuaire ne doivent jamais en prêter plus d'un, quelle que soit la
+ * réplique choisie pour les lectures, et la réplique en lecture doit voir le livre épuisé une
+ * fois le stock de la primaire répliqué. Les recherches de liste, qui ne font que lire, sont
+ * réparties entre les répliques, et les changements de composition de la primaire (ajout, retrait,
+ * fiche modifiée) sont repris par la réplique en lecture.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -cp $JADE/lib/jade.jar -d out $(find src -name "*.java") test/agents/ReplicationBibliothequeTest.java
+ * java -cp $JADE/lib/jade.jar:out agents.ReplicationBibliothequeTest
+ * </pre>
+ * Une AssertionError signale l'échec.
+ */
+public class ReplicationBibliothequeTest {
+    private static final String FRAGMENT = "bibliothecaire";
+
+    public static void main(String[] args) throws Exception {
+        AID primaire = new AID(FRAGMENT, AID.ISLOCALNAME);
+        AID lecture = new AID(FRAGMENT + "-2", AID.ISLOCALNAME);
+
+        // Chaque réplique a son propre catalogue, avec le même exemplaire unique
+        Map<AID, CataloguePartitionne> catalogues = new HashMap<>();
+        for (AID replique : new AID[]{primaire, lecture}) {
+            CataloguePartitionne catalogue = new CataloguePartitionne(replique.getLocalName(), 1, 1);
+            catalogue.charger(Collections.singletonList(new Livre("Dune", "Frank Herbert", 1, 21))).join();
+            catalogues.put(replique, catalogue);
+        }
+        try {
+            AnnuaireBibliotheque annuaire = new AnnuaireBibliotheque(new Agent());
+            annuaire.mettreAJour(new DFAgentDescription[]{
+                description(lecture, AnnuaireBibliotheque.ROLE_LECTURE, 0),
+                description(primaire, AnnuaireBibliotheque.ROLE_PRIMAIRE, 50)});
+
+            // Les lectures se répartissent entre les deux répliques
+            Set<AID> lecteurs = new HashSet<>();
+            for (int i = 0; i < 200; i++) {
+                lecteurs.add(annuaire.lecteurPour("Dune"));
+            }
+            verifier(lecteurs.size() == 2, "lectures servies par " + lecteurs);
+
+            // Deux emprunteurs, puis d'autres, demandent le seul exemplaire
+            int prets = 0;
+            for (int emprunteur = 0; emprunteur < 100; emprunteur++) {
+                AID bibliothecaire = annuaire.ecrivainPour("Dune");
+                verifier(bibliothecaire.equals(primaire), "emprunt adressé à " + bibliothecaire.getLocalName());
+                if (emprunter(catalogues.get(bibliothecaire), "Dune")) {
+                    prets++;
+                }
+            }
+            verifier(prets == 1, prets + " exemplaire(s) prêté(s) pour un seul en rayon");
+
+            // Une recherche de liste est une lecture : répartie entre les répliques, chaque fragment
+            // n'étant confié qu'à une seule d'entre elles
+            Set<AID> recherchesListe = new HashSet<>();
+            for (int i = 0; i < 200; i++) {
+                Map<AID, List<String>> repartition = annuaire.repartir(Arrays.asList("Dune", "Fondation"));
+                verifier(repartition.size() == 1, "liste d'un fragment confiée à " + repartition.keySet());
+                recherchesListe.addAll(repartition.keySet());
+            }
+            verifier(recherchesListe.size() == 2, "recherches de liste servies par " + recherchesListe);
+
+            // Le stock de la primaire, répliqué, rend le livre épuisé sur la réplique en lecture
+            Map<String, Integer> lot = new LinkedHashMap<>();
+            lot.put("Dune", catalogues.get(primaire).obtenir("Dune").join().getQuantiteDisponible());
+            lot.put("Titre absent", 3);
+            int appliques = ReplicationStock.appliquer(ReplicationStock.encoder(lot), catalogues.get(lecture).instantane());
+            verifier(appliques == 1, appliques + " titre(s) répliqué(s)");
+            verifier(catalogues.get(lecture).obtenir("Dune").join().getQuantiteDisponible() == 0,
+                "la réplique en lecture annonce encore Dune disponible");
+
+            // La primaire ajoute Fondation, retire Dune et change l'auteur de Solaris par un rechargement
+            CataloguePartitionne source = catalogues.get(primaire);
+            CataloguePartitionne copie = catalogues.get(lecture);
+            source.ajouter(Collections.singletonList(new Livre("Solaris", "Lem", 2, 14))).join();
+            copie.ajouter(Collections.singletonList(new Livre("Solaris", "Lem", 2, 14))).join();
+            CataloguePartitionne.Modification bilan = source.recharger(Arrays.asList(
+                new Livre("Fondation", "Isaac Asimov", 3, 14), new Livre("Solaris", "Stanisław Lem", 2, 21))).join();
+            ReplicationStock.Composition composition = ReplicationStock.decoderComposition(
+                ReplicationStock.encoderComposition(titres(bilan.getRetires()), fiches(bilan)));
+            CataloguePartitionne.Modification replique = composition.appliquer(copie).join();
+            verifier(replique.getAjoutes().size() == 1 && replique.getRetires().size() == 1 && replique.getModifies().size() == 1,
+                "changement répliqué : " + replique);
+            verifier(copie.obtenir("Dune").join() == null, "Dune toujours présent sur la réplique");
+            verifier(copie.obtenir("Fondation").join().getQuantiteDisponible() == 3, "Fondation absent de la réplique");
+            Livre solaris = copie.obtenir("Solaris").join();
+            verifier(solaris.getAuteur().equals("Stanisław Lem") && solaris.getDureeEmpruntMax() == 21,
+                "fiche de Solaris non reprise : " + solaris);
+
+            // Bibliothécaires sans rôle annoncé : tous les utilisateurs choisissent la même
+            AnnuaireBibliotheque sansRole = new AnnuaireBibliotheque(new Agent());
+            sansRole.mettreAJour(new DFAgentDescription[]{description(lecture, null, 0), description(primaire, null, 9)});
+            for (int i = 0; i < 100; i++) {
+                verifier(sansRole.ecrivainPour("Dune").equals(primaire), "écritures dispersées sans rôle annoncé");
+            }
+            System.out.println("ReplicationBibliothequeTest : succès");
+        } finally {
+            for (CataloguePartitionne catalogue : catalogues.values()) {
+                catalogue.arreter();
+            }
+        }
+    }
+
+    private static List<String> titres(List<Livre> livres) {
+        List<String> titres = new ArrayList<>();
+        for (Livre livre : livres) {
+            titres.add(livre.getTitre());
+        }
+        return titres;
+    }
+
+    // Fiches envoyées par la primaire : titres ajoutés et titres dont la fiche a changé
+    private static List<Livre> fiches(CataloguePartitionne.Modification bilan) {
+        List<Livre> fiches = new ArrayList<>(bilan.getAjoutes());
+        fiches.addAll(bilan.getModifies());
+        return fiches;
+    }
+
+    // Réservation puis confirmation, comme le fait la bibliothécaire sur une acceptation
+    private static boolean emprunter(CataloguePartitionne catalogue, String titre) {
+        return catalogue.executer(titre, livre -> {
+            if (livre == null || !livre.reserver(1)) {
+                return false;
+            }
+            livre.confirmer(1);
+            return true;
+        }).join();
+    }
+
+    private static DFAgentDescription description(AID aid, String role, int charge) {
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(aid);
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(AnnuaireBibliotheque.SERVICE);
+        sd.addProperties(new Property(AnnuaireBibliotheque.PROPRIETE_FRAGMENT, FRAGMENT));
+        if (role != null) {
+            sd.addProperties(new Property(AnnuaireBibliotheque.PROPRIETE_ROLE, role));
+        }
+        sd.addProperties(new Property(AnnuaireBibliotheque.PROPRIETE_FILE, String.valueOf(charge)));
+        dfd.addServices(sd);
+        return dfd;
+    }
+
+    private static void verifier(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
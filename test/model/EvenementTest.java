@@ -0,0 +1,59 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Codage binaire des événements : tout texte, quelle que soit sa longueur ou ses caractères,
+ * revient intact du décodage.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java test/model/EvenementTest.java
+ * java -cp out model.EvenementTest
+ * </pre>
+ * Une AssertionError signale l'échec.
+ */
+public class EvenementTest {
+
+    public static void main(String[] args) throws Exception {
+        char[] lettres = new char[100_000];
+        Arrays.fill(lettres, 'é');
+        List<Evenement> evenements = Arrays.asList(
+            new Evenement(Evenement.Type.EMPRUNT_LIVRE, "emprunteur-1", "Le Petit Prince 🦊", 1, 21),
+            new Evenement(Evenement.Type.RETOUR, "emprunteur\u00002", new String(lettres), 3),
+            new Evenement(Evenement.Type.DEPART_EMPRUNTEUR),
+            new Evenement(Evenement.Type.EMPRUNT_LIVRE, "", "", -1, 0, Integer.MAX_VALUE));
+
+        List<Evenement> decodes = Evenement.decoder(Evenement.encoder(evenements));
+        verifier(decodes.size() == evenements.size(), decodes.size() + " événement(s) décodé(s)");
+        for (int i = 0; i < evenements.size(); i++) {
+            Evenement attendu = evenements.get(i);
+            Evenement decode = decodes.get(i);
+            verifier(decode.getType() == attendu.getType() && decode.getHorodatage() == attendu.getHorodatage() &&
+                egaux(decode.getAgent(), attendu.getAgent()) && egaux(decode.getTitre(), attendu.getTitre()) &&
+                decode.getNombre() == attendu.getNombre() && decode.getDuree() == attendu.getDuree() &&
+                decode.getTotal() == attendu.getTotal(), "événement " + i + " altéré");
+        }
+
+        // Un contenu tronqué est refusé, sans allouer la longueur annoncée
+        byte[] contenu = Evenement.encoder(evenements);
+        try {
+            Evenement.decoder(Arrays.copyOf(contenu, 40));
+            throw new AssertionError("contenu tronqué accepté");
+        } catch (java.io.IOException attendue) {
+            // refus attendu
+        }
+        System.out.println("EvenementTest : succès");
+    }
+
+    private static boolean egaux(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void verifier(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
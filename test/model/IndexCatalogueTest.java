@@ -0,0 +1,133 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Requêtes multi-critères paginées par curseur : en suivant les curseurs "suite", chaque requête
+ * rend exactement les livres acceptés, triés par titre, sans doublon, y compris après des
+ * changements de stock qui déplacent les livres d'une tranche à l'autre. Un index reconstruit à
+ * côté de celui en service suit le stock pendant sa construction et la bascule, et l'observateur
+ * suivant reçoit chaque variation une seule fois.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java test/model/IndexCatalogueTest.java
+ * java -cp out model.IndexCatalogueTest
+ * </pre>
+ * Une AssertionError signale l'échec.
+ */
+public class IndexCatalogueTest {
+
+    public static void main(String[] args) {
+        Random hasard = new Random(7);
+        IndexCatalogue index = new IndexCatalogue();
+        List<Livre> livres = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Livre livre = new Livre("Titre " + hasard.nextInt(1_000_000) + "-" + i, "Auteur " + i % 13,
+                hasard.nextInt(40), 7 * (1 + i % 5));
+            livres.add(livre);
+            index.ajouter(livre);
+        }
+        String[] requetes = {"", "auteur=auteur 3", "dureeMin=28", "exemplairesMin=17", "disponible=true;dureeMin=14",
+            "auteur=Auteur 5;exemplairesMin=3"};
+        verifierToutes(index, livres, requetes);
+
+        // Des emprunts et des réassorts déplacent les livres entre les tranches de stock
+        for (int i = 0; i < 3000; i++) {
+            Livre livre = livres.get(hasard.nextInt(livres.size()));
+            if (hasard.nextBoolean()) {
+                livre.reduireQuantite(Math.min(livre.getQuantiteDisponible(), 1 + hasard.nextInt(8)));
+            } else {
+                livre.restituer(1 + hasard.nextInt(20));
+            }
+        }
+        verifierToutes(index, livres, requetes);
+
+        // Un index vide ou épuisé ne rend pas de suite
+        IndexCatalogue.Page page = index.executer(RequeteCatalogue.lire("auteur=Inconnu"));
+        verifier(page.getLivres().isEmpty() && page.getSuite() == null, "auteur inconnu");
+
+        verifierRemplacement(livres, requetes, hasard);
+        System.out.println("IndexCatalogueTest : succès");
+    }
+
+    private static void verifierToutes(IndexCatalogue index, List<Livre> livres, String[] requetes) {
+        for (String criteres : requetes) {
+            RequeteCatalogue requete = RequeteCatalogue.lire(criteres);
+            List<String> attendus = new ArrayList<>();
+            livres.stream().filter(requete::accepte).sorted(Comparator.comparing(Livre::getTitre))
+                .forEach(livre -> attendus.add(livre.getTitre()));
+
+            List<String> obtenus = new ArrayList<>();
+            String suite = null;
+            do {
+                IndexCatalogue.Page page = index.executer(RequeteCatalogue.lire(criteres + ";taille=37" +
+                    (suite != null ? ";apres=" + suite : "")));
+                verifier(page.getEstimation() >= attendus.size(), criteres + " : estimation " + page.getEstimation());
+                page.getLivres().forEach(livre -> obtenus.add(livre.getTitre()));
+                suite = page.getSuite();
+            } while (suite != null);
+            verifier(obtenus.equals(attendus), "\"" + criteres + "\" : " + obtenus.size() + " résultat(s) sur " + attendus.size());
+
+            // Un saut de pages donne la même page que les curseurs
+            IndexCatalogue.Page troisieme = index.executer(RequeteCatalogue.lire(criteres + ";taille=37;page=2"));
+            List<String> attendue = attendus.subList(Math.min(74, attendus.size()), Math.min(111, attendus.size()));
+            List<String> lue = new ArrayList<>();
+            troisieme.getLivres().forEach(livre -> lue.add(livre.getTitre()));
+            verifier(lue.equals(attendue), "\"" + criteres + "\" : troisième page différente");
+        }
+    }
+
+    private static void verifierRemplacement(List<Livre> livres, String[] requetes, Random hasard) {
+        int[] notifications = new int[1];
+        IndexCatalogue ancien = new IndexCatalogue((livre, avant, apres) -> notifications[0]++);
+        livres.forEach(ancien::ajouter);
+        IndexCatalogue nouveau = ancien.preparerRemplacant();
+
+        // Le stock varie pendant la construction, avant et après l'indexation de chaque livre
+        int variations = 0;
+        for (int i = 0; i < livres.size(); i++) {
+            nouveau.ajouter(livres.get(i));
+            variations += varier(livres, hasard, 2);
+        }
+        verifierToutes(nouveau, livres, requetes);
+        verifierToutes(ancien, livres, requetes);
+        verifier(ancien.ceder(nouveau), "remplaçant refusé");
+        variations += varier(livres, hasard, 3000);
+        verifierToutes(nouveau, livres, requetes);
+        verifier(notifications[0] == variations, notifications[0] + " notification(s) pour " + variations + " variation(s)");
+
+        // Un remplaçant abandonné au profit d'un autre ne prend pas le relais
+        IndexCatalogue abandonne = nouveau.preparerRemplacant();
+        nouveau.preparerRemplacant();
+        verifier(!nouveau.ceder(abandonne), "remplaçant abandonné accepté");
+    }
+
+    // Emprunts et réassorts tirés au hasard ; renvoie le nombre de variations du stock disponible
+    private static int varier(List<Livre> livres, Random hasard, int operations) {
+        int variations = 0;
+        for (int i = 0; i < operations; i++) {
+            Livre livre = livres.get(hasard.nextInt(livres.size()));
+            int quantite = 1 + hasard.nextInt(8);
+            if (hasard.nextBoolean()) {
+                if (livre.getQuantiteDisponible() > 0) {
+                    livre.reduireQuantite(Math.min(livre.getQuantiteDisponible(), quantite));
+                    variations++;
+                }
+            } else {
+                livre.restituer(quantite);
+                variations++;
+            }
+        }
+        return variations;
+    }
+
+    private static void verifier(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
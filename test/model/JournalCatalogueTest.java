@@ -0,0 +1,91 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reprise du journal du catalogue : les titres et auteurs relus, depuis les segments comme depuis
+ * l'instantané, sont ceux qui ont été écrits, quels que soient leurs caractères et leur longueur.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java test/model/JournalCatalogueTest.java
+ * java -cp out model.JournalCatalogueTest
+ * </pre>
+ * Une AssertionError signale l'échec.
+ */
+public class JournalCatalogueTest {
+
+    public static void main(String[] args) throws Exception {
+        File repertoire = Files.createTempDirectory("journal-test").toFile();
+        try {
+            List<Livre> livres = new ArrayList<>();
+            livres.add(new Livre("Le Petit Prince 🦊", "Antoine de Saint-Exupéry", 3, 21));
+            livres.add(new Livre("Titre\u0000avec NUL", "Auteur\u0000", 1, 14));
+            livres.add(new Livre(repeter('é', 20_000), "Auteur long", 2, 7));
+            livres.add(new Livre(repeter('x', JournalCatalogue.LONGUEUR_TEXTE_MAX), "Limite", 1, 7));
+
+            JournalCatalogue journal = new JournalCatalogue(repertoire, JournalCatalogue.Synchronisation.IMMEDIATE);
+            journal.recuperer();
+            for (Livre livre : livres) {
+                journal.enregistrerAjout(livre);
+            }
+            journal.fermer();
+            verifierRelus("segments", repertoire, livres);
+
+            // Les mêmes livres, relus depuis un instantané
+            journal = new JournalCatalogue(repertoire, JournalCatalogue.Synchronisation.IMMEDIATE);
+            Map<String, Livre> relus = journal.recuperer();
+            journal.instantane(relus::values);
+            journal.fermer();
+            verifierRelus("instantané", repertoire, livres);
+
+            // Au-delà de la limite, le texte est refusé avant toute écriture
+            try {
+                JournalCatalogue.coder(repeter('x', JournalCatalogue.LONGUEUR_TEXTE_MAX + 1));
+                throw new AssertionError("texte trop long accepté");
+            } catch (IllegalArgumentException attendue) {
+                // refus attendu
+            }
+            System.out.println("JournalCatalogueTest : succès");
+        } finally {
+            File[] fichiers = repertoire.listFiles();
+            for (File f : fichiers != null ? fichiers : new File[0]) {
+                Files.deleteIfExists(f.toPath());
+            }
+            Files.deleteIfExists(repertoire.toPath());
+        }
+    }
+
+    private static void verifierRelus(String source, File repertoire, List<Livre> attendus) throws IOException {
+        JournalCatalogue journal = new JournalCatalogue(repertoire, JournalCatalogue.Synchronisation.AUCUNE);
+        Map<String, Livre> relus = journal.recuperer();
+        journal.fermer();
+        verifier(relus.size() == attendus.size(), source + " : " + relus.size() + " livre(s) relu(s) sur " + attendus.size());
+        for (Livre attendu : attendus) {
+            Livre relu = relus.get(attendu.getTitre());
+            verifier(relu != null, source + " : titre perdu (" + attendu.getTitre().length() + " caractères)");
+            verifier(relu.getAuteur().equals(attendu.getAuteur()), source + " : auteur altéré pour " + relu.getTitre());
+            verifier(relu.getQuantiteDisponible() == attendu.getQuantiteDisponible() &&
+                relu.getDureeEmpruntMax() == attendu.getDureeEmpruntMax(), source + " : fiche altérée " + relu);
+        }
+    }
+
+    private static String repeter(char c, int n) {
+        char[] caracteres = new char[n];
+        Arrays.fill(caracteres, c);
+        return new String(caracteres);
+    }
+
+    private static void verifier(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package model;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Stock d'un livre sous contention : des threads se disputent les mêmes exemplaires, sur un
+ * {@link Livre} ordinaire et sur une vue {@link LivreColonne}.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/model/*.java src/util/*.java test/model/LivreConcurrenceTest.java
+ * java -cp out model.LivreConcurrenceTest
+ * </pre>
+ * Une AssertionError signale l'échec.
+ */
+public class LivreConcurrenceTest {
+    private static final int THREADS = 8;
+
+    public static void main(String[] args) throws Exception {
+        verifier("table", () -> new Livre("Dune", "Frank Herbert", 1, 21));
+        verifier("colonnes", () -> {
+            StockageColonnes stockage = new StockageColonnes();
+            stockage.ajouter(new Livre("Dune", "Frank Herbert", 1, 21));
+            return stockage.obtenir("Dune");
+        });
+        System.out.println("LivreConcurrenceTest : succès");
+    }
+
+    private static void verifier(String nom, Supplier<Livre> livre) throws Exception {
+        dernierExemplaire(livre);
+        sansMiseAJourPerdue(livre.get());
+        sommeJamaisDechiree(livre.get());
+        System.out.println(nom + " : ok");
+    }
+
+    // Huit emprunteurs partent ensemble sur le seul exemplaire : un seul l'obtient
+    private static void dernierExemplaire(Supplier<Livre> fabrique) throws Exception {
+        for (int tour = 0; tour < 500; tour++) {
+            Livre livre = fabrique.get();
+            AtomicInteger gagnants = new AtomicInteger();
+            CountDownLatch depart = new CountDownLatch(1);
+            Thread[] threads = new Thread[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                threads[t] = new Thread(() -> {
+                    attendre(depart);
+                    if (livre.reserver(1)) {
+                        gagnants.incrementAndGet();
+                    }
+                });
+                threads[t].start();
+            }
+            depart.countDown();
+            for (Thread t : threads) {
+                t.join();
+            }
+            verifier(gagnants.get() == 1, "tour " + tour + " : " + gagnants + " réservation(s) du dernier exemplaire");
+            verifier(livre.getQuantiteDisponible() == 0 && livre.getQuantiteReservee() == 1, "stock après le tour " + tour + " : " + livre);
+        }
+    }
+
+    // Réservations, libérations, confirmations et retours mêlés : le compte final tombe juste
+    private static void sansMiseAJourPerdue(Livre livre) throws Exception {
+        livre.setQuantiteDisponible(5);
+        AtomicInteger confirmes = new AtomicInteger();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(() -> {
+                ThreadLocalRandom hasard = ThreadLocalRandom.current();
+                for (int i = 0; i < 100_000; i++) {
+                    if (!livre.reserver(1)) {
+                        continue;
+                    }
+                    switch (hasard.nextInt(3)) {
+                        case 0:
+                            livre.liberer(1);
+                            break;
+                        case 1:
+                            livre.confirmer(1);
+                            confirmes.incrementAndGet();
+                            break;
+                        default:
+                            livre.confirmer(1);
+                            livre.restituer(1);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        verifier(livre.getQuantiteReservee() == 0, "réservations restantes : " + livre.getQuantiteReservee());
+        verifier(livre.getQuantiteDisponible() == 5 - confirmes.get(),
+            "disponibles : " + livre.getQuantiteDisponible() + ", attendu " + (5 - confirmes.get()));
+    }
+
+    // Réserver puis libérer garde le même nombre d'exemplaires en rayon : un lecteur ne doit
+    // jamais voir l'un sans l'autre
+    private static void sommeJamaisDechiree(Livre livre) throws Exception {
+        livre.setQuantiteDisponible(4);
+        AtomicBoolean fin = new AtomicBoolean();
+        Thread[] threads = new Thread[THREADS - 1];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                while (!fin.get()) {
+                    if (livre.reserver(1)) {
+                        livre.liberer(1);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        try {
+            for (int i = 0; i < 2_000_000; i++) {
+                int enRayon = livre.getQuantiteEnRayon();
+                verifier(enRayon == 4, "lecture déchirée : " + enRayon + " exemplaire(s) en rayon");
+            }
+        } finally {
+            fin.set(true);
+            for (Thread t : threads) {
+                t.join();
+            }
+        }
+    }
+
+    private static void attendre(CountDownLatch depart) {
+        try {
+            depart.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void verifier(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
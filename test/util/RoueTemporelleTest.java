@@ -0,0 +1,76 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Roues temporelles dont le consommateur d'expiration annule ou replanifie des échéances de la
+ * case en cours de parcours : aucune échéance n'est perdue ni remise deux fois, et la taille
+ * reste exacte.
+ *
+ * Lancement, depuis la racine du projet :
+ * <pre>
+ * javac -encoding UTF-8 -d out src/util/*.java test/util/RoueTemporelleTest.java
+ * java -cp out util.RoueTemporelleTest
+ * </pre>
+ * Une AssertionError signale l'échec.
+ */
+public class RoueTemporelleTest {
+
+    public static void main(String[] args) {
+        roueSimple();
+        roueHierarchique();
+        System.out.println("RoueTemporelleTest : succès");
+    }
+
+    private static void roueSimple() {
+        RoueTemporelle<String> roue = new RoueTemporelle<>(8, 10, 0);
+        List<RoueTemporelle.Echeance<String>> echeances = new ArrayList<>();
+        for (String nom : new String[] {"a", "b", "c", "d"}) {
+            echeances.add(roue.planifier(nom, 10));
+        }
+        List<String> expires = new ArrayList<>();
+        // À l'expiration de "d", première de la case, "c" est annulée puis replanifiée plus tard
+        int nombre = roue.avancer(10, nom -> {
+            expires.add(nom);
+            if (nom.equals("d")) {
+                echeances.get(2).annuler();
+                roue.planifier("c", 30);
+            }
+        });
+        verifier(nombre == 4 && expires.size() == 4, "roue simple : " + expires + " expirés");
+        verifier(roue.taille() == 1, "roue simple : taille " + roue.taille());
+        expires.clear();
+        roue.avancer(30, expires::add);
+        verifier(expires.size() == 1 && expires.get(0).equals("c") && roue.taille() == 0,
+            "roue simple : replanification perdue " + expires);
+    }
+
+    private static void roueHierarchique() {
+        RoueHierarchique<String> roue = new RoueHierarchique<>(3, 10, 0);
+        List<RoueHierarchique.Echeance<String>> echeances = new ArrayList<>();
+        for (String nom : new String[] {"a", "b", "c", "d"}) {
+            echeances.add(roue.planifier(nom, 10));
+        }
+        List<String> expires = new ArrayList<>();
+        int nombre = roue.avancer(10, nom -> {
+            expires.add(nom);
+            if (nom.equals("d")) {
+                echeances.get(2).annuler();
+                roue.planifier("c", 30);
+            }
+        });
+        verifier(nombre == 4 && expires.size() == 4, "roue hiérarchique : " + expires + " expirés");
+        verifier(roue.taille() == 1, "roue hiérarchique : taille " + roue.taille());
+        expires.clear();
+        roue.avancer(30, expires::add);
+        verifier(expires.size() == 1 && expires.get(0).equals("c") && roue.taille() == 0,
+            "roue hiérarchique : replanification perdue " + expires);
+    }
+
+    private static void verifier(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}